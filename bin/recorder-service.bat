@@ -0,0 +1 @@
+java -cp "./lib/*" vsp.RunRecorderService
\ No newline at end of file
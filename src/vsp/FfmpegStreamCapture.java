@@ -1,26 +1,40 @@
 package vsp;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import vsp.data.StreamVideoSource;
+import vsp.processing.DirectoryFrameSink;
+import vsp.processing.FrameAnalyzer;
+import vsp.processing.FrameSink;
+import vsp.processing.JpegFrameScanner;
+import vsp.processing.ParallelFrameWriter;
+import vsp.processing.ProcessHelper;
+import vsp.processing.RawFrame;
+import vsp.processing.RawFrameConsumer;
+import vsp.processing.RawFramePool;
+import vsp.processing.RawPixelFormat;
 import vsp.util.VspProperties;
 
 /**
  * This class provides a static method to get binary data (images) from a video stream input.
  * An ffmpeg process is launched for the video processing, which outputs the image data to
  * standard out.  This is then read in as a input stream, and the jpeg files are identified
- * and written to disk.
+ * with a {@link JpegFrameScanner} and passed to a {@link FrameSink} exactly as ffmpeg encoded them.
+ * The sink is written by a {@link ParallelFrameWriter}, so the thread draining ffmpeg's output never
+ * waits on storage.
+ * <p>
+ * For analysis, frames can instead be captured as raw pixels, skipping JPEG encoding and decoding entirely.  Frames
+ * are only decoded when a {@link FrameAnalyzer} asks for their pixels.
  * 
  * @author Keith
  */
@@ -39,6 +53,9 @@ public class FfmpegStreamCapture {
     /** Image file format spec. Last two bytes should have the following values: FF D9 */
     public static final int JPEG_FILE_EOF_LAST = 217;//D9
 
+    /** The number of raw frame buffers, enough for consumers to hold a few frames while the next is read. */
+    public static final int RAW_FRAME_BUFFER_COUNT = 4;
+
     /**
      * Grab frames from the source stream and write them to the given output directory.
      * @param sourceVideo source video stream to read from
@@ -49,52 +66,164 @@ public class FfmpegStreamCapture {
      * @throws InterruptedException 
      */
     public static void runProcessing(StreamVideoSource sourceVideo, int fps, int quality, String outputDir) throws IOException, InterruptedException
+    {
+        runProcessing(sourceVideo, fps, quality, outputDir, null);
+    }
+
+    /**
+     * Grab frames from the source stream and write them to the given output directory, passing any frames the
+     * analyzer asks for to it as decoded images.
+     * @param sourceVideo source video stream to read from
+     * @param fps the fps to capture frames at
+     * @param quality the quality to capture frames at
+     * @param outputDir the directory to write to
+     * @param analyzer the analyzer to decode frames for, or null to never decode them
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    public static void runProcessing(StreamVideoSource sourceVideo, int fps, int quality, String outputDir,
+            FrameAnalyzer analyzer) throws IOException, InterruptedException
+    {
+        try (FrameSink sink = new DirectoryFrameSink(outputDir, "img%d.jpg")) {
+            runProcessing(sourceVideo, fps, quality, sink, analyzer);
+        }
+    }
+
+    /**
+     * Grab frames from the source stream and pass them to a sink, timestamped with the time they were received,
+     * passing any frames the analyzer asks for to it as decoded images.  The sink is written on a pool of writer
+     * threads, and every frame has been written when this returns.  The sink is not closed.
+     * @param sourceVideo source video stream to read from
+     * @param fps the fps to capture frames at
+     * @param quality the quality to capture frames at
+     * @param sink the sink to pass frames to
+     * @param analyzer the analyzer to decode frames for, or null to never decode them
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    public static void runProcessing(StreamVideoSource sourceVideo, int fps, int quality, FrameSink sink,
+            FrameAnalyzer analyzer) throws IOException, InterruptedException
     {
         //Build FFMPEG commandline string
         // Sample command String:
-        //      ffmpeg -i toRip.ts -q 3 -r 30 -f image2 ./output/image-%%08d.jpg
+        //      ffmpeg -nostats -loglevel error -i udp://@226.0.67.1:44500 -q 3 -r 30 -vcodec mjpeg -f image2pipe pipe:1
         VspProperties props = VspProperties.getInstance();
 
         List<String> command = new ArrayList<>();
         command.add(props.getFfmpegPath());      // FFMPEG command
+        command.add("-nostats");                 // No progress reporting
+        command.add("-loglevel");                // Log Level Flag
+        command.add("error");                    // Log Level Value
         command.add("-i");                       // Input File Flag
         command.add(sourceVideo.getMrl());       // File/Stream Value
         command.add("-q");                       // Quality Flag
         command.add(String.valueOf(quality));    // Quality Value
         command.add("-r");                       // 'Rate' (FPS) Flag
         command.add(String.valueOf(fps));        // FPS value.
+        command.add("-vcodec");                  // Output Codec Flag
+        command.add("mjpeg");                    // JPEG frames, so they can be saved as they are
         command.add("-f");                       // Output image Format
         command.add("image2pipe");               // Output image Format
         command.add("pipe:1");                   // Output image Format
 
         ProcessBuilder pb = new ProcessBuilder(command);
         Process ffmpegProcess = pb.start();
+        //Drain the error output, or FFMPEG blocks once the pipe fills and stops writing frames
+        ProcessHelper.consumeErrors(ffmpegProcess, "FFMPEG Capture");
 
-        //Get the input stream of bytes coming out of ffmpeg
-        InputStream is = new BufferedInputStream(ffmpegProcess.getInputStream());
+        //Split the bytes coming out of ffmpeg into jpeg files, reading them in bulk
+        JpegFrameScanner scanner = new JpegFrameScanner(ffmpegProcess.getInputStream());
+        ParallelFrameWriter writer = new ParallelFrameWriter(sink, props.getCaptureWriterCount(), props.getCaptureQueueCapacity());
 
-        int currentByte;
         int index = 0;
-        int prelastByte = -2;
-        ByteArrayOutputStream output =   new ByteArrayOutputStream();
-        //Grab all of the bytes until we see the end of a jpeg file
-        while ((currentByte = is.read()) != -1){
-            output.write(currentByte);
-
-            if (prelastByte == JPEG_FILE_EOF_NEXT_TO_LAST && currentByte == JPEG_FILE_EOF_LAST){
-                // no in output you get the image as a binary array. You can efficiently save it in the database, memcached or file
-                InputStream inputStream = new ByteArrayInputStream(output.toByteArray());
-                BufferedImage bImageFromConvert = ImageIO.read(inputStream);
-                
-                ImageIO.write(bImageFromConvert, "jpg", new File(outputDir, "img" + index + ".jpg"));
+        ByteBuffer frame;
+        try {
+            while ((frame = scanner.nextFrame()) != null){
+                // Only decode the frame if the analyzer wants its pixels, reading it in place from the scanner's buffer
+                if (analyzer != null && analyzer.wantsPixels(index)) {
+                    ByteArrayInputStream inputStream = new ByteArrayInputStream(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                    BufferedImage image = ImageIO.read(inputStream);
+                    if (image != null) {
+                        analyzer.analyze(index, image);
+                    }
+                }
+
+                //Queue ffmpeg's jpeg bytes, as they are, for the writers
+                writer.accept(index, System.currentTimeMillis(), frame);
                 index++;
-                output.reset();
             }
-            prelastByte = currentByte;
+        } finally {
+            writer.finish();
         }
 
     }
   
+    /**
+     * Grab frames from the source stream as raw pixels of a fixed size and format, and pass them to the consumers.
+     * Frames are read into a pool of reusable direct buffers, so nothing is allocated per frame; a consumer that
+     * holds on to a frame after returning keeps its buffer from being reused until it releases it.
+     * @param sourceVideo source video stream to read from
+     * @param fps the fps to capture frames at
+     * @param width the width to scale frames to
+     * @param height the height to scale frames to
+     * @param format the pixel format to capture
+     * @param consumers the consumers to pass each frame to, in order
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    public static void runRawProcessing(StreamVideoSource sourceVideo, int fps, int width, int height,
+            RawPixelFormat format, List<RawFrameConsumer> consumers) throws IOException, InterruptedException
+    {
+        //Build FFMPEG commandline string
+        // Sample command String:
+        //      ffmpeg -nostats -loglevel error -i udp://@226.0.67.1:44500 -r 30 -s 320x240 -f rawvideo -pix_fmt gray pipe:1
+        VspProperties props = VspProperties.getInstance();
+
+        List<String> command = new ArrayList<>();
+        command.add(props.getFfmpegPath());      // FFMPEG command
+        command.add("-nostats");                 // No progress reporting
+        command.add("-loglevel");                // Log Level Flag
+        command.add("error");                    // Log Level Value
+        command.add("-i");                       // Input File Flag
+        command.add(sourceVideo.getMrl());       // File/Stream Value
+        command.add("-r");                       // 'Rate' (FPS) Flag
+        command.add(String.valueOf(fps));        // FPS value.
+        command.add("-s");                       // Frame Size Flag
+        command.add(width + "x" + height);       // Frame Size Value, fixed so every frame has the same byte count
+        command.add("-f");                       // Output Format
+        command.add("rawvideo");                 // Uncompressed pixels
+        command.add("-pix_fmt");                 // Pixel Format Flag
+        command.add(format.getFfmpegName());     // Pixel Format Value
+        command.add("pipe:1");                   // Standard Out
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        Process ffmpegProcess = pb.start();
+        //Drain the error output, or FFMPEG blocks once the pipe fills and stops writing frames
+        ProcessHelper.consumeErrors(ffmpegProcess, "FFMPEG Capture");
+
+        RawFramePool pool = new RawFramePool(width, height, format, RAW_FRAME_BUFFER_COUNT);
+        try (ReadableByteChannel input = Channels.newChannel(ffmpegProcess.getInputStream())) {
+            long index = 0;
+            while (true) {
+                RawFrame frame = pool.acquire(index, System.currentTimeMillis());
+                try {
+                    //Read exactly one frame, there are no markers between raw frames
+                    if (!frame.fillFrom(input)) {
+                        return;
+                    }
+                    for (RawFrameConsumer consumer : consumers) {
+                        consumer.accept(frame);
+                    }
+                } finally {
+                    frame.release();
+                }
+                index++;
+            }
+        } finally {
+            ffmpegProcess.waitFor();
+        }
+    }
+
     /**
      * Main method to run
      * @param args commandline arguments
@@ -0,0 +1,45 @@
+package vsp;
+
+import java.net.UnknownHostException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.processing.IngestMode;
+import vsp.processing.RecorderService;
+import vsp.util.VspProperties;
+import vsp.util.VspUtilities;
+
+/**
+ * The headless Recorder Service application, which records every stream listed in application.properties.
+ * @author Keith
+ */
+public class RunRecorderService {
+
+    public static void main(String args[]) {
+        // Initialize Logging.
+        VspUtilities.initLogging();
+        // Loads the appropriate VLC Native Library, only needed when VLC receives the streams.
+        if (VspProperties.getInstance().getIngestMode() == IngestMode.VLC) {
+            VspUtilities.loadVlcNativeLibs();
+        }
+
+        final RecorderService service;
+        try {
+            service = RecorderService.fromProperties();
+        } catch (UnknownHostException ex) {
+            Logger.getLogger(RunRecorderService.class.getName()).log(Level.SEVERE, "Invalid recorder source address", ex);
+            return;
+        }
+        if (service.getDetectors().isEmpty()) {
+            Logger.getLogger(RunRecorderService.class.getName()).severe("No recorder.sources configured in application.properties");
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                service.stop();
+            }
+        }, "Recorder Service Shutdown"));
+        service.start();
+    }
+
+}
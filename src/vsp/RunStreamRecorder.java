@@ -1,6 +1,8 @@
 package vsp;
 
 import vsp.display.StreamRecorderDisplay;
+import vsp.processing.IngestMode;
+import vsp.util.VspProperties;
 import vsp.util.VspUtilities;
 
 /**
@@ -12,8 +14,10 @@ public class RunStreamRecorder {
     public static void main(String args[]) {
         // Initialize Logging.
         VspUtilities.initLogging();
-        // Loads the appropriate VLC Native Library.
-        VspUtilities.loadVlcNativeLibs();
+        // Loads the appropriate VLC Native Library, only needed when VLC receives the streams.
+        if (VspProperties.getInstance().getIngestMode() == IngestMode.VLC) {
+            VspUtilities.loadVlcNativeLibs();
+        }
 
         StreamRecorderDisplay srd = new StreamRecorderDisplay();
         srd.launch();
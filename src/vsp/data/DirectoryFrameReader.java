@@ -0,0 +1,113 @@
+package vsp.data;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * A {@link FrameReader} for a recording stored as one JPEG file per frame in a directory.  Frames are ordered by file
+ * name, and timestamped from the recording's {@link FrameTimestampIndex} if it covers every frame, or estimated from
+ * the recording's start time and frame rate otherwise.
+ *
+ * @author Keith
+ */
+public class DirectoryFrameReader implements FrameReader {
+
+    /** The frame files, in order. */
+    private final File[] m_frames;
+
+    /** The time of the first frame, in milliseconds. */
+    private final long m_startTime;
+
+    /** The frames per second of the recording. */
+    private final int m_fps;
+
+    /** The timestamps of the frames, or null to estimate them. */
+    private final FrameTimestampIndex m_timestamps;
+
+    /**
+     * Creates a new DirectoryFrameReader.
+     * @param frameDirectory the directory holding the frames.
+     * @param startTime the time of the first frame, in milliseconds.
+     * @param fps the frames per second of the recording.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public DirectoryFrameReader(String frameDirectory, long startTime, int fps) throws IOException {
+        this(frameDirectory, startTime, fps, null);
+    }
+
+    /**
+     * Creates a new DirectoryFrameReader.
+     * @param frameDirectory the directory holding the frames.
+     * @param startTime the time of the first frame, in milliseconds.
+     * @param fps the frames per second of the recording.
+     * @param timestamps the timestamp index of the frames, or null to estimate frame times.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public DirectoryFrameReader(String frameDirectory, long startTime, int fps, FrameTimestampIndex timestamps) throws IOException {
+        m_frames = listFrames(frameDirectory);
+        m_startTime = startTime;
+        m_fps = fps;
+        // An index that does not match the frames one for one cannot say which frame is which.
+        m_timestamps = timestamps != null && timestamps.getFrameCount() == m_frames.length ? timestamps : null;
+    }
+
+    /**
+     * Lists the frame files of a directory in order.
+     * @param frameDirectory the directory holding the frames.
+     * @return the frame files, ordered by name.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static File[] listFrames(String frameDirectory) throws IOException {
+        File[] frames = new File(frameDirectory).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith("jpg") || file.getName().endsWith("jpeg");
+            }
+        });
+        if (frames == null) {
+            throw new IOException("Unable to list frame directory: " + frameDirectory);
+        }
+        Arrays.sort(frames);
+        return frames;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getFrameCount() {
+        return m_frames.length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuffer getFrame(int frameNumber) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(m_frames[frameNumber].toPath()));
+    }
+
+    /**
+     * Returns the file a frame is read from.
+     * @param frameNumber the number of the frame, from 0.
+     * @return the frame's file.
+     */
+    public File getFrameFile(int frameNumber) {
+        return m_frames[frameNumber];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTimestamp(int frameNumber) {
+        if (m_timestamps != null) {
+            return m_timestamps.getTimestamp(frameNumber);
+        }
+        return m_startTime + frameNumber * 1000L / m_fps;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        // Frame files are only open while being read.
+    }
+}
@@ -0,0 +1,34 @@
+package vsp.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to the encoded frames of a {@link FrameRecording}, however they are stored.
+ *
+ * @author Keith
+ */
+public interface FrameReader extends Closeable {
+
+    /**
+     * Returns the number of frames in the recording.
+     * @return the number of frames.
+     */
+    public int getFrameCount();
+
+    /**
+     * Returns the encoded bytes of a frame.
+     * @param frameNumber the number of the frame, from 0.
+     * @return the frame's JPEG bytes, from the buffer's position to its limit.
+     * @throws IOException if the frame cannot be read.
+     */
+    public ByteBuffer getFrame(int frameNumber) throws IOException;
+
+    /**
+     * Returns the time of a frame.
+     * @param frameNumber the number of the frame, from 0.
+     * @return the time of the frame, in milliseconds.
+     */
+    public long getTimestamp(int frameNumber);
+}
@@ -1,21 +1,62 @@
 package vsp.data;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import vsp.display.FrameRecordingPlayer;
+import vsp.processing.PackedFrameSink;
 
 /**
  * A class that represents a Frame Recording.
+ * <p>
+ * Recordings are saved in a compact binary format:  the magic number {@code VSPR}, the format version as an int, the
+ * number of times the recording has been saved as a long, then the fields of the recording as written by a
+ * DataOutputStream.  Saves write a temporary file and rename it over the old one, so a reader never sees a partly
+ * written file, and give it a modification time later than the old one's, so that every save changes the file's
+ * attributes even when the size stays the same and saves come faster than the clock ticks.  Files in the older java.util.Properties text format are still
+ * read, and are rewritten in the binary format the next time they are saved.
  * @author adam
  */
 public class FrameRecording {
 
+    /** The magic number at the start of a binary recording file, the characters VSPR. */
+    private static final int MAGIC = 0x56535052;
+
+    /** The version of the binary format written. */
+    private static final int VERSION = 2;
+
+    /** Serializes read-modify-write updates of recording files within this process. */
+    private static final Object FILE_LOCK = new Object();
+
+    /** The name, without extension, of the packed frame files in a recording's frame directory. */
+    public static final String PACKED_FRAMES_NAME = "frames";
+
+    /** The name of the compacted video in a recording's frame directory. */
+    public static final String COMPACTED_VIDEO_NAME = "video.mp4";
+
+    /** The name of the timestamp index of the compacted video in a recording's frame directory. */
+    public static final String COMPACTED_INDEX_NAME = "video.fti";
+
     /** The ID of this StreamRecording. */
     private UUID m_id;
 
@@ -40,6 +81,12 @@ public class FrameRecording {
     /** The end time of this FrameRecording (in ms since Jan 1 1970). */
     private long m_endTime;
 
+    /** The fully qualified paths to the .ts segments of the original recording, in recording order. */
+    private final List<String> m_segmentFiles;
+
+    /** The number of times this recording has been saved, 0 if it never has. */
+    private long m_saveCount;
+
     /** Logger */
     private static final Logger LOGGER = Logger.getLogger(FrameRecordingPlayer.class.getName());
 
@@ -93,56 +140,227 @@ public class FrameRecording {
         m_endTime = endTime;
         m_id = UUID.randomUUID();
         m_id = id;
+        m_segmentFiles = new ArrayList<>();
+        m_saveCount = 0;
     }
 
     /**
-     * Creates a new FrameRecording from the data in the supplied properties file.
-     * @param fileName the file to read the properties from.
-     * @return the FrameRecording described by the file.
+     * Creates a new FrameRecording from the data in the supplied file, in either the binary or the older properties
+     * format.
+     * @param fileName the file to read the recording from.
+     * @return the FrameRecording described by the file, or null if it cannot be read.
      */
     public static FrameRecording fromFile(String fileName) {
-        Properties recordingProperties = new Properties();
         try {
-            recordingProperties.load(new FileReader(fileName));
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "Error loading Frame Recording properties.", ex);
+            return read(Paths.get(fileName));
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.SEVERE, "Error loading Frame Recording: " + fileName, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a FrameRecording from a file in either the binary or the older properties format.
+     * @param file the file to read the recording from.
+     * @return the FrameRecording described by the file.
+     * @throws IOException if the file cannot be read or is not a recording.
+     */
+    private static FrameRecording read(Path file) throws IOException {
+        return fromBytes(Files.readAllBytes(file));
+    }
+
+    /**
+     * Reads a FrameRecording from the contents of a file, in either the binary or the older properties format.
+     * @param bytes the contents of the file.
+     * @return the FrameRecording described by the contents.
+     * @throws IOException if the contents are not a recording.
+     */
+    static FrameRecording fromBytes(byte[] bytes) throws IOException {
+        if (bytes.length >= 4 && ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF)) == MAGIC) {
+            return readBinary(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        return readProperties(new String(bytes, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Reads a FrameRecording in the binary format.
+     * @param in the file's contents, from the magic number.
+     * @return the FrameRecording described by the file.
+     * @throws IOException if the contents are not a recording of a known version.
+     */
+    private static FrameRecording readBinary(DataInputStream in) throws IOException {
+        in.readInt();
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported Frame Recording version: " + version);
+        }
+        // Version 1 files have no save count.
+        long saveCount = version >= 2 ? in.readLong() : 0;
+        FrameRecording recording = readFields(in);
+        recording.m_saveCount = saveCount;
+        return recording;
+    }
+
+    /**
+     * Reads the fields of a FrameRecording written by {@link #writeFields(DataOutputStream)}.
+     * @param in the stream to read from.
+     * @return the FrameRecording read.
+     * @throws IOException if the stream cannot be read.
+     */
+    static FrameRecording readFields(DataInputStream in) throws IOException {
+        UUID id = new UUID(in.readLong(), in.readLong());
+        UUID sourceId = new UUID(in.readLong(), in.readLong());
+        String name = readString(in);
+        int fps = in.readInt();
+        String frameDir = readString(in);
+        String originalFileName = readString(in);
+        long startTime = in.readLong();
+        long endTime = in.readLong();
+
+        FrameRecording recording = new FrameRecording(id, sourceId, fps, originalFileName, frameDir, startTime, endTime, name);
+        int segmentCount = in.readInt();
+        for (int i = 0; i < segmentCount; i++) {
+            recording.m_segmentFiles.add(readString(in));
         }
+        return recording;
+    }
+
+    /**
+     * Reads a FrameRecording in the older properties format.
+     * @param text the file's contents.
+     * @return the FrameRecording described by the file.
+     * @throws IOException if the contents cannot be parsed.
+     */
+    private static FrameRecording readProperties(String text) throws IOException {
+        Properties recordingProperties = new Properties();
+        recordingProperties.load(new StringReader(text));
         UUID id = UUID.fromString(recordingProperties.getProperty("recording.id"));
         UUID sourceId = UUID.fromString(recordingProperties.getProperty("video.source.id"));
         String name = recordingProperties.getProperty("name");
         int fps = Integer.valueOf(recordingProperties.getProperty("fps"));
         String frameDir = recordingProperties.getProperty("frame.dir");
-        System.out.println(frameDir);
         String originalFileName = recordingProperties.getProperty("original.file.name");
         long startTime = Long.valueOf(recordingProperties.getProperty("start.time"));
         long endTime = Long.valueOf(recordingProperties.getProperty("end.time"));
 
-        return new FrameRecording(id, sourceId, fps, originalFileName, frameDir, startTime, endTime, name);
+        FrameRecording recording = new FrameRecording(id, sourceId, fps, originalFileName, frameDir, startTime, endTime, name);
+
+        // Recordings written before segmenting existed have no segment list.
+        int segmentCount = Integer.valueOf(recordingProperties.getProperty("segment.count", "0"));
+        for (int i = 0; i < segmentCount; i++) {
+            recording.m_segmentFiles.add(recordingProperties.getProperty("segment." + i));
+        }
+        return recording;
     }
 
     /**
-     * Saves this Frame Recording to file.
-     * @param outputFile the file to write out the properties to.
+     * Saves this Frame Recording to file, in the binary format, replacing the file atomically.
+     * @param outputFile the file to write the recording to.
      */
     public void saveToFile(String outputFile) {
-        Properties props = new Properties();
-        props.put("recording.id", m_id.toString());
-        props.put("video.source.id", m_videoSourceId.toString());
-        props.put("name", m_name);
-        props.put("fps", String.valueOf(m_fps));
-        props.put("frame.dir", m_frameDirectory);
-        props.put("original.file.name", m_originalFileName);
-        props.put("start.time", String.valueOf(m_startTime));
-        props.put("end.time", String.valueOf(m_endTime));
-
-        // Write out to disk.
         try {
-            FileWriter writer = new FileWriter(outputFile);
-            props.store(writer, "Frame Recording Properties - " + new java.util.Date().toString());
-            writer.close();
+            write(Paths.get(outputFile));
         } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "Error writing Frame Recording properties.", ex);
+            LOGGER.log(Level.SEVERE, "Error writing Frame Recording: " + outputFile, ex);
+        }
+    }
+
+    /**
+     * Writes this Frame Recording to a temporary file next to the target and renames it into place.
+     * @param file the file to write the recording to.
+     * @throws IOException if the recording cannot be written.
+     */
+    private void write(Path file) throws IOException {
+        m_saveCount++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(m_saveCount);
+            writeFields(out);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        long modified = System.currentTimeMillis();
+        if (Files.exists(file)) {
+            modified = Math.max(modified, Files.getLastModifiedTime(file).toMillis() + 1);
         }
+        Files.setLastModifiedTime(temp, FileTime.fromMillis(modified));
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the fields of this Frame Recording, without the magic number and version.
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    void writeFields(DataOutputStream out) throws IOException {
+        out.writeLong(m_id.getMostSignificantBits());
+        out.writeLong(m_id.getLeastSignificantBits());
+        out.writeLong(m_videoSourceId.getMostSignificantBits());
+        out.writeLong(m_videoSourceId.getLeastSignificantBits());
+        writeString(out, m_name);
+        out.writeInt(m_fps);
+        writeString(out, m_frameDirectory);
+        writeString(out, m_originalFileName);
+        out.writeLong(m_startTime);
+        out.writeLong(m_endTime);
+        out.writeInt(m_segmentFiles.size());
+        for (String segment : m_segmentFiles) {
+            writeString(out, segment);
+        }
+    }
+
+    /**
+     * Writes a String that may be null.
+     * @param out the stream to write to.
+     * @param value the String to write.
+     * @throws IOException if the stream cannot be written.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a String written by {@link #writeString(DataOutputStream, String)}.
+     * @param in the stream to read from.
+     * @return the String, which may be null.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Loads every recording in a recording library:  each subdirectory holding a recording file with the given name.
+     * Subdirectories without a readable recording file are skipped.
+     * @param libraryDirectory the recording library directory.
+     * @param recordingFileName the name of the recording file in each recording's directory.
+     * @return the recordings found.
+     * @throws IOException if the library directory cannot be listed.
+     */
+    public static List<FrameRecording> scanLibrary(String libraryDirectory, String recordingFileName) throws IOException {
+        List<FrameRecording> recordings = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(Paths.get(libraryDirectory))) {
+            for (Path dir : dirs) {
+                Path file = dir.resolve(recordingFileName);
+                if (Files.isRegularFile(file)) {
+                    FrameRecording recording = fromFile(file.toString());
+                    if (recording != null) {
+                        recordings.add(recording);
+                    }
+                }
+            }
+        }
+        return recordings;
     }
 
     /**
@@ -152,11 +370,31 @@ public class FrameRecording {
      * @param endTime The time that this recording ended.
      */
     public static void updateRecordingEndTime(String outputFile, long endTime) {
-        FrameRecording recording = FrameRecording.fromFile(outputFile);
-        recording.setEndTime(endTime);
-        recording.saveToFile(outputFile);
+        synchronized (FILE_LOCK) {
+            FrameRecording recording = FrameRecording.fromFile(outputFile);
+            if (recording != null) {
+                recording.setEndTime(endTime);
+                recording.saveToFile(outputFile);
+            }
+        }
     }
     
+    /**
+     * Appends a .ts segment to the segment list of a recording file.
+     *
+     * @param outputFile the file to write out the properties to.
+     * @param segmentFile the fully qualified path to the segment that was started.
+     */
+    public static void addRecordingSegment(String outputFile, String segmentFile) {
+        synchronized (FILE_LOCK) {
+            FrameRecording recording = FrameRecording.fromFile(outputFile);
+            if (recording != null) {
+                recording.addSegmentFile(segmentFile);
+                recording.saveToFile(outputFile);
+            }
+        }
+    }
+
     /**
      * Returns a unique ID for this recording.
      * @return a unique ID for this recording.
@@ -189,6 +427,22 @@ public class FrameRecording {
         return m_fps;
     }
 
+    /**
+     * Returns the number of times this recording has been saved, which the file header records.
+     * @return the save count, 0 if the recording has never been saved or was read from an older format.
+     */
+    public long getSaveCount() {
+        return m_saveCount;
+    }
+
+    /**
+     * Sets the save count of a recording restored from somewhere other than its file, such as a catalog snapshot.
+     * @param saveCount the number of times the recording has been saved.
+     */
+    void setSaveCount(long saveCount) {
+        m_saveCount = saveCount;
+    }
+
     /**
      * Returns the original file from which this recording was ripped.
      * @return the original file from which this recording was ripped.
@@ -197,6 +451,23 @@ public class FrameRecording {
         return m_originalFileName;
     }
 
+    /**
+     * Returns the .ts segments of the original recording, in recording order.  Recordings made before segmenting
+     * existed return an empty list, in which case {@link #getOriginalFile()} is the only source file.
+     * @return an unmodifiable list of the fully qualified paths to the recording segments.
+     */
+    public List<String> getSegmentFiles() {
+        return Collections.unmodifiableList(m_segmentFiles);
+    }
+
+    /**
+     * Adds a .ts segment to the end of the segment list of this recording.
+     * @param segmentFile the fully qualified path to the segment.
+     */
+    public void addSegmentFile(String segmentFile) {
+        m_segmentFiles.add(segmentFile);
+    }
+
     /**
      * Returns the directory that contains the frames for this recording.
      * @return the directory that contains the frames for this recording.
@@ -205,6 +476,80 @@ public class FrameRecording {
         return m_frameDirectory;
     }
 
+    /**
+     * Returns the path, without extension, of the packed frame files of this recording.
+     * @return the base path of the packed frame files.
+     */
+    public String getPackedFramesBasePath() {
+        return new File(m_frameDirectory, PACKED_FRAMES_NAME).getPath();
+    }
+
+    /**
+     * Returns whether the frames of this recording are packed into a data and index file, rather than stored one
+     * file per frame.
+     * @return true if the recording's frames are packed.
+     */
+    public boolean isPacked() {
+        return new File(getPackedFramesBasePath() + PackedFrameSink.INDEX_EXTENSION).isFile();
+    }
+
+    /**
+     * Returns the path of the video this recording's frames are compacted into.
+     * @return the path of the compacted video.
+     */
+    public String getCompactedVideoPath() {
+        return new File(m_frameDirectory, COMPACTED_VIDEO_NAME).getPath();
+    }
+
+    /**
+     * Returns the path of the timestamp index of the compacted video.
+     * @return the path of the compacted video's timestamp index.
+     */
+    public String getCompactedIndexPath() {
+        return new File(m_frameDirectory, COMPACTED_INDEX_NAME).getPath();
+    }
+
+    /**
+     * Returns whether the frames of this recording have been compacted into a single video.
+     * @return true if the recording's frames are compacted.
+     */
+    public boolean isCompacted() {
+        return new File(getCompactedIndexPath()).isFile();
+    }
+
+    /**
+     * Opens a reader for the frames of this recording, from the packed frame files if there are any, from the
+     * compacted video if there is one, and from the individual frame files otherwise.
+     * @return a reader for the recording's frames, which the caller must close.
+     * @throws IOException if the frames cannot be opened.
+     */
+    public FrameReader openFrameReader() throws IOException {
+        if (isPacked()) {
+            return new PackedFrameReader(getPackedFramesBasePath(), openTimestampIndex());
+        }
+        if (isCompacted()) {
+            return new VideoFrameReader(getCompactedVideoPath(), new FrameTimestampIndex(getCompactedIndexPath()), m_fps);
+        }
+        return new DirectoryFrameReader(m_frameDirectory, m_startTime, m_fps, openTimestampIndex());
+    }
+
+    /**
+     * Opens the timestamp index of this recording's frames, if it has one.
+     * @return the timestamp index, or null if the recording has none or it cannot be read.
+     */
+    public FrameTimestampIndex openTimestampIndex() {
+        File indexFile = new File(m_frameDirectory, FrameTimestampIndex.FILE_NAME);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            return new FrameTimestampIndex(indexFile.getPath());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to read frame timestamp index, frame times will be estimated", ex);
+            return null;
+        }
+    }
+
     /**
      * Returns the start time of this recording.
      * @return the start time of this recording.
@@ -240,6 +585,7 @@ public class FrameRecording {
         hash = 37 * hash + Objects.hashCode(this.m_frameDirectory);
         hash = 37 * hash + (int) (this.m_startTime ^ (this.m_startTime >>> 32));
         hash = 37 * hash + (int) (this.m_endTime ^ (this.m_endTime >>> 32));
+        hash = 37 * hash + Objects.hashCode(this.m_segmentFiles);
         return hash;
     }
 
@@ -277,6 +623,9 @@ public class FrameRecording {
         if (this.m_endTime != other.m_endTime) {
             return false;
         }
+        if (!Objects.equals(this.m_segmentFiles, other.m_segmentFiles)) {
+            return false;
+        }
         return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+package vsp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The wall clock time of every frame of a recording, read from the binary timestamp index written next to the frames
+ * while they are ripped.  Frames are numbered in playback order, so frame N here is frame N of the recording's
+ * {@link FrameReader}, and finding the frame shown at a given time is a binary search.
+ * <p>
+ * The file starts with a {@value #HEADER_SIZE} byte header:  the magic number {@code VSPT}, the format version, the
+ * entry size and a reserved int.  It is followed by one {@value #ENTRY_SIZE} byte entry per frame, in the order the
+ * frames were ripped, which need not be playback order:  the frame key as a long, which orders frames the way their
+ * file names do, the presentation timestamp in 90 kHz ticks, unwrapped so it never goes backwards across the 33 bit
+ * wrap, and the wall clock time in milliseconds since Jan 1 1970.  All values are big endian.
+ *
+ * @author Keith
+ */
+public class FrameTimestampIndex {
+
+    /** The name of the timestamp index file in a recording's frame directory. */
+    public static final String FILE_NAME = "timestamps.fti";
+
+    /** The magic number at the start of the file, the characters VSPT. */
+    public static final int MAGIC = 0x56535054;
+
+    /** The version of the format. */
+    public static final int VERSION = 1;
+
+    /** The size in bytes of the header. */
+    public static final int HEADER_SIZE = 16;
+
+    /** The size in bytes of each entry. */
+    public static final int ENTRY_SIZE = 24;
+
+    /** The keys of the frames, in playback order. */
+    private final long[] m_keys;
+
+    /** The presentation timestamps of the frames in 90 kHz ticks, in playback order. */
+    private final long[] m_pts;
+
+    /** The wall clock times of the frames in milliseconds, in playback order. */
+    private final long[] m_wallClock;
+
+    /**
+     * Reads a timestamp index file.
+     * @param path the path of the file.
+     * @throws IOException if the file cannot be read or is not a timestamp index.
+     */
+    public FrameTimestampIndex(String path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole file, it is small next to the frames it describes.
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a frame timestamp index: " + path);
+        }
+        int version = buffer.getInt();
+        int entrySize = buffer.getInt();
+        buffer.getInt();
+        if (version != VERSION || entrySize != ENTRY_SIZE) {
+            throw new IOException("Unsupported frame timestamp index version " + version + ": " + path);
+        }
+
+        int count = buffer.remaining() / ENTRY_SIZE;
+        long[][] entries = new long[count][];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new long[] {buffer.getLong(), buffer.getLong(), buffer.getLong()};
+        }
+        // Snippets may be ripped out of order, so put the frames back in playback order.
+        Arrays.sort(entries, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        m_keys = new long[count];
+        m_pts = new long[count];
+        m_wallClock = new long[count];
+        for (int i = 0; i < count; i++) {
+            m_keys[i] = entries[i][0];
+            m_pts[i] = entries[i][1];
+            m_wallClock[i] = entries[i][2];
+        }
+    }
+
+    /**
+     * Returns the number of frames in the index.
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return m_keys.length;
+    }
+
+    /**
+     * Returns the wall clock time of a frame.
+     * @param frameNumber the number of the frame in playback order.
+     * @return the time of the frame, in milliseconds since Jan 1 1970.
+     */
+    public long getTimestamp(int frameNumber) {
+        return m_wallClock[frameNumber];
+    }
+
+    /**
+     * Returns the unwrapped presentation timestamp of a frame.
+     * @param frameNumber the number of the frame in playback order.
+     * @return the presentation timestamp, in 90 kHz ticks.
+     */
+    public long getPresentationTimestamp(int frameNumber) {
+        return m_pts[frameNumber];
+    }
+
+    /**
+     * Returns the key of a frame, which orders frames the way their file names do.
+     * @param frameNumber the number of the frame in playback order.
+     * @return the frame key.
+     */
+    public long getKey(int frameNumber) {
+        return m_keys[frameNumber];
+    }
+
+    /**
+     * Finds the frame being shown at a wall clock time:  the last frame at or before it.
+     * @param wallClockMillis the time, in milliseconds since Jan 1 1970.
+     * @return the number of the frame, 0 if the time is before the first frame, or -1 if the index is empty.
+     */
+    public int findFrame(long wallClockMillis) {
+        if (m_wallClock.length == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = m_wallClock.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (m_wallClock[mid] <= wallClockMillis) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,179 @@
+package vsp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import vsp.processing.PackedFrameSink;
+
+/**
+ * A {@link FrameReader} for a recording packed by {@link PackedFrameSink} into a data file and an index file.  Both
+ * files are memory mapped, so finding frame N is one read of its fixed width index entry, and its bytes are handed out
+ * as a slice of the mapped data without being copied.
+ * <p>
+ * A single mapping is limited to 2 GB, so the data file is mapped in overlapping windows:  window i starts at
+ * i * {@value #WINDOW_STEP} and is twice that long, so any frame no longer than the step lies wholly inside the window
+ * its offset falls in.
+ * <p>
+ * Frames are timestamped from the recording's {@link FrameTimestampIndex} if it covers every frame, and from the times
+ * held in the packed index otherwise.
+ *
+ * @author Keith
+ */
+public class PackedFrameReader implements FrameReader {
+
+    /** The distance between the starts of successive data windows, and the largest frame that can be read. */
+    private static final long WINDOW_STEP = 512L * 1024L * 1024L;
+
+    /** The offset of the frame index within an index entry. */
+    private static final int ENTRY_TIMESTAMP = 8;
+
+    /** The offset of the data offset within an index entry. */
+    private static final int ENTRY_OFFSET = 16;
+
+    /** The offset of the frame length within an index entry. */
+    private static final int ENTRY_LENGTH = 24;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer m_index;
+
+    /** The data file. */
+    private final FileChannel m_data;
+
+    /** The size of the data file when it was opened. */
+    private final long m_dataSize;
+
+    /** The mapped windows of the data file, mapped when first needed. */
+    private final MappedByteBuffer[] m_windows;
+
+    /** The number of frames in the index. */
+    private final int m_frameCount;
+
+    /** The timestamps of the frames, or null to use the times in the packed index. */
+    private final FrameTimestampIndex m_timestamps;
+
+    /**
+     * Opens the packed files {@code basePath.frames} and {@code basePath.fidx}.
+     * @param basePath the path of the files, without extension.
+     * @throws IOException if the files cannot be opened or the index is not a packed frame index.
+     */
+    public PackedFrameReader(String basePath) throws IOException {
+        this(basePath, (FrameTimestampIndex) null);
+    }
+
+    /**
+     * Opens the packed files {@code basePath.frames} and {@code basePath.fidx}, timestamping frames from a timestamp
+     * index.
+     * @param basePath the path of the files, without extension.
+     * @param timestamps the timestamp index of the frames, or null to use the times in the packed index.
+     * @throws IOException if the files cannot be opened or the index is not a packed frame index.
+     */
+    public PackedFrameReader(String basePath, FrameTimestampIndex timestamps) throws IOException {
+        this(basePath + PackedFrameSink.DATA_EXTENSION, basePath + PackedFrameSink.INDEX_EXTENSION, timestamps);
+    }
+
+    /**
+     * Opens a packed data file and its index.
+     * @param dataPath the path of the data file.
+     * @param indexPath the path of the index file.
+     * @throws IOException if the files cannot be opened or the index is not a packed frame index.
+     */
+    public PackedFrameReader(String dataPath, String indexPath) throws IOException {
+        this(dataPath, indexPath, null);
+    }
+
+    /**
+     * Opens a packed data file and its index, timestamping frames from a timestamp index.
+     * @param dataPath the path of the data file.
+     * @param indexPath the path of the index file.
+     * @param timestamps the timestamp index of the frames, or null to use the times in the packed index.
+     * @throws IOException if the files cannot be opened or the index is not a packed frame index.
+     */
+    public PackedFrameReader(String dataPath, String indexPath, FrameTimestampIndex timestamps) throws IOException {
+        try (FileChannel index = FileChannel.open(Paths.get(indexPath), StandardOpenOption.READ)) {
+            m_index = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size());
+        }
+        if (m_index.capacity() < PackedFrameSink.INDEX_HEADER_SIZE || m_index.getInt(0) != PackedFrameSink.INDEX_MAGIC) {
+            throw new IOException("Not a packed frame index: " + indexPath);
+        }
+        int version = m_index.getInt(4);
+        int entrySize = m_index.getInt(8);
+        if (version != PackedFrameSink.INDEX_VERSION || entrySize != PackedFrameSink.INDEX_ENTRY_SIZE) {
+            throw new IOException("Unsupported packed frame index version " + version + ": " + indexPath);
+        }
+        // A partially written last entry, from a recording still in progress or cut short, is ignored.
+        m_frameCount = (m_index.capacity() - PackedFrameSink.INDEX_HEADER_SIZE) / PackedFrameSink.INDEX_ENTRY_SIZE;
+        m_data = FileChannel.open(Paths.get(dataPath), StandardOpenOption.READ);
+        m_dataSize = m_data.size();
+        m_windows = new MappedByteBuffer[(int) (m_dataSize / WINDOW_STEP) + 1];
+        // An index that does not match the frames one for one cannot say which frame is which.
+        m_timestamps = timestamps != null && timestamps.getFrameCount() == m_frameCount ? timestamps : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getFrameCount() {
+        return m_frameCount;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuffer getFrame(int frameNumber) throws IOException {
+        int entry = entryPosition(frameNumber);
+        long offset = m_index.getLong(entry + ENTRY_OFFSET);
+        int length = m_index.getInt(entry + ENTRY_LENGTH);
+        if (offset < 0 || length < 0 || length > WINDOW_STEP || offset + length > m_dataSize) {
+            throw new IOException("Frame " + frameNumber + " lies outside the data file");
+        }
+        int windowIndex = (int) (offset / WINDOW_STEP);
+        ByteBuffer frame = getWindow(windowIndex).duplicate();
+        int start = (int) (offset - windowIndex * WINDOW_STEP);
+        frame.limit(start + length);
+        frame.position(start);
+        return frame.slice();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTimestamp(int frameNumber) {
+        if (m_timestamps != null) {
+            return m_timestamps.getTimestamp(frameNumber);
+        }
+        return m_index.getLong(entryPosition(frameNumber) + ENTRY_TIMESTAMP);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        m_data.close();
+    }
+
+    /**
+     * Returns the position of a frame's index entry.
+     * @param frameNumber the number of the frame.
+     * @return the position of the entry in the index.
+     */
+    private int entryPosition(int frameNumber) {
+        if (frameNumber < 0 || frameNumber >= m_frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frameNumber + " of " + m_frameCount);
+        }
+        return PackedFrameSink.INDEX_HEADER_SIZE + frameNumber * PackedFrameSink.INDEX_ENTRY_SIZE;
+    }
+
+    /**
+     * Returns a window of the data file, mapping it if this is its first use.
+     * @param windowIndex the index of the window.
+     * @return the mapped window.
+     * @throws IOException if the window cannot be mapped.
+     */
+    private synchronized MappedByteBuffer getWindow(int windowIndex) throws IOException {
+        if (m_windows[windowIndex] == null) {
+            long start = windowIndex * WINDOW_STEP;
+            long size = Math.min(2 * WINDOW_STEP, m_dataSize - start);
+            m_windows[windowIndex] = m_data.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+        return m_windows[windowIndex];
+    }
+}
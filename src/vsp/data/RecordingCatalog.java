@@ -0,0 +1,639 @@
+package vsp.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import vsp.util.VspProperties;
+
+/**
+ * An in-memory index of the recordings in a recording library, by video source and time range.  The library is
+ * scanned once, then kept up to date by watching the library directory for recordings being created and deleted, and
+ * by polling the recording files of recordings still in progress, the only ones that change.  Recording directories
+ * are not watched, since frames are ripped into them by the hundred and would flood the watch service.
+ * <p>
+ * Each source's recordings are held in a tree by start time, along with the longest finished recording of the source,
+ * so the recordings overlapping a time range are found by looking only at those starting between the range's start
+ * less that duration and its end.  Recordings still in progress have no end time and are kept in a short list of
+ * their own.
+ * <p>
+ * A snapshot of the catalog is saved in the library as {@value #SNAPSHOT_FILE_NAME}.  On the next start the snapshot
+ * is loaded and only recordings whose file has changed since are read again, so starting costs one directory listing
+ * and one file stat per recording.  A file is taken to be unchanged while its size, modification time and file key
+ * are:  every save of a {@link FrameRecording} replaces the file and moves its modification time forward, so even a
+ * save that keeps the size, such as writing the end time, changes them.  The save count from the file's header is kept
+ * too, so a file touched without being saved again is not read into a new recording.
+ *
+ * @author Keith
+ */
+public class RecordingCatalog {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(RecordingCatalog.class.getName());
+
+    /** The name of the snapshot file in the library directory. */
+    public static final String SNAPSHOT_FILE_NAME = ".catalog";
+
+    /** The magic number at the start of the snapshot, the characters VSPC. */
+    private static final int SNAPSHOT_MAGIC = 0x56535043;
+
+    /** The version of the snapshot format. */
+    private static final int SNAPSHOT_VERSION = 3;
+
+    /** The time, in milliseconds, between polls of the recordings still in progress. */
+    private static final long POLL_INTERVAL_MILLIS = 2000L;
+
+    /** Orders recordings by start time. */
+    private static final Comparator<FrameRecording> BY_START_TIME = new Comparator<FrameRecording>() {
+        @Override
+        public int compare(FrameRecording a, FrameRecording b) {
+            return Long.compare(a.getStartTime(), b.getStartTime());
+        }
+    };
+
+    /** The recording library directory. */
+    private final Path m_libraryDirectory;
+
+    /** The name of the recording file in each recording's directory. */
+    private final String m_recordingFileName;
+
+    /** The catalogued recordings, by the name of their directory in the library.  Guarded by this catalog. */
+    private final Map<String, Entry> m_entries;
+
+    /** The index of each source's recordings, by source ID.  Guarded by this catalog. */
+    private final Map<UUID, SourceIndex> m_sources;
+
+    /**
+     * The names of the library directories whose recording is still in progress or not yet readable, which are polled
+     * for changes.  Guarded by this catalog.
+     */
+    private final Set<String> m_unfinished;
+
+    /** The service watching the library, or null if not watching. */
+    private volatile WatchService m_watchService;
+
+    /** The thread handling changes to the library, or null if not watching. */
+    private Thread m_watchThread;
+
+    /** Whether the catalog has changed since the snapshot was saved.  Guarded by this catalog. */
+    private boolean m_dirty;
+
+    /**
+     * Creates a new, empty RecordingCatalog.
+     * @param libraryDirectory the recording library directory.
+     * @param recordingFileName the name of the recording file in each recording's directory.
+     */
+    public RecordingCatalog(String libraryDirectory, String recordingFileName) {
+        m_libraryDirectory = Paths.get(libraryDirectory);
+        m_recordingFileName = recordingFileName;
+        m_entries = new HashMap<>();
+        m_sources = new HashMap<>();
+        m_unfinished = new HashSet<>();
+        m_dirty = false;
+    }
+
+    /**
+     * Creates a RecordingCatalog of the library directory configured in the application properties.
+     * @return the configured catalog.
+     */
+    public static RecordingCatalog fromProperties() {
+        VspProperties props = VspProperties.getInstance();
+        return new RecordingCatalog(props.getRecordingLibraryDirectory(), props.getFrameRecordingFilename());
+    }
+
+    /**
+     * Loads the catalog from the snapshot and the library, reading only the recordings that have changed since the
+     * snapshot was saved, then saves a new snapshot if anything changed.
+     * @throws IOException if the library directory cannot be listed.
+     */
+    public synchronized void load() throws IOException {
+        Map<String, Entry> snapshot = readSnapshot();
+        m_entries.clear();
+        m_unfinished.clear();
+        int read = 0;
+        if (Files.isDirectory(m_libraryDirectory)) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(m_libraryDirectory)) {
+                for (Path dir : dirs) {
+                    if (!Files.isDirectory(dir)) {
+                        continue;
+                    }
+                    String name = dir.getFileName().toString();
+                    Entry known = snapshot.remove(name);
+                    Entry entry = loadEntry(dir, known);
+                    if (entry != null) {
+                        m_entries.put(name, entry);
+                        if (entry != known) {
+                            read++;
+                        }
+                    }
+                    track(name, entry);
+                }
+            }
+        }
+        m_dirty = read > 0 || !snapshot.isEmpty();
+        rebuildIndex();
+        LOGGER.info("Catalogued " + m_entries.size() + " recordings in " + m_libraryDirectory + ", " + read
+                + " read from disk");
+        if (m_dirty) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * Loads the catalog and starts watching the library for changes.
+     * @throws IOException if the library cannot be listed or watched.
+     */
+    public synchronized void start() throws IOException {
+        if (m_watchService != null) {
+            return;
+        }
+        Files.createDirectories(m_libraryDirectory);
+        m_watchService = m_libraryDirectory.getFileSystem().newWatchService();
+        m_libraryDirectory.register(m_watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        load();
+        m_watchThread = new Thread(new Watcher(), "Recording Catalog Watcher");
+        m_watchThread.setDaemon(true);
+        m_watchThread.start();
+    }
+
+    /**
+     * Stops watching the library and saves the snapshot if the catalog has changed.
+     */
+    public void stop() {
+        Thread watchThread;
+        synchronized (this) {
+            if (m_watchService == null) {
+                return;
+            }
+            try {
+                m_watchService.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error closing library watch service", ex);
+            }
+            m_watchService = null;
+            watchThread = m_watchThread;
+            m_watchThread = null;
+        }
+        try {
+            watchThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (m_dirty) {
+                try {
+                    saveSnapshot();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Error saving recording catalog snapshot", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the recordings of a source that overlap a time range.  A recording still in progress is taken to run to
+     * the end of the range.
+     * @param sourceId the ID of the video source.
+     * @param startTime the start of the range, in milliseconds since Jan 1 1970.
+     * @param endTime the end of the range, in milliseconds since Jan 1 1970.
+     * @return the overlapping recordings, by start time.
+     */
+    public synchronized List<FrameRecording> findRecordings(UUID sourceId, long startTime, long endTime) {
+        List<FrameRecording> found = new ArrayList<>();
+        SourceIndex index = m_sources.get(sourceId);
+        if (index == null || endTime < startTime) {
+            return found;
+        }
+        long earliestStart = startTime - index.m_maxDuration;
+        if (earliestStart > startTime) {
+            earliestStart = Long.MIN_VALUE;
+        }
+        for (List<FrameRecording> recordings : index.m_byStartTime.subMap(earliestStart, true, endTime, true).values()) {
+            for (FrameRecording recording : recordings) {
+                if (recording.getEndTime() >= startTime) {
+                    found.add(recording);
+                }
+            }
+        }
+        if (!index.m_inProgress.isEmpty()) {
+            for (FrameRecording recording : index.m_inProgress) {
+                if (recording.getStartTime() <= endTime) {
+                    found.add(recording);
+                }
+            }
+            Collections.sort(found, BY_START_TIME);
+        }
+        return found;
+    }
+
+    /**
+     * Returns every recording of a source.
+     * @param sourceId the ID of the video source.
+     * @return the source's recordings, by start time.
+     */
+    public List<FrameRecording> getRecordings(UUID sourceId) {
+        return findRecordings(sourceId, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns every catalogued recording.
+     * @return the recordings, by start time.
+     */
+    public synchronized List<FrameRecording> getRecordings() {
+        List<FrameRecording> recordings = new ArrayList<>(m_entries.size());
+        for (Entry entry : m_entries.values()) {
+            recordings.add(entry.m_recording);
+        }
+        Collections.sort(recordings, BY_START_TIME);
+        return recordings;
+    }
+
+    /**
+     * Returns the IDs of the sources that have recordings.
+     * @return the source IDs.
+     */
+    public synchronized Set<UUID> getSourceIds() {
+        return Collections.unmodifiableSet(new HashSet<>(m_sources.keySet()));
+    }
+
+    /**
+     * Returns the directory of a catalogued recording.
+     * @param recording the recording.
+     * @return the recording's directory, or null if it is not catalogued.
+     */
+    public synchronized String getRecordingDirectory(FrameRecording recording) {
+        for (Map.Entry<String, Entry> entry : m_entries.entrySet()) {
+            if (entry.getValue().m_recording == recording) {
+                return m_libraryDirectory.resolve(entry.getKey()).toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of catalogued recordings.
+     * @return the number of recordings.
+     */
+    public synchronized int size() {
+        return m_entries.size();
+    }
+
+    /**
+     * Saves a snapshot of the catalog to the library, replacing the previous one atomically.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public synchronized void saveSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * (m_entries.size() + 1));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(m_entries.size());
+            for (Map.Entry<String, Entry> entry : m_entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().m_size);
+                out.writeLong(entry.getValue().m_modified);
+                out.writeUTF(entry.getValue().m_fileKey);
+                out.writeLong(entry.getValue().m_recording.getSaveCount());
+                entry.getValue().m_recording.writeFields(out);
+            }
+        }
+        Path snapshot = m_libraryDirectory.resolve(SNAPSHOT_FILE_NAME);
+        Path temp = m_libraryDirectory.resolve(SNAPSHOT_FILE_NAME + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        try {
+            Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        }
+        m_dirty = false;
+    }
+
+    /**
+     * Reads the snapshot saved in the library.
+     * @return the recordings in the snapshot by directory name, empty if there is no readable snapshot.
+     */
+    private Map<String, Entry> readSnapshot() {
+        Map<String, Entry> entries = new HashMap<>();
+        Path snapshot = m_libraryDirectory.resolve(SNAPSHOT_FILE_NAME);
+        if (!Files.isRegularFile(snapshot)) {
+            return entries;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(snapshot)));
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                LOGGER.warning("Ignoring unrecognized recording catalog snapshot: " + snapshot);
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                String fileKey = in.readUTF();
+                long saveCount = in.readLong();
+                FrameRecording recording = FrameRecording.readFields(in);
+                recording.setSaveCount(saveCount);
+                entries.put(name, new Entry(recording, size, modified, fileKey));
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable recording catalog snapshot: " + snapshot, ex);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Loads a recording directory's entry, reusing a known entry without opening the recording file if the file's
+     * attributes have not changed.
+     * @param dir the recording directory.
+     * @param known the entry from the snapshot or the catalog, or null if there is none.
+     * @return the entry, or null if the directory holds no readable recording.
+     */
+    private Entry loadEntry(Path dir, Entry known) {
+        Path file = dir.resolve(m_recordingFileName);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to read attributes of " + file, ex);
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        String fileKey = attributes.fileKey() == null ? "" : attributes.fileKey().toString();
+        if (known != null && known.m_size == size && known.m_modified == modified && known.m_fileKey.equals(fileKey)) {
+            return known;
+        }
+        FrameRecording recording;
+        try {
+            recording = FrameRecording.fromBytes(Files.readAllBytes(file));
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Error loading Frame Recording: " + file, ex);
+            return null;
+        }
+        if (known != null && recording.getSaveCount() > 0 && recording.getSaveCount() == known.m_recording.getSaveCount()
+                && recording.getId().equals(known.m_recording.getId())) {
+            // Touched or copied, but not saved again:  keep the recording already indexed.
+            recording = known.m_recording;
+        }
+        return new Entry(recording, size, modified, fileKey);
+    }
+
+    /**
+     * Reads a recording directory again if its recording file has changed, and updates the index.
+     * @param dir the recording directory.
+     */
+    private synchronized void refresh(Path dir) {
+        String name = dir.getFileName().toString();
+        Entry known = m_entries.get(name);
+        Entry entry = loadEntry(dir, known);
+        if (entry == known) {
+            return;
+        }
+        m_dirty = true;
+        if (known != null && entry != null && entry.m_recording == known.m_recording) {
+            m_entries.put(name, entry);
+            return;
+        }
+        if (known != null) {
+            unindex(known.m_recording);
+            m_entries.remove(name);
+        }
+        if (entry != null) {
+            m_entries.put(name, entry);
+            index(entry.m_recording);
+        }
+        track(name, entry);
+        LOGGER.fine("Recording catalog updated for " + dir);
+    }
+
+    /**
+     * Polls the recording directories whose recording is still in progress or not yet readable.
+     */
+    private void pollUnfinished() {
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(m_unfinished);
+        }
+        for (String name : names) {
+            refresh(m_libraryDirectory.resolve(name));
+        }
+    }
+
+    /**
+     * Notes whether a library directory needs polling:  while its recording is in progress, or it has none yet.
+     * @param name the name of the library directory.
+     * @param entry the directory's entry, or null if it holds no readable recording.
+     */
+    private void track(String name, Entry entry) {
+        if (entry == null || entry.m_recording.getEndTime() < entry.m_recording.getStartTime()) {
+            m_unfinished.add(name);
+        } else {
+            m_unfinished.remove(name);
+        }
+    }
+
+    /**
+     * Removes a deleted recording directory from the catalog.
+     * @param dir the recording directory.
+     */
+    private synchronized void remove(Path dir) {
+        Entry known = m_entries.remove(dir.getFileName().toString());
+        m_unfinished.remove(dir.getFileName().toString());
+        if (known != null) {
+            unindex(known.m_recording);
+            m_dirty = true;
+            LOGGER.fine("Recording removed from catalog: " + dir);
+        }
+    }
+
+    /**
+     * Rebuilds the source indexes from the catalogued recordings.
+     */
+    private void rebuildIndex() {
+        m_sources.clear();
+        for (Entry entry : m_entries.values()) {
+            index(entry.m_recording);
+        }
+    }
+
+    /**
+     * Adds a recording to its source's index.
+     * @param recording the recording.
+     */
+    private void index(FrameRecording recording) {
+        SourceIndex index = m_sources.get(recording.getVideoSourceId());
+        if (index == null) {
+            index = new SourceIndex();
+            m_sources.put(recording.getVideoSourceId(), index);
+        }
+        if (recording.getEndTime() < recording.getStartTime()) {
+            index.m_inProgress.add(recording);
+            return;
+        }
+        List<FrameRecording> atStart = index.m_byStartTime.get(recording.getStartTime());
+        if (atStart == null) {
+            atStart = new ArrayList<>(1);
+            index.m_byStartTime.put(recording.getStartTime(), atStart);
+        }
+        atStart.add(recording);
+        index.m_maxDuration = Math.max(index.m_maxDuration, recording.getEndTime() - recording.getStartTime());
+    }
+
+    /**
+     * Removes a recording from its source's index.  The source's longest duration is not reduced, which only widens
+     * later searches slightly until the next load.
+     * @param recording the recording.
+     */
+    private void unindex(FrameRecording recording) {
+        SourceIndex index = m_sources.get(recording.getVideoSourceId());
+        if (index == null) {
+            return;
+        }
+        if (!index.m_inProgress.remove(recording)) {
+            List<FrameRecording> atStart = index.m_byStartTime.get(recording.getStartTime());
+            if (atStart != null) {
+                atStart.remove(recording);
+                if (atStart.isEmpty()) {
+                    index.m_byStartTime.remove(recording.getStartTime());
+                }
+            }
+        }
+        if (index.m_byStartTime.isEmpty() && index.m_inProgress.isEmpty()) {
+            m_sources.remove(recording.getVideoSourceId());
+        }
+    }
+
+    /** A catalogued recording, with the state of its file when it was read. */
+    private static class Entry {
+
+        /** The recording. */
+        private final FrameRecording m_recording;
+
+        /** The size of the recording file, in bytes. */
+        private final long m_size;
+
+        /** The modification time of the recording file, in milliseconds. */
+        private final long m_modified;
+
+        /** The file key of the recording file, which changes when a save replaces it, or empty if there is none. */
+        private final String m_fileKey;
+
+        /**
+         * Creates a new Entry.
+         * @param recording the recording.
+         * @param size the size of the recording file, in bytes.
+         * @param modified the modification time of the recording file, in milliseconds.
+         * @param fileKey the file key of the recording file, or empty if the file system has none.
+         */
+        Entry(FrameRecording recording, long size, long modified, String fileKey) {
+            m_recording = recording;
+            m_size = size;
+            m_modified = modified;
+            m_fileKey = fileKey;
+        }
+    }
+
+    /** The recordings of one source. */
+    private static class SourceIndex {
+
+        /** The finished recordings, by start time. */
+        private final TreeMap<Long, List<FrameRecording>> m_byStartTime = new TreeMap<>();
+
+        /** The recordings still in progress, which have no end time yet. */
+        private final List<FrameRecording> m_inProgress = new ArrayList<>(1);
+
+        /** The longest duration of any finished recording, in milliseconds. */
+        private long m_maxDuration;
+    }
+
+    /**
+     * Applies changes to the library to the catalog until the watch service is closed:  recording directories created
+     * and deleted as they are reported, and changes to the recordings in progress as they are polled.
+     */
+    private class Watcher implements Runnable {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            WatchService watchService = m_watchService;
+            long nextPoll = System.nanoTime();
+            try {
+                while (true) {
+                    long wait = Math.max(0L, nextPoll - System.nanoTime());
+                    WatchKey key = watchService.poll(wait, TimeUnit.NANOSECONDS);
+                    if (key != null) {
+                        handleEvents(key);
+                        if (!key.reset()) {
+                            LOGGER.warning("Recording library no longer watchable: " + m_libraryDirectory);
+                            return;
+                        }
+                    }
+                    if (System.nanoTime() - nextPoll >= 0) {
+                        pollUnfinished();
+                        nextPoll = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS);
+                    }
+                }
+            } catch (ClosedWatchServiceException | InterruptedException ex) {
+                LOGGER.fine("Recording catalog watcher stopped");
+            }
+        }
+
+        /**
+         * Applies the events of the library directory to the catalog.
+         * @param key the library's watch key.
+         */
+        private void handleEvents(WatchKey key) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    LOGGER.info("Library change events were lost, rescanning " + m_libraryDirectory);
+                    try {
+                        load();
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Error rescanning recording library", ex);
+                    }
+                    continue;
+                }
+                Path child = m_libraryDirectory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    remove(child);
+                } else if (Files.isDirectory(child)) {
+                    refresh(child);
+                }
+            }
+        }
+    }
+}
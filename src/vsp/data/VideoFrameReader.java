@@ -0,0 +1,184 @@
+package vsp.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.processing.JpegFrameScanner;
+import vsp.processing.ProcessHelper;
+import vsp.util.VspProperties;
+
+/**
+ * A {@link FrameReader} for a recording compacted into a single video.  Frames are decoded by an FFMPEG process that
+ * writes them as JPEG images to its standard output, so reading frames in order costs one decoder.  Reading a frame
+ * that is not next, or close ahead, restarts the decoder at that frame's time in the video, which the timestamp
+ * index written alongside the video gives along with each frame's wall clock time.
+ * <p>
+ * Several threads reading ahead together, as the decoders of a frame cache do, ask for nearby frames slightly out of
+ * order.  The frames most recently decoded are therefore kept in a small reorder buffer, covering as far as the
+ * decoder will skip ahead, so a frame another thread has just decoded past is served from the buffer rather than by
+ * restarting the decoder.
+ *
+ * @author Keith
+ */
+public class VideoFrameReader implements FrameReader {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(VideoFrameReader.class.getName());
+
+    /** The JPEG quality frames are decoded to. */
+    private static final int QUALITY = 3;
+
+    /** The video file. */
+    private final String m_videoPath;
+
+    /** The time of every frame. */
+    private final FrameTimestampIndex m_timestamps;
+
+    /** The frames per second of the video. */
+    private final int m_fps;
+
+    /** The farthest ahead of the decoder a frame can be and still be reached by decoding rather than seeking. */
+    private final int m_maxSkip;
+
+    /** The decoding process, or null if not decoding. */
+    private Process m_decoder;
+
+    /** The frames written by the decoder. */
+    private JpegFrameScanner m_scanner;
+
+    /** The number of the frame the decoder will produce next. */
+    private int m_nextFrame;
+
+    /** The most recently decoded frames, by frame number, oldest first. */
+    private final LinkedHashMap<Integer, ByteBuffer> m_recentFrames;
+
+    /**
+     * Creates a new VideoFrameReader.
+     * @param videoPath the path of the video.
+     * @param timestamps the timestamp index written with the video.
+     * @param fps the frames per second of the video.
+     */
+    public VideoFrameReader(String videoPath, FrameTimestampIndex timestamps, int fps) {
+        m_videoPath = videoPath;
+        m_timestamps = timestamps;
+        m_fps = fps;
+        m_maxSkip = Math.max(fps * 2, 1);
+        m_decoder = null;
+        m_nextFrame = -1;
+        final int reorderCapacity = m_maxSkip + 1;
+        m_recentFrames = new LinkedHashMap<Integer, ByteBuffer>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+                return size() > reorderCapacity;
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getFrameCount() {
+        return m_timestamps.getFrameCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized ByteBuffer getFrame(int frameNumber) throws IOException {
+        if (frameNumber < 0 || frameNumber >= getFrameCount()) {
+            throw new IndexOutOfBoundsException("Frame " + frameNumber + " of " + getFrameCount());
+        }
+        ByteBuffer recent = m_recentFrames.get(frameNumber);
+        if (recent != null) {
+            return recent.duplicate();
+        }
+        if (m_decoder == null || frameNumber < m_nextFrame || frameNumber > m_nextFrame + m_maxSkip) {
+            startDecoder(frameNumber);
+        }
+        ByteBuffer copy;
+        do {
+            ByteBuffer frame = m_scanner.nextFrame();
+            if (frame == null) {
+                stopDecoder();
+                throw new IOException("Video ended before frame " + frameNumber + ": " + m_videoPath);
+            }
+            // The scanner reuses its buffer for the next frame, so the buffer and the caller get a copy.
+            copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame);
+            copy.flip();
+            m_recentFrames.put(m_nextFrame, copy);
+            m_nextFrame++;
+        } while (m_nextFrame <= frameNumber);
+        return copy.duplicate();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTimestamp(int frameNumber) {
+        return m_timestamps.getTimestamp(frameNumber);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() {
+        stopDecoder();
+        m_recentFrames.clear();
+    }
+
+    /**
+     * Starts decoding the video from a frame, stopping any decoder already running.
+     * @param frameNumber the number of the first frame to decode.
+     * @throws IOException if the decoder cannot be started.
+     */
+    private void startDecoder(int frameNumber) throws IOException {
+        stopDecoder();
+        // Seek a quarter frame early, so rounding of the seek time cannot skip the wanted frame.
+        double seekSeconds = Math.max(0.0, (frameNumber - 0.25) / m_fps);
+
+        List<String> command = new ArrayList<>();
+        command.add(VspProperties.getInstance().getFfmpegPath());
+        command.add("-nostats");
+        command.add("-loglevel");
+        command.add("error");
+        command.add("-ss");
+        command.add(String.format(Locale.ROOT, "%.6f", seekSeconds));
+        command.add("-i");
+        command.add(m_videoPath);
+        command.add("-q");
+        command.add(String.valueOf(QUALITY));
+        command.add("-vcodec");
+        command.add("mjpeg");
+        command.add("-f");
+        command.add("image2pipe");
+        command.add("pipe:1");
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        m_decoder = pb.start();
+        ProcessHelper.consumeErrors(m_decoder, "FFMPEG Decoder");
+        m_decoder.getOutputStream().close();
+        m_scanner = new JpegFrameScanner(m_decoder.getInputStream());
+        m_nextFrame = frameNumber;
+    }
+
+    /**
+     * Stops the decoder, if one is running.
+     */
+    private void stopDecoder() {
+        if (m_decoder == null) {
+            return;
+        }
+        m_decoder.destroy();
+        try {
+            m_decoder.getInputStream().close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Error closing video decoder output", ex);
+        }
+        m_decoder = null;
+        m_scanner = null;
+        m_nextFrame = -1;
+    }
+}
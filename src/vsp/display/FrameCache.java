@@ -0,0 +1,453 @@
+package vsp.display;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import vsp.data.FrameReader;
+import vsp.util.ByteBufferInputStream;
+
+/**
+ * Decodes the frames of a recording ahead of the play cursor on background threads, so playback only ever shows
+ * images that are already decoded.  The cache holds a window of frames around the cursor:  as many ahead of it, in
+ * the direction of play, as the memory budget allows, and a few behind it for stepping back.  Frames outside the
+ * window are dropped as the cursor moves.  Playback loops, so the window wraps around the ends of the recording.
+ * <p>
+ * When playing fast enough that most frames are never shown, the window can be given a stride:  only the cursor's
+ * frame and frames numbered a multiple of the stride are decoded ahead, so the decoders keep up with the frames that
+ * will be shown.  The stride counts from frame 0 rather than the cursor, so the frames chosen stay the same as the
+ * cursor moves.
+ * <p>
+ * Until the first frame is decoded the size of a frame is unknown, so the window starts as one frame per decoder and
+ * is sized from the budget once a frame has been measured.
+ *
+ * @author Keith
+ */
+public class FrameCache {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(FrameCache.class.getName());
+
+    /** The reader of the frames to decode. */
+    private final FrameReader m_reader;
+
+    /** The number of frames in the recording. */
+    private final int m_frameCount;
+
+    /** The most memory, in bytes, the decoded frames may use. */
+    private final long m_memoryBudget;
+
+    /** The number of frames kept behind the cursor. */
+    private final int m_behindFrames;
+
+    /** The decoder threads. */
+    private final Thread[] m_decoders;
+
+    /** The decoded frames, by frame number.  Guarded by this cache. */
+    private final Map<Integer, BufferedImage> m_images;
+
+    /** The frames being decoded.  Guarded by this cache. */
+    private final Set<Integer> m_pending;
+
+    /** The frames that could not be read or decoded, which are not tried again.  Guarded by this cache. */
+    private final Set<Integer> m_unreadable;
+
+    /** The frame at the cursor.  Guarded by this cache. */
+    private int m_cursor;
+
+    /** The direction of play, 1 forward or -1 backward.  Guarded by this cache. */
+    private int m_direction;
+
+    /** The distance between the frames decoded ahead of the cursor.  Guarded by this cache. */
+    private int m_stride;
+
+    /** The number of bytes a decoded frame uses, or 0 before one has been decoded.  Guarded by this cache. */
+    private long m_frameBytes;
+
+    /** The number of frames that were decoded when asked for. */
+    private long m_hits;
+
+    /** The number of frames that were not yet decoded when asked for. */
+    private long m_misses;
+
+    /** The listeners waiting for frames to be decoded, by frame number.  Guarded by this cache. */
+    private final Map<Integer, List<DecodeListener>> m_listeners;
+
+    /** Whether the cache has been closed.  Guarded by this cache. */
+    private boolean m_closed;
+
+    /**
+     * Creates a new FrameCache and starts its decoders, reading ahead from the first frame.
+     * @param reader the reader of the frames to decode, which must allow frames to be read from several threads.
+     * @param memoryBudget the most memory, in bytes, the decoded frames may use.
+     * @param decoderCount the number of decoder threads.
+     * @param behindFrames the number of frames to keep behind the cursor.
+     */
+    public FrameCache(FrameReader reader, long memoryBudget, int decoderCount, int behindFrames) {
+        if (decoderCount < 1 || memoryBudget < 1 || behindFrames < 0) {
+            throw new IllegalArgumentException("Decoder count and memory budget must be positive");
+        }
+        m_reader = reader;
+        m_frameCount = reader.getFrameCount();
+        m_memoryBudget = memoryBudget;
+        m_behindFrames = behindFrames;
+        m_images = new HashMap<>();
+        m_pending = new HashSet<>();
+        m_unreadable = new HashSet<>();
+        m_listeners = new HashMap<>();
+        m_cursor = 0;
+        m_direction = 1;
+        m_stride = 1;
+        m_frameBytes = 0;
+        m_closed = false;
+        // Frames are decoded from memory, so ImageIO's disk cache would only add file writes.
+        ImageIO.setUseCache(false);
+        m_decoders = new Thread[decoderCount];
+        for (int i = 0; i < decoderCount; i++) {
+            m_decoders[i] = new Thread(new Decoder(), "Frame Decoder " + i);
+            m_decoders[i].setDaemon(true);
+            m_decoders[i].start();
+        }
+    }
+
+    /**
+     * Returns the number of frames in the recording.
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return m_frameCount;
+    }
+
+    /**
+     * Moves the cursor, dropping the frames that fall out of the window and setting the decoders to work on the
+     * frames that come into it.
+     * @param frameNumber the frame at the cursor.
+     * @param direction the direction of play, 1 forward or -1 backward.
+     */
+    public void setCursor(int frameNumber, int direction) {
+        setCursor(frameNumber, direction, 1);
+    }
+
+    /**
+     * Moves the cursor, as {@link #setCursor(int, int)} does, decoding only every stride'th frame ahead of it.
+     * @param frameNumber the frame at the cursor.
+     * @param direction the direction of play, 1 forward or -1 backward.
+     * @param stride the distance between the frames to decode ahead of the cursor, 1 to decode every frame.
+     */
+    public void setCursor(int frameNumber, int direction, int stride) {
+        Map<Integer, List<DecodeListener>> dropped = new HashMap<>();
+        synchronized (this) {
+            m_cursor = wrap(frameNumber);
+            m_direction = direction < 0 ? -1 : 1;
+            m_stride = Math.max(1, stride);
+            Iterator<Integer> frames = m_images.keySet().iterator();
+            while (frames.hasNext()) {
+                if (!inWindow(frames.next())) {
+                    frames.remove();
+                }
+            }
+            Iterator<Map.Entry<Integer, List<DecodeListener>>> waiting = m_listeners.entrySet().iterator();
+            while (waiting.hasNext()) {
+                Map.Entry<Integer, List<DecodeListener>> entry = waiting.next();
+                if (!inWindow(entry.getKey())) {
+                    dropped.put(entry.getKey(), entry.getValue());
+                    waiting.remove();
+                }
+            }
+            notifyAll();
+        }
+        for (Map.Entry<Integer, List<DecodeListener>> entry : dropped.entrySet()) {
+            notifyListeners(entry.getValue(), entry.getKey(), null);
+        }
+    }
+
+    /**
+     * Returns a decoded frame if it is ready, without waiting for it.
+     * @param frameNumber the number of the frame.
+     * @return the decoded frame, or null if it has not been decoded yet.
+     */
+    public synchronized BufferedImage getImage(int frameNumber) {
+        BufferedImage image = m_images.get(wrap(frameNumber));
+        if (image == null) {
+            m_misses++;
+        } else {
+            m_hits++;
+        }
+        return image;
+    }
+
+    /**
+     * Finds the nearest decoded frame at or before a frame, in the direction of play, without waiting.
+     * @param frameNumber the frame wanted.
+     * @param span the number of frames to look through, from the frame wanted back.
+     * @return the number of the nearest decoded frame, or -1 if none of them is decoded.
+     */
+    public synchronized int findDecoded(int frameNumber, int span) {
+        for (int i = 0; i < span; i++) {
+            int frame = wrap(frameNumber - i * m_direction);
+            if (m_images.containsKey(frame)) {
+                return frame;
+            }
+        }
+        m_misses++;
+        return -1;
+    }
+
+    /**
+     * Returns whether a frame could not be read or decoded, in which case it will never be ready.
+     * @param frameNumber the number of the frame.
+     * @return true if the frame is unreadable.
+     */
+    public synchronized boolean isUnreadable(int frameNumber) {
+        return m_unreadable.contains(wrap(frameNumber));
+    }
+
+    /**
+     * Hands a decoded frame to a listener as soon as it is ready, without waiting for it.  If the frame is already
+     * decoded, or will never be, the listener is called at once on the calling thread; otherwise it is called on the
+     * decoder thread that decodes it, or on the thread that moves the cursor away from it.
+     * @param frameNumber the number of the frame.
+     * @param listener the listener to hand the frame to.
+     */
+    public void requestImage(int frameNumber, DecodeListener listener) {
+        int frame;
+        BufferedImage image;
+        synchronized (this) {
+            frame = wrap(frameNumber);
+            image = m_images.get(frame);
+            if (image == null && !m_closed && inWindow(frame) && !m_unreadable.contains(frame)) {
+                List<DecodeListener> listeners = m_listeners.get(frame);
+                if (listeners == null) {
+                    listeners = new ArrayList<>();
+                    m_listeners.put(frame, listeners);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.frameDecoded(frame, image);
+    }
+
+    /**
+     * Stops the decoders, waiting for any frame being decoded, and drops every decoded frame.  The reader is not
+     * closed, but no longer used once this returns.
+     */
+    public void close() {
+        Map<Integer, List<DecodeListener>> dropped;
+        synchronized (this) {
+            m_closed = true;
+            m_images.clear();
+            dropped = new HashMap<>(m_listeners);
+            m_listeners.clear();
+            notifyAll();
+        }
+        for (Map.Entry<Integer, List<DecodeListener>> entry : dropped.entrySet()) {
+            notifyListeners(entry.getValue(), entry.getKey(), null);
+        }
+        // The decoders are not interrupted, since interrupting a read from a file channel closes the channel.
+        try {
+            for (Thread decoder : m_decoders) {
+                decoder.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.fine("Frame cache closed: " + describeStatistics());
+    }
+
+    /**
+     * Hands a frame, or its absence, to the listeners waiting for it.  Called without the cache locked, so a listener
+     * may call back into the cache.
+     * @param listeners the listeners waiting for the frame, or null if there are none.
+     * @param frameNumber the number of the frame.
+     * @param image the decoded frame, or null if it will not be decoded.
+     */
+    private static void notifyListeners(List<DecodeListener> listeners, int frameNumber, BufferedImage image) {
+        if (listeners == null) {
+            return;
+        }
+        for (DecodeListener listener : listeners) {
+            try {
+                listener.frameDecoded(frameNumber, image);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Error handing frame " + frameNumber + " to a listener", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns a one line summary of the cache statistics, for logging.
+     * @return a summary of the cache statistics.
+     */
+    public synchronized String describeStatistics() {
+        return "cached=" + m_images.size() + " window=" + windowAhead() + "+" + m_behindFrames + " stride=" + m_stride + " frameKB="
+                + m_frameBytes / 1024L + " hits=" + m_hits + " misses=" + m_misses;
+    }
+
+    /**
+     * Returns the number of frames ahead of the cursor that fit in the memory budget.
+     * @return the number of frames read ahead, including the frame at the cursor.
+     */
+    private int windowAhead() {
+        if (m_frameBytes == 0) {
+            return m_decoders.length;
+        }
+        long frames = m_memoryBudget / m_frameBytes - m_behindFrames;
+        return (int) Math.max(1, Math.min(frames, m_frameCount));
+    }
+
+    /**
+     * Returns whether a frame lies in the window around the cursor.
+     * @param frameNumber the number of the frame, within the recording.
+     * @return true if the frame should be kept.
+     */
+    private boolean inWindow(int frameNumber) {
+        int offset = wrap((frameNumber - m_cursor) * m_direction);
+        if (offset == 0 || m_frameCount - offset <= m_behindFrames) {
+            return true;
+        }
+        return frameNumber % m_stride == 0 && offset < windowAhead() * (long) m_stride;
+    }
+
+    /**
+     * Wraps a frame number around the ends of the recording.
+     * @param frameNumber the frame number, which may be out of range.
+     * @return the frame number within the recording.
+     */
+    private int wrap(int frameNumber) {
+        if (m_frameCount == 0) {
+            return 0;
+        }
+        int wrapped = frameNumber % m_frameCount;
+        return wrapped < 0 ? wrapped + m_frameCount : wrapped;
+    }
+
+    /**
+     * Chooses the next frame to decode:  the cursor's frame, then the nearest frame on the stride ahead of the cursor
+     * that is neither decoded nor being decoded or unreadable, then the nearest such frame behind it.
+     * @return the number of the frame to decode, or -1 if the window is full.
+     */
+    private int nextFrameToDecode() {
+        int ahead = windowAhead();
+        if (isWanted(m_cursor)) {
+            return m_cursor;
+        }
+        long span = Math.min(ahead * (long) m_stride, m_frameCount);
+        for (int i = 1; i < span; i++) {
+            int frame = wrap(m_cursor + i * m_direction);
+            if (frame % m_stride == 0 && isWanted(frame)) {
+                return frame;
+            }
+        }
+        for (int i = 1; i <= m_behindFrames && i < m_frameCount - span; i++) {
+            int frame = wrap(m_cursor - i * m_direction);
+            if (isWanted(frame)) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether a frame still needs decoding.
+     * @param frameNumber the number of the frame.
+     * @return true if the frame is not decoded, being decoded or unreadable.
+     */
+    private boolean isWanted(int frameNumber) {
+        return !m_images.containsKey(frameNumber) && !m_pending.contains(frameNumber)
+                && !m_unreadable.contains(frameNumber);
+    }
+
+    /** Receives a frame asked for with {@link #requestImage(int, DecodeListener)} once it is decoded. */
+    public interface DecodeListener {
+
+        /**
+         * Receives a decoded frame, or learns that it will not be decoded.  Called without the cache locked, on a
+         * decoder thread or the thread that asked for or moved away from the frame, so this should return quickly.
+         * @param frameNumber the number of the frame, within the recording.
+         * @param image the decoded frame, or null if it could not be decoded, left the window or the cache closed.
+         */
+        public void frameDecoded(int frameNumber, BufferedImage image);
+    }
+
+    /** Decodes frames in the window until the cache is closed. */
+    private class Decoder implements Runnable {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int frame;
+                    synchronized (FrameCache.this) {
+                        while (true) {
+                            if (m_closed) {
+                                return;
+                            }
+                            frame = m_frameCount == 0 ? -1 : nextFrameToDecode();
+                            if (frame >= 0) {
+                                break;
+                            }
+                            FrameCache.this.wait();
+                        }
+                        m_pending.add(frame);
+                    }
+                    BufferedImage image = decode(frame);
+                    List<DecodeListener> listeners;
+                    synchronized (FrameCache.this) {
+                        m_pending.remove(frame);
+                        if (image == null) {
+                            m_unreadable.add(frame);
+                        } else if (!m_closed) {
+                            if (m_frameBytes == 0) {
+                                m_frameBytes = imageBytes(image);
+                            }
+                            if (inWindow(frame)) {
+                                m_images.put(frame, image);
+                            }
+                        }
+                        listeners = m_listeners.remove(frame);
+                        FrameCache.this.notifyAll();
+                    }
+                    notifyListeners(listeners, frame, image);
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.fine("Frame decoder stopped");
+            }
+        }
+
+        /**
+         * Reads and decodes a frame.
+         * @param frameNumber the number of the frame.
+         * @return the decoded frame, or null if it cannot be read.
+         */
+        private BufferedImage decode(int frameNumber) {
+            try {
+                // Converting here, off the event thread, leaves the viewer only scaling to do.
+                BufferedImage image = ImageIO.read(new ByteBufferInputStream(m_reader.getFrame(frameNumber)));
+                return FrameViewer.toCompatibleImage(image);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.INFO, "Unable to decode frame " + frameNumber + ".  Ignoring frame.", ex);
+                return null;
+            }
+        }
+
+        /**
+         * Estimates the memory a decoded frame uses.
+         * @param image the decoded frame.
+         * @return the size of the frame's pixels, in bytes.
+         */
+        private long imageBytes(BufferedImage image) {
+            long pixels = (long) image.getWidth() * image.getHeight();
+            return Math.max(1L, pixels * image.getColorModel().getPixelSize() / 8L);
+        }
+    }
+}
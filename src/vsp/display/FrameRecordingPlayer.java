@@ -5,16 +5,26 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 import java.io.File;
-import java.io.FileFilter;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
@@ -23,10 +33,20 @@ import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSlider;
 import javax.swing.JTextField;
+import javax.swing.JToggleButton;
 import javax.swing.ListCellRenderer;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import vsp.data.FrameReader;
 import vsp.data.FrameRecording;
+import vsp.data.RecordingCatalog;
+import vsp.util.ByteBufferInputStream;
 import vsp.util.VspProperties;
 
 /**
@@ -56,6 +76,18 @@ public class FrameRecordingPlayer {
     /** The frame reverse button. */
     private JButton m_frameBackwardButton;
 
+    /** The timeline, positioned in milliseconds from the first frame. */
+    private JSlider m_timeline;
+
+    /** The position and length of the recording. */
+    private JLabel m_timeLabel;
+
+    /** Whether the timeline is being moved by playback rather than the user.  Only used on the event thread. */
+    private boolean m_updatingTimeline;
+
+    /** The reverse play toggle. */
+    private JToggleButton m_reverseButton;
+
     /** The speed selector. */
     private final JComboBox<PlaySpeed> m_playSpeedSelector;
 
@@ -65,9 +97,28 @@ public class FrameRecordingPlayer {
     /** The recording to play. */
     private FrameRecording m_recording;
 
+    /** The catalog of the recording library, or null until the library is first opened.  Only used on the event thread. */
+    private RecordingCatalog m_catalog;
+
+    /** The button opening the recording library. */
+    private JButton m_libraryButton;
+
     private static final Object LOCK = new Object();
 
-    private ScheduledFuture m_future;
+    /** The factor by which scrubbing previews are subsampled in each dimension when decoded. */
+    private static final int PREVIEW_SUBSAMPLING = 4;
+
+    /** The most times a second the screen is updated, however fast the recording plays. */
+    private static final int MAX_DISPLAY_FPS = 60;
+
+    /** Chosen by a play update when the frame on screen should stay. */
+    private static final int NO_CHANGE = -1;
+
+    /** Chosen by a play update when the frame due is not decoded yet. */
+    private static final int NOT_DECODED = -2;
+
+    /** The processor playing the recording, or null when stopped. */
+    private PlayProcessor m_playProcessor;
 
     /** Creates a new Frame Recording Player. */
     public FrameRecordingPlayer() {
@@ -75,17 +126,6 @@ public class FrameRecordingPlayer {
         initComponents();
     }
 
-    /**
-     * Calculates the frame rate in milliseconds per frame, unfortunately this currently performs flat integer math and
-     * could slowly, over time create playback frame drift.  This method should get smarter.
-     * @param fps the FPS (frames per second)
-     * @return the number of milliseconds between frames.
-     */
-    private long calculateFpsInMillis(int fps) {
-        // This should be smarter
-        return 1000L / fps;
-    }
-
     /** Launches the display. */
     public void launch() {
         m_frame.pack();
@@ -102,7 +142,104 @@ public class FrameRecordingPlayer {
 
         m_frame.add(buildMediaSelectionPanel(), BorderLayout.PAGE_START);
         m_frame.add(m_screen, BorderLayout.CENTER);
-        m_frame.add(createButtonPanel(), BorderLayout.PAGE_END);
+        JPanel controls = new JPanel(new BorderLayout());
+        controls.add(createTimelinePanel(), BorderLayout.PAGE_START);
+        controls.add(createButtonPanel(), BorderLayout.PAGE_END);
+        m_frame.add(controls, BorderLayout.PAGE_END);
+    }
+
+    /**
+     * Creates the timeline, which shows the play position and seeks when dragged.
+     * @return the timeline panel.
+     */
+    private JPanel createTimelinePanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        m_timeline = new JSlider(0, 0, 0);
+        m_timeline.setEnabled(false);
+        m_timeline.setToolTipText("Drag to seek.");
+        m_timeline.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent ce) {
+                if (m_updatingTimeline) {
+                    return;
+                }
+                updateTimeLabel(m_timeline.getValue());
+                synchronized (LOCK) {
+                    if (m_playProcessor != null) {
+                        if (m_timeline.getValueIsAdjusting()) {
+                            m_playProcessor.scrub(m_timeline.getValue());
+                        } else {
+                            m_playProcessor.seek(m_timeline.getValue());
+                        }
+                    }
+                }
+            }
+        });
+        m_timeLabel = new JLabel(formatTime(0) + " / " + formatTime(0));
+        panel.add(m_timeline, BorderLayout.CENTER);
+        panel.add(m_timeLabel, BorderLayout.LINE_END);
+        return panel;
+    }
+
+    /**
+     * Moves the timeline to the play position, on the event thread, without seeking.
+     * @param mediaTime the play position, in milliseconds from the first frame.
+     */
+    private void showPosition(final long mediaTime) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (m_timeline.getValueIsAdjusting()) {
+                    return;
+                }
+                m_updatingTimeline = true;
+                m_timeline.setValue((int) mediaTime);
+                m_updatingTimeline = false;
+                updateTimeLabel(mediaTime);
+            }
+        });
+    }
+
+    /**
+     * Sets the timeline to the length of a recording and enables it, on the event thread, unless the recording has
+     * been stopped since.
+     * @param processor the processor playing the recording.
+     * @param mediaLength the length of the recording, in milliseconds.
+     */
+    private void showMediaLength(final PlayProcessor processor, final long mediaLength) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LOCK) {
+                    if (m_playProcessor != processor) {
+                        return;
+                    }
+                }
+                m_updatingTimeline = true;
+                m_timeline.setMaximum((int) Math.min(Integer.MAX_VALUE, mediaLength));
+                m_updatingTimeline = false;
+                m_timeline.setEnabled(true);
+                updateTimeLabel(m_timeline.getValue());
+            }
+        });
+    }
+
+    /**
+     * Shows a play position and the length of the recording in the time label.
+     * @param mediaTime the play position, in milliseconds from the first frame.
+     */
+    private void updateTimeLabel(long mediaTime) {
+        m_timeLabel.setText(formatTime(mediaTime) + " / " + formatTime(m_timeline.getMaximum()));
+    }
+
+    /**
+     * Formats a media time as hours, minutes and seconds.
+     * @param mediaTime the media time, in milliseconds.
+     * @return the formatted time.
+     */
+    private static String formatTime(long mediaTime) {
+        long seconds = mediaTime / 1000L;
+        return String.format("%d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L);
     }
 
     /**
@@ -120,6 +257,7 @@ public class FrameRecordingPlayer {
                     // If we're playing, then pause it.
                     synchronized (LOCK) {
                         m_playState = PlayerState.PAUSED;
+                        m_playProcessor.pause();
                     }
                     m_playPauseButton.setText("Play");
                     m_stopButton.setEnabled(true);
@@ -127,8 +265,9 @@ public class FrameRecordingPlayer {
                     // We're currently paused, so play it.
                     synchronized (LOCK) {
                         m_playState = PlayerState.PLAYING;
+                        m_playProcessor.play();
                     }
-                    m_playPauseButton.setText("Paused");
+                    m_playPauseButton.setText("Pause");
                     m_stopButton.setEnabled(true);
                 } else {
                     // If we're stopped, play it.
@@ -136,16 +275,30 @@ public class FrameRecordingPlayer {
                     if (!mediaFile.isEmpty() || mediaFile.endsWith(VspProperties.getInstance().getFrameRecordingFilename())) {
                         m_recording = FrameRecording.fromFile(m_mediaField.getText());
                         File frameDir = new File(m_recording.getFrameDirectory());
+                        FrameReader reader = null;
                         if (frameDir.exists() && frameDir.isDirectory()) {
-                            PlayProcessor pp = new PlayProcessor(m_recording.getFrameDirectory());
-                            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-                            m_future = executor.scheduleAtFixedRate(pp,
-                                                                    0L,
-                                                                    calculateFpsInMillis(m_recording.getFps()) / 2,
-                                                                    TimeUnit.MILLISECONDS);
+                            try {
+                                reader = m_recording.openFrameReader();
+                            } catch (IOException ex) {
+                                Logger.getLogger(FrameRecordingPlayer.class.getName()).log(Level.WARNING, "Unable to open frames", ex);
+                            }
+                        }
+                        if (reader != null) {
+                            VspProperties props = VspProperties.getInstance();
+                            FrameCache cache = new FrameCache(reader, props.getPlayerCacheMegabytes() * 1024L * 1024L,
+                                    props.getPlayerDecoderCount(), props.getPlayerCacheBehindFrames());
+                            PlayProcessor pp = new PlayProcessor(reader, cache, m_recording.getFps(),
+                                    ((PlaySpeed) m_playSpeedSelector.getSelectedItem()).getMultiplier());
                             synchronized (LOCK) {
                                 m_playState = PlayerState.PLAYING;
+                                m_playProcessor = pp;
+                                pp.setDirection(m_reverseButton.isSelected() ? -1 : 1);
+                                pp.play();
                             }
+                            // The timeline is enabled once the processor has indexed the frame times.
+                            m_updatingTimeline = true;
+                            m_timeline.setValue(0);
+                            m_updatingTimeline = false;
                             m_playPauseButton.setText("Pause");
                             m_stopButton.setEnabled(true);
                         } else {
@@ -167,18 +320,52 @@ public class FrameRecordingPlayer {
             public void actionPerformed(ActionEvent ae) {
                 synchronized (LOCK) {
                     m_playState = PlayerState.STOPPED;
+                    if (m_playProcessor != null) {
+                        m_playProcessor.stop();
+                        m_playProcessor = null;
+                    }
                 }
                 m_stopButton.setEnabled(false);
                 m_playPauseButton.setText("Play");
+                m_updatingTimeline = true;
+                m_timeline.setValue(0);
+                m_updatingTimeline = false;
+                m_timeline.setEnabled(false);
+                updateTimeLabel(0);
             }
         });
         m_stopButton.setEnabled(false);
 
         m_frameBackwardButton = new JButton("|<");
         m_frameBackwardButton.setToolTipText("Go backward a single frame.");
+        m_frameBackwardButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                stepFrame(-1);
+            }
+        });
 
         m_frameForwardButton = new JButton(">|");
         m_frameForwardButton.setToolTipText("Go Forward a single frame.");
+        m_frameForwardButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                stepFrame(1);
+            }
+        });
+
+        m_reverseButton = new JToggleButton("Reverse");
+        m_reverseButton.setToolTipText("Play backward.");
+        m_reverseButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                synchronized (LOCK) {
+                    if (m_playProcessor != null) {
+                        m_playProcessor.setDirection(m_reverseButton.isSelected() ? -1 : 1);
+                    }
+                }
+            }
+        });
 
         // Speed Selector
         m_playSpeedSelector.setRenderer(new ListCellRenderer<PlaySpeed>() {
@@ -191,6 +378,16 @@ public class FrameRecordingPlayer {
             m_playSpeedSelector.addItem(speed);
         }
         m_playSpeedSelector.setSelectedItem(PlaySpeed.ONE_X);
+        m_playSpeedSelector.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                synchronized (LOCK) {
+                    if (m_playProcessor != null) {
+                        m_playProcessor.setSpeed(((PlaySpeed) m_playSpeedSelector.getSelectedItem()).getMultiplier());
+                    }
+                }
+            }
+        });
 
         // Add the buttons
         panel.add(m_playSpeedSelector);
@@ -198,15 +395,46 @@ public class FrameRecordingPlayer {
         panel.add(m_playPauseButton);
         panel.add(m_stopButton);
         panel.add(m_frameForwardButton);
+        panel.add(m_reverseButton);
 
         return panel;
     }
 
+    /**
+     * Steps the recording a single frame, pausing it first if it is playing.  Nothing happens while stopped.
+     * @param frames the number of frames to step, negative to step backward.
+     */
+    private void stepFrame(int frames) {
+        boolean paused = false;
+        synchronized (LOCK) {
+            if (m_playProcessor == null) {
+                return;
+            }
+            if (m_playState == PlayerState.PLAYING) {
+                m_playState = PlayerState.PAUSED;
+                m_playProcessor.pause();
+                paused = true;
+            }
+            m_playProcessor.step(frames);
+        }
+        if (paused) {
+            m_playPauseButton.setText("Play");
+        }
+    }
+
     /** Assembles the media selection panel. */
     private JPanel buildMediaSelectionPanel() {
         JPanel panel = new JPanel();
         JLabel label = new JLabel("FrameRecording.properties file:");
         m_mediaField = new JTextField(45);
+        m_libraryButton = new JButton("Library...");
+        m_libraryButton.setToolTipText("Choose a recording from the recording library.");
+        m_libraryButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                openLibrary();
+            }
+        });
         JButton browse = new JButton("Browse...");
         browse.addActionListener(new ActionListener() {
             @Override
@@ -222,76 +450,558 @@ public class FrameRecordingPlayer {
 
         panel.add(label);
         panel.add(m_mediaField);
+        panel.add(m_libraryButton);
         panel.add(browse);
 
         return panel;
     }
 
-    /** A PlayProcessor that handles updating frames on the FramePlayer. */
+    /**
+     * Lets the user choose a recording from the recording library.  The first time, the library's catalog is loaded
+     * off the event thread, and the choice is offered once it has loaded.  The catalog then keeps itself up to date,
+     * so later choices are offered at once.
+     */
+    private void openLibrary() {
+        if (m_catalog != null) {
+            chooseFromLibrary();
+            return;
+        }
+        m_libraryButton.setEnabled(false);
+        final RecordingCatalog catalog = RecordingCatalog.fromProperties();
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                IOException failure = null;
+                try {
+                    catalog.start();
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+                final IOException error = failure;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        m_libraryButton.setEnabled(true);
+                        if (error != null) {
+                            Logger.getLogger(FrameRecordingPlayer.class.getName()).log(Level.WARNING, "Unable to load the recording library", error);
+                            JOptionPane.showMessageDialog(m_frame, "Unable to load the recording library:  " + error.getMessage(), "Error", JOptionPane.WARNING_MESSAGE);
+                            return;
+                        }
+                        m_catalog = catalog;
+                        chooseFromLibrary();
+                    }
+                });
+            }
+        }, "Recording Library Loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Offers the catalogued recordings, newest first, and puts the recording file of the one chosen in the media
+     * field.
+     */
+    private void chooseFromLibrary() {
+        List<FrameRecording> recordings = m_catalog.getRecordings();
+        if (recordings.isEmpty()) {
+            JOptionPane.showMessageDialog(m_frame, "The recording library is empty.", "Recording Library", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        Collections.reverse(recordings);
+        JList<FrameRecording> list = new JList<>(recordings.toArray(new FrameRecording[recordings.size()]));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(15);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> jlist, Object value, int i, boolean selected, boolean focused) {
+                return super.getListCellRendererComponent(jlist, describeRecording((FrameRecording) value), i, selected, focused);
+            }
+        });
+        int choice = JOptionPane.showConfirmDialog(m_frame, new JScrollPane(list), "Recording Library",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        FrameRecording chosen = list.getSelectedValue();
+        if (choice != JOptionPane.OK_OPTION || chosen == null) {
+            return;
+        }
+        String directory = m_catalog.getRecordingDirectory(chosen);
+        if (directory == null) {
+            JOptionPane.showMessageDialog(m_frame, "That recording has been removed from the library.", "Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        m_mediaField.setText(new File(directory, VspProperties.getInstance().getFrameRecordingFilename()).getAbsolutePath());
+    }
+
+    /**
+     * Describes a recording for the library list:  its name, start time and length.
+     * @param recording the recording.
+     * @return the description.
+     */
+    private static String describeRecording(FrameRecording recording) {
+        String name = recording.getName() == null || recording.getName().isEmpty()
+                ? recording.getVideoSourceId().toString() : recording.getName();
+        String start = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(recording.getStartTime()));
+        String length = recording.getEndTime() < recording.getStartTime()
+                ? "in progress" : formatTime(recording.getEndTime() - recording.getStartTime());
+        return name + "   " + start + "   " + length;
+    }
+
+    /**
+     * A PlayProcessor that handles updating frames on the FramePlayer.  The frame shown is chosen from the media time
+     * of a {@link PlaybackClock}, and the processor sleeps until the next frame is due, so it wakes once per frame
+     * shown and playback keeps to real time at any speed.  When frames come faster than the screen is updated, or
+     * decoding falls behind, frames are skipped rather than played late.
+     * <p>
+     * Frame steps and reverse play move the frame cache's read-ahead in the direction of travel, and the cache keeps
+     * frames behind the cursor too, so both directions are served from frames that are already decoded.
+     * <p>
+     * The screen is only updated on the player thread, so updates are shown in the order they are made, and never
+     * while holding LOCK, which the event thread takes.  The player thread never waits for a frame to be decoded:  a
+     * frame stepped or seeked to is shown when the cache hands it over.  The frame times are indexed on the player
+     * thread too, before anything is played, and the timeline is enabled once they are.
+     */
     private class PlayProcessor implements Runnable {
 
-        /** The List of Frames to Play.  */
-        private final List<File> m_frames;
+        /** The reader of the frames to play.  */
+        private final FrameReader m_frames;
+
+        /** The decoded frames around the cursor. */
+        private final FrameCache m_cache;
+
+        /** The media clock. */
+        private final PlaybackClock m_clock;
+
+        /** The thread frames are shown on. */
+        private final ScheduledExecutorService m_executor;
+
+        /** The frames per second of the recording. */
+        private final int m_fps;
+
+        /** The media time of every frame, in milliseconds from the first frame, or null until indexed.  Guarded by LOCK. */
+        private long[] m_frameTimes;
+
+        /** The media time at which the recording ends and loops, in milliseconds.  Guarded by LOCK. */
+        private double m_mediaLength;
+
+        /** The next scheduled update, or null if none is scheduled.  Guarded by LOCK. */
+        private ScheduledFuture<?> m_future;
+
+        /** The number of the frame on screen, or -1 if none is. */
+        private int m_shownFrame;
 
-        /** The current frame cursor position. */
-        private int m_cursor = 0;
+        /** Whether the user is dragging the timeline.  Guarded by LOCK. */
+        private boolean m_scrubbing;
 
-        /** The number of times this method has looped. */
-        private int m_loopCount;
+        /** The frame to preview while scrubbing.  Guarded by LOCK. */
+        private int m_previewFrame;
+
+        /** Whether a preview task is queued or running.  Guarded by LOCK. */
+        private boolean m_previewPending;
+
+        /** The JPEG reader previews are decoded with, or null if there is none.  Only used on the player thread. */
+        private ImageReader m_previewReader;
 
         /**
          * Constructs a new instance of PlayProcessor.
-         * @param frames the frames to play.
+         * @param frames the reader of the frames to play, closed when playback stops.
+         * @param cache the cache decoding the frames ahead of the cursor, closed when playback stops.
+         * @param fps the frames per second of the recording.
+         * @param speed the play speed multiplier.
          */
-        public PlayProcessor(String frameDir) {
-            m_loopCount = 0;
-            File[] frames = new File(frameDir).listFiles(new FileFilter() {
+        public PlayProcessor(FrameReader frames, FrameCache cache, int fps, double speed) {
+            m_frames = frames;
+            m_cache = cache;
+            m_fps = Math.max(fps, 1);
+            m_clock = new PlaybackClock(speed);
+            m_executor = Executors.newSingleThreadScheduledExecutor();
+            m_frameTimes = null;
+            m_mediaLength = 0.0;
+            m_shownFrame = -1;
+            m_scrubbing = false;
+            m_previewPending = false;
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+            m_previewReader = readers.hasNext() ? readers.next() : null;
+            m_executor.execute(new Runnable() {
                 @Override
-                public boolean accept(File file) {
-                    return file.getName().endsWith("jpg") || file.getName().endsWith("jpeg");
+                public void run() {
+                    indexFrames();
                 }
             });
-            m_frames = new ArrayList<>(Arrays.asList(frames));
+        }
+
+        /**
+         * Indexes every frame's time up front, so seeking and scrubbing are a binary search in memory, then starts
+         * playback if it is waiting and enables the timeline.  Runs on the player thread, since reading the time of
+         * every frame of a long recording takes a while.
+         */
+        private void indexFrames() {
+            int count = m_frames.getFrameCount();
+            long firstTimestamp = count == 0 ? 0L : m_frames.getTimestamp(0);
+            long[] frameTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                frameTimes[i] = m_frames.getTimestamp(i) - firstTimestamp;
+            }
+            double mediaLength = count == 0 ? 0.0 : frameTimes[count - 1] + 1000.0 / m_fps;
             synchronized (LOCK) {
-                Collections.sort(m_frames);
+                m_frameTimes = frameTimes;
+                m_mediaLength = mediaLength;
+                if (m_playProcessor != this) {
+                    return;
+                }
+                if (m_clock.isRunning()) {
+                    reschedule(0L);
+                }
+            }
+            showMediaLength(this, (long) mediaLength);
+        }
+
+        /**
+         * Returns whether the frame times are indexed and there are frames to show.  Called holding LOCK.
+         * @return true if there are frames to show.
+         */
+        private boolean hasFrames() {
+            return m_frameTimes != null && m_frameTimes.length > 0;
+        }
+
+        /**
+         * Shows a quick low resolution preview of the frame at a media time, while the user drags the timeline.
+         * Playback is held until the user lets go.  Previews are decoded on the player thread, and a preview asked for
+         * while another is decoding replaces any not yet started, so the preview keeps up with the drag.  Called
+         * holding LOCK.
+         * @param mediaTime the media time, in milliseconds from the first frame.
+         */
+        public void scrub(double mediaTime) {
+            if (!hasFrames()) {
+                return;
+            }
+            m_scrubbing = true;
+            cancel();
+            m_previewFrame = frameAt(mediaTime);
+            if (!m_previewPending) {
+                m_previewPending = true;
+                m_executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        previewFrames();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Moves playback to a media time and shows the frame there at full resolution.  Called holding LOCK.
+         * @param mediaTime the media time, in milliseconds from the first frame.
+         */
+        public void seek(double mediaTime) {
+            m_scrubbing = false;
+            if (!hasFrames()) {
+                return;
+            }
+            int target = frameAt(mediaTime);
+            m_clock.seek(m_frameTimes[target]);
+            m_cache.setCursor(target, m_clock.getDirection());
+            if (m_clock.isRunning()) {
+                m_shownFrame = -1;
+                reschedule(0L);
+            } else {
+                m_shownFrame = target;
+                showWhenDecoded(target);
+            }
+        }
+
+        /** Starts or resumes playback.  Called holding LOCK. */
+        public void play() {
+            m_clock.start();
+            reschedule(0L);
+        }
+
+        /** Pauses playback, holding the current frame.  Called holding LOCK. */
+        public void pause() {
+            m_clock.pause();
+            cancel();
+        }
+
+        /**
+         * Changes the direction of play from the current position.  Called holding LOCK.
+         * @param direction 1 to play forward, or -1 to play backward.
+         */
+        public void setDirection(int direction) {
+            m_clock.setDirection(direction);
+            if (m_clock.isRunning()) {
+                reschedule(0L);
+            }
+        }
+
+        /**
+         * Steps from the frame on screen, showing the new frame once it is decoded.  Called holding LOCK, while
+         * paused.
+         * @param frames the number of frames to step, negative to step backward.
+         */
+        public void step(final int frames) {
+            if (!hasFrames()) {
+                return;
+            }
+            int from = m_shownFrame >= 0 ? m_shownFrame : frameAt(m_clock.getMediaTime());
+            int count = m_cache.getFrameCount();
+            int target = ((from + frames) % count + count) % count;
+            m_cache.setCursor(target, frames < 0 ? -1 : 1);
+            m_shownFrame = target;
+            showWhenDecoded(target);
+        }
+
+        /**
+         * Shows a frame at full resolution once the cache has decoded it, on the player thread, unless playback has
+         * moved on by then.  Called holding LOCK, while paused.
+         * @param target the number of the frame.
+         */
+        private void showWhenDecoded(final int target) {
+            m_cache.requestImage(target, new FrameCache.DecodeListener() {
+                @Override
+                public void frameDecoded(int frameNumber, final BufferedImage image) {
+                    synchronized (LOCK) {
+                        if (m_executor.isShutdown()) {
+                            return;
+                        }
+                        m_executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                showDecoded(target, image);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+
+        /**
+         * Shows a frame stepped or seeked to, if it is still the frame wanted.  Runs on the player thread.
+         * @param target the number of the frame.
+         * @param image the decoded frame, or null if it could not be decoded.
+         */
+        private void showDecoded(int target, BufferedImage image) {
+            if (image == null) {
+                Logger.getLogger(FrameRecordingPlayer.class.getName()).info("Unable to step to frame " + target + ": " + m_cache.describeStatistics());
+                return;
+            }
+            long mediaTime;
+            synchronized (LOCK) {
+                if (m_playProcessor != this || m_clock.isRunning() || m_scrubbing || m_shownFrame != target) {
+                    return;
+                }
+                mediaTime = m_frameTimes[target];
+                m_clock.seek(mediaTime);
+            }
+            m_screen.updateFrame(image);
+            showPosition(mediaTime);
+        }
+
+        /**
+         * Changes the play speed from the current position.  Called holding LOCK.
+         * @param speed the play speed multiplier.
+         */
+        public void setSpeed(double speed) {
+            m_clock.setSpeed(speed);
+            if (m_clock.isRunning()) {
+                reschedule(0L);
             }
         }
 
+        /** Stops playback and releases the frames.  Called holding LOCK. */
+        public void stop() {
+            cancel();
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    m_screen.clear();
+                    m_cache.close();
+                    if (m_previewReader != null) {
+                        m_previewReader.dispose();
+                    }
+                    try {
+                        m_frames.close();
+                    } catch (IOException ex) {
+                        Logger.getLogger(FrameRecordingPlayer.class.getName()).log(Level.FINE, "Error closing frames", ex);
+                    }
+                }
+            });
+            m_executor.shutdown();
+        }
+
         /** {@inheritDoc} */
         @Override
         public void run() {
+            BufferedImage image = null;
+            long mediaTime = 0L;
             synchronized (LOCK) {
-                if (m_playState == PlayerState.PLAYING) {
-                    switch ((PlaySpeed)m_playSpeedSelector.getSelectedItem()){
-                        case HALF_SPEED:
-                            if (m_loopCount % 4 == 0) {
-                                updateFrame();
-                            }
-                            break;
-                        case ONE_X:
-                            if (m_loopCount % 2 == 0) {
-                                updateFrame();
-                            }
-                            break;
-                        case TWO_X:
-                            updateFrame();
-                            break;
+                if (m_playState != PlayerState.PLAYING || m_playProcessor != this || !hasFrames() || m_scrubbing) {
+                    return;
+                }
+                int frame = chooseFrame();
+                if (frame >= 0) {
+                    image = m_cache.getImage(frame);
+                    if (image != null) {
+                        m_shownFrame = frame;
+                        mediaTime = m_frameTimes[frame];
                     }
-                    m_loopCount++;
-                } else if (m_playState == PlayerState.STOPPED && m_future != null) {
-                    m_future.cancel(false);
-                    m_screen.clear();
                 }
+                long delay = m_clock.nanosUntil(nextFrameTime());
+                long minDelay = 1000000000L / MAX_DISPLAY_FPS;
+                // A frame not decoded in time is looked for again at the next screen update.
+                reschedule(frame != NOT_DECODED ? Math.max(delay, minDelay) : minDelay);
+            }
+            if (image != null) {
+                m_screen.updateFrame(image);
+                showPosition(mediaTime);
+            }
+        }
+
+        /**
+         * Chooses the frame to show for the current media time:  that frame, or the nearest decoded frame before it
+         * in its stride.  Called holding LOCK.
+         * @return the number of the frame to show, {@link #NO_CHANGE} if the frame on screen should stay, or
+         * {@link #NOT_DECODED} if no frame in the stride is decoded yet.
+         */
+        private int chooseFrame() {
+            double mediaTime = m_clock.getMediaTime();
+            int direction = m_clock.getDirection();
+            if (mediaTime >= m_mediaLength || mediaTime < 0.0) {
+                // Loop back to the start, or to the end when playing backward.
+                mediaTime = direction > 0 ? 0.0 : Math.max(0.0, m_mediaLength - 1.0);
+                m_clock.seek(mediaTime);
+                m_shownFrame = -1;
+            }
+            int target = frameAt(mediaTime);
+            int stride = stride();
+            m_cache.setCursor(target, direction, stride);
+            // Never go back to a frame the play has already passed.
+            int travelled = (target - m_shownFrame) * direction;
+            int span = m_shownFrame >= 0 && travelled >= 0 ? Math.min(stride, travelled) : stride;
+            if (span == 0) {
+                return NO_CHANGE;
+            }
+            int frame = m_cache.findDecoded(target, span);
+            if (frame < 0) {
+                Logger.getLogger(FrameRecordingPlayer.class.getName()).fine("Frame " + target + " not decoded yet: " + m_cache.describeStatistics());
+                return m_cache.isUnreadable(target) ? NO_CHANGE : NOT_DECODED;
+            }
+            return frame;
+        }
+
+        /**
+         * Returns the number of frames between those that can be shown at the current speed, given that the screen is
+         * updated at most {@value #MAX_DISPLAY_FPS} times a second.
+         * @return the frame stride, 1 to show every frame.
+         */
+        private int stride() {
+            return Math.max(1, (int) Math.ceil(m_clock.getSpeed() * m_fps / MAX_DISPLAY_FPS));
+        }
+
+        /**
+         * Finds the frame showing at a media time:  the last frame at or before it.
+         * @param mediaTime the media time, in milliseconds from the first frame.
+         * @return the number of the frame.
+         */
+        private int frameAt(double mediaTime) {
+            int low = 0;
+            int high = m_frameTimes.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (m_frameTimes[mid] <= mediaTime) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns the media time at which the frame after the current one, in the direction of play, is due.
+         * @return the media time of the next frame, in milliseconds from the first frame.
+         */
+        private double nextFrameTime() {
+            int current = frameAt(m_clock.getMediaTime());
+            if (m_clock.getDirection() < 0) {
+                // Playing backward, the frame changes as soon as media time falls below the current frame's time.
+                return m_frameTimes[current] - 0.001;
+            }
+            int next = current + 1;
+            if (next >= m_frameTimes.length) {
+                return m_mediaLength;
+            }
+            return m_frameTimes[next];
+        }
+
+        /**
+         * Decodes and shows previews until the frame to preview stops changing.  Runs on the player thread.
+         */
+        private void previewFrames() {
+            int shown = -1;
+            while (true) {
+                int frame;
+                synchronized (LOCK) {
+                    if (!m_scrubbing || m_previewFrame == shown || m_playProcessor != this) {
+                        m_previewPending = false;
+                        return;
+                    }
+                    frame = m_previewFrame;
+                }
+                // A frame already decoded at full resolution needs no preview.
+                BufferedImage image = m_cache.getImage(frame);
+                if (image == null) {
+                    image = decodePreview(frame);
+                }
+                boolean current;
+                synchronized (LOCK) {
+                    current = image != null && m_scrubbing && m_playProcessor == this;
+                }
+                if (current) {
+                    m_screen.updatePreview(image);
+                }
+                shown = frame;
+            }
+        }
+
+        /**
+         * Decodes a frame subsampled, which is several times faster than decoding it whole.
+         * @param frameNumber the number of the frame.
+         * @return the subsampled frame, or null if it cannot be decoded.
+         */
+        private BufferedImage decodePreview(int frameNumber) {
+            try {
+                ByteBuffer encoded = m_frames.getFrame(frameNumber);
+                if (m_previewReader == null) {
+                    return ImageIO.read(new ByteBufferInputStream(encoded));
+                }
+                try (ImageInputStream input = ImageIO.createImageInputStream(new ByteBufferInputStream(encoded))) {
+                    m_previewReader.setInput(input, true, true);
+                    ImageReadParam param = m_previewReader.getDefaultReadParam();
+                    param.setSourceSubsampling(PREVIEW_SUBSAMPLING, PREVIEW_SUBSAMPLING, 0, 0);
+                    return m_previewReader.read(0, param);
+                }
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(FrameRecordingPlayer.class.getName()).log(Level.FINE, "Unable to preview frame " + frameNumber, ex);
+                return null;
+            }
+        }
+
+        /**
+         * Schedules the next update, replacing any already scheduled.
+         * @param delayNanos the time until the update, in nanoseconds.
+         */
+        private void reschedule(long delayNanos) {
+            cancel();
+            if (!m_executor.isShutdown()) {
+                m_future = m_executor.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
             }
         }
 
-        /** Updates the frame. */
-        private void updateFrame() {
-            if (m_cursor == m_frames.size() - 1) {
-                m_cursor = 0;
+        /** Cancels the next update, if one is scheduled. */
+        private void cancel() {
+            if (m_future != null) {
+                m_future.cancel(false);
+                m_future = null;
             }
-            m_screen.updateFrame(m_frames.get(m_cursor).getAbsolutePath());
-            m_cursor++;
         }
     }
 }
\ No newline at end of file
@@ -1,34 +1,48 @@
 package vsp.display;
 
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.JComponent;
 
 /**
- * An extremely basic JComponent that renders images
+ * A JComponent that renders images, scaled to fit the component and centred on a black background.
+ * <p>
+ * Each frame is scaled once into a {@link VolatileImage} the size of the component, which is only recreated when the
+ * component is resized or the surface is lost, and repaints copy that surface to the screen.  Painting the same frame
+ * again allocates nothing.  Frames are best handed over already in the screen's pixel format, see
+ * {@link #toCompatibleImage(BufferedImage)}, so the one scaling pass needs no format conversion either.
  * @author adam
  */
 public class FrameViewer extends JComponent {
 
     /** The image to render. */
-    private BufferedImage m_image;
+    private volatile BufferedImage m_image;
+
+    /** The surface holding the current image scaled to the component, or null until first painted. */
+    private VolatileImage m_surface;
+
+    /** The image last rendered into the surface, or null if the surface must be rendered again. */
+    private BufferedImage m_renderedImage;
 
     /** Logger. */
     private static final Logger LOGGER = Logger.getLogger(FrameViewer.class.getName());
 
     /** Creates a FrameViewer. */
     public FrameViewer() {
+        // Every pixel is painted, so nothing behind the viewer needs painting first.
+        setOpaque(true);
     }
 
     /**
@@ -37,7 +51,7 @@ public class FrameViewer extends JComponent {
      */
     public void updateFrame(String pathToImage) {
         try {
-            m_image = ImageIO.read(new File(pathToImage));
+            m_image = toCompatibleImage(ImageIO.read(new File(pathToImage)));
         } catch (IOException ex) {
             LOGGER.log(Level.INFO, "Unable to read image:  '" + pathToImage + "'.  Ignoring frame.");
             m_image = null;
@@ -45,6 +59,24 @@ public class FrameViewer extends JComponent {
         repaint();
     }
 
+    /**
+     * Update the image to be rendered with an image that is already decoded.
+     * @param image the image to render, ideally already converted by {@link #toCompatibleImage(BufferedImage)}.
+     */
+    public void updateFrame(BufferedImage image) {
+        m_image = image;
+        repaint();
+    }
+
+    /**
+     * Update the image to be rendered with a reduced resolution preview, which is scaled up to fit like a full frame.
+     * @param preview the preview image.
+     */
+    public void updatePreview(BufferedImage preview) {
+        m_image = preview;
+        repaint();
+    }
+
     /** Clears the screen of any current image. */
     public void clear() {
         m_image = null;
@@ -52,26 +84,88 @@ public class FrameViewer extends JComponent {
     }
 
     /**
-     * This is pretty cheese-ball, but gets the job done for this proof of concept application.  There are very
-     * likely some good ways to optimize this, which we should totally take advantage of them.
+     * Converts an image to the pixel format of the screen, so that drawing it is a straight copy.  This is meant to be
+     * called off the event thread, as frames are decoded.
+     * @param image the image to convert, which may be null.
+     * @return an equivalent image in the screen's format, or the image itself if it already is in that format or there
+     * is no screen.
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        if (image == null || GraphicsEnvironment.isHeadless()) {
+            return image;
+        }
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration();
+        if (image.getColorModel().equals(config.getColorModel())) {
+            return image;
+        }
+        BufferedImage compatible = config.createCompatibleImage(image.getWidth(), image.getHeight(), Transparency.OPAQUE);
+        Graphics2D g2d = compatible.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return compatible;
+    }
+
+    /**
+     * Copies the current frame, scaled to the component, to the screen.  The frame is only scaled again when it has
+     * changed, the component has been resized or the surface has been lost.
      * {@inheritDoc}
      */
+    @Override
     public void paint(Graphics g) {
-        // Setup Graphics 2D
-        Graphics2D g2d = (Graphics2D)g;
-        Map<RenderingHints.Key, Object> hints = new HashMap<>();
-        hints.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        hints.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-        RenderingHints renderHints = new RenderingHints(hints);
-        g2d.setRenderingHints(renderHints);
-
-        Dimension dim = getSize();
-        if (m_image == null) {
-            g2d.setColor(Color.BLACK);
-            g2d.fillRect(0, 0, dim.width, dim.height);
-        } else {
-            g2d.drawImage(m_image, 0, 0, this);
+        int width = getWidth();
+        int height = getHeight();
+        BufferedImage image = m_image;
+        if (image == null || width <= 0 || height <= 0) {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            return;
         }
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config == null) {
+            // Not on a screen, so there is no surface to cache; draw straight to whatever is painting.
+            renderImage((Graphics2D) g, image, width, height);
+            return;
+        }
+        do {
+            int status = m_surface == null ? VolatileImage.IMAGE_INCOMPATIBLE : m_surface.validate(config);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE || m_surface.getWidth() != width
+                    || m_surface.getHeight() != height) {
+                if (m_surface != null) {
+                    m_surface.flush();
+                }
+                m_surface = config.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+                m_renderedImage = null;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                m_renderedImage = null;
+            }
+            if (m_renderedImage != image) {
+                Graphics2D g2d = m_surface.createGraphics();
+                renderImage(g2d, image, width, height);
+                g2d.dispose();
+                m_renderedImage = image;
+            }
+            g.drawImage(m_surface, 0, 0, null);
+        } while (m_surface.contentsLost());
+    }
+
+    /**
+     * Renders an image scaled to fit an area without distortion, centred on black.
+     * @param g2d the graphics to render with.
+     * @param image the image to render.
+     * @param width the width of the area.
+     * @param height the height of the area.
+     */
+    private static void renderImage(Graphics2D g2d, BufferedImage image, int width, int height) {
+        double scale = Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+        int drawWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int drawHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        int x = (width - drawWidth) / 2;
+        int y = (height - drawHeight) / 2;
+
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, x, y, drawWidth, drawHeight, null);
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,41 @@
 package vsp.display;
 
 /**
- * An enumeration of play speeds.
+ * An enumeration of play speeds.  These are the presets offered by the player; playback itself runs at any
+ * multiplier between {@link #MIN_MULTIPLIER} and {@link #MAX_MULTIPLIER}.
  * @author adam
  */
 public enum PlaySpeed {
-    HALF_SPEED("0.5X"),
-    ONE_X("1X"),
-    TWO_X("2X");
+    TENTH_SPEED("0.1X", 0.1),
+    QUARTER_SPEED("0.25X", 0.25),
+    HALF_SPEED("0.5X", 0.5),
+    ONE_X("1X", 1.0),
+    TWO_X("2X", 2.0),
+    FOUR_X("4X", 4.0),
+    EIGHT_X("8X", 8.0),
+    SIXTEEN_X("16X", 16.0),
+    THIRTY_TWO_X("32X", 32.0);
+
+    /** The slowest supported play speed multiplier. */
+    public static final double MIN_MULTIPLIER = 0.1;
+
+    /** The fastest supported play speed multiplier. */
+    public static final double MAX_MULTIPLIER = 32.0;
 
     /** A user-consumable display string for the speed. */
     private final String m_displayString;
 
+    /** The rate media time passes at, relative to real time. */
+    private final double m_multiplier;
+
     /**
      * Creates a new PlaySpeed with the supplied user-consumable string.
      * @param displayString
+     * @param multiplier the rate media time passes at, relative to real time.
      */
-    private PlaySpeed(String displayString) {
+    private PlaySpeed(String displayString, double multiplier) {
         m_displayString = displayString;
+        m_multiplier = multiplier;
     }
 
     /**
@@ -27,4 +45,12 @@ public enum PlaySpeed {
     public String getDisplayString() {
         return m_displayString;
     }
+
+    /**
+     * Returns the rate media time passes at at this speed, relative to real time.
+     * @return the speed multiplier.
+     */
+    public double getMultiplier() {
+        return m_multiplier;
+    }
 }
\ No newline at end of file
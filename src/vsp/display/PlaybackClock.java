@@ -0,0 +1,165 @@
+package vsp.display;
+
+/**
+ * The media clock of a player:  the position in the recording, in milliseconds from its first frame, as it advances
+ * with real time at the play speed.  The position is worked out from an anchor, a media time and the
+ * {@link System#nanoTime()} it was taken at, rather than accumulated tick by tick, so it never drifts however late
+ * the player wakes.  Changing speed or direction, pausing and seeking re-anchor the clock at the current position.
+ * Played in reverse, media time runs backward at the same speed.
+ *
+ * @author Keith
+ */
+public class PlaybackClock {
+
+    /** The number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** The media time at the anchor, in milliseconds. */
+    private double m_anchorMedia;
+
+    /** The real time of the anchor, from {@link System#nanoTime()}. */
+    private long m_anchorNanos;
+
+    /** The rate media time passes at, relative to real time. */
+    private double m_speed;
+
+    /** The direction media time passes in, 1 forward or -1 backward. */
+    private int m_direction;
+
+    /** Whether media time is passing. */
+    private boolean m_running;
+
+    /**
+     * Creates a new, paused PlaybackClock at the start of the media.
+     * @param speed the rate media time passes at, relative to real time.
+     */
+    public PlaybackClock(double speed) {
+        m_anchorMedia = 0.0;
+        m_anchorNanos = System.nanoTime();
+        m_speed = clampSpeed(speed);
+        m_direction = 1;
+        m_running = false;
+    }
+
+    /**
+     * Returns the current media time.
+     * @return the media time, in milliseconds from the first frame.
+     */
+    public synchronized double getMediaTime() {
+        return mediaTimeAt(System.nanoTime());
+    }
+
+    /**
+     * Returns the real time until the clock reaches a media time.
+     * @param mediaTime the media time, in milliseconds from the first frame.
+     * @return the time until the clock reaches the media time in nanoseconds, 0 if it has already passed it in the
+     * direction of play, or {@link Long#MAX_VALUE} if the clock is paused.
+     */
+    public synchronized long nanosUntil(double mediaTime) {
+        if (!m_running) {
+            return Long.MAX_VALUE;
+        }
+        long now = System.nanoTime();
+        double remaining = (mediaTime - mediaTimeAt(now)) * m_direction * NANOS_PER_MILLI / m_speed;
+        return remaining <= 0.0 ? 0L : (long) Math.ceil(remaining);
+    }
+
+    /**
+     * Starts media time passing from the current position.
+     */
+    public synchronized void start() {
+        if (!m_running) {
+            m_anchorNanos = System.nanoTime();
+            m_running = true;
+        }
+    }
+
+    /**
+     * Stops media time passing, holding the current position.
+     */
+    public synchronized void pause() {
+        reanchor();
+        m_running = false;
+    }
+
+    /**
+     * Returns whether media time is passing.
+     * @return true if the clock is running.
+     */
+    public synchronized boolean isRunning() {
+        return m_running;
+    }
+
+    /**
+     * Moves the clock to a media time.
+     * @param mediaTime the media time, in milliseconds from the first frame.
+     */
+    public synchronized void seek(double mediaTime) {
+        m_anchorMedia = mediaTime;
+        m_anchorNanos = System.nanoTime();
+    }
+
+    /**
+     * Changes the rate media time passes at, from the current position.
+     * @param speed the rate media time passes at relative to real time, clamped to the supported range.
+     */
+    public synchronized void setSpeed(double speed) {
+        reanchor();
+        m_speed = clampSpeed(speed);
+    }
+
+    /**
+     * Changes the direction media time passes in, from the current position.
+     * @param direction 1 to play forward, or -1 to play backward.
+     */
+    public synchronized void setDirection(int direction) {
+        reanchor();
+        m_direction = direction < 0 ? -1 : 1;
+    }
+
+    /**
+     * Returns the direction media time passes in.
+     * @return 1 if playing forward, or -1 if playing backward.
+     */
+    public synchronized int getDirection() {
+        return m_direction;
+    }
+
+    /**
+     * Returns the rate media time passes at.
+     * @return the speed multiplier.
+     */
+    public synchronized double getSpeed() {
+        return m_speed;
+    }
+
+    /**
+     * Moves the anchor to the current position.
+     */
+    private void reanchor() {
+        long now = System.nanoTime();
+        m_anchorMedia = mediaTimeAt(now);
+        m_anchorNanos = now;
+    }
+
+    /**
+     * Returns the media time at a real time.
+     * @param nanos the real time, from {@link System#nanoTime()}.
+     * @return the media time, in milliseconds from the first frame.
+     */
+    private double mediaTimeAt(long nanos) {
+        if (!m_running) {
+            return m_anchorMedia;
+        }
+        return m_anchorMedia + (nanos - m_anchorNanos) * m_speed * m_direction / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Keeps a speed within the supported range.
+     * @param speed the speed multiplier.
+     * @return the speed, clamped between {@link PlaySpeed#MIN_MULTIPLIER} and {@link PlaySpeed#MAX_MULTIPLIER}.
+     */
+    private static double clampSpeed(double speed) {
+        return Math.max(PlaySpeed.MIN_MULTIPLIER, Math.min(PlaySpeed.MAX_MULTIPLIER, speed));
+    }
+}
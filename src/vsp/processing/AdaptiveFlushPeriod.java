@@ -0,0 +1,94 @@
+package vsp.processing;
+
+/**
+ * Works out how long a recording should wait before its next flush, so that each snippet handed to frame ripping is
+ * close to a target size.  The ingest rate is measured from the growth seen at each flush and smoothed, and the delay
+ * needed to accumulate the target number of bytes at that rate is kept between a minimum and a maximum.  The maximum
+ * is the latency budget: however slow the stream, frames are never held back for longer than it.
+ *
+ * @author Keith
+ */
+public class AdaptiveFlushPeriod {
+
+    /** The weight given to the newest rate measurement when smoothing. */
+    private static final double SMOOTHING = 0.3;
+
+    /** The number of bytes each snippet should hold. */
+    private final long m_targetBytes;
+
+    /** The shortest delay between flushes, in milliseconds. */
+    private final long m_minMillis;
+
+    /** The longest delay between flushes, in milliseconds. */
+    private final long m_maxMillis;
+
+    /** The delay before the next flush, in milliseconds. */
+    private long m_nextDelayMillis;
+
+    /** The smoothed ingest rate in bytes per second, or a negative value before the first measurement. */
+    private double m_bytesPerSecond;
+
+    /**
+     * Creates a new AdaptiveFlushPeriod.
+     * @param initialMillis the delay to use until the ingest rate has been measured, in milliseconds.
+     * @param targetBytes the number of bytes each snippet should hold.
+     * @param minMillis the shortest delay between flushes, in milliseconds.
+     * @param maxMillis the longest delay between flushes, in milliseconds.
+     */
+    public AdaptiveFlushPeriod(long initialMillis, long targetBytes, long minMillis, long maxMillis) {
+        if (minMillis < 1 || maxMillis < minMillis || targetBytes < 1) {
+            throw new IllegalArgumentException("Flush bounds must satisfy 1 <= min <= max and target must be positive");
+        }
+        m_targetBytes = targetBytes;
+        m_minMillis = minMillis;
+        m_maxMillis = maxMillis;
+        m_nextDelayMillis = clamp(initialMillis);
+        m_bytesPerSecond = -1.0;
+    }
+
+    /**
+     * Records the growth of the recording seen by a flush and works out the delay before the next one.
+     * @param newBytes the number of bytes the recording grew by since the previous flush.
+     * @param elapsedNanos the time since the previous flush, in nanoseconds.
+     * @return the delay before the next flush, in milliseconds.
+     */
+    public synchronized long update(long newBytes, long elapsedNanos) {
+        if (elapsedNanos > 0 && newBytes > 0) {
+            double rate = newBytes * 1000000000.0 / elapsedNanos;
+            m_bytesPerSecond = m_bytesPerSecond < 0 ? rate : SMOOTHING * rate + (1.0 - SMOOTHING) * m_bytesPerSecond;
+            m_nextDelayMillis = clamp((long) (m_targetBytes * 1000.0 / m_bytesPerSecond));
+        }
+        return m_nextDelayMillis;
+    }
+
+    /**
+     * Returns the delay before the next flush.
+     * @return the next delay in milliseconds.
+     */
+    public synchronized long getNextDelayMillis() {
+        return m_nextDelayMillis;
+    }
+
+    /**
+     * Returns the smoothed ingest rate.
+     * @return the ingest rate in bytes per second, or a negative value if it has not been measured.
+     */
+    public synchronized double getBytesPerSecond() {
+        return m_bytesPerSecond;
+    }
+
+    /**
+     * Keeps a delay within the configured bounds.
+     * @param millis the delay to bound.
+     * @return the bounded delay.
+     */
+    private long clamp(long millis) {
+        return Math.max(m_minMillis, Math.min(m_maxMillis, millis));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString() {
+        return "rateKBps=" + String.format("%.1f", m_bytesPerSecond / 1024.0) + " nextDelayMs=" + m_nextDelayMillis;
+    }
+}
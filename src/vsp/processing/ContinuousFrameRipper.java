@@ -0,0 +1,244 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rips frames from a whole recording with a single long-lived FFMPEG process, into the recording's {@link FrameSink}.
+ * Snippets of the recording are written to the process's standard input in the order they are fed, on a thread owned
+ * by the ripper, so the caller never blocks on FFMPEG.  The process is only restarted if it dies or stops accepting
+ * input, and frame numbering carries on after the last frame the previous process delivered to the sink, so the new
+ * process cannot reuse a frame number.  The ripper holds the sink until it is closed.
+ *
+ * @author Keith
+ */
+public class ContinuousFrameRipper {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(ContinuousFrameRipper.class.getName());
+
+    /** The time of the recording's first frame, in milliseconds since Jan 1 1970. */
+    private final long m_startTime;
+
+    /** The frames per second rate to rip at. */
+    private final int m_fps;
+
+    /** The image quality to rip to. */
+    private final int m_quality;
+
+    /** The sink frames are passed to, retained for this ripper. */
+    private final SharedFrameSink m_sink;
+
+    /** The statistics on the cost of copying snippets into the process. */
+    private final FlushStatistics m_flushStatistics;
+
+    /** The index to record frame timestamps in, or null to not record them. */
+    private final FrameTimestampWriter m_timestamps;
+
+    /** The thread that writes snippets into the process. */
+    private final ExecutorService m_feeder;
+
+    /** The running FFMPEG process, or null if none has been started. */
+    private Process m_process;
+
+    /** The reader passing the running process's frames to the sink. */
+    private FramePipeReader m_frames;
+
+    /** The number of the first frame of the running process, or of the next process if none is running. */
+    private long m_firstFrameNumber;
+
+    /** The standard input of the running FFMPEG process. */
+    private WritableByteChannel m_processInput;
+
+    /** Whether the running process has been sent a snippet with its header yet. */
+    private boolean m_headerSent;
+
+    /** The number of times the process has been restarted after a failure. */
+    private int m_restartCount;
+
+    /**
+     * Creates a new ContinuousFrameRipper.  No process is started until the first snippet is fed.
+     * @param startTime the time of the recording's first frame, in milliseconds since Jan 1 1970.
+     * @param fps the frames per second rate to rip at.
+     * @param quality the image quality to rip to.
+     * @param sink the sink to pass frames to, which the ripper retains until it is closed.
+     * @param flushStatistics the statistics to record snippet copy costs in.
+     * @param timestamps the index to record frame timestamps in, or null to not record them.
+     */
+    public ContinuousFrameRipper(long startTime, int fps, int quality, SharedFrameSink sink,
+            FlushStatistics flushStatistics, FrameTimestampWriter timestamps) {
+        m_startTime = startTime;
+        m_fps = fps;
+        m_quality = quality;
+        m_sink = sink.retain();
+        m_firstFrameNumber = 1;
+        m_flushStatistics = flushStatistics;
+        m_timestamps = timestamps;
+        m_feeder = Executors.newSingleThreadExecutor();
+        m_restartCount = 0;
+    }
+
+    /**
+     * Queues a snippet of the recording to be written to the FFMPEG process.  Snippets are written in the order they
+     * are fed and should be contiguous.
+     * @param snippet the next snippet of the recording.
+     */
+    public void feed(final RecordingSnippet snippet) {
+        m_feeder.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnippet(snippet);
+            }
+        });
+    }
+
+    /**
+     * Closes the process's input once all fed snippets have been written, letting FFMPEG finish the final frames,
+     * waits for them to reach the sink and releases the sink.
+     */
+    public void close() {
+        m_feeder.execute(new Runnable() {
+            @Override
+            public void run() {
+                stopProcess();
+            }
+        });
+        m_feeder.shutdown();
+        try {
+            m_feeder.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "Interrupted waiting for frame ripper to finish", ex);
+            Thread.currentThread().interrupt();
+        }
+        try {
+            m_sink.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error closing frame sink", ex);
+        }
+    }
+
+    /**
+     * Returns the number of times the FFMPEG process has been restarted after a failure.
+     * @return the number of restarts.
+     */
+    public synchronized int getRestartCount() {
+        return m_restartCount;
+    }
+
+    /**
+     * Writes a snippet into the process, starting or restarting the process as needed.  A snippet that fails to be
+     * written is retried once against a fresh process.  The frames ripped from earlier snippets are made visible to
+     * readers of the sink first.
+     * @param snippet the snippet to write.
+     */
+    private void writeSnippet(RecordingSnippet snippet) {
+        try {
+            m_sink.flush();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to flush frame sink", ex);
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                ensureProcessRunning();
+                long copyStart = System.nanoTime();
+                if (m_headerSent) {
+                    snippet.transferBodyTo(m_processInput);
+                    m_flushStatistics.recordFlush(snippet.getLength(), System.nanoTime() - copyStart);
+                } else {
+                    // A fresh process needs the stream tables up front, after that the stream carries them itself.
+                    snippet.transferTo(m_processInput);
+                    m_flushStatistics.recordFlush(snippet.getHeaderLength() + snippet.getLength(), System.nanoTime() - copyStart);
+                    m_headerSent = true;
+                }
+                LOGGER.info("Flush copy statistics: " + m_flushStatistics);
+                return;
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "FFMPEG stopped accepting input, restarting it: " + snippet, ex);
+                abandonProcess();
+            }
+        }
+        LOGGER.severe("Dropped snippet after repeated FFMPEG failures: " + snippet);
+    }
+
+    /**
+     * Starts a new FFMPEG process if none is running, numbering its frames after the ones already delivered.
+     * @throws IOException if the process cannot be started.
+     */
+    private void ensureProcessRunning() throws IOException {
+        if (m_process != null && isAlive(m_process)) {
+            return;
+        }
+        if (m_process != null) {
+            LOGGER.warning("FFMPEG exited unexpectedly with code " + m_process.exitValue() + ", restarting it");
+            abandonProcess();
+        }
+        LOGGER.info("Launching continuous FFMPEG Process, starting at frame " + m_firstFrameNumber);
+        m_process = FfmpegVideoProcessor.ripFramesFromStdin(m_fps, m_quality, m_firstFrameNumber, m_timestamps);
+        // Frames are numbered from 1, so a restarted process's first frame follows the ones already delivered.
+        long processStartTime = m_startTime + (m_firstFrameNumber - 1) * 1000L / m_fps;
+        m_frames = FramePipeReader.start(m_process, m_sink, m_firstFrameNumber, processStartTime, m_fps);
+        m_processInput = Channels.newChannel(m_process.getOutputStream());
+        m_headerSent = false;
+    }
+
+    /** Closes the input of the running process and waits for its remaining frames to reach the sink. */
+    private void stopProcess() {
+        if (m_process == null) {
+            return;
+        }
+        try {
+            m_processInput.close();
+            LOGGER.info("Waiting for continuous FFMPEG Process...");
+            m_firstFrameNumber += m_frames.waitFor();
+            m_sink.flush();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error finishing FFMPEG frames", ex);
+            m_frames.abandon();
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.SEVERE, "Frame Processing thread interrupted", ex);
+            m_frames.abandon();
+            Thread.currentThread().interrupt();
+        }
+        m_process = null;
+        m_frames = null;
+        m_processInput = null;
+    }
+
+    /** Kills the current process after a failure, so that the next write starts a new one. */
+    private synchronized void abandonProcess() {
+        if (m_process == null) {
+            return;
+        }
+        try {
+            m_processInput.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Error closing input of failed FFMPEG process", ex);
+        }
+        m_frames.abandon();
+        m_firstFrameNumber += m_frames.getFrameCount();
+        m_process = null;
+        m_frames = null;
+        m_processInput = null;
+        m_restartCount++;
+    }
+
+    /**
+     * Returns whether a process is still running.
+     * @param process the process to check.
+     * @return true if the process has not exited.
+     */
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException ex) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package vsp.processing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Something that handles the datagrams received on a socket registered with the {@link MulticastReceiver}.
+ *
+ * @author Keith
+ */
+public interface DatagramConsumer {
+
+    /**
+     * Receives a datagram, on the receiver's thread.  The buffer is reused for the next datagram once this returns,
+     * and every socket shares the one thread, so this should do as little as possible.
+     * @param datagram the datagram, from the buffer's position to its limit.
+     */
+    public void accept(ByteBuffer datagram);
+}
@@ -0,0 +1,76 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link FrameSink} that writes every frame to its own file in a directory, named from the frame index.
+ *
+ * @author Keith
+ */
+public class DirectoryFrameSink implements FrameSink {
+
+    /** The directory frames are written to. */
+    private final Path m_directory;
+
+    /** The format of frame file names, given the frame index as a long. */
+    private final String m_fileNamePattern;
+
+    /**
+     * Creates a new DirectoryFrameSink, creating the directory if it does not exist.
+     * @param directory the directory to write frames to.
+     * @param fileNamePattern the format of frame file names, such as {@code %010d.jpg}, given the frame index.
+     * @throws IOException if the directory cannot be created.
+     */
+    public DirectoryFrameSink(String directory, String fileNamePattern) throws IOException {
+        m_directory = Files.createDirectories(Paths.get(directory));
+        m_fileNamePattern = fileNamePattern;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void accept(long frameIndex, long timestamp, ByteBuffer frame) throws IOException {
+        Path file = m_directory.resolve(getFileName(frameIndex));
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (frame.hasRemaining()) {
+                out.write(frame);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the file a frame is written to.
+     * @param frameIndex the index of the frame.
+     * @return the file name, formatted from the frame index by the file name pattern.
+     */
+    protected String getFileName(long frameIndex) {
+        return String.format(m_fileNamePattern, frameIndex);
+    }
+
+    /**
+     * Returns true, since each frame goes to its own file named from its index.
+     * @return true.
+     */
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+        // Every frame file is complete as soon as it is written.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        // Every frame file is closed as soon as it is written.
+    }
+}
@@ -0,0 +1,104 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link FrameSink} that passes every frame on to several other sinks, for example to a directory on disk and a
+ * ring buffer for live display at once.
+ *
+ * @author Keith
+ */
+public class FanOutFrameSink implements FrameSink {
+
+    /** The sinks frames are passed on to. */
+    private final List<FrameSink> m_sinks;
+
+    /**
+     * Creates a new FanOutFrameSink.
+     * @param sinks the sinks to pass frames on to, in order.
+     */
+    public FanOutFrameSink(FrameSink... sinks) {
+        this(Arrays.asList(sinks));
+    }
+
+    /**
+     * Creates a new FanOutFrameSink.
+     * @param sinks the sinks to pass frames on to, in order.
+     */
+    public FanOutFrameSink(List<FrameSink> sinks) {
+        m_sinks = new ArrayList<>(sinks);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void accept(long frameIndex, long timestamp, ByteBuffer frame) throws IOException {
+        for (FrameSink sink : m_sinks) {
+            // Each sink gets its own view of the bytes, so one consuming them does not hide them from the next.
+            sink.accept(frameIndex, timestamp, frame.duplicate());
+        }
+    }
+
+    /**
+     * Returns whether every sink passed to accepts concurrent, unordered frames.
+     * @return true if all of the sinks are concurrent.
+     */
+    @Override
+    public boolean isConcurrent() {
+        for (FrameSink sink : m_sinks) {
+            if (!sink.isConcurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flushes every sink, even if flushing one of them fails.
+     * @throws IOException the first failure to flush a sink.
+     */
+    @Override
+    public void flush() throws IOException {
+        IOException failure = null;
+        for (FrameSink sink : m_sinks) {
+            try {
+                sink.flush();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes every sink, even if closing one of them fails.
+     * @throws IOException the first failure to close a sink.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FrameSink sink : m_sinks) {
+            try {
+                sink.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
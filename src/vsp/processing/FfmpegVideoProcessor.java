@@ -1,9 +1,13 @@
 package vsp.processing;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import vsp.data.FileVideoSource;
+import vsp.data.FrameReader;
 import vsp.data.FrameRecording;
 import vsp.util.VspProperties;
 
@@ -13,6 +17,12 @@ import vsp.util.VspProperties;
  */
 public class FfmpegVideoProcessor {
 
+    /** The file name format of frames ripped in continuous mode. */
+    public static final String CONTINUOUS_FRAME_PATTERN = "%010d.jpg";
+
+    /** The file name format of frames ripped from a snippet, given the batch index and the frame number. */
+    public static final String SNIPPET_FRAME_PATTERN = "%06d-%06d.jpg";
+
     /**
      * Rips the frames from the supplied source video at the specified FPS (Frames Per Second) and the supplied image
      * quality value and writes them to disk at the specified output directory.  Images will be written out as .jpg
@@ -33,11 +43,14 @@ public class FfmpegVideoProcessor {
      */
     public static Process ripFrames(FileVideoSource sourceVideo, int fps, int quality, String outputDir, int batchIndex) throws IOException {
         // Sample command String:
-        //      ffmpeg -i toRip.ts -q 3 -r 30 -f image2 ./output/image-%%08d.jpg
+        //      ffmpeg -nostats -loglevel error -i toRip.ts -q 3 -r 30 -f image2 ./output/image-%%08d.jpg
         VspProperties props = VspProperties.getInstance();
 
         List<String> command = new ArrayList<>();
         command.add(props.getFfmpegPath());      // FFMPEG command
+        command.add("-nostats");                 // No progress reporting
+        command.add("-loglevel");                // Log Level Flag
+        command.add("error");                    // Log Level Value
         command.add("-i");                       // Input File Flag
         command.add(sourceVideo.getFilepath());  // File Value
         command.add("-q");                       // Quality Flag
@@ -46,16 +59,187 @@ public class FfmpegVideoProcessor {
         command.add(String.valueOf(fps));        // FPS value.
         command.add("-f");                       // Output image Format
         command.add("image2");                   // Output image Format
-        command.add(outputDir + String.format("%06d", batchIndex) + "-%04d.jpg"); // Output Directory and File Format - (DO WE NEED %% here?  or just %?)
+        command.add(outputDir + String.format("%06d", batchIndex) + "-%06d.jpg"); // Output Directory and File Format - (DO WE NEED %% here?  or just %?)
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        Process process = pb.start();
+        ProcessHelper.consumeErrors(process, "FFMPEG");
+        return process;
+    }
+
+    /**
+     * Starts an FFMPEG process that rips frames from a transport stream written to its standard input, at the
+     * specified FPS (Frames Per Second) and image quality, and writes them as JPEG images to its standard output for a
+     * {@link FramePipeReader} to pass on to a {@link FrameSink}.  The caller is responsible for writing the video to
+     * {@link Process#getOutputStream()} and closing it once the input is complete, and for reading the frames.  The
+     * process may be fed a single snippet or, for as long as the input stays open, a whole recording.
+     * <p>
+     * When a timestamp index is given, the presentation timestamp of every frame is recorded in it under the frame's
+     * key, counting on from the first key.  Console output is then kept at the info level, which the timestamps are
+     * logged at, and is read as it is written.  Otherwise it is reduced to errors only.
+     *
+     * @param fps The number of frames to rip per second of video.
+     * @param quality The image quality to rip to.  Values range from 1 to 31, with 1 being the highest quality and 31
+     * being the lowest quality.
+     * @param firstKey the key of the process's first frame in the timestamp index.
+     * @param timestamps the index to record frame timestamps in, or null to not record them.
+     *
+     * @return The process started to rip the frames.
+     *
+     * @throws IOException if the process cannot be started.
+     */
+    public static Process ripFramesFromStdin(int fps, int quality, long firstKey, FrameTimestampWriter timestamps)
+            throws IOException {
+        // Sample command String:
+        //      ffmpeg -nostats -loglevel error -f mpegts -i pipe:0 -q 3 -r 30 -vcodec mjpeg -f image2pipe pipe:1
+        VspProperties props = VspProperties.getInstance();
+
+        List<String> command = new ArrayList<>();
+        command.add(props.getFfmpegPath());      // FFMPEG command
+        command.add("-nostats");                 // No progress reporting
+        command.add("-loglevel");                // Log Level Flag
+        command.add(timestamps != null ? "info" : "error"); // Log Level Value, showinfo logs at info
+        command.add("-f");                       // Input Format Flag, there is no file extension to probe
+        command.add("mpegts");                   // Input Format Value
+        command.add("-i");                       // Input File Flag
+        command.add("pipe:0");                   // Standard In
+        command.add("-q");                       // Quality Flag
+        command.add(String.valueOf(quality));    // Quality Value
+        addFrameRate(command, fps, timestamps != null);
+        command.add("-vcodec");                  // Output Codec Flag
+        command.add("mjpeg");                    // JPEG frames
+        command.add("-f");                       // Output image Format
+        command.add("image2pipe");               // Output image Format
+        command.add("pipe:1");                   // Standard Out
 
         ProcessBuilder pb = new ProcessBuilder(command);
         Process process = pb.start();
-        ProcessHelper.consumeOutput(process);
+        if (timestamps != null) {
+            ShowinfoTimestampParser.start(process, timestamps, firstKey);
+        } else {
+            ProcessHelper.consumeErrors(process, "FFMPEG");
+        }
         return process;
     }
 
-    /** This method is not implemented and will throw an Unsupported Operation Exception. */
-    public void buildVideoFromFrames() {
-        throw new UnsupportedOperationException("Not supported yet.");
+    /**
+     * Returns the timestamp index key of a frame ripped from a snippet, which orders frames the way their
+     * {@code batch-frame} file names do.  The batch index takes the upper 32 bits, so any number of frames in a batch
+     * keeps its own key.
+     * @param batchIndex the index of the snippet.
+     * @param frameNumber the number of the frame within the snippet, counting from 1.
+     * @return the frame key.
+     */
+    public static long snippetFrameKey(int batchIndex, int frameNumber) {
+        return ((long) batchIndex << 32) | frameNumber;
+    }
+
+    /**
+     * Returns the file name of a frame ripped from a snippet, as {@link #ripFrames} names it, from its key.
+     * @param frameKey the key of the frame, from {@link #snippetFrameKey(int, int)}.
+     * @return the {@code batch-frame} file name of the frame.
+     */
+    public static String snippetFrameFileName(long frameKey) {
+        return String.format(SNIPPET_FRAME_PATTERN, frameKey >>> 32, frameKey & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Adds the output frame rate to a command.  When timestamps are wanted, the rate is set by an {@code fps} filter
+     * followed by {@code showinfo}, which logs each output frame's presentation timestamp, and input timestamps are
+     * copied through so they are the stream's own.
+     * @param command the command to add to.
+     * @param fps the number of frames to rip per second of video.
+     * @param timestamps true to log the timestamp of every frame.
+     */
+    private static void addFrameRate(List<String> command, int fps, boolean timestamps) {
+        if (timestamps) {
+            command.add("-copyts");              // Keep the stream's presentation timestamps
+            command.add("-vf");                  // Video Filter Flag
+            command.add("fps=" + fps + ",showinfo"); // Frame rate, then log every frame's timestamp
+        } else {
+            command.add("-r");                   // 'Rate' (FPS) Flag
+            command.add(String.valueOf(fps));    // FPS value.
+        }
+    }
+
+    /**
+     * Encodes the frames of a recording into a single H.264 video, streaming them to FFMPEG's standard input as they
+     * are read so no copy of the frames is made on disk.  Frame N of the reader becomes frame N of the video, shown at
+     * N / fps seconds, and is recorded in the timestamp index with that presentation time and its original wall clock
+     * time, so the video can still be searched by time.  FFMPEG is run at the lowest CPU priority where the platform
+     * allows it.
+     *
+     * @param frames The frames to encode.
+     * @param fps The frame rate of the video.
+     * @param crf The constant rate factor to encode at.  Lower values are higher quality.
+     * @param preset The encoder preset, trading encoding time for size.
+     * @param outputFile The MP4 file to write the video to.
+     * @param timestamps The index to record the time of every frame in.
+     *
+     * @return The number of frames encoded.
+     *
+     * @throws IOException if the process cannot be started, a frame cannot be read, or FFMPEG fails.
+     * @throws InterruptedException if interrupted while waiting for the process to finish.
+     */
+    public static int buildVideoFromFrames(FrameReader frames, int fps, int crf, String preset, String outputFile,
+            FrameTimestampWriter timestamps) throws IOException, InterruptedException {
+        // Sample command String:
+        //      nice -n 19 ffmpeg -nostats -loglevel error -y -f image2pipe -vcodec mjpeg -framerate 30 -i pipe:0
+        //          -c:v libx264 -preset medium -crf 23 -pix_fmt yuv420p -f mp4 video.mp4
+        VspProperties props = VspProperties.getInstance();
+
+        List<String> command = new ArrayList<>();
+        if (!System.getProperty("os.name").startsWith("Windows")) {
+            command.add("nice");                 // Lowest CPU priority
+            command.add("-n");
+            command.add("19");
+        }
+        command.add(props.getFfmpegPath());      // FFMPEG command
+        command.add("-nostats");                 // No progress reporting
+        command.add("-loglevel");                // Log Level Flag
+        command.add("error");                    // Log Level Value
+        command.add("-y");                       // Overwrite the output
+        command.add("-f");                       // Input Format Flag
+        command.add("image2pipe");               // Concatenated images
+        command.add("-vcodec");                  // Input Codec Flag
+        command.add("mjpeg");                    // JPEG frames
+        command.add("-framerate");               // Input Frame Rate Flag
+        command.add(String.valueOf(fps));        // FPS value.
+        command.add("-i");                       // Input File Flag
+        command.add("pipe:0");                   // Standard In
+        command.add("-c:v");                     // Output Codec Flag
+        command.add("libx264");                  // H.264
+        command.add("-preset");                  // Encoder Preset Flag
+        command.add(preset);                     // Encoder Preset Value
+        command.add("-crf");                     // Constant Rate Factor Flag
+        command.add(String.valueOf(crf));        // Constant Rate Factor Value
+        command.add("-pix_fmt");                 // Pixel Format Flag
+        command.add("yuv420p");                  // Playable everywhere
+        command.add("-f");                       // Output Format Flag, the file may not have an .mp4 extension
+        command.add("mp4");                      // Output Format Value
+        command.add(outputFile);                 // Output File
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        Process process = pb.start();
+        ProcessHelper.consumeErrors(process, "FFMPEG");
+
+        int frameCount = frames.getFrameCount();
+        try (WritableByteChannel input = Channels.newChannel(process.getOutputStream())) {
+            for (int i = 0; i < frameCount; i++) {
+                ByteBuffer frame = frames.getFrame(i);
+                while (frame.hasRemaining()) {
+                    input.write(frame);
+                }
+                timestamps.addFrame(i, i * FrameTimestampWriter.PTS_TICKS_PER_SECOND / fps, frames.getTimestamp(i));
+            }
+        } catch (IOException ex) {
+            process.destroy();
+            throw ex;
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("FFMPEG exited with code " + exitCode + " encoding " + outputFile);
+        }
+        return frameCount;
     }
 }
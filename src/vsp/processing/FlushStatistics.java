@@ -0,0 +1,95 @@
+package vsp.processing;
+
+/**
+ * Running statistics on the cost of copying newly recorded stream data out of a recording file on each flush.
+ *
+ * @author Keith
+ */
+public class FlushStatistics {
+
+    /** The number of flushes recorded. */
+    private long m_flushCount;
+
+    /** The number of bytes copied by the most recent flush. */
+    private long m_lastFlushBytes;
+
+    /** The time in nanoseconds spent copying during the most recent flush. */
+    private long m_lastFlushNanos;
+
+    /** The total number of bytes copied by all flushes. */
+    private long m_totalFlushBytes;
+
+    /** The total time in nanoseconds spent copying by all flushes. */
+    private long m_totalFlushNanos;
+
+    /**
+     * Records a completed flush.
+     * @param bytes the number of bytes copied.
+     * @param nanos the time in nanoseconds that the copy took.
+     */
+    public synchronized void recordFlush(long bytes, long nanos) {
+        m_flushCount++;
+        m_lastFlushBytes = bytes;
+        m_lastFlushNanos = nanos;
+        m_totalFlushBytes += bytes;
+        m_totalFlushNanos += nanos;
+    }
+
+    /**
+     * Returns the number of flushes recorded.
+     * @return the number of flushes recorded.
+     */
+    public synchronized long getFlushCount() {
+        return m_flushCount;
+    }
+
+    /**
+     * Returns the number of bytes copied by the most recent flush.
+     * @return the number of bytes copied by the most recent flush.
+     */
+    public synchronized long getLastFlushBytes() {
+        return m_lastFlushBytes;
+    }
+
+    /**
+     * Returns the time in nanoseconds spent copying during the most recent flush.
+     * @return the time in nanoseconds spent copying during the most recent flush.
+     */
+    public synchronized long getLastFlushNanos() {
+        return m_lastFlushNanos;
+    }
+
+    /**
+     * Returns the total number of bytes copied by all flushes.
+     * @return the total number of bytes copied by all flushes.
+     */
+    public synchronized long getTotalFlushBytes() {
+        return m_totalFlushBytes;
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent copying by all flushes.
+     * @return the total time in nanoseconds spent copying by all flushes.
+     */
+    public synchronized long getTotalFlushNanos() {
+        return m_totalFlushNanos;
+    }
+
+    /**
+     * Returns the average copy throughput over all flushes in megabytes per second, or 0 if nothing was recorded.
+     * @return the average copy throughput over all flushes in megabytes per second.
+     */
+    public synchronized double getAverageThroughputMBps() {
+        if (m_totalFlushNanos == 0) {
+            return 0.0;
+        }
+        return (m_totalFlushBytes / (1024.0 * 1024.0)) / (m_totalFlushNanos / 1000000000.0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString() {
+        return "flushes=" + m_flushCount + " lastBytes=" + m_lastFlushBytes + " lastMicros=" + (m_lastFlushNanos / 1000L)
+                + " totalBytes=" + m_totalFlushBytes + " totalMicros=" + (m_totalFlushNanos / 1000L);
+    }
+}
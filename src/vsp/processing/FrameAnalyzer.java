@@ -0,0 +1,26 @@
+package vsp.processing;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Something that inspects the pixels of captured frames.  Frames are captured as the encoded bytes FFMPEG produced,
+ * and are only decoded for an analyzer that asks for them, so frames no analyzer needs cost nothing to decode.
+ *
+ * @author Keith
+ */
+public interface FrameAnalyzer {
+
+    /**
+     * Returns whether the analyzer wants the pixels of a frame.  Returning false skips decoding the frame.
+     * @param frameIndex the index of the frame in the capture.
+     * @return true if the frame should be decoded and passed to {@link #analyze(int, BufferedImage)}.
+     */
+    public boolean wantsPixels(int frameIndex);
+
+    /**
+     * Analyzes the pixels of a frame.
+     * @param frameIndex the index of the frame in the capture.
+     * @param image the decoded frame.
+     */
+    public void analyze(int frameIndex, BufferedImage image);
+}
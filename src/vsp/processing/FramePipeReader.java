@@ -0,0 +1,160 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the JPEG frames an FFMPEG process writes to its standard output and passes them to a {@link FrameSink}.  The
+ * process's first frame is given the first key, and each later frame the next key on, the same keys the process's
+ * frame timestamps are recorded under.  Frames are timestamped at the frame rate from the estimated time of the
+ * process's first frame, as {@link vsp.data.DirectoryFrameReader} estimates them, and the recording's
+ * {@link vsp.data.FrameTimestampIndex} refines them where it is complete.  The time frames are read is no guide, since a
+ * snippet's frames are all read within moments of each other, long after they were received.
+ * <p>
+ * The output is read on its own thread, so that whoever writes the process's input never waits on the sink, and a
+ * full output pipe cannot stall FFMPEG.  If the sink fails the process is killed, since its frames have nowhere to go.
+ *
+ * @author Keith
+ */
+public class FramePipeReader implements Runnable {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(FramePipeReader.class.getName());
+
+    /** The process the frames are read from. */
+    private final Process m_process;
+
+    /** The sink the frames are passed to. */
+    private final FrameSink m_sink;
+
+    /** The key of the process's first frame. */
+    private final long m_firstKey;
+
+    /** The estimated time of the process's first frame, in milliseconds since Jan 1 1970. */
+    private final long m_startTime;
+
+    /** The frames per second the process rips at. */
+    private final int m_fps;
+
+    /** The thread reading the frames. */
+    private Thread m_thread;
+
+    /** The number of frames passed to the sink.  Guarded by this reader. */
+    private long m_frameCount;
+
+    /** The failure of the sink, or null if it has not failed.  Guarded by this reader. */
+    private IOException m_failure;
+
+    /**
+     * Creates a new FramePipeReader.
+     * @param process the FFMPEG process writing JPEG frames to its standard output.
+     * @param sink the sink to pass frames to.
+     * @param firstKey the key of the process's first frame.
+     * @param startTime the estimated time of the process's first frame, in milliseconds since Jan 1 1970.
+     * @param fps the frames per second the process rips at.
+     */
+    public FramePipeReader(Process process, FrameSink sink, long firstKey, long startTime, int fps) {
+        m_process = process;
+        m_sink = sink;
+        m_firstKey = firstKey;
+        m_startTime = startTime;
+        m_fps = fps;
+        m_frameCount = 0;
+    }
+
+    /**
+     * Starts reading the frames of a process on a new daemon thread.
+     * @param process the FFMPEG process writing JPEG frames to its standard output.
+     * @param sink the sink to pass frames to.
+     * @param firstKey the key of the process's first frame.
+     * @param startTime the estimated time of the process's first frame, in milliseconds since Jan 1 1970.
+     * @param fps the frames per second the process rips at.
+     * @return the reader, to wait for the frames with.
+     */
+    public static FramePipeReader start(Process process, FrameSink sink, long firstKey, long startTime, int fps) {
+        FramePipeReader reader = new FramePipeReader(process, sink, firstKey, startTime, fps);
+        reader.m_thread = new Thread(reader, "FFMPEG Frame Reader");
+        reader.m_thread.setDaemon(true);
+        reader.m_thread.start();
+        return reader;
+    }
+
+    /** Reads frames until the process closes its output. */
+    @Override
+    public void run() {
+        try (InputStream output = m_process.getInputStream()) {
+            JpegFrameScanner scanner = new JpegFrameScanner(output);
+            ByteBuffer frame;
+            while ((frame = scanner.nextFrame()) != null) {
+                long key;
+                long timestamp;
+                synchronized (this) {
+                    key = m_firstKey + m_frameCount;
+                    timestamp = m_startTime + m_frameCount * 1000L / m_fps;
+                }
+                try {
+                    m_sink.accept(key, timestamp, frame);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, "Unable to store frame " + key + ", stopping FFMPEG", ex);
+                    synchronized (this) {
+                        m_failure = ex;
+                    }
+                    m_process.destroy();
+                    return;
+                }
+                synchronized (this) {
+                    m_frameCount++;
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "FFMPEG output closed", ex);
+        }
+    }
+
+    /**
+     * Waits for the process to exit and every frame it wrote to be passed to the sink.
+     * @return the number of frames passed to the sink.
+     * @throws IOException if the sink failed to store a frame.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public long waitFor() throws IOException, InterruptedException {
+        m_process.waitFor();
+        m_thread.join();
+        synchronized (this) {
+            if (m_failure != null) {
+                throw new IOException("Frame sink failed", m_failure);
+            }
+            return m_frameCount;
+        }
+    }
+
+    /**
+     * Kills the process after a failure and waits for the frames it had already written to be passed to the sink, so
+     * that nothing reaches the sink after this returns.  Failures are not reported, the caller already has one.
+     */
+    public void abandon() {
+        m_process.destroy();
+        boolean interrupted = false;
+        while (m_thread.isAlive()) {
+            try {
+                m_thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of frames passed to the sink so far.
+     * @return the number of frames read.
+     */
+    public synchronized long getFrameCount() {
+        return m_frameCount;
+    }
+}
@@ -0,0 +1,15 @@
+package vsp.processing;
+
+/**
+ * The ways a recording's transport stream can be handed to FFMPEG for frame ripping.
+ * @author Keith
+ */
+public enum FrameRipMode {
+    /** A new FFMPEG process is started for every flushed snippet of the recording. */
+    SNIPPET,
+    /**
+     * A single FFMPEG process is fed the whole recording through a pipe for the length of the session.  Each recording
+     * has its own process and feeder thread, outside the frame rip scheduler's shared slots.
+     */
+    CONTINUOUS;
+}
@@ -0,0 +1,388 @@
+package vsp.processing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.util.VspProperties;
+
+/**
+ * A process-wide scheduler for snippet frame ripping.  A fixed number of worker threads run {@link SnippetRipJob}s
+ * from a bounded queue shared by every {@link StreamRecordingManager}, which caps the number of FFMPEG processes
+ * running at once.  When the queue is full a new job is handled according to the configured
+ * {@link RipSaturationPolicy}.  Submission never waits, since recordings submit from the scheduler threads they share
+ * with every other stream; a job that is refused is held back by its recording and offered again at its next flush.
+ * <p>
+ * A recording whose frame sink stores frames in the order they arrive has its jobs run one at a time, oldest first,
+ * while jobs of other recordings carry on around them.
+ * <p>
+ * The workers are daemon threads, so a process that is exiting must {@link #shutdown(long, TimeUnit)} the scheduler
+ * to have the jobs already queued run to the end.
+ *
+ * @author Keith
+ */
+public class FrameRipScheduler {
+
+    /** The Singleton instance of FrameRipScheduler. */
+    private static FrameRipScheduler INSTANCE;
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(FrameRipScheduler.class.getName());
+
+    /** The lowest frame rate the {@link RipSaturationPolicy#REDUCE_FPS} policy will reduce a job to. */
+    private static final int MIN_REDUCED_FPS = 1;
+
+    /** The jobs waiting for a worker, oldest first.  Guarded by this scheduler. */
+    private final LinkedList<SnippetRipJob> m_queue;
+
+    /** The worker threads. */
+    private final List<Thread> m_workers;
+
+    /** Whether the workers are to stop once the queue is empty.  Guarded by this scheduler. */
+    private boolean m_shuttingDown;
+
+    /** The recordings with an ordered job running, whose other jobs must wait.  Guarded by this scheduler. */
+    private final Set<Object> m_orderedOwners;
+
+    /** The maximum number of jobs that may wait for a worker. */
+    private final int m_queueCapacity;
+
+    /** The policy applied when the queue is full. */
+    private final RipSaturationPolicy m_policy;
+
+    /** The number of jobs that have been started by a worker. */
+    private long m_startedJobs;
+
+    /** The number of snippets merged into already queued jobs. */
+    private long m_coalescedSnippets;
+
+    /** The number of jobs that were ripped at a reduced frame rate. */
+    private long m_reducedFpsJobs;
+
+    /** The number of snippets dropped without being ripped. */
+    private long m_droppedSnippets;
+
+    /** The number of times a job was refused and held back by its recording. */
+    private long m_refusedOffers;
+
+    /** The total time, in nanoseconds, started jobs spent in the queue. */
+    private long m_totalWaitNanos;
+
+    /** The longest time, in nanoseconds, a started job spent in the queue. */
+    private long m_maxWaitNanos;
+
+    /** The greatest number of jobs that have been in the queue at once. */
+    private int m_maxQueueDepth;
+
+    /**
+     * Creates a new FrameRipScheduler and starts its workers.
+     * @param workerCount the number of jobs that may run at once.
+     * @param queueCapacity the maximum number of jobs that may wait for a worker.
+     * @param policy the policy applied when the queue is full.
+     */
+    FrameRipScheduler(int workerCount, int queueCapacity, RipSaturationPolicy policy) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Worker count and queue capacity must be at least 1");
+        }
+        m_queue = new LinkedList<>();
+        m_orderedOwners = new HashSet<>();
+        m_queueCapacity = queueCapacity;
+        m_policy = policy;
+        m_workers = new ArrayList<>();
+        m_shuttingDown = false;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(new Worker(), "Frame Rip Worker " + i);
+            worker.setDaemon(true);
+            m_workers.add(worker);
+            worker.start();
+        }
+        LOGGER.info("Started frame rip scheduler: workers=" + workerCount + " capacity=" + queueCapacity + " policy=" + policy);
+    }
+
+    /**
+     * Returns the Singleton instance of FrameRipScheduler, configured from the application properties.
+     * @return the Singleton instance of FrameRipScheduler.
+     */
+    public static synchronized FrameRipScheduler getInstance() {
+        if (INSTANCE == null) {
+            VspProperties props = VspProperties.getInstance();
+            INSTANCE = new FrameRipScheduler(props.getRipWorkerCount(), props.getRipQueueCapacity(), props.getRipSaturationPolicy());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Offers a job to be run by a worker, without waiting.  When the queue is full the saturation policy decides
+     * whether the job is merged into a queued one, dropped, or refused so that its recording holds it back.
+     * @param job the job to run.
+     * @return true if the job was taken care of, false if it was refused and should be offered again later.
+     */
+    public synchronized boolean offer(SnippetRipJob job) {
+        if (m_queue.size() >= m_queueCapacity) {
+            switch (m_policy) {
+                case COALESCE:
+                    if (coalesce(job)) {
+                        return true;
+                    }
+                    break;
+                case REDUCE_FPS:
+                    if (!job.isReduced()) {
+                        int reducedFps = Math.max(MIN_REDUCED_FPS, job.getFps() / 2);
+                        LOGGER.info("Rip queue saturated, reducing " + job.getSnippet() + " to " + reducedFps + " fps");
+                        job.reduceFps(reducedFps);
+                        m_reducedFpsJobs++;
+                    }
+                    break;
+                case DROP:
+                    m_droppedSnippets++;
+                    LOGGER.warning("Rip queue saturated, dropping " + job.getSnippet() + ": " + describeStatistics());
+                    job.discard();
+                    return true;
+                case BLOCK:
+                default:
+                    break;
+            }
+            m_refusedOffers++;
+            LOGGER.info("Rip queue saturated, holding back " + job.getSnippet() + ": " + describeStatistics());
+            return false;
+        }
+        enqueue(job);
+        return true;
+    }
+
+    /**
+     * Adds a job to the queue even if it is full.  This is for the jobs a recording is still holding back when it
+     * ends, which have no later flush to be offered at; the overflow is at most a job or two per ending recording.
+     * @param job the job to run.
+     */
+    public synchronized void add(SnippetRipJob job) {
+        enqueue(job);
+    }
+
+    /**
+     * Appends a job to the queue and wakes a worker.
+     * @param job the job to run.
+     */
+    private void enqueue(SnippetRipJob job) {
+        job.setEnqueueNanos(System.nanoTime());
+        m_queue.addLast(job);
+        m_maxQueueDepth = Math.max(m_maxQueueDepth, m_queue.size());
+        notifyAll();
+    }
+
+    /**
+     * Merges a job's snippet into the queued job of the same recording whose snippet it directly follows.
+     * @param job the job to merge.
+     * @return true if the job was merged and needs no further handling.
+     */
+    private boolean coalesce(SnippetRipJob job) {
+        Iterator<SnippetRipJob> it = m_queue.descendingIterator();
+        while (it.hasNext()) {
+            SnippetRipJob queued = it.next();
+            if (queued.getOwner() == job.getOwner()) {
+                if (queued.getSnippet().isFollowedBy(job.getSnippet())) {
+                    queued.coalesce(job.getSnippet());
+                    job.discard();
+                    m_coalescedSnippets++;
+                    LOGGER.info("Rip queue saturated, coalesced snippet into " + queued.getSnippet());
+                    return true;
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops the workers once every queued job has run, and waits for them to finish.  Jobs added meanwhile are still
+     * run, as long as a worker is left to run them.
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if every worker finished, false if the timeout passed first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            m_shuttingDown = true;
+            notifyAll();
+            LOGGER.info("Shutting down frame rip scheduler: " + describeStatistics());
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : m_workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                break;
+            }
+            worker.join(remainingMillis);
+        }
+        for (Thread worker : m_workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for and removes the oldest job that may run, recording how long it waited.  An ordered job may not run
+     * while another job of its recording is running.
+     * @return the next job to run, or null if the scheduler is shutting down and no job is left.
+     * @throws InterruptedException if interrupted while waiting for a job.
+     */
+    private synchronized SnippetRipJob take() throws InterruptedException {
+        SnippetRipJob job;
+        while ((job = removeRunnable()) == null) {
+            if (m_shuttingDown && m_queue.isEmpty()) {
+                return null;
+            }
+            wait();
+        }
+        if (job.isOrdered()) {
+            m_orderedOwners.add(job.getOwner());
+        }
+        long waitNanos = System.nanoTime() - job.getEnqueueNanos();
+        m_startedJobs++;
+        m_totalWaitNanos += waitNanos;
+        m_maxWaitNanos = Math.max(m_maxWaitNanos, waitNanos);
+        notifyAll();
+        LOGGER.info("Starting rip job after waiting " + (waitNanos / 1000000L) + " ms: " + describeStatistics());
+        return job;
+    }
+
+    /**
+     * Removes the oldest queued job that may run now.
+     * @return the job, or null if there is none.
+     */
+    private SnippetRipJob removeRunnable() {
+        Iterator<SnippetRipJob> it = m_queue.iterator();
+        while (it.hasNext()) {
+            SnippetRipJob job = it.next();
+            if (!m_orderedOwners.contains(job.getOwner())) {
+                it.remove();
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records that a job has finished, letting the next job of its recording run.
+     * @param job the finished job.
+     */
+    private synchronized void finished(SnippetRipJob job) {
+        if (job.isOrdered()) {
+            m_orderedOwners.remove(job.getOwner());
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of jobs waiting for a worker.
+     * @return the current queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return m_queue.size();
+    }
+
+    /**
+     * Returns the greatest number of jobs that have been in the queue at once.
+     * @return the peak queue depth.
+     */
+    public synchronized int getMaxQueueDepth() {
+        return m_maxQueueDepth;
+    }
+
+    /**
+     * Returns the average time, in milliseconds, that started jobs spent in the queue.
+     * @return the average queue wait in milliseconds.
+     */
+    public synchronized double getAverageWaitMillis() {
+        if (m_startedJobs == 0) {
+            return 0.0;
+        }
+        return m_totalWaitNanos / (double) m_startedJobs / 1000000.0;
+    }
+
+    /**
+     * Returns the longest time, in milliseconds, that a started job spent in the queue.
+     * @return the longest queue wait in milliseconds.
+     */
+    public synchronized long getMaxWaitMillis() {
+        return m_maxWaitNanos / 1000000L;
+    }
+
+    /**
+     * Returns the number of snippets that were merged into already queued jobs.
+     * @return the number of coalesced snippets.
+     */
+    public synchronized long getCoalescedSnippetCount() {
+        return m_coalescedSnippets;
+    }
+
+    /**
+     * Returns the number of jobs that were ripped at a reduced frame rate.
+     * @return the number of reduced frame rate jobs.
+     */
+    public synchronized long getReducedFpsJobCount() {
+        return m_reducedFpsJobs;
+    }
+
+    /**
+     * Returns the number of snippets dropped without being ripped.
+     * @return the number of dropped snippets.
+     */
+    public synchronized long getDroppedSnippetCount() {
+        return m_droppedSnippets;
+    }
+
+    /**
+     * Returns the number of times a job was refused and held back by its recording.
+     * @return the number of refused offers.
+     */
+    public synchronized long getRefusedOfferCount() {
+        return m_refusedOffers;
+    }
+
+    /**
+     * Returns a one line summary of the scheduler's queue statistics, for logging.
+     * @return a summary of the queue statistics.
+     */
+    public synchronized String describeStatistics() {
+        return "depth=" + m_queue.size() + "/" + m_queueCapacity + " maxDepth=" + m_maxQueueDepth
+                + " started=" + m_startedJobs + " avgWaitMs=" + String.format("%.1f", getAverageWaitMillis())
+                + " maxWaitMs=" + getMaxWaitMillis() + " coalesced=" + m_coalescedSnippets + " reducedFps=" + m_reducedFpsJobs
+                + " dropped=" + m_droppedSnippets + " heldBack=" + m_refusedOffers;
+    }
+
+    /** A worker that runs queued jobs one at a time, until the scheduler is shut down. */
+    private class Worker implements Runnable {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    SnippetRipJob job = take();
+                    if (job == null) {
+                        return;
+                    }
+                    try {
+                        job.run();
+                    } finally {
+                        finished(job);
+                    }
+                } catch (InterruptedException ex) {
+                    LOGGER.log(Level.WARNING, "Frame rip worker interrupted, stopping", ex);
+                    return;
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.SEVERE, "Frame rip job failed", ex);
+                }
+            }
+        }
+    }
+}
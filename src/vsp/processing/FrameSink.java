@@ -0,0 +1,49 @@
+package vsp.processing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A destination for captured or ripped frames.  Frames are delivered as their encoded bytes, with the index of the
+ * frame and a timestamp, so the same capture can be written to a directory of files, a packed container, memory, or
+ * several of these at once.
+ * <p>
+ * A sink that is not {@link #isConcurrent() concurrent} is only ever given frames one at a time, in the order they
+ * were produced.  A concurrent sink may be given frames from several threads at once and so out of order, for example
+ * by the writers of a {@link ParallelFrameWriter}, and must place each frame by its index rather than by arrival.
+ *
+ * @author Keith
+ */
+public interface FrameSink extends Closeable {
+
+    /**
+     * Receives a frame.  The frame's bytes are only valid for the duration of the call, so a sink that keeps them
+     * must copy them.
+     * @param frameIndex the index of the frame.
+     * @param timestamp the time of the frame, in milliseconds.
+     * @param frame the encoded frame, from its position to its limit.
+     * @throws IOException if the frame cannot be stored.
+     */
+    public void accept(long frameIndex, long timestamp, ByteBuffer frame) throws IOException;
+
+    /**
+     * Returns whether frames may be passed to this sink from several threads at once, in any order.  Sinks whose
+     * storage depends on the order frames arrive in must return false.
+     * @return true if the sink accepts concurrent, unordered frames.
+     */
+    public boolean isConcurrent();
+
+    /**
+     * Makes every frame received so far visible to readers of the sink's storage, without closing it.
+     * @throws IOException if stored frames cannot be written out.
+     */
+    public void flush() throws IOException;
+
+    /**
+     * Finishes storing frames and releases any resources held by the sink.
+     * @throws IOException if stored frames cannot be completed.
+     */
+    @Override
+    public void close() throws IOException;
+}
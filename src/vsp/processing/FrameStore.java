@@ -0,0 +1,14 @@
+package vsp.processing;
+
+/**
+ * The ways a recording's ripped frames can be stored.
+ * @author Keith
+ */
+public enum FrameStore {
+    /** Every frame is written to its own JPEG file in the recording directory. */
+    DIRECTORY,
+    /** Frames are packed into a single data file with an index file locating each frame. */
+    PACKED,
+    /** Frames are written both to their own files and to the packed files, through a {@link FanOutFrameSink}. */
+    FAN_OUT;
+}
@@ -0,0 +1,229 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.data.FrameTimestampIndex;
+
+/**
+ * Writes the {@link FrameTimestampIndex} of a recording as its frames are ripped.  Each frame's presentation
+ * timestamp, as reported by FFMPEG, is unwrapped across the 33 bit PTS wrap and mapped to wall clock time by
+ * anchoring the timestamp of the recording's first frame to the start time of the recording, so frame times follow
+ * the stream's own clock rather than a count of frames.  Frames may be added from several rip processes at once, and
+ * out of order, so frames arriving before the first frame are held until it arrives rather than anchoring the clock to
+ * whichever frame happens to be ripped first.  Frames may still be added after the writer is closed, by rip processes
+ * finishing up after the recording ends.
+ *
+ * @author Keith
+ */
+public class FrameTimestampWriter {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(FrameTimestampWriter.class.getName());
+
+    /** The number of PTS ticks per second. */
+    public static final long PTS_TICKS_PER_SECOND = 90000L;
+
+    /** The PTS wraps back to zero every 2^33 ticks. */
+    private static final long PTS_WRAP = 1L << 33;
+
+    /** The most frames held waiting for the anchor frame before the earliest of them is anchored instead. */
+    private static final int MAX_PENDING_FRAMES = 3000;
+
+    /** The path of the index file. */
+    private final String m_path;
+
+    /** The file entries are appended to, or null once closed. */
+    private FileChannel m_channel;
+
+    /** The entry being written, reused for every entry. */
+    private final ByteBuffer m_entry;
+
+    /** The wall clock time the first timestamp is anchored to, in milliseconds. */
+    private final long m_anchorWallClock;
+
+    /** The key of the frame whose timestamp is anchored to the wall clock, or -1 to anchor the first frame added. */
+    private final long m_anchorKey;
+
+    /** The unwrapped timestamp anchored to the wall clock, or -1 before the anchor frame is added. */
+    private long m_anchorPts;
+
+    /** The unwrapped timestamps of frames added before the anchor frame, by frame key. */
+    private final TreeMap<Long, Long> m_pending;
+
+    /** The most recent unwrapped timestamp, which the next one is unwrapped relative to. */
+    private long m_lastPts;
+
+    /**
+     * Creates a new FrameTimestampWriter, replacing any existing index, which anchors the first frame added to the wall
+     * clock.  This suits frames added in order, or with their times already known.
+     * @param path the path of the index file.
+     * @param anchorWallClock the wall clock time of the first frame, in milliseconds since Jan 1 1970.
+     * @throws IOException if the file cannot be created.
+     */
+    public FrameTimestampWriter(String path, long anchorWallClock) throws IOException {
+        this(path, anchorWallClock, -1L);
+    }
+
+    /**
+     * Creates a new FrameTimestampWriter, replacing any existing index.
+     * @param path the path of the index file.
+     * @param anchorWallClock the wall clock time of the anchor frame, in milliseconds since Jan 1 1970.
+     * @param anchorKey the key of the recording's first frame, whose timestamp is anchored to the wall clock, or -1 to
+     * anchor the first frame added.
+     * @throws IOException if the file cannot be created.
+     */
+    public FrameTimestampWriter(String path, long anchorWallClock, long anchorKey) throws IOException {
+        m_path = path;
+        m_channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        m_entry = ByteBuffer.allocate(Math.max(FrameTimestampIndex.HEADER_SIZE, FrameTimestampIndex.ENTRY_SIZE));
+        m_entry.putInt(FrameTimestampIndex.MAGIC).putInt(FrameTimestampIndex.VERSION)
+                .putInt(FrameTimestampIndex.ENTRY_SIZE).putInt(0);
+        write();
+        m_anchorWallClock = anchorWallClock;
+        m_anchorKey = anchorKey;
+        m_anchorPts = -1L;
+        m_pending = new TreeMap<>();
+        m_lastPts = -1L;
+    }
+
+    /**
+     * Records the timestamp of a ripped frame.  Until the anchor frame has been added, the frame is held rather than
+     * written.
+     * @param frameKey the key of the frame, ordering it the way its file name does.
+     * @param ptsSeconds the presentation timestamp of the frame in seconds, as reported by FFMPEG.
+     */
+    public synchronized void addFrame(long frameKey, double ptsSeconds) {
+        long pts = unwrap(Math.round(ptsSeconds * PTS_TICKS_PER_SECOND));
+        if (m_anchorPts < 0) {
+            if (m_anchorKey < 0 || frameKey == m_anchorKey) {
+                anchor(pts);
+            } else {
+                m_pending.put(frameKey, pts);
+                if (m_pending.size() >= MAX_PENDING_FRAMES) {
+                    anchorEarliestPending();
+                }
+                return;
+            }
+        }
+        addFrame(frameKey, pts, toWallClock(pts));
+    }
+
+    /**
+     * Anchors a timestamp to the wall clock and writes the frames held waiting for it.
+     * @param pts the unwrapped timestamp of the anchor frame.
+     */
+    private void anchor(long pts) {
+        m_anchorPts = pts;
+        for (Map.Entry<Long, Long> pending : m_pending.entrySet()) {
+            addFrame(pending.getKey(), pending.getValue(), toWallClock(pending.getValue()));
+        }
+        m_pending.clear();
+    }
+
+    /** Anchors the earliest held frame in place of an anchor frame that has not arrived, and writes the held frames. */
+    private void anchorEarliestPending() {
+        Map.Entry<Long, Long> earliest = m_pending.firstEntry();
+        LOGGER.log(Level.WARNING, "First frame {0} of the recording was not ripped, anchoring frame times to frame {1}",
+                new Object[]{m_anchorKey, earliest.getKey()});
+        anchor(earliest.getValue());
+    }
+
+    /**
+     * Maps an unwrapped timestamp to wall clock time relative to the anchor.
+     * @param pts the unwrapped timestamp.
+     * @return the wall clock time, in milliseconds since Jan 1 1970.
+     */
+    private long toWallClock(long pts) {
+        return m_anchorWallClock + (pts - m_anchorPts) * 1000L / PTS_TICKS_PER_SECOND;
+    }
+
+    /**
+     * Records a frame whose timestamps are already known, such as a frame re-encoded from an existing recording.
+     * @param frameKey the key of the frame.
+     * @param ptsTicks the unwrapped presentation timestamp of the frame, in 90 kHz ticks.
+     * @param wallClock the wall clock time of the frame, in milliseconds since Jan 1 1970.
+     */
+    public synchronized void addFrame(long frameKey, long ptsTicks, long wallClock) {
+        m_entry.clear();
+        m_entry.putLong(frameKey).putLong(ptsTicks).putLong(wallClock);
+        try {
+            write();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to record timestamp of frame " + frameKey, ex);
+        }
+    }
+
+    /**
+     * Unwraps a timestamp to the value, equal to it modulo 2^33, nearest the previous timestamp.  FFMPEG may already
+     * have unwrapped it, so it is first reduced to its 33 bits.
+     * @param ticks the timestamp in 90 kHz ticks.
+     * @return the unwrapped timestamp.
+     */
+    private long unwrap(long ticks) {
+        long wrapped = ((ticks % PTS_WRAP) + PTS_WRAP) % PTS_WRAP;
+        long unwrapped;
+        if (m_lastPts < 0) {
+            unwrapped = wrapped;
+        } else {
+            long base = m_lastPts - (m_lastPts % PTS_WRAP);
+            unwrapped = base + wrapped;
+            if (unwrapped - m_lastPts > PTS_WRAP / 2) {
+                unwrapped -= PTS_WRAP;
+            } else if (m_lastPts - unwrapped > PTS_WRAP / 2) {
+                unwrapped += PTS_WRAP;
+            }
+        }
+        // Never go below zero, so an early frame from a snippet ripped out of order is still representable.
+        if (unwrapped < 0) {
+            unwrapped += PTS_WRAP;
+        }
+        m_lastPts = unwrapped;
+        return unwrapped;
+    }
+
+    /**
+     * Writes the entry buffer to the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private void write() throws IOException {
+        m_entry.flip();
+        if (m_channel == null) {
+            try (FileChannel late = FileChannel.open(Paths.get(m_path), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (m_entry.hasRemaining()) {
+                    late.write(m_entry);
+                }
+            }
+            return;
+        }
+        while (m_entry.hasRemaining()) {
+            m_channel.write(m_entry);
+        }
+    }
+
+    /**
+     * Closes the index file, first writing any frames still held waiting for the anchor frame.  Frames added after this
+     * are appended by reopening the file.
+     */
+    public synchronized void close() {
+        if (m_channel == null) {
+            return;
+        }
+        if (!m_pending.isEmpty()) {
+            anchorEarliestPending();
+        }
+        try {
+            m_channel.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error closing frame timestamp index", ex);
+        }
+        m_channel = null;
+    }
+}
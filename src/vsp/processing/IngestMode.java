@@ -0,0 +1,12 @@
+package vsp.processing;
+
+/**
+ * The ways a recording can receive its stream.
+ * @author Keith
+ */
+public enum IngestMode {
+    /** The stream is received by a headless VLC media player, which needs the native VLC libraries. */
+    VLC,
+    /** Multicast streams are received directly from the socket in Java.  Other sources fall back to VLC. */
+    JAVA;
+}
@@ -0,0 +1,287 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Splits a stream of concatenated JPEG images, such as FFMPEG's image2pipe output, into individual frames.  The stream
+ * is read in bulk into one reusable buffer, and frames are found by walking the JPEG marker structure rather than
+ * looking for the first FF D9: marker segments are skipped by their length, so an EOI inside an embedded thumbnail
+ * does not end the frame, and entropy coded data is scanned for the next real marker, passing over stuffed FF 00
+ * bytes, fill bytes and restart markers.
+ * <p>
+ * Frames are handed out as slices of the internal buffer, without copying.  A slice is only valid until the next call
+ * to {@link #nextFrame()}, after which its bytes may be overwritten.
+ *
+ * @author Keith
+ */
+public class JpegFrameScanner {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(JpegFrameScanner.class.getName());
+
+    /** The default size of the read buffer. */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /** The largest frame the buffer will grow to hold. */
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /** The byte that starts every JPEG marker. */
+    private static final int MARKER_PREFIX = 0xFF;
+
+    /** Start Of Image marker. */
+    private static final int SOI = 0xD8;
+
+    /** End Of Image marker. */
+    private static final int EOI = 0xD9;
+
+    /** Start Of Scan marker, followed by entropy coded data. */
+    private static final int SOS = 0xDA;
+
+    /** The first restart marker. */
+    private static final int RST0 = 0xD0;
+
+    /** The last restart marker. */
+    private static final int RST7 = 0xD7;
+
+    /** The temporary private use marker, which has no length. */
+    private static final int TEM = 0x01;
+
+    /** Scanning state:  looking for the start of the next frame. */
+    private static final int SEEK_SOI = 0;
+
+    /** Scanning state:  expecting a marker between segments. */
+    private static final int IN_MARKERS = 1;
+
+    /** Scanning state:  inside entropy coded data after a start of scan. */
+    private static final int IN_ENTROPY = 2;
+
+    /** The stream the images are read from. */
+    private final InputStream m_input;
+
+    /** The read buffer, holding the frame being scanned from index {@link #m_frameStart}. */
+    private byte[] m_buffer;
+
+    /** The number of valid bytes in the buffer. */
+    private int m_limit;
+
+    /** The index in the buffer of the start of the frame being scanned. */
+    private int m_frameStart;
+
+    /** The index in the buffer scanning has reached, which may be past the limit when skipping a segment. */
+    private int m_position;
+
+    /** The scanning state. */
+    private int m_state;
+
+    /** The number of frames found. */
+    private long m_frameCount;
+
+    /** The number of bytes discarded because they were not part of a frame. */
+    private long m_skippedBytes;
+
+    /**
+     * Creates a new JpegFrameScanner with the default buffer size.
+     * @param input the stream of concatenated JPEG images.
+     */
+    public JpegFrameScanner(InputStream input) {
+        this(input, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new JpegFrameScanner.
+     * @param input the stream of concatenated JPEG images.
+     * @param bufferSize the initial size of the read buffer, which grows if a frame does not fit.
+     */
+    public JpegFrameScanner(InputStream input, int bufferSize) {
+        m_input = input;
+        m_buffer = new byte[Math.max(bufferSize, 16)];
+        m_limit = 0;
+        m_frameStart = 0;
+        m_position = 0;
+        m_state = SEEK_SOI;
+    }
+
+    /**
+     * Reads the next complete frame from the stream.
+     * @return a slice of the internal buffer holding the frame, from SOI to EOI inclusive, valid until the next call,
+     * or null at the end of the stream.
+     * @throws IOException if the stream cannot be read or a frame is too large to buffer.
+     */
+    public ByteBuffer nextFrame() throws IOException {
+        while (true) {
+            int frameEnd = scan();
+            if (frameEnd >= 0) {
+                int start = m_frameStart;
+                m_frameStart = frameEnd;
+                m_frameCount++;
+                return ByteBuffer.wrap(m_buffer, start, frameEnd - start).slice();
+            }
+            if (!fill()) {
+                if (m_state != SEEK_SOI) {
+                    LOGGER.fine("Discarding incomplete frame at end of stream: " + (m_limit - m_frameStart) + " bytes");
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of frames found.
+     * @return the number of frames found.
+     */
+    public long getFrameCount() {
+        return m_frameCount;
+    }
+
+    /**
+     * Returns the number of bytes discarded because they were not part of a frame.
+     * @return the number of skipped bytes.
+     */
+    public long getSkippedBytes() {
+        return m_skippedBytes;
+    }
+
+    /**
+     * Scans the buffered bytes for the end of the current frame, continuing from where the previous scan stopped.
+     * @return the index just past the frame's EOI, or -1 if more data is needed.
+     */
+    private int scan() {
+        final byte[] buf = m_buffer;
+        final int limit = m_limit;
+        int pos = m_position;
+        while (true) {
+            switch (m_state) {
+                case SEEK_SOI:
+                    int soi = -1;
+                    for (int i = Math.max(pos, m_frameStart); i < limit - 1; i++) {
+                        if (buf[i] == (byte) MARKER_PREFIX && buf[i + 1] == (byte) SOI) {
+                            soi = i;
+                            break;
+                        }
+                    }
+                    if (soi < 0) {
+                        // Keep a trailing FF, it may be the first half of the next SOI.
+                        int keep = limit > m_frameStart && buf[limit - 1] == (byte) MARKER_PREFIX ? limit - 1 : limit;
+                        m_skippedBytes += Math.max(0, keep - m_frameStart);
+                        m_frameStart = Math.max(m_frameStart, keep);
+                        m_position = m_frameStart;
+                        return -1;
+                    }
+                    m_skippedBytes += soi - m_frameStart;
+                    m_frameStart = soi;
+                    pos = soi + 2;
+                    m_state = IN_MARKERS;
+                    break;
+
+                case IN_MARKERS:
+                    if (pos + 1 >= limit) {
+                        m_position = pos;
+                        return -1;
+                    }
+                    if (buf[pos] != (byte) MARKER_PREFIX) {
+                        LOGGER.fine("Expected a JPEG marker, resynchronizing to the next frame");
+                        m_state = SEEK_SOI;
+                        m_skippedBytes += pos - m_frameStart;
+                        m_frameStart = pos;
+                        break;
+                    }
+                    int marker = buf[pos + 1] & 0xFF;
+                    if (marker == MARKER_PREFIX) {
+                        pos++;
+                    } else if (marker == EOI) {
+                        m_state = SEEK_SOI;
+                        m_position = pos + 2;
+                        return pos + 2;
+                    } else if (marker == SOI) {
+                        // A new image before the previous one ended: the previous one was truncated.
+                        LOGGER.fine("Discarding truncated frame of " + (pos - m_frameStart) + " bytes");
+                        m_skippedBytes += pos - m_frameStart;
+                        m_frameStart = pos;
+                        pos += 2;
+                    } else if (marker == TEM || (marker >= RST0 && marker <= RST7)) {
+                        pos += 2;
+                    } else {
+                        if (pos + 3 >= limit) {
+                            m_position = pos;
+                            return -1;
+                        }
+                        int length = ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+                        if (length < 2) {
+                            LOGGER.fine("Invalid JPEG segment length, resynchronizing to the next frame");
+                            m_state = SEEK_SOI;
+                            m_skippedBytes += pos - m_frameStart;
+                            m_frameStart = pos;
+                            break;
+                        }
+                        // Skip the segment whole, so that thumbnails and other payloads are never scanned for markers.
+                        pos += 2 + length;
+                        if (marker == SOS) {
+                            m_state = IN_ENTROPY;
+                        }
+                    }
+                    break;
+
+                case IN_ENTROPY:
+                default:
+                    int markerAt = -1;
+                    for (int i = pos; i < limit - 1; i++) {
+                        if (buf[i] == (byte) MARKER_PREFIX) {
+                            int next = buf[i + 1] & 0xFF;
+                            if (next == 0x00 || (next >= RST0 && next <= RST7)) {
+                                i++;
+                            } else if (next != MARKER_PREFIX) {
+                                markerAt = i;
+                                break;
+                            }
+                        }
+                    }
+                    if (markerAt < 0) {
+                        m_position = Math.max(pos, limit - 1);
+                        return -1;
+                    }
+                    pos = markerAt;
+                    m_state = IN_MARKERS;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads more of the stream into the buffer, first moving the current frame to the front of the buffer or growing
+     * the buffer if there is no room.
+     * @return false at the end of the stream.
+     * @throws IOException if the stream cannot be read or the frame is too large to buffer.
+     */
+    private boolean fill() throws IOException {
+        int needed = Math.max(m_limit, m_position + 2) - m_frameStart;
+        if (m_limit == m_buffer.length || m_position + 2 > m_buffer.length) {
+            if (m_frameStart > 0) {
+                System.arraycopy(m_buffer, m_frameStart, m_buffer, 0, m_limit - m_frameStart);
+                m_limit -= m_frameStart;
+                m_position -= m_frameStart;
+                m_frameStart = 0;
+            }
+            if (m_limit == m_buffer.length || needed > m_buffer.length) {
+                int size = m_buffer.length;
+                while (size < needed + 1) {
+                    size *= 2;
+                }
+                if (size > MAX_FRAME_SIZE) {
+                    throw new IOException("JPEG frame larger than " + MAX_FRAME_SIZE + " bytes");
+                }
+                byte[] grown = new byte[size];
+                System.arraycopy(m_buffer, 0, grown, 0, m_limit);
+                m_buffer = grown;
+            }
+        }
+        int read = m_input.read(m_buffer, m_limit, m_buffer.length - m_limit);
+        if (read < 0) {
+            return false;
+        }
+        m_limit += read;
+        return true;
+    }
+}
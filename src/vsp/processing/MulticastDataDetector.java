@@ -37,7 +37,22 @@ public class MulticastDataDetector implements Runnable, RecordingCompleteListene
     private static final long TIMEOUT = 12000;
 
     /** A boolean indicating if the stream has already been reported as started. */
-    private boolean m_streamActive = false;
+    private volatile boolean m_streamActive = false;
+
+    /** The source recorded when data is detected, or null to create one per recording. */
+    private final StreamVideoSource m_source;
+
+    /** The executor that polls the monitor and runs the recordings' periodic processing. */
+    private final ScheduledExecutorService m_executor;
+
+    /** The recording manager of the current or most recent recording, or null if nothing has been recorded. */
+    private volatile StreamRecordingManager m_recordingManager;
+
+    /**
+     * The ingest receiving the stream for the current recording while the monitor is stopped, or null if the monitor
+     * is running.
+     */
+    private volatile MulticastTsIngest m_ingest;
 
 
     /**
@@ -50,15 +65,29 @@ public class MulticastDataDetector implements Runnable, RecordingCompleteListene
         m_port = port;
         m_multicastDataDetectionListeners = new ArrayList<>();
         m_monitor = new MulticastDataMonitor(ipAddress, port);
+        m_source = null;
+        m_executor = Executors.newScheduledThreadPool(2);
+    }
+
+    /**
+     * Creates a new instance of MulticastDataDetector for a known source, sharing an executor with other detectors.
+     * @param source The source to listen for and record.
+     * @param executor The executor to poll for data and run recording processing on.
+     */
+    public MulticastDataDetector(StreamVideoSource source, ScheduledExecutorService executor) {
+        m_ipAddress = source.getIp();
+        m_port = source.getPort();
+        m_multicastDataDetectionListeners = new ArrayList<>();
+        m_monitor = new MulticastDataMonitor(m_ipAddress, m_port);
+        m_source = source;
+        m_executor = executor;
     }
 
     /** Run the data detector. */
     @Override
     public void run() {
-        Thread t = new Thread(m_monitor);
-        t.start();
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
-        executor.scheduleAtFixedRate(new Runnable() {
+        m_monitor.run();
+        m_executor.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 long now = System.currentTimeMillis();
@@ -68,9 +97,18 @@ public class MulticastDataDetector implements Runnable, RecordingCompleteListene
                     try {
                         //Kick off processing
                         String frameRecordingDirectory = VspProperties.getInstance().getRecordingLibraryDirectory();
-                        StreamRecordingManager srm = new StreamRecordingManager(new StreamVideoSource(m_ipAddress, m_port, "Source"), frameRecordingDirectory, 10L);
+                        StreamVideoSource source = m_source != null ? m_source : new StreamVideoSource(m_ipAddress, m_port, "Source");
+                        StreamRecordingManager srm = new StreamRecordingManager(source, frameRecordingDirectory,
+                                VspProperties.getInstance().getFlushPeriod(),
+                                VspProperties.getInstance().getRecordingFps(), VspProperties.getInstance().getRecordingQuality(), m_executor);
                         srm.addRecordingCompleteListener(MulticastDataDetector.this);
+                        m_recordingManager = srm;
                         srm.startRecording();
+                        // The ingest receives the same datagrams, so the monitor is stopped rather than receive each twice.
+                        if (srm.getIngest() instanceof MulticastTsIngest) {
+                            m_ingest = (MulticastTsIngest) srm.getIngest();
+                            m_monitor.stop();
+                        }
 
                         // Notify listeners of stream start.
                         notifyStreamStart();
@@ -86,10 +124,58 @@ public class MulticastDataDetector implements Runnable, RecordingCompleteListene
         TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Returns whether a recording of the stream is in progress.
+     * @return true if the stream is being recorded.
+     */
+    public boolean isStreamActive() {
+        return m_streamActive;
+    }
+
+    /**
+     * Returns the system time data was last seen on the stream.
+     * @return the last packet receipt time, or -1 if no data has been seen.
+     */
+    public long getLastPacketReceiptTime() {
+        MulticastTsIngest ingest = m_ingest;
+        long lastPacket = m_monitor.getLastPacketReceiptTime();
+        return ingest != null ? Math.max(lastPacket, ingest.getLastReceiptTime()) : lastPacket;
+    }
+
+    /**
+     * Returns the recording manager of the current or most recent recording.
+     * @return the recording manager, or null if nothing has been recorded.
+     */
+    public StreamRecordingManager getRecordingManager() {
+        return m_recordingManager;
+    }
+
+    /**
+     * Returns the address being listened on.
+     * @return the IP address being listened on.
+     */
+    public String getIpAddress() {
+        return m_ipAddress;
+    }
+
+    /**
+     * Returns the port being listened on.
+     * @return the port being listened on.
+     */
+    public int getPort() {
+        return m_port;
+    }
+
     /** {@inherit} */
     @Override
     public void recordingComplete(VideoSource source) {
         LOGGER.info("MDD - Recording Complete called.");
+        MulticastTsIngest ingest = m_ingest;
+        if (ingest != null) {
+            m_monitor.updateLastPacketReceiptTime(ingest.getLastReceiptTime());
+            m_ingest = null;
+            m_monitor.run();
+        }
         m_streamActive = false;
         notifyStreamStop();
     }
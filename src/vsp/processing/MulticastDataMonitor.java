@@ -1,19 +1,21 @@
 package vsp.processing;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.InetAddress;
-import java.net.MulticastSocket;
-import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The multicast data monitor that watches a socket for data.  This is sort of a hack, it drops a lot
  * of a data on the floor and requires polling.  Better ideas would be appreciated.
+ * <p>
+ * The socket is served by the shared {@link MulticastReceiver}, so a monitor has no thread of its own.  While the
+ * stream is being recorded by an ingest that receives it itself, the monitor can be stopped so each datagram is not
+ * received twice, and run again once the recording ends.
  * @author adam
  */
-public class MulticastDataMonitor implements Runnable {
+public class MulticastDataMonitor implements Runnable, DatagramConsumer {
 
     /** A logger. */
     private static final Logger LOGGER = Logger.getLogger(MulticastDataMonitor.class.getName());
@@ -27,6 +29,9 @@ public class MulticastDataMonitor implements Runnable {
     /** The system time the last packet was received. */
     private long m_timeOfLastPacketReceipt;
 
+    /** The socket being listened on, or null if the monitor is not running.  Guarded by this monitor. */
+    private DatagramChannel m_channel;
+
 
     /**
      * Creates a new instance of MulticastDataDetector.
@@ -41,31 +46,22 @@ public class MulticastDataMonitor implements Runnable {
 
 
     /**
-     * Listens for data and updates the last updated time when a packet is received.
-     * @throws UnknownHostException if a connection is attempted to an unknown host.
-     * @throws IOException if an error occurs reading from the socket.
+     * Starts listening for data, updating the last updated time whenever a packet is received.
+     * @throws IOException if the socket cannot be opened.
      */
-    private void listenForData() throws UnknownHostException, IOException {
-        InetAddress group = InetAddress.getByName(m_ipAddress);
-        MulticastSocket socket = new MulticastSocket(m_port);
-        socket.joinGroup(group);
-
-        boolean listening = true;
-        while(listening) {
-            byte[] buf = new byte[1500];
-            DatagramPacket recv = new DatagramPacket(buf, buf.length);
-            //Receive data, so we notice that data is coming over.  We don't actually receive the data here!
-            //VLC actually grabs the data for us, this is just a "is data there" detection mechanism.
-            LOGGER.info("Preparing to receive socket data: " + m_ipAddress + ":" + m_port);
-            socket.receive(recv);
-            LOGGER.info("Received socket data");
-            updateTime();
+    private void listenForData() throws IOException {
+        //We don't actually keep the data here!  The recording ingest grabs the data for us, this is just a "is data
+        //there" detection mechanism.
+        DatagramChannel channel = MulticastReceiver.getInstance().join(m_ipAddress, m_port, 0, this);
+        synchronized (this) {
+            m_channel = channel;
         }
-
-        socket.leaveGroup(group);
     }
 
-    /** Run the data detector. */
+    /**
+     * Starts the data detector.  This returns once the socket is open, rather than running for as long as the
+     * monitor does.
+     */
     @Override
     public void run() {
         try {
@@ -76,18 +72,50 @@ public class MulticastDataMonitor implements Runnable {
         }
     }
 
+    /** Stops listening, leaving the socket to whatever else is receiving the stream.  It can be run again later. */
+    public void stop() {
+        DatagramChannel channel;
+        synchronized (this) {
+            channel = m_channel;
+            m_channel = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error closing monitor socket.", ex);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void accept(ByteBuffer datagram) {
+        LOGGER.finest("Received socket data");
+        updateTime();
+    }
+
     /**
      * Returns the last time a packet was updated.
      * @return the last time a packet was updated.
      */
     public synchronized long getLastPacketReceiptTime() {
-        LOGGER.info("Fetching last packet time");
+        LOGGER.finest("Fetching last packet time");
         return m_timeOfLastPacketReceipt;
     }
 
+    /**
+     * Moves the last packet time forward to a packet seen by something else receiving the stream while the monitor
+     * was stopped.
+     * @param time the system time the packet was received.
+     */
+    public synchronized void updateLastPacketReceiptTime(long time) {
+        m_timeOfLastPacketReceipt = Math.max(m_timeOfLastPacketReceipt, time);
+    }
+
     /** Updates the last updated time. */
     private synchronized void updateTime() {
-        LOGGER.info("Data received, updating time");
+        LOGGER.finest("Data received, updating time");
         m_timeOfLastPacketReceipt = System.currentTimeMillis();
     }
 }
@@ -0,0 +1,232 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.util.VspProperties;
+
+/**
+ * Receives the datagrams of every multicast socket in the process on a single thread, so that watching or recording
+ * another stream adds a socket rather than a thread.  Sockets are opened with {@link #join(String, int, int, DatagramConsumer)} and
+ * their datagrams are handed, one at a time from a single direct buffer, to the {@link DatagramConsumer} they are
+ * registered with.  Closing a socket unregisters it.
+ * <p>
+ * Sockets are bound to their group address rather than the wildcard address, since on Linux a socket bound to the
+ * wildcard receives the datagrams of every group joined on its port, which would mix sources sharing a port.  Windows
+ * cannot bind to a multicast address, so there the wildcard is used and sources must use distinct ports.
+ *
+ * @author Keith
+ */
+public class MulticastReceiver {
+
+    /** The Singleton instance of MulticastReceiver. */
+    private static MulticastReceiver INSTANCE;
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(MulticastReceiver.class.getName());
+
+    /** The largest datagram that can be received. */
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
+    /** The most datagrams taken from one socket before the others are served, so a busy stream cannot starve them. */
+    private static final int MAX_DATAGRAMS_PER_SELECT = 64;
+
+    /** The selector every socket is registered with. */
+    private final Selector m_selector;
+
+    /** The buffer every datagram is received into. */
+    private final ByteBuffer m_buffer;
+
+    /** The sockets waiting to be registered by the receive thread, with their consumers.  Guarded by itself. */
+    private final Map<DatagramChannel, DatagramConsumer> m_pending;
+
+    /**
+     * Creates a new MulticastReceiver and starts its thread.
+     * @throws IOException if the selector cannot be opened.
+     */
+    private MulticastReceiver() throws IOException {
+        m_selector = Selector.open();
+        m_buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        m_pending = new LinkedHashMap<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "Multicast Receiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the Singleton instance of MulticastReceiver, starting it if this is the first use.
+     * @return the Singleton instance of MulticastReceiver.
+     * @throws IOException if the receiver cannot be started.
+     */
+    public static synchronized MulticastReceiver getInstance() throws IOException {
+        if (INSTANCE == null) {
+            INSTANCE = new MulticastReceiver();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Opens a socket on a multicast group and has its datagrams handed to a consumer.
+     * @param ip the address of the multicast group.
+     * @param port the port of the stream.
+     * @param receiveBufferSize the size of the socket's receive buffer in bytes, or 0 for the system default.
+     * @param consumer the consumer to hand datagrams to.
+     * @return the socket, which stops receiving when closed.
+     * @throws IOException if the socket cannot be opened or the group cannot be joined.
+     */
+    public DatagramChannel join(String ip, int port, int receiveBufferSize, DatagramConsumer consumer) throws IOException {
+        InetAddress group = InetAddress.getByName(ip);
+        NetworkInterface networkInterface = findNetworkInterface();
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (receiveBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            }
+            if (isWindows()) {
+                channel.bind(new InetSocketAddress(port));
+            } else {
+                channel.bind(new InetSocketAddress(group, port));
+            }
+            channel.join(group, networkInterface);
+            channel.configureBlocking(false);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        synchronized (m_pending) {
+            m_pending.put(channel, consumer);
+        }
+        m_selector.wakeup();
+        LOGGER.info("Joined " + ip + ":" + port + " on " + networkInterface.getName());
+        return channel;
+    }
+
+    /** Registers waiting sockets and hands received datagrams to their consumers, forever. */
+    private void receive() {
+        while (true) {
+            try {
+                m_selector.select();
+                registerPending();
+                Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        drain(key);
+                    }
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Error selecting multicast sockets", ex);
+            }
+        }
+    }
+
+    /** Registers the sockets opened since the last selection. */
+    private void registerPending() {
+        synchronized (m_pending) {
+            for (Map.Entry<DatagramChannel, DatagramConsumer> pending : m_pending.entrySet()) {
+                try {
+                    pending.getKey().register(m_selector, SelectionKey.OP_READ, pending.getValue());
+                } catch (IOException ex) {
+                    // Closed before it could be registered.
+                    LOGGER.log(Level.FINE, "Multicast socket closed before registering", ex);
+                }
+            }
+            m_pending.clear();
+        }
+    }
+
+    /**
+     * Hands the datagrams waiting on a socket to its consumer, up to a limit, leaving any more for the next selection.
+     * A consumer that throws is logged and its socket
+     * closed, so it cannot stop the other sockets being served.
+     * @param key the selection key of the socket.
+     */
+    private void drain(SelectionKey key) {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        DatagramConsumer consumer = (DatagramConsumer) key.attachment();
+        try {
+            for (int i = 0; i < MAX_DATAGRAMS_PER_SELECT; i++) {
+                m_buffer.clear();
+                if (channel.receive(m_buffer) == null) {
+                    return;
+                }
+                m_buffer.flip();
+                consumer.accept(m_buffer);
+            }
+        } catch (ClosedChannelException ex) {
+            LOGGER.fine("Multicast socket closed");
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.SEVERE, "Error receiving multicast datagram, closing socket", ex);
+            try {
+                channel.close();
+            } catch (IOException closeEx) {
+                LOGGER.log(Level.FINE, "Error closing multicast socket", closeEx);
+            }
+        }
+    }
+
+    /**
+     * Returns whether this is running on Windows, which cannot bind a socket to a multicast address.
+     * @return true if running on Windows.
+     */
+    private static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase(Locale.ROOT).startsWith("windows");
+    }
+
+    /**
+     * Finds the network interface to join the multicast group on: the configured one if there is one, otherwise the
+     * interface of the local host address, otherwise the first interface that is up and supports multicast.
+     * @return the interface to join on.
+     * @throws IOException if no suitable interface can be found.
+     */
+    private static NetworkInterface findNetworkInterface() throws IOException {
+        String configured = VspProperties.getInstance().getIngestNetworkInterface();
+        if (configured != null && !configured.isEmpty()) {
+            NetworkInterface networkInterface = NetworkInterface.getByName(configured);
+            if (networkInterface == null) {
+                throw new SocketException("Configured network interface not found: " + configured);
+            }
+            return networkInterface;
+        }
+        try {
+            NetworkInterface local = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
+            if (local != null && local.isUp() && local.supportsMulticast()) {
+                return local;
+            }
+        } catch (UnknownHostException ex) {
+            LOGGER.log(Level.FINE, "Local host address not resolvable, searching interfaces", ex);
+        }
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces.hasMoreElements()) {
+            NetworkInterface candidate = interfaces.nextElement();
+            if (candidate.isUp() && candidate.supportsMulticast()) {
+                return candidate;
+            }
+        }
+        throw new SocketException("No multicast capable network interface found");
+    }
+}
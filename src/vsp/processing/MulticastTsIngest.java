@@ -0,0 +1,327 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.data.StreamVideoSource;
+
+/**
+ * Receives a multicast MPEG transport stream directly from the socket and appends it to a .ts file, without VLC.
+ * Datagrams may carry TS packets over RTP or as raw UDP; RTP headers are stripped.  Datagrams are received by the
+ * shared {@link MulticastReceiver} into its direct buffer and their payloads collected in a direct write buffer of the
+ * ingest's own, so the stream never passes through the Java heap and an ingest needs no thread of its own.  The write
+ * buffer goes to the file when it fills, when the recording manager flushes, on a roll to a new file and on stop, so
+ * the receiver's thread blocks on one large write rather than one per datagram.  If the file cannot be written the
+ * ingest stops writing and reports itself failed, so the recording can be ended.
+ *
+ * @author Keith
+ */
+public class MulticastTsIngest implements StreamIngest, DatagramConsumer {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(MulticastTsIngest.class.getName());
+
+    /** The size of the socket receive buffer, large enough to ride out the receiver serving other sockets. */
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /** The size of the buffer payloads are collected in before being written to the file. */
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    /** The size of the fixed part of an RTP header. */
+    private static final int RTP_HEADER_SIZE = 12;
+
+    /** The RTP version number carried in the top two bits of the first header byte. */
+    private static final int RTP_VERSION = 2;
+
+    /** The source of the stream. */
+    private final StreamVideoSource m_source;
+
+    /** Guards the current file, which the receiver's thread writes to and {@link #rollTo(String)} replaces. */
+    private final Object m_fileLock;
+
+    /** The socket the stream is received on. */
+    private DatagramChannel m_channel;
+
+    /** The file the stream is currently written to. */
+    private FileChannel m_file;
+
+    /** The payloads received but not yet written to the current file.  Guarded by the file lock. */
+    private final ByteBuffer m_writeBuffer;
+
+    /** The number of transport stream bytes written. */
+    private volatile long m_bytesWritten;
+
+    /** The number of datagrams received. */
+    private volatile long m_datagramCount;
+
+    /** The number of RTP packets found missing from the sequence. */
+    private volatile long m_lostPacketCount;
+
+    /** The system time the last datagram was received, or -1 if none has been. */
+    private volatile long m_lastReceiptTime;
+
+    /** The next RTP sequence number expected, or -1 before the first RTP packet. */
+    private int m_expectedSequence;
+
+    /** Whether the ingest stopped receiving because the stream could not be written. */
+    private volatile boolean m_failed;
+
+    /**
+     * Creates a new MulticastTsIngest.
+     * @param source the multicast source of the stream.
+     */
+    public MulticastTsIngest(StreamVideoSource source) {
+        m_source = source;
+        m_fileLock = new Object();
+        m_writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        m_lastReceiptTime = -1L;
+        m_expectedSequence = -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void start(String tsFilePath) throws IOException {
+        synchronized (m_fileLock) {
+            m_file = openFile(tsFilePath);
+        }
+        m_channel = MulticastReceiver.getInstance().join(m_source.getIp(), m_source.getPort(), RECEIVE_BUFFER_SIZE, this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void rollTo(String tsFilePath) throws IOException {
+        if (m_failed) {
+            throw new IOException("Ingest of " + m_source.getIp() + ":" + m_source.getPort() + " has failed");
+        }
+        FileChannel next = openFile(tsFilePath);
+        FileChannel previous;
+        synchronized (m_fileLock) {
+            // What was received before the roll belongs to the previous file.
+            try {
+                writeBuffer();
+            } catch (IOException ex) {
+                next.close();
+                fail(ex);
+                throw ex;
+            }
+            previous = m_file;
+            m_file = next;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasFailed() {
+        return m_failed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+        synchronized (m_fileLock) {
+            try {
+                writeBuffer();
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stop() {
+        try {
+            if (m_channel != null) {
+                m_channel.close();
+            }
+            // Closing the file under the lock waits out a datagram being written, and stops any still to come.
+            synchronized (m_fileLock) {
+                if (m_file != null) {
+                    try {
+                        writeBuffer();
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Unable to write the end of the multicast stream", ex);
+                    }
+                    m_file.close();
+                    m_file = null;
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error closing multicast ingest", ex);
+        }
+        LOGGER.info("Stopped multicast ingest: bytes=" + m_bytesWritten + " datagrams=" + m_datagramCount + " lost=" + m_lostPacketCount);
+    }
+
+    /**
+     * Returns the number of transport stream bytes written.
+     * @return the number of bytes written.
+     */
+    public long getBytesWritten() {
+        return m_bytesWritten;
+    }
+
+    /**
+     * Returns the number of RTP packets found missing from the sequence.
+     * @return the number of lost packets.
+     */
+    public long getLostPacketCount() {
+        return m_lostPacketCount;
+    }
+
+    /**
+     * Returns the system time the last datagram was received.
+     * @return the last receipt time, or -1 if nothing has been received.
+     */
+    public long getLastReceiptTime() {
+        return m_lastReceiptTime;
+    }
+
+    /**
+     * Appends the transport stream payload of a datagram to the current file.  Called on the receiver's thread.
+     * {@inheritDoc}
+     */
+    @Override
+    public void accept(ByteBuffer datagram) {
+        m_datagramCount++;
+        m_lastReceiptTime = System.currentTimeMillis();
+        if (!stripRtpHeader(datagram)) {
+            return;
+        }
+        synchronized (m_fileLock) {
+            try {
+                write(datagram);
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    /**
+     * Stops writing after the file could not be written, closing it and discarding whatever is buffered.  Called with
+     * the file lock held.
+     * @param cause the error writing the file.
+     */
+    private void fail(IOException cause) {
+        LOGGER.log(Level.SEVERE, "Unable to write multicast stream " + m_source.getIp() + ":" + m_source.getPort()
+                + ", stopping ingest", cause);
+        m_failed = true;
+        m_writeBuffer.clear();
+        try {
+            if (m_file != null) {
+                m_file.close();
+            }
+        } catch (IOException closeEx) {
+            LOGGER.log(Level.FINE, "Error closing failed recording file", closeEx);
+        }
+        m_file = null;
+    }
+
+    /**
+     * Narrows the buffer to the transport stream payload of a datagram.  Datagrams that already start with a TS sync
+     * byte are raw UDP and are left alone.
+     * @param datagram the received datagram, positioned at its start.
+     * @return true if the buffer holds transport stream data to write.
+     */
+    private boolean stripRtpHeader(ByteBuffer datagram) {
+        int start = datagram.position();
+        int first = datagram.get(start) & 0xFF;
+        if (first == TransportStreamCutter.SYNC_BYTE) {
+            return true;
+        }
+        if ((first >> 6) != RTP_VERSION || datagram.remaining() < RTP_HEADER_SIZE) {
+            LOGGER.fine("Dropping datagram that is neither RTP nor a TS packet");
+            return false;
+        }
+        trackSequence(((datagram.get(start + 2) & 0xFF) << 8) | (datagram.get(start + 3) & 0xFF));
+
+        int headerLength = RTP_HEADER_SIZE + 4 * (first & 0x0F);
+        if ((first & 0x10) != 0 && datagram.remaining() >= headerLength + 4) {
+            int extensionWords = ((datagram.get(start + headerLength + 2) & 0xFF) << 8) | (datagram.get(start + headerLength + 3) & 0xFF);
+            headerLength += 4 + 4 * extensionWords;
+        }
+        int end = datagram.limit();
+        if ((first & 0x20) != 0) {
+            end -= datagram.get(end - 1) & 0xFF;
+        }
+        if (start + headerLength >= end) {
+            return false;
+        }
+        datagram.position(start + headerLength);
+        datagram.limit(end);
+        return true;
+    }
+
+    /**
+     * Counts RTP packets missing between the expected and received sequence numbers.
+     * @param sequence the sequence number of the received packet.
+     */
+    private void trackSequence(int sequence) {
+        if (m_expectedSequence >= 0 && sequence != m_expectedSequence) {
+            int gap = (sequence - m_expectedSequence) & 0xFFFF;
+            if (gap < 0x8000) {
+                m_lostPacketCount += gap;
+            }
+        }
+        m_expectedSequence = (sequence + 1) & 0xFFFF;
+    }
+
+    /**
+     * Adds the remaining bytes of the buffer to the write buffer, writing the write buffer to the current file first if
+     * they do not fit.  Called with the file lock held.
+     * @param payload the transport stream bytes to write.
+     * @throws IOException if the file cannot be written.
+     */
+    private void write(ByteBuffer payload) throws IOException {
+        if (m_file == null) {
+            return;
+        }
+        if (payload.remaining() > m_writeBuffer.remaining()) {
+            writeBuffer();
+        }
+        if (payload.remaining() > m_writeBuffer.remaining()) {
+            while (payload.hasRemaining()) {
+                m_bytesWritten += m_file.write(payload);
+            }
+        } else {
+            m_writeBuffer.put(payload);
+        }
+    }
+
+    /**
+     * Writes the write buffer to the current file and empties it.  Called with the file lock held.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeBuffer() throws IOException {
+        if (m_file == null) {
+            m_writeBuffer.clear();
+            return;
+        }
+        m_writeBuffer.flip();
+        try {
+            while (m_writeBuffer.hasRemaining()) {
+                m_bytesWritten += m_file.write(m_writeBuffer);
+            }
+        } finally {
+            m_writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Opens a file for appending the stream to.
+     * @param tsFilePath the path of the .ts file.
+     * @return the channel of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    private static FileChannel openFile(String tsFilePath) throws IOException {
+        return FileChannel.open(Paths.get(tsFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+}
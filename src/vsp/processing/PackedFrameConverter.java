@@ -0,0 +1,91 @@
+package vsp.processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.data.DirectoryFrameReader;
+import vsp.data.FrameRecording;
+import vsp.util.VspUtilities;
+
+/**
+ * Converts recordings stored as one JPEG file per frame into the packed format written by {@link PackedFrameSink}, so
+ * they open and back up as two files instead of thousands.
+ *
+ * @author Keith
+ */
+public class PackedFrameConverter {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(PackedFrameConverter.class.getName());
+
+    /** Private constructor. */
+    private PackedFrameConverter() {
+    }
+
+    /**
+     * Packs the frame files of a recording into its packed frame files, timestamping each frame from the recording's
+     * timestamp index, or from its start time and frame rate if it has none.  The packed files are written under
+     * temporary names and only take the place of the frame files, and of packed files left by an earlier conversion,
+     * once complete, so an interrupted conversion leaves the recording as it was.
+     * @param recording the recording to convert.
+     * @param deleteFrameFiles true to delete the individual frame files once they are packed.
+     * @return the number of frames packed.
+     * @throws IOException if the frames cannot be read or the packed files cannot be written.
+     */
+    public static int convert(FrameRecording recording, boolean deleteFrameFiles) throws IOException {
+        if (recording.isPacked()) {
+            LOGGER.info("Recording is already packed: " + recording.getFrameDirectory());
+            return 0;
+        }
+        DirectoryFrameReader reader = new DirectoryFrameReader(recording.getFrameDirectory(), recording.getStartTime(),
+                recording.getFps(), recording.openTimestampIndex());
+        int frameCount = reader.getFrameCount();
+        String basePath = recording.getPackedFramesBasePath();
+        File data = new File(basePath + PackedFrameSink.DATA_EXTENSION);
+        File index = new File(basePath + PackedFrameSink.INDEX_EXTENSION);
+        File tempData = new File(data.getPath() + ".tmp");
+        File tempIndex = new File(index.getPath() + ".tmp");
+
+        try (PackedFrameSink sink = new PackedFrameSink(tempData.getPath(), tempIndex.getPath())) {
+            for (int i = 0; i < frameCount; i++) {
+                sink.accept(i, reader.getTimestamp(i), reader.getFrame(i));
+            }
+        }
+        // The index is moved last, since its presence is what marks a recording as packed.
+        Files.move(tempData.toPath(), data.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tempIndex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        LOGGER.info("Packed " + frameCount + " frames of " + recording.getFrameDirectory());
+
+        // Only the files that were packed are deleted, not any that appeared since the reader listed them.
+        if (deleteFrameFiles) {
+            for (int i = 0; i < frameCount; i++) {
+                Files.delete(reader.getFrameFile(i).toPath());
+            }
+        }
+        return frameCount;
+    }
+
+    /**
+     * Converts the recordings whose metadata files are given on the command line.
+     * @param args the metadata files of the recordings to convert, optionally preceded by {@code -delete} to delete
+     * the frame files once packed.
+     */
+    public static void main(String[] args) {
+        VspUtilities.initLogging();
+        boolean delete = false;
+        for (String arg : args) {
+            if (arg.equals("-delete")) {
+                delete = true;
+                continue;
+            }
+            try {
+                convert(FrameRecording.fromFile(arg), delete);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, "Unable to pack recording " + arg, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link FrameSink} that packs every frame into a single data file, with a separate index file of fixed width
+ * entries locating each frame.  This avoids creating a file per frame, and lets a reader find any frame with one
+ * seek into the index.
+ * <p>
+ * The data file is the frames' bytes back to back.  The index file starts with a {@value #INDEX_HEADER_SIZE} byte
+ * header:  the magic number {@code VSPF}, the format version, the entry size and a reserved int.  It is followed by
+ * one {@value #INDEX_ENTRY_SIZE} byte entry per frame, in the order received:  the frame index and timestamp as longs,
+ * the offset of the frame in the data file as a long, the length of the frame as an int and a reserved int.  All
+ * values are big endian.
+ *
+ * @author Keith
+ */
+public class PackedFrameSink implements FrameSink {
+
+    /** The extension of packed frame data files. */
+    public static final String DATA_EXTENSION = ".frames";
+
+    /** The extension of packed frame index files. */
+    public static final String INDEX_EXTENSION = ".fidx";
+
+    /** The magic number at the start of an index file, the characters VSPF. */
+    public static final int INDEX_MAGIC = 0x56535046;
+
+    /** The version of the index format written. */
+    public static final int INDEX_VERSION = 1;
+
+    /** The size in bytes of the index file header. */
+    public static final int INDEX_HEADER_SIZE = 16;
+
+    /** The size in bytes of each index entry. */
+    public static final int INDEX_ENTRY_SIZE = 32;
+
+    /** The number of index entries buffered before they are written. */
+    private static final int ENTRIES_PER_WRITE = 128;
+
+    /** The data file frames are appended to. */
+    private final FileChannel m_data;
+
+    /** The index file entries are appended to. */
+    private final FileChannel m_index;
+
+    /** The index entries not yet written. */
+    private final ByteBuffer m_entryBuffer;
+
+    /** The offset in the data file the next frame will be written at. */
+    private long m_dataOffset;
+
+    /** The number of frames received. */
+    private long m_frameCount;
+
+    /**
+     * Creates a new PackedFrameSink writing to {@code basePath.frames} and {@code basePath.fidx}, replacing any
+     * existing files.
+     * @param basePath the path of the files, without extension.
+     * @throws IOException if the files cannot be created.
+     */
+    public PackedFrameSink(String basePath) throws IOException {
+        this(basePath + DATA_EXTENSION, basePath + INDEX_EXTENSION);
+    }
+
+    /**
+     * Creates a new PackedFrameSink, replacing any existing files.
+     * @param dataPath the path of the data file.
+     * @param indexPath the path of the index file.
+     * @throws IOException if the files cannot be created.
+     */
+    public PackedFrameSink(String dataPath, String indexPath) throws IOException {
+        m_data = FileChannel.open(Paths.get(dataPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        m_index = FileChannel.open(Paths.get(indexPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        m_entryBuffer = ByteBuffer.allocateDirect(INDEX_ENTRY_SIZE * ENTRIES_PER_WRITE);
+        m_entryBuffer.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(INDEX_ENTRY_SIZE).putInt(0);
+        m_dataOffset = 0;
+        m_frameCount = 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void accept(long frameIndex, long timestamp, ByteBuffer frame) throws IOException {
+        int length = frame.remaining();
+        while (frame.hasRemaining()) {
+            m_data.write(frame);
+        }
+        if (m_entryBuffer.remaining() < INDEX_ENTRY_SIZE) {
+            writeEntries();
+        }
+        m_entryBuffer.putLong(frameIndex).putLong(timestamp).putLong(m_dataOffset).putInt(length).putInt(0);
+        m_dataOffset += length;
+        m_frameCount++;
+    }
+
+    /**
+     * Returns false, since frames are packed in the order they arrive.
+     * @return false.
+     */
+    @Override
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * Writes any buffered index entries, so that a reader of the files sees every frame received so far.
+     * @throws IOException if the index cannot be written.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        writeEntries();
+    }
+
+    /**
+     * Returns the number of frames received.
+     * @return the number of frames packed.
+     */
+    public synchronized long getFrameCount() {
+        return m_frameCount;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writeEntries();
+        } finally {
+            m_data.close();
+            m_index.close();
+        }
+    }
+
+    /**
+     * Writes the buffered index entries to the index file.
+     * @throws IOException if the index cannot be written.
+     */
+    private void writeEntries() throws IOException {
+        m_entryBuffer.flip();
+        while (m_entryBuffer.hasRemaining()) {
+            m_index.write(m_entryBuffer);
+        }
+        m_entryBuffer.clear();
+    }
+}
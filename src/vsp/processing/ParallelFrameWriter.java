@@ -0,0 +1,289 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link FrameSink} that hands frames to another sink on a pool of writer threads, so the thread producing frames,
+ * typically draining FFMPEG's output pipe, never waits on storage.  Frames are copied into pooled buffers and passed
+ * to the writers through a bounded queue; the producer only waits if storage falls behind by the whole queue.
+ * <p>
+ * A sink that is not {@link FrameSink#isConcurrent() concurrent} is written by a single writer, so it still receives
+ * frames in order.  A concurrent sink names its output from the frame index, so order is kept whatever the number of
+ * writers.
+ *
+ * @author Keith
+ */
+public class ParallelFrameWriter implements FrameSink {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(ParallelFrameWriter.class.getName());
+
+    /** The sink frames are written to. */
+    private final FrameSink m_delegate;
+
+    /** The frames waiting for a writer. */
+    private final BlockingQueue<PendingFrame> m_queue;
+
+    /** Buffers free to hold the next frames. */
+    private final BlockingQueue<PendingFrame> m_freeFrames;
+
+    /** The writer threads. */
+    private final Thread[] m_writers;
+
+    /** The capacity of the queue. */
+    private final int m_queueCapacity;
+
+    /** Marks the end of the frames for a writer. */
+    private final PendingFrame m_endOfFrames;
+
+    /** The first failure of a writer, reported to the producer.  Guarded by this writer. */
+    private IOException m_failure;
+
+    /** The greatest number of frames that have been waiting at once. */
+    private volatile int m_maxQueueDepth;
+
+    /** The number of times the producer had to wait for room in the queue. */
+    private volatile long m_producerWaits;
+
+    /** The total time, in nanoseconds, the producer spent waiting for room in the queue. */
+    private volatile long m_producerWaitNanos;
+
+    /** Whether the writers have been stopped. */
+    private boolean m_finished;
+
+    /**
+     * Creates a new ParallelFrameWriter and starts its writers.
+     * @param delegate the sink to write frames to.
+     * @param writerCount the number of writers to use if the sink is concurrent.
+     * @param queueCapacity the number of frames that may wait for a writer.
+     */
+    public ParallelFrameWriter(FrameSink delegate, int writerCount, int queueCapacity) {
+        if (writerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Writer count and queue capacity must be at least 1");
+        }
+        m_delegate = delegate;
+        m_queueCapacity = queueCapacity;
+        m_queue = new ArrayBlockingQueue<>(queueCapacity);
+        int writers = delegate.isConcurrent() ? writerCount : 1;
+        // Enough buffers for a full queue, one in each writer's hands and one being filled by the producer.
+        int bufferCount = queueCapacity + writers + 1;
+        m_freeFrames = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            m_freeFrames.add(new PendingFrame());
+        }
+        m_endOfFrames = new PendingFrame();
+        m_writers = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            m_writers[i] = new Thread(new Writer(), "Frame Writer " + i);
+            m_writers[i].setDaemon(true);
+            m_writers[i].start();
+        }
+        m_finished = false;
+    }
+
+    /**
+     * Copies the frame and queues it for a writer, waiting only if the queue is full.
+     * @param frameIndex the index of the frame.
+     * @param timestamp the time of the frame, in milliseconds.
+     * @param frame the encoded frame.
+     * @throws IOException if a writer has failed, or the producer is interrupted.
+     */
+    @Override
+    public void accept(long frameIndex, long timestamp, ByteBuffer frame) throws IOException {
+        checkFailure();
+        try {
+            PendingFrame pending = m_freeFrames.take();
+            pending.fill(frameIndex, timestamp, frame);
+            if (!m_queue.offer(pending)) {
+                long waitStart = System.nanoTime();
+                LOGGER.fine("Frame writer queue full, waiting for storage: " + describeStatistics());
+                m_queue.put(pending);
+                m_producerWaits++;
+                m_producerWaitNanos += System.nanoTime() - waitStart;
+            }
+            m_maxQueueDepth = Math.max(m_maxQueueDepth, m_queue.size());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted queueing frame " + frameIndex, ex);
+        }
+    }
+
+    /**
+     * Returns whether frames may be passed to this writer from several threads at once.
+     * @return false, frames are queued in the order they are passed.
+     */
+    @Override
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * Flushes the sink written to.  Frames still waiting for a writer are not included; {@link #finish()} waits for
+     * them.
+     * @throws IOException if a writer has failed or the sink cannot be flushed.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        m_delegate.flush();
+    }
+
+    /**
+     * Waits for every queued frame to be written and stops the writers, without closing the sink written to.
+     * @throws IOException if a writer failed.
+     */
+    public synchronized void finish() throws IOException {
+        if (!m_finished) {
+            m_finished = true;
+            try {
+                for (int i = 0; i < m_writers.length; i++) {
+                    m_queue.put(m_endOfFrames);
+                }
+                for (Thread writer : m_writers) {
+                    writer.join();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for frame writers", ex);
+            }
+            LOGGER.info("Frame writers finished: " + describeStatistics());
+        }
+        checkFailure();
+    }
+
+    /**
+     * Writes every queued frame, stops the writers and closes the sink written to.
+     * @throws IOException if a writer failed or the sink cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            m_delegate.close();
+        }
+    }
+
+    /**
+     * Returns the number of frames waiting for a writer.
+     * @return the current queue depth.
+     */
+    public int getQueueDepth() {
+        return m_queue.size();
+    }
+
+    /**
+     * Returns the greatest number of frames that have been waiting for a writer at once.
+     * @return the peak queue depth.
+     */
+    public int getMaxQueueDepth() {
+        return m_maxQueueDepth;
+    }
+
+    /**
+     * Returns the number of times the producer had to wait for room in the queue.
+     * @return the number of producer waits.
+     */
+    public long getProducerWaitCount() {
+        return m_producerWaits;
+    }
+
+    /**
+     * Returns the total time the producer spent waiting for room in the queue.
+     * @return the total producer wait in milliseconds.
+     */
+    public long getProducerWaitMillis() {
+        return m_producerWaitNanos / 1000000L;
+    }
+
+    /**
+     * Returns a one line summary of the queue statistics, for logging.
+     * @return a summary of the queue statistics.
+     */
+    public String describeStatistics() {
+        return "writers=" + m_writers.length + " depth=" + m_queue.size() + "/" + m_queueCapacity + " maxDepth="
+                + m_maxQueueDepth + " producerWaits=" + m_producerWaits + " producerWaitMs=" + getProducerWaitMillis();
+    }
+
+    /**
+     * Throws the first failure of a writer, if there has been one.
+     * @throws IOException the first failure of a writer.
+     */
+    private synchronized void checkFailure() throws IOException {
+        if (m_failure != null) {
+            throw new IOException("Frame writer failed", m_failure);
+        }
+    }
+
+    /**
+     * Records a writer failure to report to the producer.
+     * @param failure the failure.
+     */
+    private synchronized void fail(IOException failure) {
+        if (m_failure == null) {
+            m_failure = failure;
+        }
+    }
+
+    /** A frame copied out of the producer's buffer, waiting to be written. */
+    private static class PendingFrame {
+
+        /** The frame's bytes, reused for the next frame. */
+        private byte[] m_data = new byte[0];
+
+        /** The length of the frame. */
+        private int m_length;
+
+        /** The index of the frame. */
+        private long m_frameIndex;
+
+        /** The time of the frame, in milliseconds. */
+        private long m_timestamp;
+
+        /**
+         * Copies a frame in, growing the buffer if it is too small.
+         * @param frameIndex the index of the frame.
+         * @param timestamp the time of the frame, in milliseconds.
+         * @param frame the encoded frame.
+         */
+        void fill(long frameIndex, long timestamp, ByteBuffer frame) {
+            m_length = frame.remaining();
+            if (m_data.length < m_length) {
+                m_data = new byte[m_length + m_length / 4];
+            }
+            frame.get(m_data, 0, m_length);
+            m_frameIndex = frameIndex;
+            m_timestamp = timestamp;
+        }
+    }
+
+    /** A writer that passes queued frames to the sink until the end of the frames. */
+    private class Writer implements Runnable {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                PendingFrame pending;
+                while ((pending = m_queue.take()) != m_endOfFrames) {
+                    try {
+                        m_delegate.accept(pending.m_frameIndex, pending.m_timestamp,
+                                ByteBuffer.wrap(pending.m_data, 0, pending.m_length));
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.SEVERE, "Error writing frame " + pending.m_frameIndex, ex);
+                        fail(ex);
+                    } finally {
+                        m_freeFrames.put(pending);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.log(Level.WARNING, "Frame writer interrupted, stopping", ex);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -13,6 +14,36 @@ import java.util.logging.Logger;
  */
 public class ProcessHelper {
 
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(ProcessHelper.class.getName());
+
+    /**
+     * Reads and logs the error output of a process on a new daemon thread, until the process closes it.  A process
+     * whose error output is never read blocks once the pipe fills, which for FFMPEG stops it writing frames too, so
+     * this must be called for every process whose error output is not read some other way.  The standard output is
+     * left alone, for the caller to read.  Lines are logged at FINE, so processes should be started with
+     * {@code -loglevel error} to keep the output small.
+     * @param p the process.
+     * @param name a name for the process, used in the thread name and the log.
+     */
+    public static void consumeErrors(final Process p, final String name) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(p.getErrorStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        LOGGER.fine(name + ": " + line);
+                    }
+                } catch (IOException ex) {
+                    LOGGER.log(Level.FINE, name + " error output closed", ex);
+                }
+            }
+        }, name + " Error Reader");
+        t.setDaemon(true);
+        t.start();
+    }
+
     /**
      * Starts the supplied process and gobbles up all of the output.
      * @param p the process to start.
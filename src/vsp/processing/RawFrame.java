@@ -0,0 +1,130 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A raw video frame held in a pooled direct buffer.  Frames are reused for later captures once released, so a
+ * consumer must not keep a frame, or its buffer, unless it has retained it.
+ *
+ * @author Keith
+ */
+public class RawFrame {
+
+    /** The pool the frame returns to when released. */
+    private final RawFramePool m_pool;
+
+    /** The pixels of the frame, row by row from the top left. */
+    private final ByteBuffer m_pixels;
+
+    /** The number of holders of the frame. */
+    private final AtomicInteger m_references;
+
+    /** The index of the frame in the capture. */
+    private long m_frameIndex;
+
+    /** The time of the frame, in milliseconds. */
+    private long m_timestamp;
+
+    /**
+     * Creates a new RawFrame.
+     * @param pool the pool the frame returns to when released.
+     * @param frameSize the size of the frame in bytes.
+     */
+    RawFrame(RawFramePool pool, int frameSize) {
+        m_pool = pool;
+        m_pixels = ByteBuffer.allocateDirect(frameSize);
+        m_references = new AtomicInteger();
+    }
+
+    /**
+     * Readies the frame to be filled with a new capture, held by the caller.
+     * @param frameIndex the index of the frame in the capture.
+     * @param timestamp the time of the frame, in milliseconds.
+     */
+    void reset(long frameIndex, long timestamp) {
+        m_frameIndex = frameIndex;
+        m_timestamp = timestamp;
+        m_pixels.clear();
+        m_references.set(1);
+    }
+
+    /**
+     * Fills the frame with exactly one frame's worth of pixels read from a channel.
+     * @param channel the channel to read from.
+     * @return false if the channel ended before the frame was full.
+     * @throws IOException if the channel cannot be read.
+     */
+    public boolean fillFrom(ReadableByteChannel channel) throws IOException {
+        while (m_pixels.hasRemaining()) {
+            if (channel.read(m_pixels) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a read only view of the frame's pixels, row by row from the top left.
+     * @return the pixels of the frame.
+     */
+    public ByteBuffer getPixels() {
+        ByteBuffer pixels = m_pixels.asReadOnlyBuffer();
+        pixels.rewind();
+        return pixels;
+    }
+
+    /**
+     * Returns the index of the frame in the capture.
+     * @return the frame index.
+     */
+    public long getFrameIndex() {
+        return m_frameIndex;
+    }
+
+    /**
+     * Returns the time of the frame.
+     * @return the time of the frame, in milliseconds.
+     */
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    /**
+     * Returns the width of the frame.
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return m_pool.getWidth();
+    }
+
+    /**
+     * Returns the height of the frame.
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return m_pool.getHeight();
+    }
+
+    /**
+     * Returns the pixel format of the frame.
+     * @return the pixel format.
+     */
+    public RawPixelFormat getFormat() {
+        return m_pool.getFormat();
+    }
+
+    /** Keeps the frame from being reused until a matching {@link #release()}. */
+    public void retain() {
+        m_references.incrementAndGet();
+    }
+
+    /** Gives up a hold on the frame, returning it to its pool once nothing holds it. */
+    public void release() {
+        if (m_references.decrementAndGet() == 0) {
+            m_pool.recycle(this);
+        }
+    }
+}
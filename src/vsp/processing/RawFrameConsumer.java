@@ -0,0 +1,17 @@
+package vsp.processing;
+
+/**
+ * Something that analyzes the pixels of raw video frames as they are captured.
+ *
+ * @author Keith
+ */
+public interface RawFrameConsumer {
+
+    /**
+     * Receives a frame.  The frame's buffer returns to its pool once every consumer has returned, unless the consumer
+     * {@link RawFrame#retain() retains} it to use after returning, in which case it must
+     * {@link RawFrame#release() release} it when done.
+     * @param frame the captured frame.
+     */
+    public void accept(RawFrame frame);
+}
@@ -0,0 +1,98 @@
+package vsp.processing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed set of {@link RawFrame}s of one size and format, allocated up front and reused, so capturing raw video
+ * allocates nothing per frame.
+ *
+ * @author Keith
+ */
+public class RawFramePool {
+
+    /** The width of the frames in pixels. */
+    private final int m_width;
+
+    /** The height of the frames in pixels. */
+    private final int m_height;
+
+    /** The pixel format of the frames. */
+    private final RawPixelFormat m_format;
+
+    /** The frames not held by anything. */
+    private final BlockingQueue<RawFrame> m_free;
+
+    /**
+     * Creates a new RawFramePool.
+     * @param width the width of the frames in pixels.
+     * @param height the height of the frames in pixels.
+     * @param format the pixel format of the frames.
+     * @param frameCount the number of frames in the pool.
+     */
+    public RawFramePool(int width, int height, RawPixelFormat format, int frameCount) {
+        if (width < 1 || height < 1 || frameCount < 1) {
+            throw new IllegalArgumentException("Frame size and count must be at least 1");
+        }
+        m_width = width;
+        m_height = height;
+        m_format = format;
+        m_free = new ArrayBlockingQueue<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            m_free.add(new RawFrame(this, format.getFrameSize(width, height)));
+        }
+    }
+
+    /**
+     * Takes a free frame from the pool, waiting for one to be released if all are held.
+     * @param frameIndex the index of the frame about to be captured.
+     * @param timestamp the time of the frame, in milliseconds.
+     * @return a frame held by the caller.
+     * @throws InterruptedException if interrupted while waiting for a frame.
+     */
+    public RawFrame acquire(long frameIndex, long timestamp) throws InterruptedException {
+        RawFrame frame = m_free.take();
+        frame.reset(frameIndex, timestamp);
+        return frame;
+    }
+
+    /**
+     * Returns a frame that nothing holds to the pool.
+     * @param frame the released frame.
+     */
+    void recycle(RawFrame frame) {
+        m_free.offer(frame);
+    }
+
+    /**
+     * Returns the number of frames not held by anything.
+     * @return the number of free frames.
+     */
+    public int getFreeCount() {
+        return m_free.size();
+    }
+
+    /**
+     * Returns the width of the frames.
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return m_width;
+    }
+
+    /**
+     * Returns the height of the frames.
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return m_height;
+    }
+
+    /**
+     * Returns the pixel format of the frames.
+     * @return the pixel format.
+     */
+    public RawPixelFormat getFormat() {
+        return m_format;
+    }
+}
@@ -0,0 +1,57 @@
+package vsp.processing;
+
+/**
+ * The pixel formats raw video frames can be captured in.
+ *
+ * @author Keith
+ */
+public enum RawPixelFormat {
+
+    /** One byte of luminance per pixel. */
+    GRAY("gray", 1),
+
+    /** Three bytes per pixel, red, green and blue. */
+    RGB24("rgb24", 3);
+
+    /** The name of the format to FFMPEG. */
+    private final String m_ffmpegName;
+
+    /** The number of bytes each pixel takes. */
+    private final int m_bytesPerPixel;
+
+    /**
+     * Creates a new RawPixelFormat.
+     * @param ffmpegName the name of the format to FFMPEG.
+     * @param bytesPerPixel the number of bytes each pixel takes.
+     */
+    private RawPixelFormat(String ffmpegName, int bytesPerPixel) {
+        m_ffmpegName = ffmpegName;
+        m_bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * Returns the name of the format to FFMPEG, as passed to {@code -pix_fmt}.
+     * @return the FFMPEG name of the format.
+     */
+    public String getFfmpegName() {
+        return m_ffmpegName;
+    }
+
+    /**
+     * Returns the number of bytes each pixel takes.
+     * @return the bytes per pixel.
+     */
+    public int getBytesPerPixel() {
+        return m_bytesPerPixel;
+    }
+
+    /**
+     * Returns the size of a frame in this format.
+     * @param width the width of the frame in pixels.
+     * @param height the height of the frame in pixels.
+     * @return the size of the frame in bytes.
+     */
+    public int getFrameSize(int width, int height) {
+        return width * height * m_bytesPerPixel;
+    }
+}
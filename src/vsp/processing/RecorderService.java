@@ -0,0 +1,182 @@
+package vsp.processing;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.data.StreamVideoSource;
+import vsp.util.VspProperties;
+
+/**
+ * A headless service that watches and records many multicast streams in one process.  Each configured source gets a
+ * {@link MulticastDataDetector}, which starts a {@link StreamRecordingManager} whenever data arrives on it.  Every
+ * detector and recording shares one scheduled thread pool, every socket is served by the one
+ * {@link MulticastReceiver} thread, and snippet frame ripping is shared through the {@link FrameRipScheduler}, so
+ * adding a stream does not add threads or FFMPEG processes.  The scheduler is never waited on from the shared pool,
+ * so a saturated stream cannot hold up detection or flushes of the others.
+ * <p>
+ * Continuous frame ripping gives every recording its own FFMPEG process and feeder thread, so it is warned against
+ * when there are more streams than frame rip workers.
+ *
+ * @author Keith
+ */
+public class RecorderService {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(RecorderService.class.getName());
+
+    /** The longest time, in seconds, stopping waits for the shared thread pool and for queued frame ripping. */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 120;
+
+    /** The detectors for each recorded stream. */
+    private final List<MulticastDataDetector> m_detectors;
+
+    /** The scheduled thread pool shared by every detector and recording. */
+    private final ScheduledExecutorService m_executor;
+
+    /** The period, in seconds, at which the status of each stream is logged. */
+    private final int m_statusPeriod;
+
+    /**
+     * Creates a new RecorderService.
+     * @param sources the streams to record.
+     * @param threadCount the number of scheduler threads to share between the streams.
+     * @param statusPeriod the period, in seconds, at which to log the status of each stream, or 0 to never log it.
+     */
+    public RecorderService(List<StreamVideoSource> sources, int threadCount, int statusPeriod) {
+        m_executor = Executors.newScheduledThreadPool(threadCount);
+        m_statusPeriod = statusPeriod;
+        m_detectors = new ArrayList<>();
+        for (StreamVideoSource source : sources) {
+            m_detectors.add(new MulticastDataDetector(source, m_executor));
+        }
+    }
+
+    /**
+     * Creates a RecorderService for the sources, thread count and status period configured in the application
+     * properties.
+     * @return the configured service.
+     * @throws UnknownHostException if a configured source address is not valid.
+     */
+    public static RecorderService fromProperties() throws UnknownHostException {
+        VspProperties props = VspProperties.getInstance();
+        return new RecorderService(parseSources(props.getRecorderSources()), props.getRecorderThreadCount(),
+                props.getRecorderStatusPeriod());
+    }
+
+    /**
+     * Parses a comma separated list of name@ip:port source entries.  The name may be omitted, in which case the
+     * source is named after its address.
+     * @param sources the source list to parse.
+     * @return the parsed sources.
+     * @throws UnknownHostException if a source address is not valid.
+     */
+    public static List<StreamVideoSource> parseSources(String sources) throws UnknownHostException {
+        List<StreamVideoSource> parsed = new ArrayList<>();
+        for (String entry : sources.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int at = entry.indexOf('@');
+            int colon = entry.lastIndexOf(':');
+            if (colon <= at + 1 || colon == entry.length() - 1) {
+                throw new IllegalArgumentException("Source must be of the form name@ip:port: " + entry);
+            }
+            String ip = entry.substring(at + 1, colon);
+            int port = Integer.parseInt(entry.substring(colon + 1));
+            String name = at > 0 ? entry.substring(0, at) : ip + "-" + port;
+            parsed.add(new StreamVideoSource(ip, port, name));
+        }
+        return parsed;
+    }
+
+    /** Starts watching every stream, and logging their status if a status period is configured. */
+    public void start() {
+        LOGGER.info("Starting recorder service for " + m_detectors.size() + " streams");
+        VspProperties props = VspProperties.getInstance();
+        if (props.getFrameRipMode() == FrameRipMode.CONTINUOUS && m_detectors.size() > props.getRipWorkerCount()) {
+            LOGGER.warning("Continuous frame ripping runs an FFMPEG process per stream, " + m_detectors.size()
+                    + " in all rather than the " + props.getRipWorkerCount() + " shared rip workers; use snippet mode");
+        }
+        for (MulticastDataDetector detector : m_detectors) {
+            detector.run();
+        }
+        if (m_statusPeriod > 0) {
+            m_executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    logStatus();
+                }
+            }, m_statusPeriod, m_statusPeriod, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops every recording in progress, shuts down the shared thread pool and waits for the snippets already handed
+     * to frame ripping to be ripped, so that none are lost when this is called as the process exits.
+     */
+    public void stop() {
+        LOGGER.info("Stopping recorder service");
+        for (MulticastDataDetector detector : m_detectors) {
+            StreamRecordingManager manager = detector.getRecordingManager();
+            if (detector.isStreamActive() && manager != null) {
+                manager.stopRecording();
+            }
+        }
+        m_executor.shutdown();
+        try {
+            if (!m_executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning("Recorder thread pool did not finish within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+            }
+            if (!FrameRipScheduler.getInstance().shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning("Frame ripping did not finish within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds: "
+                        + FrameRipScheduler.getInstance().describeStatistics());
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "Interrupted waiting for recording to stop", ex);
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Stopped recorder service");
+    }
+
+    /**
+     * Returns the detectors of the recorded streams, for inspecting their status.
+     * @return the detectors of every stream.
+     */
+    public List<MulticastDataDetector> getDetectors() {
+        return Collections.unmodifiableList(m_detectors);
+    }
+
+    /** Logs a line of status for every stream, followed by the frame ripping queue statistics. */
+    public void logStatus() {
+        long now = System.currentTimeMillis();
+        int active = 0;
+        StringBuilder status = new StringBuilder();
+        for (MulticastDataDetector detector : m_detectors) {
+            long lastPacket = detector.getLastPacketReceiptTime();
+            status.append("\n  ").append(detector.getIpAddress()).append(':').append(detector.getPort());
+            status.append(detector.isStreamActive() ? " RECORDING" : " IDLE");
+            status.append(" lastPacketAgoMs=").append(lastPacket < 0 ? "never" : String.valueOf(now - lastPacket));
+            StreamRecordingManager manager = detector.getRecordingManager();
+            if (manager != null) {
+                status.append(" dir=").append(manager.getRecordingDirectory());
+                status.append(" flush=[").append(manager.getFlushStatistics()).append(']');
+            }
+            if (detector.isStreamActive()) {
+                active++;
+            }
+        }
+        try {
+            LOGGER.info("Recorder status: " + active + "/" + m_detectors.size() + " streams recording" + status
+                    + "\n  rip queue: " + FrameRipScheduler.getInstance().describeStatistics());
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Error reporting recorder status", ex);
+        }
+    }
+}
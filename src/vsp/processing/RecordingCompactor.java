@@ -0,0 +1,205 @@
+package vsp.processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vsp.data.DirectoryFrameReader;
+import vsp.data.FrameReader;
+import vsp.data.FrameRecording;
+import vsp.data.RecordingCatalog;
+import vsp.util.VspProperties;
+import vsp.util.VspUtilities;
+
+/**
+ * Compacts old recordings by re-encoding their frames into a single H.264 video with
+ * {@link FfmpegVideoProcessor#buildVideoFromFrames}, optionally deleting the frames afterwards.  A timestamp index is
+ * written with the video, so the player can still find frames by time.
+ * <p>
+ * Compaction runs one recording at a time on a single background thread of the lowest priority, and FFMPEG is run
+ * at the lowest CPU priority, so it only uses time the recorder and player leave idle.
+ *
+ * @author Keith
+ */
+public class RecordingCompactor {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(RecordingCompactor.class.getName());
+
+    /** The number of milliseconds in a day. */
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    /** The thread compacting recordings. */
+    private final ExecutorService m_executor;
+
+    /** Whether to delete a recording's frames once they are compacted. */
+    private final boolean m_deleteFrames;
+
+    /**
+     * Creates a new RecordingCompactor.
+     * @param deleteFrames true to delete a recording's frames once they are compacted.
+     */
+    public RecordingCompactor(boolean deleteFrames) {
+        m_deleteFrames = deleteFrames;
+        m_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Recording Compactor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues a recording to be compacted in the background.
+     * @param recording the recording to compact.
+     * @return the number of frames compacted, once done.
+     */
+    public Future<Integer> submit(final FrameRecording recording) {
+        return m_executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    return compact(recording, m_deleteFrames);
+                } catch (IOException | InterruptedException | RuntimeException ex) {
+                    LOGGER.log(Level.SEVERE, "Unable to compact recording " + recording.getFrameDirectory(), ex);
+                    throw ex;
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues every recording in a catalog that finished long enough ago and is not yet compacted.
+     * @param catalog the catalog of recordings.
+     * @param minAgeMillis how long ago, in milliseconds, a recording must have finished.
+     * @return the number of recordings queued.
+     */
+    public int submitIdle(RecordingCatalog catalog, long minAgeMillis) {
+        long finishedBefore = System.currentTimeMillis() - minAgeMillis;
+        int queued = 0;
+        for (FrameRecording recording : catalog.getRecordings()) {
+            boolean finished = recording.getEndTime() >= recording.getStartTime();
+            if (finished && recording.getEndTime() < finishedBefore && !recording.isCompacted()) {
+                submit(recording);
+                queued++;
+            }
+        }
+        LOGGER.info("Queued " + queued + " recordings for compaction");
+        return queued;
+    }
+
+    /**
+     * Stops compacting once the recordings already queued are done, waiting for them.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void shutdown() throws InterruptedException {
+        m_executor.shutdown();
+        m_executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compacts a recording on the calling thread.  The video and its index are written under temporary names and only
+     * moved into place once complete, the index last, since its presence is what marks a recording as compacted.
+     * @param recording the recording to compact.
+     * @param deleteFrames true to delete the recording's frames, individual or packed, once they are compacted.
+     * @return the number of frames compacted.
+     * @throws IOException if the frames cannot be read or the video cannot be written.
+     * @throws InterruptedException if interrupted while FFMPEG is encoding.
+     */
+    public static int compact(FrameRecording recording, boolean deleteFrames) throws IOException, InterruptedException {
+        if (recording.isCompacted()) {
+            LOGGER.info("Recording is already compacted: " + recording.getFrameDirectory());
+            return 0;
+        }
+        VspProperties props = VspProperties.getInstance();
+        File video = new File(recording.getCompactedVideoPath());
+        File index = new File(recording.getCompactedIndexPath());
+        File tempVideo = new File(video.getPath() + ".tmp");
+        File tempIndex = new File(index.getPath() + ".tmp");
+
+        long start = System.currentTimeMillis();
+        int frameCount;
+        FrameTimestampWriter timestamps = new FrameTimestampWriter(tempIndex.getPath(), recording.getStartTime());
+        try (FrameReader frames = recording.openFrameReader()) {
+            if (frames.getFrameCount() == 0) {
+                LOGGER.info("Recording has no frames to compact: " + recording.getFrameDirectory());
+                return 0;
+            }
+            frameCount = FfmpegVideoProcessor.buildVideoFromFrames(frames, recording.getFps(),
+                    props.getCompactionCrf(), props.getCompactionPreset(), tempVideo.getPath(), timestamps);
+        } finally {
+            timestamps.close();
+        }
+        Files.move(tempVideo.toPath(), video.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tempIndex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        LOGGER.info("Compacted " + frameCount + " frames of " + recording.getFrameDirectory() + " into "
+                + video.length() / 1024L + " KB in " + (System.currentTimeMillis() - start) + " ms");
+
+        if (deleteFrames) {
+            deleteFrames(recording);
+        }
+        return frameCount;
+    }
+
+    /**
+     * Deletes the individual and packed frames of a compacted recording.
+     * @param recording the recording.
+     * @throws IOException if a frame file cannot be deleted.
+     */
+    private static void deleteFrames(FrameRecording recording) throws IOException {
+        // The packed index goes first, since its presence is what marks a recording as packed.
+        String packed = recording.getPackedFramesBasePath();
+        Files.deleteIfExists(new File(packed + PackedFrameSink.INDEX_EXTENSION).toPath());
+        Files.deleteIfExists(new File(packed + PackedFrameSink.DATA_EXTENSION).toPath());
+        for (File frame : DirectoryFrameReader.listFrames(recording.getFrameDirectory())) {
+            Files.delete(frame.toPath());
+        }
+    }
+
+    /**
+     * Compacts the recordings whose metadata files are given on the command line, or, if none are given, every
+     * recording in the library that finished more than the configured number of days ago.
+     * @param args the metadata files of the recordings to compact, optionally preceded by {@code -delete} to delete
+     * the frames once compacted.
+     */
+    public static void main(String[] args) {
+        VspUtilities.initLogging();
+        boolean delete = false;
+        RecordingCompactor compactor = null;
+        for (String arg : args) {
+            if (arg.equals("-delete")) {
+                delete = true;
+                continue;
+            }
+            if (compactor == null) {
+                compactor = new RecordingCompactor(delete);
+            }
+            FrameRecording recording = FrameRecording.fromFile(arg);
+            if (recording != null) {
+                compactor.submit(recording);
+            }
+        }
+        try {
+            if (compactor == null) {
+                compactor = new RecordingCompactor(delete);
+                RecordingCatalog catalog = RecordingCatalog.fromProperties();
+                catalog.load();
+                compactor.submitIdle(catalog, VspProperties.getInstance().getCompactionMinAge() * MILLIS_PER_DAY);
+            }
+            compactor.shutdown();
+        } catch (IOException | InterruptedException ex) {
+            LOGGER.log(Level.SEVERE, "Unable to compact recordings", ex);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package vsp.processing;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A region of a recorded .ts file that has been selected for frame ripping.  The bytes are not copied when the
+ * snippet is created; they are read from the recording file when the snippet is transferred.  A snippet may carry a
+ * small header, such as the stream's PAT and PMT, that is written ahead of the region.
+ *
+ * @author Keith
+ */
+public class RecordingSnippet {
+
+    /** The path to the recording file that holds the snippet's bytes. */
+    private final String m_sourceFilepath;
+
+    /** The position of the first byte of the snippet in the recording file. */
+    private final long m_position;
+
+    /** The number of bytes in the snippet. */
+    private final long m_length;
+
+    /** The batch index of this snippet within its recording. */
+    private final int m_batchIndex;
+
+    /** The bytes written ahead of the region of the recording file. */
+    private final byte[] m_header;
+
+    /**
+     * Creates a new RecordingSnippet with no header.
+     * @param sourceFilepath the path to the recording file that holds the snippet's bytes.
+     * @param position the position of the first byte of the snippet in the recording file.
+     * @param length the number of bytes in the snippet.
+     * @param batchIndex the batch index of this snippet within its recording.
+     */
+    public RecordingSnippet(String sourceFilepath, long position, long length, int batchIndex) {
+        this(sourceFilepath, position, length, batchIndex, new byte[0]);
+    }
+
+    /**
+     * Creates a new RecordingSnippet.
+     * @param sourceFilepath the path to the recording file that holds the snippet's bytes.
+     * @param position the position of the first byte of the snippet in the recording file.
+     * @param length the number of bytes in the snippet.
+     * @param batchIndex the batch index of this snippet within its recording.
+     * @param header the bytes to write ahead of the region of the recording file.
+     */
+    public RecordingSnippet(String sourceFilepath, long position, long length, int batchIndex, byte[] header) {
+        m_sourceFilepath = sourceFilepath;
+        m_position = position;
+        m_length = length;
+        m_batchIndex = batchIndex;
+        m_header = header;
+    }
+
+    /**
+     * Returns the path to the recording file that holds the snippet's bytes.
+     * @return the path to the recording file that holds the snippet's bytes.
+     */
+    public String getSourceFilepath() {
+        return m_sourceFilepath;
+    }
+
+    /**
+     * Returns the position of the first byte of the snippet in the recording file.
+     * @return the position of the first byte of the snippet in the recording file.
+     */
+    public long getPosition() {
+        return m_position;
+    }
+
+    /**
+     * Returns the number of bytes in the snippet, not counting its header.
+     * @return the number of bytes in the snippet.
+     */
+    public long getLength() {
+        return m_length;
+    }
+
+    /**
+     * Returns the number of header bytes written ahead of the region of the recording file.
+     * @return the length of the header.
+     */
+    public int getHeaderLength() {
+        return m_header.length;
+    }
+
+    /**
+     * Returns the batch index of this snippet within its recording.
+     * @return the batch index of this snippet within its recording.
+     */
+    public int getBatchIndex() {
+        return m_batchIndex;
+    }
+
+    /**
+     * Returns whether the given snippet starts exactly where this one ends, in the same recording file.
+     * @param next the snippet to check.
+     * @return true if the two snippets can be ripped as one.
+     */
+    public boolean isFollowedBy(RecordingSnippet next) {
+        return m_sourceFilepath.equals(next.m_sourceFilepath) && m_position + m_length == next.m_position;
+    }
+
+    /**
+     * Returns a snippet covering this snippet and the one that directly follows it, under this snippet's batch index
+     * and header.
+     * @param next a snippet for which {@link #isFollowedBy(RecordingSnippet)} is true.
+     * @return the combined snippet.
+     */
+    public RecordingSnippet extendWith(RecordingSnippet next) {
+        if (!isFollowedBy(next)) {
+            throw new IllegalArgumentException("Snippet " + next + " does not follow " + this);
+        }
+        return new RecordingSnippet(m_sourceFilepath, m_position, m_length + next.m_length, m_batchIndex, m_header);
+    }
+
+    /**
+     * Writes the snippet's header, then its bytes straight from the recording file, to the target channel.
+     * @param target the channel to write the snippet to.
+     * @throws IOException if the recording file cannot be read or the target cannot be written.
+     */
+    public void transferTo(WritableByteChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(m_header);
+        while (header.hasRemaining()) {
+            target.write(header);
+        }
+        transferBodyTo(target);
+    }
+
+    /**
+     * Writes the snippet's bytes to the target channel, straight from the recording file, without its header.  Used
+     * when the target has already been sent the data the header would repeat.
+     * @param target the channel to write the snippet to.
+     * @throws IOException if the recording file cannot be read or the target cannot be written.
+     */
+    public void transferBodyTo(WritableByteChannel target) throws IOException {
+        try (FileChannel source = new FileInputStream(m_sourceFilepath).getChannel()) {
+            transferFully(source, m_position, m_length, target);
+        }
+    }
+
+    /**
+     * Transfers a region of the source channel into the target channel.  {@code transferTo} may move fewer bytes
+     * than requested, so this loops until the whole region has been moved.
+     *
+     * @param source The channel to read from.
+     * @param position The position in the source to start transferring from.
+     * @param count The number of bytes to transfer.
+     * @param target The channel to write to.
+     * @throws IOException if the transfer fails or the source ends before the region is complete.
+     */
+    static void transferFully(FileChannel source, long position, long count, WritableByteChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long moved = source.transferTo(position + transferred, count - transferred, target);
+            if (moved <= 0) {
+                throw new IOException("Source ended after " + transferred + " of " + count + " bytes were transferred");
+            }
+            transferred += moved;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return m_sourceFilepath + " [" + m_position + ", " + (m_position + m_length) + ") batch " + m_batchIndex;
+    }
+}
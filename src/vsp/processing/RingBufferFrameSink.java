@@ -0,0 +1,172 @@
+package vsp.processing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FrameSink} that keeps the most recent frames in memory, for live consumers that should not have to touch
+ * disk.  A fixed number of slots is reused in turn, and each slot's storage only grows when a larger frame arrives, so
+ * a steady stream of frames allocates nothing.
+ *
+ * @author Keith
+ */
+public class RingBufferFrameSink implements FrameSink {
+
+    /** The stored bytes of each slot. */
+    private final byte[][] m_slotData;
+
+    /** The length of the frame in each slot. */
+    private final int[] m_slotLength;
+
+    /** The index of the frame in each slot. */
+    private final long[] m_slotFrameIndex;
+
+    /** The timestamp of the frame in each slot. */
+    private final long[] m_slotTimestamp;
+
+    /** The number of frames received. */
+    private long m_frameCount;
+
+    /** Whether the sink has been closed. */
+    private boolean m_closed;
+
+    /**
+     * Creates a new RingBufferFrameSink.
+     * @param capacity the number of most recent frames to keep.
+     */
+    public RingBufferFrameSink(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        m_slotData = new byte[capacity][];
+        m_slotLength = new int[capacity];
+        m_slotFrameIndex = new long[capacity];
+        m_slotTimestamp = new long[capacity];
+        m_frameCount = 0;
+        m_closed = false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void accept(long frameIndex, long timestamp, ByteBuffer frame) {
+        int slot = (int) (m_frameCount % m_slotData.length);
+        int length = frame.remaining();
+        if (m_slotData[slot] == null || m_slotData[slot].length < length) {
+            m_slotData[slot] = new byte[length];
+        }
+        frame.get(m_slotData[slot], 0, length);
+        m_slotLength[slot] = length;
+        m_slotFrameIndex[slot] = frameIndex;
+        m_slotTimestamp[slot] = timestamp;
+        m_frameCount++;
+        notifyAll();
+    }
+
+    /**
+     * Returns false, since frames are numbered in the order they arrive.
+     * @return false.
+     */
+    @Override
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    /**
+     * Returns the number of frames received.  The most recent is held at sequence number one less than this.
+     * @return the number of frames received.
+     */
+    public synchronized long getFrameCount() {
+        return m_frameCount;
+    }
+
+    /**
+     * Waits until more than the given number of frames have been received, or the sink is closed.
+     * @param frameCount the frame count already seen.
+     * @param timeoutMillis the longest time to wait, in milliseconds.
+     * @return the number of frames received.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized long awaitFrameCount(long frameCount, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (m_frameCount <= frameCount && !m_closed && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return m_frameCount;
+    }
+
+    /**
+     * Copies a held frame into a buffer.
+     * @param sequence the sequence number of the frame, counting received frames from 0.
+     * @param destination the buffer to copy the frame into, which must have room for it.
+     * @return the length of the frame, or -1 if the frame is no longer, or not yet, held.
+     */
+    public synchronized int copyFrame(long sequence, ByteBuffer destination) {
+        int slot = slotOf(sequence);
+        if (slot < 0) {
+            return -1;
+        }
+        destination.put(m_slotData[slot], 0, m_slotLength[slot]);
+        return m_slotLength[slot];
+    }
+
+    /**
+     * Returns a copy of a held frame.
+     * @param sequence the sequence number of the frame, counting received frames from 0.
+     * @return the frame's bytes, or null if the frame is no longer, or not yet, held.
+     */
+    public synchronized byte[] getFrame(long sequence) {
+        int slot = slotOf(sequence);
+        if (slot < 0) {
+            return null;
+        }
+        byte[] copy = new byte[m_slotLength[slot]];
+        System.arraycopy(m_slotData[slot], 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Returns the frame index of a held frame.
+     * @param sequence the sequence number of the frame, counting received frames from 0.
+     * @return the frame index, or -1 if the frame is no longer, or not yet, held.
+     */
+    public synchronized long getFrameIndex(long sequence) {
+        int slot = slotOf(sequence);
+        return slot < 0 ? -1 : m_slotFrameIndex[slot];
+    }
+
+    /**
+     * Returns the timestamp of a held frame.
+     * @param sequence the sequence number of the frame, counting received frames from 0.
+     * @return the timestamp in milliseconds, or -1 if the frame is no longer, or not yet, held.
+     */
+    public synchronized long getTimestamp(long sequence) {
+        int slot = slotOf(sequence);
+        return slot < 0 ? -1 : m_slotTimestamp[slot];
+    }
+
+    /**
+     * Returns the slot holding a frame.
+     * @param sequence the sequence number of the frame.
+     * @return the slot, or -1 if the frame is not held.
+     */
+    private int slotOf(long sequence) {
+        if (sequence < 0 || sequence >= m_frameCount || sequence < m_frameCount - m_slotData.length) {
+            return -1;
+        }
+        return (int) (sequence % m_slotData.length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+        // Frames are readable as soon as they are received.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() {
+        m_closed = true;
+        notifyAll();
+    }
+}
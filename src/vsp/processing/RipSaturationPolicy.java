@@ -0,0 +1,18 @@
+package vsp.processing;
+
+/**
+ * What the frame rip scheduler does with a new snippet when its queue is full.  No policy makes the submitting thread
+ * wait:  a snippet that is held back stays with its recording, which merges its following snippets into it and offers
+ * it again at each flush until there is room.
+ * @author Keith
+ */
+public enum RipSaturationPolicy {
+    /** The snippet is held back by its recording until there is room in the queue. */
+    BLOCK,
+    /** The snippet is merged into a queued snippet that it directly follows, otherwise it is held back. */
+    COALESCE,
+    /** The snippet is ripped at a reduced frame rate, and held back until there is room in the queue. */
+    REDUCE_FPS,
+    /** The snippet is dropped, losing its frames. */
+    DROP;
+}
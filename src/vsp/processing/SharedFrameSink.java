@@ -0,0 +1,74 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FrameSink} shared by a recording and the rip jobs it hands out, which may still be running after the
+ * recording has stopped.  Each holder {@link #retain() retains} the sink and closes it when done, and the sink passed
+ * to is only closed once the last holder has.  The sink starts retained once, by whoever created it.
+ *
+ * @author Keith
+ */
+public class SharedFrameSink implements FrameSink {
+
+    /** The sink frames are passed to. */
+    private final FrameSink m_delegate;
+
+    /** The number of holders that have not yet closed the sink.  Guarded by this sink. */
+    private int m_holders;
+
+    /**
+     * Creates a new SharedFrameSink, retained once by its creator.
+     * @param delegate the sink to pass frames to.
+     */
+    public SharedFrameSink(FrameSink delegate) {
+        m_delegate = delegate;
+        m_holders = 1;
+    }
+
+    /**
+     * Adds a holder of the sink, who must close it when done.
+     * @return this sink.
+     * @throws IllegalStateException if every holder has already closed the sink.
+     */
+    public synchronized SharedFrameSink retain() {
+        if (m_holders == 0) {
+            throw new IllegalStateException("Frame sink already closed");
+        }
+        m_holders++;
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void accept(long frameIndex, long timestamp, ByteBuffer frame) throws IOException {
+        m_delegate.accept(frameIndex, timestamp, frame);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isConcurrent() {
+        return m_delegate.isConcurrent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() throws IOException {
+        m_delegate.flush();
+    }
+
+    /**
+     * Releases one holder's use of the sink, closing the sink passed to once no holder is left.
+     * @throws IOException if the sink passed to cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (m_holders == 0 || --m_holders > 0) {
+                return;
+            }
+        }
+        m_delegate.close();
+    }
+}
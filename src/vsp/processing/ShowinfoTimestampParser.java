@@ -0,0 +1,77 @@
+package vsp.processing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the console output of an FFMPEG process whose filter chain ends in {@code showinfo}, and records the
+ * presentation timestamp of each output frame in a {@link FrameTimestampWriter}.  Reading the output also keeps the
+ * process from blocking on a full error pipe.  Other console lines are logged at FINE.
+ *
+ * @author Keith
+ */
+public class ShowinfoTimestampParser implements Runnable {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(ShowinfoTimestampParser.class.getName());
+
+    /** Matches the frame number and timestamp of a showinfo line, such as {@code n:  12 pts: 34 pts_time:1.1333}. */
+    private static final Pattern SHOWINFO = Pattern.compile("\\bn:\\s*(\\d+)\\s+pts:\\s*-?\\d+\\s+pts_time:\\s*(-?[0-9.]+)");
+
+    /** The console output of the process. */
+    private final InputStream m_output;
+
+    /** The index to record timestamps in. */
+    private final FrameTimestampWriter m_writer;
+
+    /** The key of the process's first output frame; later frames follow on from it. */
+    private final long m_firstKey;
+
+    /**
+     * Creates a new ShowinfoTimestampParser.
+     * @param output the console (error) output of the FFMPEG process.
+     * @param writer the index to record timestamps in.
+     * @param firstKey the key of the process's first output frame.
+     */
+    public ShowinfoTimestampParser(InputStream output, FrameTimestampWriter writer, long firstKey) {
+        m_output = output;
+        m_writer = writer;
+        m_firstKey = firstKey;
+    }
+
+    /**
+     * Starts parsing the console output of a process on a new daemon thread.
+     * @param process the FFMPEG process.
+     * @param writer the index to record timestamps in.
+     * @param firstKey the key of the process's first output frame.
+     */
+    public static void start(Process process, FrameTimestampWriter writer, long firstKey) {
+        Thread t = new Thread(new ShowinfoTimestampParser(process.getErrorStream(), writer, firstKey), "FFMPEG Timestamp Parser");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Reads the output until the process closes it. */
+    @Override
+    public void run() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(m_output))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher m = SHOWINFO.matcher(line);
+                if (m.find()) {
+                    m_writer.addFrame(m_firstKey + Long.parseLong(m.group(1)), Double.parseDouble(m.group(2)));
+                } else {
+                    LOGGER.fine(line);
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "FFMPEG output closed", ex);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A unit of work for the {@link FrameRipScheduler}: rips the frames of one recording snippet with its own FFMPEG
+ * process, into the recording's {@link FrameSink}.  While queued, a job may be widened to cover following snippets or
+ * lowered in frame rate by the scheduler.  The job holds the sink until it has run, or is discarded without running.
+ *
+ * @author Keith
+ */
+public class SnippetRipJob implements Runnable {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(SnippetRipJob.class.getName());
+
+    /** The recording this job was submitted for, used to decide which jobs may be coalesced. */
+    private final Object m_owner;
+
+    /** The image quality to rip to. */
+    private final int m_quality;
+
+    /** The sink frames are passed to, retained for this job. */
+    private final SharedFrameSink m_sink;
+
+    /** The statistics on the cost of copying snippets into FFMPEG. */
+    private final FlushStatistics m_flushStatistics;
+
+    /** The index to record frame timestamps in, or null to not record them. */
+    private final FrameTimestampWriter m_timestamps;
+
+    /** The snippet to rip. */
+    private RecordingSnippet m_snippet;
+
+    /** The frames per second rate to rip at. */
+    private int m_fps;
+
+    /** Whether the frame rate has been reduced because the scheduler was saturated. */
+    private boolean m_reduced;
+
+    /** The estimated time of the snippet's first frame, in milliseconds since Jan 1 1970. */
+    private final long m_startTime;
+
+    /** The system time, in nanoseconds, the job entered the scheduler's queue. */
+    private long m_enqueueNanos;
+
+    /**
+     * Creates a new SnippetRipJob.
+     * @param owner the recording this job belongs to.
+     * @param snippet the snippet to rip.
+     * @param startTime the estimated time of the snippet's first frame, in milliseconds since Jan 1 1970.
+     * @param fps the frames per second rate to rip at.
+     * @param quality the image quality to rip to.
+     * @param sink the sink to pass frames to, which the job retains until it has run or is discarded.
+     * @param flushStatistics the statistics to record snippet copy costs in.
+     * @param timestamps the index to record frame timestamps in, or null to not record them.
+     */
+    public SnippetRipJob(Object owner, RecordingSnippet snippet, long startTime, int fps, int quality,
+            SharedFrameSink sink, FlushStatistics flushStatistics, FrameTimestampWriter timestamps) {
+        m_owner = owner;
+        m_snippet = snippet;
+        m_startTime = startTime;
+        m_fps = fps;
+        m_quality = quality;
+        m_sink = sink.retain();
+        m_flushStatistics = flushStatistics;
+        m_timestamps = timestamps;
+    }
+
+    /**
+     * Returns the recording this job was submitted for.
+     * @return the owner of this job.
+     */
+    Object getOwner() {
+        return m_owner;
+    }
+
+    /**
+     * Returns whether this job must not run alongside another job of the same recording, because the recording's
+     * sink stores frames in the order they arrive.
+     * @return true if the jobs of this job's recording must run one at a time.
+     */
+    boolean isOrdered() {
+        return !m_sink.isConcurrent();
+    }
+
+    /**
+     * Returns the snippet to rip.
+     * @return the snippet to rip.
+     */
+    RecordingSnippet getSnippet() {
+        return m_snippet;
+    }
+
+    /**
+     * Widens this job to also cover a snippet that directly follows its own.
+     * @param next the following snippet.
+     */
+    void coalesce(RecordingSnippet next) {
+        m_snippet = m_snippet.extendWith(next);
+    }
+
+    /**
+     * Returns the frames per second rate to rip at.
+     * @return the frames per second rate to rip at.
+     */
+    int getFps() {
+        return m_fps;
+    }
+
+    /**
+     * Lowers the frames per second rate to rip at, because the scheduler is saturated.
+     * @param fps the reduced frames per second rate to rip at.
+     */
+    void reduceFps(int fps) {
+        m_fps = fps;
+        m_reduced = true;
+    }
+
+    /**
+     * Returns whether the frame rate has already been reduced.
+     * @return true if {@link #reduceFps(int)} has been called.
+     */
+    boolean isReduced() {
+        return m_reduced;
+    }
+
+    /**
+     * Returns the system time, in nanoseconds, the job entered the queue.
+     * @return the enqueue time in nanoseconds.
+     */
+    long getEnqueueNanos() {
+        return m_enqueueNanos;
+    }
+
+    /**
+     * Sets the system time, in nanoseconds, the job entered the queue.
+     * @param enqueueNanos the enqueue time in nanoseconds.
+     */
+    void setEnqueueNanos(long enqueueNanos) {
+        m_enqueueNanos = enqueueNanos;
+    }
+
+    /**
+     * Launches FFMPEG, streams the snippet into its standard input and waits for every frame to reach the sink, then
+     * releases the sink.
+     */
+    @Override
+    public void run() {
+        try {
+            rip();
+        } finally {
+            discard();
+        }
+    }
+
+    /** Releases the sink without ripping, for a job that was dropped or merged into another and will never run. */
+    void discard() {
+        try {
+            m_sink.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error closing frame sink", ex);
+        }
+    }
+
+    /** Rips the snippet's frames into the sink. */
+    private void rip() {
+        FramePipeReader frames = null;
+        try {
+            LOGGER.info("Launching FFMPEG Process for " + m_snippet + " at " + m_fps + " fps");
+            // Frames of a batch are numbered from 1.
+            long firstKey = FfmpegVideoProcessor.snippetFrameKey(m_snippet.getBatchIndex(), 1);
+            Process frameProcess = FfmpegVideoProcessor.ripFramesFromStdin(m_fps, m_quality, firstKey, m_timestamps);
+            frames = FramePipeReader.start(frameProcess, m_sink, firstKey, m_startTime, m_fps);
+
+            //Transfer the new bytes channel-to-channel into the pipe, so the stream data never passes through the heap
+            long copyStart = System.nanoTime();
+            try (WritableByteChannel ffmpegInput = Channels.newChannel(frameProcess.getOutputStream())) {
+                m_snippet.transferTo(ffmpegInput);
+            }
+            m_flushStatistics.recordFlush(m_snippet.getHeaderLength() + m_snippet.getLength(), System.nanoTime() - copyStart);
+            LOGGER.info("Flush copy statistics: " + m_flushStatistics);
+
+            LOGGER.info("Waiting for FFMPEG Process...");
+            long frameCount = frames.waitFor(); //Wait for the processing to complete
+            m_sink.flush();
+            LOGGER.info("Ripped " + frameCount + " frames from " + m_snippet);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "IO Exception while processing frames", ex);
+            if (frames != null) {
+                frames.abandon();
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.SEVERE, "Frame Processing thread interrupted", ex);
+            frames.abandon();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package vsp.processing;
+
+import java.io.IOException;
+
+/**
+ * Something that receives a video stream and writes it, as an MPEG transport stream, into a recording file.
+ *
+ * @author Keith
+ */
+public interface StreamIngest {
+
+    /**
+     * Starts receiving the stream and writing it to the given file.
+     * @param tsFilePath the path of the .ts file to write to.
+     * @throws IOException if the stream cannot be received or the file cannot be written.
+     */
+    public void start(String tsFilePath) throws IOException;
+
+    /**
+     * Switches writing to a new file.  Once this returns nothing further is written to the previous file.
+     * @param tsFilePath the path of the .ts file to write to from now on.
+     * @throws IOException if the new file cannot be written.
+     */
+    public void rollTo(String tsFilePath) throws IOException;
+
+    /**
+     * Returns whether the ingest has stopped receiving on its own, because of an error, so that nothing more will be
+     * written until it is restarted.
+     * @return true if the ingest has failed.
+     */
+    public boolean hasFailed();
+
+    /**
+     * Writes out any of the stream held in memory, so the current file holds everything received so far.  An error
+     * writing the file is reported by {@link #hasFailed()}.
+     */
+    public void flush();
+
+    /** Stops receiving the stream, writes out what has been received and closes the current file. */
+    public void stop();
+}
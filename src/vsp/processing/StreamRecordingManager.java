@@ -3,9 +3,10 @@ package vsp.processing;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -13,10 +14,9 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import uk.co.caprica.vlcj.player.MediaPlayerFactory;
-import uk.co.caprica.vlcj.player.headless.HeadlessMediaPlayer;
-import vsp.data.FileVideoSource;
 import vsp.data.FrameRecording;
+import vsp.data.FrameTimestampIndex;
+import vsp.data.StreamVideoSource;
 import vsp.data.VideoSource;
 import vsp.util.VspProperties;
 
@@ -40,17 +40,29 @@ public class StreamRecordingManager implements RecordingCompleteNotifier {
     /** The name of the big .ts recorded file. */
     private String m_recordingFilename;
 
-    /** The period at which recording blocks are sent to processing. */
+    /**
+     * The period, in seconds, before recording blocks are first sent to processing, and after which a recording
+     * that has not grown is ended.
+     */
     private final long m_recordingBlockFlushPeriod;
 
+    /** Adapts the delay between flushes to the measured bitrate of the stream. */
+    private AdaptiveFlushPeriod m_adaptiveFlushPeriod;
+
+    /** Whether the periodic processor should keep rescheduling itself.  Guarded by this manager. */
+    private boolean m_processing;
+
+    /** Whether the current recording has been stopped.  Guarded by this manager. */
+    private boolean m_stopped;
+
     /** The frames per second rate to record at. */
     private final int m_fps;
 
     /** The quality level of the recording, specified by the implementation of {@code VideoProcessor} used. */
     private final int m_quality;
     
-    /** The media player used to receive the stream. */
-    private final HeadlessMediaPlayer m_mediaPlayer;
+    /** The ingest used to receive the stream into the recording file. */
+    private final StreamIngest m_ingest;
     
     /** The collection of all listeners to notify when recording ends. */
     private final Set<RecordingCompleteListener> m_listeners;
@@ -63,6 +75,48 @@ public class StreamRecordingManager implements RecordingCompleteNotifier {
 
     /** The executor used to start new threads. */
     ScheduledExecutorService m_ses;
+
+    /** Whether the executor was created by, and should be shut down with, this manager. */
+    private final boolean m_ownsExecutor;
+
+    /** The statistics on the cost of copying new recording data on each flush. */
+    private final FlushStatistics m_flushStatistics;
+
+    /** The size in bytes at which the recording rolls over to a new .ts segment, or 0 to never roll on size. */
+    private final long m_segmentMaxBytes;
+
+    /** The duration in milliseconds at which the recording rolls over to a new .ts segment, or 0 to never roll on time. */
+    private final long m_segmentMaxMillis;
+
+    /** The index of the .ts segment currently being recorded. */
+    private int m_segmentIndex;
+
+    /** The system time the current .ts segment was started. */
+    private long m_segmentStartTime;
+
+    /** The path to the metadata file of the current recording. */
+    private String m_metadataFilePath;
+
+    /** The way recorded data is handed to FFMPEG for frame ripping. */
+    private final FrameRipMode m_ripMode;
+
+    /** The long-lived frame ripper of the current recording, when ripping in continuous mode.  Guarded by this manager. */
+    private ContinuousFrameRipper m_continuousRipper;
+
+    /**
+     * The index the timestamps of the current recording's frames are written to, or null if it could not be created.
+     * Guarded by this manager.
+     */
+    private FrameTimestampWriter m_timestampWriter;
+
+    /**
+     * The sink the current recording's frames are ripped into, or null if it could not be created.  Guarded by this
+     * manager.
+     */
+    private SharedFrameSink m_frameSink;
+
+    /** The snippet rip jobs refused by the saturated frame rip scheduler, oldest first.  Guarded by this manager. */
+    private final LinkedList<SnippetRipJob> m_heldJobs;
     
     /**
      * Constructs a new instance of {@code StreamRecordingManager}.
@@ -90,18 +144,43 @@ public class StreamRecordingManager implements RecordingCompleteNotifier {
      */
     public StreamRecordingManager(VideoSource source, String recordingLibraryDirectory,
             long snippetRecordingDuration, int fps, int quality) {
+        this(source, recordingLibraryDirectory, snippetRecordingDuration, fps, quality, null);
+    }
+
+    /**
+     * Constructs a new instance of {@code StreamRecordingManager} that runs its periodic processing on a shared
+     * executor, for hosting many recordings in one process.
+     *
+     * @param source The source of the video.
+     * @param recordingLibraryDirectory The directory that the stream will be recorded to, which is created if it does not exist.
+     * @param snippetRecordingDuration The length of an individual snippet of
+     * recording in the overlapping recordings.
+     * @param fps The frames per second rate to record at.
+     * @param quality The quality level of the recording, specified by the
+     * implementation of {@code VideoProcessor} used.
+     * @param executor The executor to run periodic processing on, or null for this manager to create its own.
+     */
+    public StreamRecordingManager(VideoSource source, String recordingLibraryDirectory,
+            long snippetRecordingDuration, int fps, int quality, ScheduledExecutorService executor) {
         m_source = source;
         m_videoLibraryDirectory = recordingLibraryDirectory;
         m_recordingBlockFlushPeriod = snippetRecordingDuration;
         m_fps = fps;
         m_quality = quality;
         m_batchIndex = 0;
-        m_ses = Executors.newSingleThreadScheduledExecutor();
+        m_ownsExecutor = executor == null;
+        m_ses = m_ownsExecutor ? Executors.newSingleThreadScheduledExecutor() : executor;
         
-        MediaPlayerFactory mediaPlayerFactory = new MediaPlayerFactory();
-        m_mediaPlayer = mediaPlayerFactory.newHeadlessMediaPlayer();
+        m_ingest = createIngest(source);
         m_listeners = new HashSet<>();
         m_periodicFuture = null;
+        m_flushStatistics = new FlushStatistics();
+        m_segmentMaxBytes = VspProperties.getInstance().getSegmentMaxMegabytes() * 1024L * 1024L;
+        m_segmentMaxMillis = VspProperties.getInstance().getSegmentMaxSeconds() * 1000L;
+        m_segmentIndex = 0;
+        m_ripMode = VspProperties.getInstance().getFrameRipMode();
+        m_continuousRipper = null;
+        m_heldJobs = new LinkedList<>();
  
         File recordingDir = new File(m_videoLibraryDirectory);
         recordingDir.mkdirs();
@@ -119,44 +198,275 @@ public class StreamRecordingManager implements RecordingCompleteNotifier {
         long startTime = System.currentTimeMillis();
         m_recordingFilename = m_source.getName() + "-" + startTime;
         m_recordingDirectory = m_videoLibraryDirectory + "/" + m_recordingFilename + "/";
-        String tsFilePath = m_recordingDirectory + m_recordingFilename + ".ts";
         File recordingDirectoryFile = new File(m_recordingDirectory);
         recordingDirectoryFile.mkdirs();
-        String[] options = {":sout=#standard{mux=ts,access=file,dst=" + tsFilePath + "}"};
-        boolean everythingIsOk = true;
-        everythingIsOk = m_mediaPlayer.startMedia(mediaUrl, options);
-        
+        m_segmentIndex = 0;
+        String tsFilePath = buildSegmentPath(m_segmentIndex);
+        synchronized (this) {
+            m_stopped = false;
+        }
+
         FrameRecording frameRecording = new FrameRecording(m_source.getId(), m_fps, tsFilePath,
                 m_recordingDirectory, startTime, -1, "NAME");
-        frameRecording.saveToFile(m_recordingDirectory + "/" + VspProperties.getInstance().getFrameRecordingFilename());
-        
-        launchPeriodicProcessor(tsFilePath);
+        m_metadataFilePath = m_recordingDirectory + "/" + VspProperties.getInstance().getFrameRecordingFilename();
+        frameRecording.saveToFile(m_metadataFilePath);
+
+        try {
+            m_ingest.start(tsFilePath);
+        } catch (IOException ex) {
+            Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.SEVERE, "Unable to start receiving " + mediaUrl, ex);
+        }
+        recordSegment(tsFilePath);
+
+        SharedFrameSink frameSink;
+        try {
+            frameSink = new SharedFrameSink(createFrameSink(frameRecording));
+        } catch (IOException ex) {
+            Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.SEVERE, "Unable to create frame store, frames will not be ripped", ex);
+            frameSink = null;
+        }
+
+        FrameTimestampWriter timestampWriter;
+        try {
+            // The recording's first frame is frame 1 of the continuous rip, or of the first snippet.
+            long firstFrameKey = m_ripMode == FrameRipMode.CONTINUOUS ? 1L : FfmpegVideoProcessor.snippetFrameKey(0, 1);
+            timestampWriter = new FrameTimestampWriter(m_recordingDirectory + FrameTimestampIndex.FILE_NAME, startTime,
+                    firstFrameKey);
+        } catch (IOException ex) {
+            Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.WARNING, "Unable to create frame timestamp index, frame times will be estimated", ex);
+            timestampWriter = null;
+        }
+        synchronized (this) {
+            m_timestampWriter = timestampWriter;
+            m_frameSink = frameSink;
+            if (m_ripMode == FrameRipMode.CONTINUOUS && m_frameSink != null) {
+                m_continuousRipper = new ContinuousFrameRipper(startTime, m_fps, m_quality, m_frameSink, m_flushStatistics, m_timestampWriter);
+            }
+        }
+        launchPeriodicProcessor(tsFilePath, startTime);
+    }
+
+    /**
+     * Returns whether this manager splits its recordings into multiple .ts segments.
+     * @return true if a size or time limit is configured for segments.
+     */
+    private boolean isSegmenting() {
+        return m_segmentMaxBytes > 0 || m_segmentMaxMillis > 0;
+    }
+
+    /**
+     * Builds the path to the .ts file for a given segment of the current recording.
+     * @param segmentIndex the index of the segment.
+     * @return the fully qualified path to the segment's .ts file.
+     */
+    private String buildSegmentPath(int segmentIndex) {
+        if (!isSegmenting()) {
+            return m_recordingDirectory + m_recordingFilename + ".ts";
+        }
+        return m_recordingDirectory + m_recordingFilename + "-" + String.format("%04d", segmentIndex) + ".ts";
+    }
+
+    /**
+     * Creates the ingest that receives the source's stream.  Multicast sources are received in Java unless VLC ingest
+     * is configured; every other source is received by VLC.
+     * @param source the source of the stream.
+     * @return the ingest for the source.
+     */
+    private static StreamIngest createIngest(VideoSource source) {
+        if (source instanceof StreamVideoSource && VspProperties.getInstance().getIngestMode() == IngestMode.JAVA) {
+            return new MulticastTsIngest((StreamVideoSource) source);
+        }
+        return new VlcStreamIngest(source);
+    }
+
+    /**
+     * Creates the sink a recording's frames are ripped into, as configured:  a directory of frame files named the way
+     * the rip mode numbers frames, packed frame files, or both.
+     * @param recording the recording whose frames are stored.
+     * @return the sink for the recording's frames.
+     * @throws IOException if the frame files cannot be created.
+     */
+    private FrameSink createFrameSink(FrameRecording recording) throws IOException {
+        FrameStore store = VspProperties.getInstance().getFrameStore();
+        FrameSink directory = null;
+        if (store == FrameStore.DIRECTORY || store == FrameStore.FAN_OUT) {
+            if (m_ripMode == FrameRipMode.CONTINUOUS) {
+                directory = new DirectoryFrameSink(recording.getFrameDirectory(), FfmpegVideoProcessor.CONTINUOUS_FRAME_PATTERN);
+            } else {
+                directory = new DirectoryFrameSink(recording.getFrameDirectory(), FfmpegVideoProcessor.SNIPPET_FRAME_PATTERN) {
+                    @Override
+                    protected String getFileName(long frameIndex) {
+                        return FfmpegVideoProcessor.snippetFrameFileName(frameIndex);
+                    }
+                };
+            }
+        }
+        if (store == FrameStore.DIRECTORY) {
+            return directory;
+        }
+        PackedFrameSink packed = new PackedFrameSink(recording.getPackedFramesBasePath());
+        return store == FrameStore.FAN_OUT ? new FanOutFrameSink(directory, packed) : packed;
+    }
+
+    /**
+     * Records the start of a new .ts segment in the recording metadata.
+     * @param tsFilePath the path to the .ts file being recorded into.
+     */
+    private void recordSegment(String tsFilePath) {
+        Logger.getLogger(StreamRecordingManager.class.getName()).info("Starting recording segment: " + tsFilePath);
+        m_segmentStartTime = System.currentTimeMillis();
+        FrameRecording.addRecordingSegment(m_metadataFilePath, tsFilePath);
+    }
+
+    /**
+     * Returns whether the current segment has reached its size or time limit.
+     * @param segmentLength the current length of the segment in bytes.
+     * @return true if the recording should roll over to a new segment.
+     */
+    private boolean isSegmentFull(long segmentLength) {
+        if (m_segmentMaxBytes > 0 && segmentLength >= m_segmentMaxBytes) {
+            return true;
+        }
+        return m_segmentMaxMillis > 0 && System.currentTimeMillis() - m_segmentStartTime >= m_segmentMaxMillis;
+    }
+
+    /**
+     * Stops recording into the current segment and starts recording into the next one.  Once this returns nothing
+     * further is written to the previous segment.
+     * @return the path to the new segment.
+     * @throws IOException if the new segment cannot be written.
+     */
+    private String rollSegment() throws IOException {
+        m_segmentIndex++;
+        String tsFilePath = buildSegmentPath(m_segmentIndex);
+        m_ingest.rollTo(tsFilePath);
+        recordSegment(tsFilePath);
+        return tsFilePath;
     }
 
     /**
      * Launches the periodic processor to go and rip frames from the stored file with FFMPEG.
      * @param tsFilePath The path to the transport stream file that should be processed.
+     * @param startTime The time the recording started, in milliseconds since Jan 1 1970.
      */
-    private void launchPeriodicProcessor(String tsFilePath) {
-        Runnable r = new PeriodicProcessorRunnable(tsFilePath);
-        m_periodicFuture = m_ses.scheduleAtFixedRate(r, 5L, m_recordingBlockFlushPeriod, TimeUnit.SECONDS);
+    private void launchPeriodicProcessor(String tsFilePath, long startTime) {
+        VspProperties props = VspProperties.getInstance();
+        m_adaptiveFlushPeriod = new AdaptiveFlushPeriod(m_recordingBlockFlushPeriod * 1000L,
+                props.getFlushTargetKilobytes() * 1024L, props.getFlushMinMillis(), props.getFlushMaxMillis());
+        Runnable r = new PeriodicProcessorRunnable(tsFilePath, startTime);
+        synchronized (this) {
+            m_processing = true;
+            m_periodicFuture = m_ses.schedule(r, 5L, TimeUnit.SECONDS);
+        }
     }
 
     /**
-     * Stops recording.
+     * Schedules the next run of the periodic processor, unless recording has been stopped.
+     * @param processor the periodic processor.
+     * @param delayMillis the delay before the next run, in milliseconds.
+     */
+    private synchronized void scheduleNextFlush(Runnable processor, long delayMillis) {
+        if (m_processing) {
+            m_periodicFuture = m_ses.schedule(processor, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops recording.  This may be called from any thread, and more than once; only the first call has any effect.
+     * Once it returns no further snippets are handed to frame ripping.
      */
     public void stopRecording() {
+        ContinuousFrameRipper continuousRipper;
+        FrameTimestampWriter timestampWriter;
+        SharedFrameSink frameSink;
+        synchronized (this) {
+            if (m_stopped) {
+                return;
+            }
+            m_stopped = true;
+            m_processing = false;
+            if(m_periodicFuture != null) {
+                m_periodicFuture.cancel(false);
+            }
+            // There is no later flush to offer held back snippets at, so they go in over the queue's capacity.
+            for (SnippetRipJob job : m_heldJobs) {
+                FrameRipScheduler.getInstance().add(job);
+            }
+            m_heldJobs.clear();
+            continuousRipper = m_continuousRipper;
+            timestampWriter = m_timestampWriter;
+            frameSink = m_frameSink;
+            m_continuousRipper = null;
+            m_timestampWriter = null;
+            m_frameSink = null;
+        }
         Logger.getLogger(StreamRecordingManager.class.getName()).info("Stopping Recording");
 
-        m_mediaPlayer.stop();
+        m_ingest.stop();
+        FrameRecording.updateRecordingEndTime(m_metadataFilePath, System.currentTimeMillis());
         for(RecordingCompleteListener l : m_listeners) {
             l.recordingComplete(m_source);
         }
-        if(m_periodicFuture != null) {
-            m_periodicFuture.cancel(false);
+        // Closed outside the lock, since the ripper waits for FFMPEG to finish the frames already fed to it.
+        if (continuousRipper != null) {
+            continuousRipper.close();
+        }
+        if (timestampWriter != null) {
+            timestampWriter.close();
+        }
+        // Snippets still being ripped hold the sink open until they finish.
+        if (frameSink != null) {
+            try {
+                frameSink.close();
+            } catch (IOException ex) {
+                Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.WARNING, "Error closing frame store", ex);
+            }
+        }
+        if (m_ownsExecutor) {
+            m_ses.shutdown();
         }
     }
 
+    /**
+     * Returns whether the current recording has been stopped.
+     * @return true if {@link #stopRecording()} has been called since recording started.
+     */
+    private synchronized boolean isStopped() {
+        return m_stopped;
+    }
+
+    /**
+     * Returns the source being recorded.
+     * @return the source being recorded.
+     */
+    public VideoSource getSource() {
+        return m_source;
+    }
+
+    /**
+     * Returns the ingest receiving the stream.
+     * @return the ingest.
+     */
+    StreamIngest getIngest() {
+        return m_ingest;
+    }
+
+    /**
+     * Returns the directory of the current recording.
+     * @return the directory of the current recording, or null if recording has not started.
+     */
+    public String getRecordingDirectory() {
+        return m_recordingDirectory;
+    }
+
+    /**
+     * Returns the statistics on the cost of copying new recording data on each flush.
+     * @return the flush copy statistics for this recording manager.
+     */
+    public FlushStatistics getFlushStatistics() {
+        return m_flushStatistics;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void addRecordingCompleteListener(RecordingCompleteListener listener) {
@@ -177,94 +487,177 @@ public class StreamRecordingManager implements RecordingCompleteNotifier {
      */
     private class PeriodicProcessorRunnable implements Runnable {
 
-        /** The filepath of the big source file we are pulling frames from. */
-        private final String m_sourceFilepath;
+        /** The filepath of the .ts segment we are currently pulling frames from. */
+        private String m_sourceFilepath;
         
-        /** The cursor index into the file we are reading data from. */
-        private int m_cursor = 0;
+        /** The cursor index into the segment we are reading data from. */
+        private long m_cursor = 0;
+
+        /** The length of the segment when it was last checked. */
+        private long m_lastLength = 0;
+
+        /** The system time, in nanoseconds, of the previous run. */
+        private long m_lastRunNanos = System.nanoTime();
+
+        /** The system time, in nanoseconds, the recording was last seen to grow. */
+        private long m_lastGrowthNanos = System.nanoTime();
+
+        /** Cuts the new data of the segment into decodable, packet aligned snippets. */
+        private final TransportStreamCutter m_cutter = new TransportStreamCutter();
+
+        /**
+         * The estimated time the data after the cursor was received, in milliseconds since Jan 1 1970:  the start of
+         * the recording, then the time of each cut.
+         */
+        private long m_snippetStartTime;
 
         /**
          * Constructs a new instance of PeriodicProcessorRunnable.
          *
-         * @param sourceFilepath The full path to the file to process and pull frames from (path to .ts).
+         * @param sourceFilepath The full path to the first segment to process and pull frames from (path to .ts).
+         * @param startTime The time the recording started, in milliseconds since Jan 1 1970.
          */
-        public PeriodicProcessorRunnable(String sourceFilepath) {
+        public PeriodicProcessorRunnable(String sourceFilepath, long startTime) {
             m_sourceFilepath = sourceFilepath;
+            m_snippetStartTime = startTime;
         }
         
         @Override
         public void run() {
+            long now = System.nanoTime();
+            long elapsedNanos = now - m_lastRunNanos;
+            m_lastRunNanos = now;
+            long numNewBytes = flush(now);
+            if (numNewBytes >= 0) {
+                long delay = m_adaptiveFlushPeriod.update(numNewBytes, elapsedNanos);
+                Logger.getLogger(StreamRecordingManager.class.getName()).fine("Next flush: " + m_adaptiveFlushPeriod);
+                scheduleNextFlush(this, delay);
+            }
+        }
+
+        /**
+         * Flushes the new data of the recording to frame ripping, rolling over to a new segment if the current one is
+         * full, and stops the recording if it has not grown for the flush period.
+         *
+         * @param now The system time of this run, in nanoseconds.
+         * @return the number of bytes the recording grew by, or -1 if the recording has ended.
+         */
+        private long flush(long now) {
             Logger.getLogger(StreamRecordingManager.class.getName()).info("Running periodic processor");
+            if (isStopped()) {
+                return -1;
+            }
 
-            //Read In the file to rip frames from
+            //Write out what the ingest has buffered, then open the segment to rip frames from
+            m_ingest.flush();
             File f = new File(m_sourceFilepath);
-            int length = 0;
+            long length = 0;
             
-            try(FileInputStream fis = new FileInputStream(f)) {
-                length = (int) f.length();
-                int numNewBytes = length - m_cursor;
+            try(FileChannel sourceChannel = new FileInputStream(f).getChannel()) {
+                length = sourceChannel.size();
+
+                //Roll over before reading, so the tail of the finished segment is picked up by this flush
+                String nextSegment = null;
+                if (isSegmenting() && isSegmentFull(length)) {
+                    nextSegment = rollSegment();
+                    length = sourceChannel.size();
+                }
+
+                long numNewBytes = length - m_lastLength;
+                m_lastLength = length;
                 Logger.getLogger(StreamRecordingManager.class.getName()).info("Number of new bytes found in source file: " + numNewBytes);
-                if(numNewBytes == 0) {
+                if(numNewBytes == 0 && nextSegment == null) {
+                    if (m_ingest.hasFailed()) {
+                        Logger.getLogger(StreamRecordingManager.class.getName()).severe("Ingest failed, ending recording: " + m_recordingDirectory);
+                    } else if (now - m_lastGrowthNanos < TimeUnit.SECONDS.toNanos(m_recordingBlockFlushPeriod)) {
+                        //Flushes may come faster than the stream can be judged stopped, so wait out the full period
+                        return 0;
+                    }
+                    //The stream has stopped, so flush whatever was being carried over waiting for a keyframe
+                    flushSnippet(sourceChannel, length, true);
                     stopRecording();
-                    return;
+                    return -1;
                 }
+                m_lastGrowthNanos = now;
 
-                //Copy bytes into memory
-                byte [] bytes = new byte[numNewBytes];
-
-                //Skip bytes behind the cursor and read the new ones
-                //System.out.println("Reading file... cursor = " + cursor + " length = " + length + " L-C = " + (length - cursor));
-                fis.skip(m_cursor);
-                fis.read(bytes, 0, numNewBytes);
-                
-                //Reset cursor to end of file
-                m_cursor = (int) length;
-
-                //Write scratch recording snippet for ffmpeg to pull from, making scratch dir if it does not exist already
-                File scratchDir = new File(VspProperties.getInstance().getScratchDirectory());
-                if(!scratchDir.exists()) {
-                    scratchDir.mkdirs();
-                    Logger.getLogger(StreamRecordingManager.class.getName()).info("Could not find scratch dir, created one at: " + scratchDir.getCanonicalPath());
-                }
-                String snippetPath = VspProperties.getInstance().getScratchDirectory() + "/" + System.currentTimeMillis();
-                File scratchRecordingSnippet = new File(snippetPath);
-                try (FileOutputStream fos = new FileOutputStream(scratchRecordingSnippet)) {
-                    fos.write(bytes);
+                flushSnippet(sourceChannel, length, nextSegment != null);
+
+                if (nextSegment != null) {
+                    Logger.getLogger(StreamRecordingManager.class.getName()).info("Closed recording segment: " + m_sourceFilepath);
+                    m_sourceFilepath = nextSegment;
+                    m_cursor = 0;
+                    m_lastLength = 0;
                 }
-                
-                launchFrameRipperForFile(snippetPath);
-                
+                return numNewBytes;
             } catch (FileNotFoundException ex) {
                 Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.SEVERE, "Source or Destination file not found", ex);
             } catch (IOException ex) {
                 Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.SEVERE, "IOException in Periodic Process", ex);
             }
+            return 0;
+        }
+
+        /**
+         * Cuts the TS packets after the cursor, up to the last keyframe, into a snippet, hands it to frame ripping and
+         * advances the cursor past it.  Whatever follows the cut is carried over to the next flush.
+         *
+         * @param sourceChannel The channel of the segment being processed.
+         * @param length The current length of the segment.
+         * @param finalFlush true if the segment is complete, so everything after the cursor should be flushed.
+         * @throws IOException if the segment cannot be read.
+         */
+        private void flushSnippet(FileChannel sourceChannel, long length, boolean finalFlush) throws IOException {
+            RecordingSnippet snippet = m_cutter.cut(sourceChannel, m_sourceFilepath, m_cursor, length, m_batchIndex, finalFlush);
+            if (snippet == null) {
+                Logger.getLogger(StreamRecordingManager.class.getName()).info("Nothing to flush yet");
+                offerHeldJobs();
+                return;
+            }
+            m_cursor = snippet.getPosition() + snippet.getLength();
+            m_batchIndex++;
+            long startTime = m_snippetStartTime;
+            m_snippetStartTime = System.currentTimeMillis();
+            // Handed over under the lock, so a concurrent stop cannot close the ripper or index in between.
+            synchronized (StreamRecordingManager.this) {
+                if (m_stopped) {
+                    Logger.getLogger(StreamRecordingManager.class.getName()).info("Recording stopped, not ripping " + snippet);
+                } else if (m_continuousRipper != null) {
+                    m_continuousRipper.feed(snippet);
+                } else if (m_frameSink == null) {
+                    Logger.getLogger(StreamRecordingManager.class.getName()).warning("No frame store, not ripping " + snippet);
+                } else {
+                    launchFrameRipperForSnippet(snippet, startTime);
+                }
+            }
         }
         
-        private void launchFrameRipperForFile(final String snippetPath) {
-            //Start FFMPEG to rip frames
-            Runnable ffmpegRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    FileVideoSource source = new FileVideoSource(snippetPath);
-                    try {
-                        Logger.getLogger(StreamRecordingManager.class.getName()).info("Launching FFMPEG Process");
-                        Process frameProcess = FfmpegVideoProcessor.ripFrames(source, 30, 3, m_recordingDirectory, m_batchIndex);
-                        m_batchIndex++;
-                        Logger.getLogger(StreamRecordingManager.class.getName()).info("Waiting for FFMPEG Process...");
-                        frameProcess.waitFor(); //Wait for the processing to complete
-                        //remove scratch material
-                        File snippetFile = new File(snippetPath);
-                        snippetFile.delete();
-                        Logger.getLogger(StreamRecordingManager.class.getName()).info("Deleted Snippet File");
-                    } catch (IOException ex) {
-                        Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.SEVERE, "IO Exception while processing frames", ex);
-                    } catch (InterruptedException ex) {
-                        Logger.getLogger(StreamRecordingManager.class.getName()).log(Level.SEVERE, "Frame Processing thread interrupted", ex);
-                    }
+        /**
+         * Hands a snippet to the shared frame rip scheduler.  This never waits:  if the scheduler is saturated the
+         * snippet is held back, with the snippets that follow it merged in, and offered again at the next flush.
+         * @param snippet The region of the recording to rip frames from.
+         * @param startTime The estimated time of the snippet's first frame, in milliseconds since Jan 1 1970.
+         */
+        private void launchFrameRipperForSnippet(RecordingSnippet snippet, long startTime) {
+            synchronized (StreamRecordingManager.this) {
+                SnippetRipJob last = m_heldJobs.peekLast();
+                if (last != null && last.getSnippet().isFollowedBy(snippet)) {
+                    last.coalesce(snippet);
+                } else {
+                    m_heldJobs.addLast(new SnippetRipJob(StreamRecordingManager.this, snippet, startTime, m_fps, m_quality,
+                            m_frameSink, m_flushStatistics, m_timestampWriter));
                 }
-            };
-            new Thread(ffmpegRunnable).start();
+            }
+            offerHeldJobs();
+        }
+
+        /** Offers the held back snippets to the frame rip scheduler, oldest first, until it refuses one. */
+        private void offerHeldJobs() {
+            synchronized (StreamRecordingManager.this) {
+                FrameRipScheduler scheduler = FrameRipScheduler.getInstance();
+                while (!m_heldJobs.isEmpty() && scheduler.offer(m_heldJobs.peekFirst())) {
+                    m_heldJobs.removeFirst();
+                }
+            }
         }
     };
 
@@ -0,0 +1,629 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Cuts a growing MPEG transport stream file into snippets that FFMPEG can decode from their first byte.  Cuts are
+ * placed on the 188 byte TS packet grid, and each snippet carries the latest PAT and PMT complete before its end, so
+ * the decoder knows the stream layout without waiting for the next table repetition.  Tables are reassembled across
+ * packets, so a PMT too long for one packet is carried whole.
+ * <p>
+ * Once the PMT identifies the video stream, cuts are also held back to the last random access point of the video
+ * (an I-frame / IDR access unit), so no snippet ends part way through a GOP whose head is in the next snippet.  The
+ * bytes after that point are carried over and start the next snippet.
+ *
+ * @author Keith
+ */
+public class TransportStreamCutter {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(TransportStreamCutter.class.getName());
+
+    /** The size of a transport stream packet. */
+    public static final int PACKET_SIZE = 188;
+
+    /** The byte every transport stream packet starts with. */
+    public static final int SYNC_BYTE = 0x47;
+
+    /** The PID of the Program Association Table. */
+    private static final int PAT_PID = 0x0000;
+
+    /** The table id of a Program Association section. */
+    private static final int PAT_TABLE_ID = 0x00;
+
+    /** The table id of a Program Map section. */
+    private static final int PMT_TABLE_ID = 0x02;
+
+    /** The largest PSI section, header included. */
+    private static final int MAX_SECTION_SIZE = 1024;
+
+    /** The number of packets read from the file at a time while scanning. */
+    private static final int PACKETS_PER_READ = 1024;
+
+    /** The most bytes carried over waiting for a random access point before cutting without one. */
+    private static final long MAX_CARRY_BYTES = 32L * 1024L * 1024L;
+
+    /** MPEG-1 and MPEG-2 video stream types. */
+    private static final int STREAM_TYPE_MPEG1_VIDEO = 0x01;
+    private static final int STREAM_TYPE_MPEG2_VIDEO = 0x02;
+
+    /** H.264 video stream type. */
+    private static final int STREAM_TYPE_H264 = 0x1B;
+
+    /** H.265 video stream type. */
+    private static final int STREAM_TYPE_HEVC = 0x24;
+
+    /** A reusable buffer for scanning packets, so scanning does not allocate per flush. */
+    private final ByteBuffer m_scanBuffer;
+
+    /** The PIDs that carry a Program Map Table, as listed in the latest PAT. */
+    private final Set<Integer> m_pmtPids;
+
+    /** Reassembles the PAT. */
+    private final SectionAssembler m_pat;
+
+    /** Reassembles the PMT. */
+    private final SectionAssembler m_pmt;
+
+    /** The packets of the latest complete PAT, or null if none has been seen yet. */
+    private byte[] m_patPackets;
+
+    /** The packets of the latest complete PMT, or null if none has been seen yet. */
+    private byte[] m_pmtPackets;
+
+    /**
+     * The snippet headers built as the tables changed, oldest first, back to the one the last cut used.  A cut takes
+     * the latest header complete before its end, so tables in carried over data do not head data they do not apply to.
+     */
+    private final LinkedList<SnippetHeader> m_headers;
+
+    /** The PID of the video stream, or -1 if no PMT has been seen yet. */
+    private int m_videoPid;
+
+    /** The stream type of the video stream. */
+    private int m_videoStreamType;
+
+    /** The file that is being cut. */
+    private String m_sourceFilepath;
+
+    /** The position in the file up to which packets have been scanned. */
+    private long m_scannedTo;
+
+    /** The position of the latest random access point scanned in the file, or -1 if none has been found. */
+    private long m_lastRandomAccessPoint;
+
+    /** Creates a new TransportStreamCutter. */
+    public TransportStreamCutter() {
+        m_scanBuffer = ByteBuffer.allocateDirect(PACKET_SIZE * PACKETS_PER_READ);
+        m_pmtPids = new HashSet<>();
+        m_pat = new SectionAssembler();
+        m_pmt = new SectionAssembler();
+        m_patPackets = null;
+        m_pmtPackets = null;
+        m_headers = new LinkedList<>();
+        m_videoPid = -1;
+        m_sourceFilepath = null;
+    }
+
+    /**
+     * Cuts the region of the file between two positions down to whole, packet aligned TS packets ending at the last
+     * random access point of the video.  If the start is not on a packet boundary the cut is moved forward to the
+     * next one.  Bytes after the cut are left out, to be picked up by the next cut.  Packets are only scanned once,
+     * however many times they are carried over.
+     *
+     * @param channel the channel of the transport stream file.
+     * @param sourceFilepath the path of the transport stream file.
+     * @param start the position to cut from, normally the end of the previous cut.
+     * @param end the current end of the data in the file.
+     * @param batchIndex the batch index to give the snippet.
+     * @param finalCut true if nothing more will be written to the file, so every whole packet should be cut.
+     * @return a snippet of whole packets, headed with the latest PAT and PMT complete before its end, or null if there
+     * is nothing to cut yet.
+     * @throws IOException if the file cannot be read.
+     */
+    public RecordingSnippet cut(FileChannel channel, String sourceFilepath, long start, long end, int batchIndex,
+            boolean finalCut) throws IOException {
+        if (!sourceFilepath.equals(m_sourceFilepath)) {
+            m_sourceFilepath = sourceFilepath;
+            m_scannedTo = 0;
+            m_lastRandomAccessPoint = -1;
+            m_pat.reset();
+            m_pmt.reset();
+            // Headers seen in the previous file still describe the stream, but lie before anything in this one.
+            SnippetHeader latest = m_headers.peekLast();
+            m_headers.clear();
+            if (latest != null) {
+                m_headers.add(new SnippetHeader(0, latest.m_packets));
+            }
+        }
+        long alignedStart = findPacketStart(channel, start, end);
+        if (alignedStart < 0) {
+            return null;
+        }
+        if (alignedStart != start) {
+            LOGGER.warning("Transport stream out of sync in " + sourceFilepath + ", skipped " + (alignedStart - start) + " bytes");
+        }
+        long packetCount = (end - alignedStart) / PACKET_SIZE;
+        if (packetCount == 0) {
+            return null;
+        }
+        long alignedEnd = alignedStart + packetCount * PACKET_SIZE;
+
+        scanPackets(channel, Math.max(alignedStart, m_scannedTo), alignedEnd);
+        m_scannedTo = alignedEnd;
+
+        long cutEnd = chooseCutEnd(alignedStart, alignedEnd, finalCut);
+        if (cutEnd <= alignedStart) {
+            return null;
+        }
+        return new RecordingSnippet(sourceFilepath, alignedStart, cutEnd - alignedStart, batchIndex, takeHeader(cutEnd));
+    }
+
+    /**
+     * Chooses where to end a cut of the scanned, aligned region.
+     * @param start the aligned start of the region.
+     * @param alignedEnd the aligned end of the region.
+     * @param finalCut true if every whole packet should be cut.
+     * @return the position to end the cut at, or the start if the region should be carried over whole.
+     */
+    private long chooseCutEnd(long start, long alignedEnd, boolean finalCut) {
+        if (finalCut || m_videoPid < 0) {
+            return alignedEnd;
+        }
+        if (m_lastRandomAccessPoint > start) {
+            return m_lastRandomAccessPoint;
+        }
+        if (alignedEnd - start >= MAX_CARRY_BYTES) {
+            LOGGER.warning("No random access point in " + (alignedEnd - start) + " bytes of video, cutting without one");
+            return alignedEnd;
+        }
+        LOGGER.info("No random access point since the last cut, carrying " + (alignedEnd - start) + " bytes over");
+        return start;
+    }
+
+    /**
+     * Finds the first packet boundary at or after a position.  A boundary is a sync byte followed by another sync
+     * byte one packet later, or by the end of the data.
+     *
+     * @param channel the channel of the transport stream file.
+     * @param start the position to search from.
+     * @param end the current end of the data in the file.
+     * @return the position of the packet boundary, or -1 if there is none before the end.
+     * @throws IOException if the file cannot be read.
+     */
+    private long findPacketStart(FileChannel channel, long start, long end) throws IOException {
+        if (isSyncAt(channel, start, end) && (start + PACKET_SIZE >= end || isSyncAt(channel, start + PACKET_SIZE, end))) {
+            return start;
+        }
+        long searchEnd = Math.min(end, start + PACKET_SIZE * 2L);
+        for (long position = start + 1; position < searchEnd; position++) {
+            if (isSyncAt(channel, position, end) && (position + PACKET_SIZE >= end || isSyncAt(channel, position + PACKET_SIZE, end))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether there is a sync byte at a position.
+     * @param channel the channel of the transport stream file.
+     * @param position the position to check.
+     * @param end the current end of the data in the file.
+     * @return true if the byte at the position is a sync byte.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean isSyncAt(FileChannel channel, long position, long end) throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        m_scanBuffer.clear();
+        m_scanBuffer.limit(1);
+        if (channel.read(m_scanBuffer, position) != 1) {
+            return false;
+        }
+        return (m_scanBuffer.get(0) & 0xFF) == SYNC_BYTE;
+    }
+
+    /**
+     * Reads the packets of an aligned region and remembers the latest PAT, PMT and video random access point among
+     * them.
+     * @param channel the channel of the transport stream file.
+     * @param start the packet aligned position to scan from.
+     * @param end the packet aligned position to scan to.
+     * @throws IOException if the file cannot be read.
+     */
+    private void scanPackets(FileChannel channel, long start, long end) throws IOException {
+        long position = start;
+        while (position < end) {
+            m_scanBuffer.clear();
+            m_scanBuffer.limit((int) Math.min(m_scanBuffer.capacity(), end - position));
+            while (m_scanBuffer.hasRemaining()) {
+                if (channel.read(m_scanBuffer, position + m_scanBuffer.position()) <= 0) {
+                    throw new IOException("Transport stream ended before " + end);
+                }
+            }
+            int limit = m_scanBuffer.position();
+            for (int offset = 0; offset + PACKET_SIZE <= limit; offset += PACKET_SIZE) {
+                inspectPacket(m_scanBuffer, offset, position + offset);
+            }
+            position += limit;
+        }
+    }
+
+    /**
+     * Inspects one packet of the scan buffer, adding it to the PAT or PMT being reassembled and noting it if it starts
+     * a video access unit that can be decoded on its own.
+     * @param buffer the buffer holding the packet.
+     * @param offset the offset of the packet in the buffer.
+     * @param filePosition the position of the packet in the file.
+     */
+    private void inspectPacket(ByteBuffer buffer, int offset, long filePosition) {
+        if ((buffer.get(offset) & 0xFF) != SYNC_BYTE) {
+            return;
+        }
+        int pid = getPid(buffer, offset);
+        if (pid == m_videoPid) {
+            if (isPayloadUnitStart(buffer, offset) && isRandomAccessPoint(buffer, offset)) {
+                m_lastRandomAccessPoint = filePosition;
+            }
+        } else if (pid == PAT_PID) {
+            if (m_pat.add(buffer, offset, pid) && m_pat.getTableId() == PAT_TABLE_ID) {
+                byte[] previous = m_patPackets;
+                m_patPackets = m_pat.getPackets();
+                readPmtPids(m_pat.getSection());
+                tablesChanged(previous == null || !m_pat.isSameSection(), filePosition + PACKET_SIZE);
+            }
+        } else if (m_pmtPids.contains(pid)) {
+            if (m_pmt.add(buffer, offset, pid) && m_pmt.getTableId() == PMT_TABLE_ID) {
+                byte[] previous = m_pmtPackets;
+                m_pmtPackets = m_pmt.getPackets();
+                readVideoPid(m_pmt.getSection());
+                tablesChanged(previous == null || !m_pmt.isSameSection(), filePosition + PACKET_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Records a new snippet header once a table has changed and both tables are known.  A table repeated unchanged
+     * keeps the header it is already in.
+     * @param changed true if the completed table differs from the previous one.
+     * @param completedAt the position in the file just past the table's last packet.
+     */
+    private void tablesChanged(boolean changed, long completedAt) {
+        if (m_patPackets == null || m_pmtPackets == null || (!changed && !m_headers.isEmpty())) {
+            return;
+        }
+        byte[] packets = Arrays.copyOf(m_patPackets, m_patPackets.length + m_pmtPackets.length);
+        System.arraycopy(m_pmtPackets, 0, packets, m_patPackets.length, m_pmtPackets.length);
+        m_headers.add(new SnippetHeader(completedAt, packets));
+    }
+
+    /**
+     * Reads the PID and stream type of the first video elementary stream from a PMT section.
+     * @param section the PMT section.
+     */
+    private void readVideoPid(byte[] section) {
+        if (section.length < 12) {
+            return;
+        }
+        int programInfoLength = ((section[10] & 0x0F) << 8) | (section[11] & 0xFF);
+        // Stream loop runs from after the 12 byte header and program descriptors up to the 4 byte CRC.
+        int entry = 12 + programInfoLength;
+        int loopEnd = section.length - 4;
+        while (entry + 5 <= loopEnd) {
+            int streamType = section[entry] & 0xFF;
+            int pid = ((section[entry + 1] & 0x1F) << 8) | (section[entry + 2] & 0xFF);
+            int esInfoLength = ((section[entry + 3] & 0x0F) << 8) | (section[entry + 4] & 0xFF);
+            if (isVideoStreamType(streamType)) {
+                if (pid != m_videoPid) {
+                    LOGGER.info("Video stream found on PID " + pid + " with stream type " + streamType);
+                }
+                m_videoPid = pid;
+                m_videoStreamType = streamType;
+                return;
+            }
+            entry += 5 + esInfoLength;
+        }
+    }
+
+    /**
+     * Returns whether a stream type is a video codec the cutter can find random access points in.
+     * @param streamType the PMT stream type.
+     * @return true if the stream type is MPEG-1/2 video, H.264 or H.265.
+     */
+    private static boolean isVideoStreamType(int streamType) {
+        return streamType == STREAM_TYPE_MPEG1_VIDEO || streamType == STREAM_TYPE_MPEG2_VIDEO
+                || streamType == STREAM_TYPE_H264 || streamType == STREAM_TYPE_HEVC;
+    }
+
+    /**
+     * Returns whether a video packet that starts a PES packet is a random access point.  The adaptation field's
+     * random access indicator is trusted when the muxer sets it, otherwise the start of the elementary stream data in
+     * the packet is searched for a sequence header, GOP header or IDR/parameter set NAL unit.
+     * @param buffer the buffer holding the packet.
+     * @param offset the offset of the packet in the buffer.
+     * @return true if decoding can start at this packet.
+     */
+    private boolean isRandomAccessPoint(ByteBuffer buffer, int offset) {
+        int adaptationControl = (buffer.get(offset + 3) >> 4) & 0x03;
+        if ((adaptationControl & 0x02) != 0 && (buffer.get(offset + 4) & 0xFF) > 0
+                && (buffer.get(offset + 5) & 0x40) != 0) {
+            return true;
+        }
+        int payload = getPayloadStart(buffer, offset);
+        int packetEnd = offset + PACKET_SIZE;
+        if (payload < 0 || payload + 9 > packetEnd) {
+            return false;
+        }
+        // PES header: start code prefix, stream id, length, two flag bytes, header data length.
+        if (buffer.get(payload) != 0 || buffer.get(payload + 1) != 0 || buffer.get(payload + 2) != 1) {
+            return false;
+        }
+        int elementaryData = payload + 9 + (buffer.get(payload + 8) & 0xFF);
+        for (int i = elementaryData; i + 3 < packetEnd; i++) {
+            if (buffer.get(i) == 0 && buffer.get(i + 1) == 0 && buffer.get(i + 2) == 1) {
+                if (isRandomAccessStartCode(buffer.get(i + 3) & 0xFF)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the byte following a start code prefix begins a unit that decoding can start from.
+     * @param code the byte after the 00 00 01 start code prefix.
+     * @return true if the unit is a random access point for the video stream type.
+     */
+    private boolean isRandomAccessStartCode(int code) {
+        switch (m_videoStreamType) {
+            case STREAM_TYPE_H264:
+                int nalType = code & 0x1F;
+                return nalType == 5 || nalType == 7;        // IDR slice or sequence parameter set
+            case STREAM_TYPE_HEVC:
+                int hevcNalType = (code >> 1) & 0x3F;
+                return (hevcNalType >= 16 && hevcNalType <= 21) || hevcNalType == 32;   // IRAP picture or VPS
+            default:
+                return code == 0xB3 || code == 0xB8;        // Sequence header or GOP header
+        }
+    }
+
+    /**
+     * Reads the program map PIDs from a PAT section.
+     * @param section the PAT section.
+     */
+    private void readPmtPids(byte[] section) {
+        // Program loop runs from after the 8 byte section header up to the 4 byte CRC.
+        int loopEnd = section.length - 4;
+        m_pmtPids.clear();
+        for (int entry = 8; entry + 4 <= loopEnd; entry += 4) {
+            int programNumber = ((section[entry] & 0xFF) << 8) | (section[entry + 1] & 0xFF);
+            int pid = ((section[entry + 2] & 0x1F) << 8) | (section[entry + 3] & 0xFF);
+            if (programNumber != 0) {
+                m_pmtPids.add(pid);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the payload of a packet, after any adaptation field.
+     * @param buffer the buffer holding the packet.
+     * @param offset the offset of the packet in the buffer.
+     * @return the offset of the payload in the buffer, or -1 if the packet has no payload.
+     */
+    private static int getPayloadStart(ByteBuffer buffer, int offset) {
+        int adaptationControl = (buffer.get(offset + 3) >> 4) & 0x03;
+        if ((adaptationControl & 0x01) == 0) {
+            return -1;
+        }
+        int payload = offset + 4;
+        if ((adaptationControl & 0x02) != 0) {
+            payload += 1 + (buffer.get(offset + 4) & 0xFF);
+        }
+        return payload < offset + PACKET_SIZE ? payload : -1;
+    }
+
+    /**
+     * Returns the PID of a packet.
+     * @param buffer the buffer holding the packet.
+     * @param offset the offset of the packet in the buffer.
+     * @return the PID of the packet.
+     */
+    private static int getPid(ByteBuffer buffer, int offset) {
+        return ((buffer.get(offset + 1) & 0x1F) << 8) | (buffer.get(offset + 2) & 0xFF);
+    }
+
+    /**
+     * Returns whether a packet starts a new payload unit (PES packet or PSI section).
+     * @param buffer the buffer holding the packet.
+     * @param offset the offset of the packet in the buffer.
+     * @return true if the payload unit start indicator is set.
+     */
+    private static boolean isPayloadUnitStart(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset + 1) & 0x40) != 0;
+    }
+
+    /**
+     * Takes the header for a snippet ending at a position:  the latest PAT and PMT complete before it.  Headers older
+     * than the one taken are dropped, since later cuts end further on.
+     * @param cutEnd the end of the snippet in the file.
+     * @return the PAT packets followed by the PMT packets, or an empty header if neither has been seen yet.
+     */
+    private byte[] takeHeader(long cutEnd) {
+        while (m_headers.size() > 1 && m_headers.get(1).m_completedAt <= cutEnd) {
+            m_headers.removeFirst();
+        }
+        SnippetHeader header = m_headers.peekFirst();
+        return header == null || header.m_completedAt > cutEnd ? new byte[0] : header.m_packets;
+    }
+
+    /** The PAT and PMT packets to head snippets with, and where in the file the later of the two was complete. */
+    private static class SnippetHeader {
+
+        /** The position in the file just past the last packet of the tables. */
+        private final long m_completedAt;
+
+        /** The PAT packets followed by the PMT packets. */
+        private final byte[] m_packets;
+
+        /**
+         * Creates a new SnippetHeader.
+         * @param completedAt the position in the file just past the last packet of the tables.
+         * @param packets the PAT packets followed by the PMT packets.
+         */
+        SnippetHeader(long completedAt, byte[] packets) {
+            m_completedAt = completedAt;
+            m_packets = packets;
+        }
+    }
+
+    /**
+     * Reassembles a PSI section from the packets of a PID, keeping the packets it came in so they can head a snippet
+     * as they are.  A section is started by a packet with the payload unit start indicator set, which also sets the
+     * PID followed until the section is complete, and any packet of that PID out of continuity abandons it until the
+     * next start.
+     */
+    private static class SectionAssembler {
+
+        /** The PID of the section being assembled. */
+        private int m_pid;
+
+        /** The section bytes collected so far. */
+        private byte[] m_section;
+
+        /** The number of section bytes collected. */
+        private int m_sectionFill;
+
+        /** The packets the section has arrived in so far. */
+        private byte[] m_packets;
+
+        /** The number of packet bytes collected. */
+        private int m_packetFill;
+
+        /** The continuity counter expected of the next packet, or -1 if no section is being assembled. */
+        private int m_nextCounter;
+
+        /** The last complete section, or null if none has completed. */
+        private byte[] m_completeSection;
+
+        /** Whether the last complete section is the same as the one before it. */
+        private boolean m_sameSection;
+
+        /** The packets of the last complete section. */
+        private byte[] m_completePackets;
+
+        /** Creates a new SectionAssembler. */
+        SectionAssembler() {
+            m_section = new byte[MAX_SECTION_SIZE];
+            m_packets = new byte[PACKET_SIZE * 8];
+            m_nextCounter = -1;
+        }
+
+        /** Abandons any section being assembled, for a new file whose packets do not follow on. */
+        void reset() {
+            m_nextCounter = -1;
+        }
+
+        /**
+         * Adds a packet of the section's PID.
+         * @param buffer the buffer holding the packet.
+         * @param offset the offset of the packet in the buffer.
+         * @param pid the PID of the packet.
+         * @return true if the packet completed a section.
+         */
+        boolean add(ByteBuffer buffer, int offset, int pid) {
+            int payload = getPayloadStart(buffer, offset);
+            if (payload < 0) {
+                return false;
+            }
+            int counter = buffer.get(offset + 3) & 0x0F;
+            int packetEnd = offset + PACKET_SIZE;
+            if (isPayloadUnitStart(buffer, offset)) {
+                m_pid = pid;
+                int sectionStart = payload + 1 + (buffer.get(payload) & 0xFF);
+                if (sectionStart >= packetEnd) {
+                    m_nextCounter = -1;
+                    return false;
+                }
+                m_sectionFill = 0;
+                m_packetFill = 0;
+                payload = sectionStart;
+            } else if (pid != m_pid || m_nextCounter < 0) {
+                return false;
+            } else if (counter != m_nextCounter) {
+                m_nextCounter = -1;
+                return false;
+            }
+            if (m_packetFill + PACKET_SIZE > m_packets.length) {
+                m_packets = Arrays.copyOf(m_packets, m_packets.length * 2);
+            }
+            for (int i = 0; i < PACKET_SIZE; i++) {
+                m_packets[m_packetFill + i] = buffer.get(offset + i);
+            }
+            m_packetFill += PACKET_SIZE;
+            int length = Math.min(packetEnd - payload, m_section.length - m_sectionFill);
+            for (int i = 0; i < length; i++) {
+                m_section[m_sectionFill + i] = buffer.get(payload + i);
+            }
+            m_sectionFill += length;
+            m_nextCounter = (counter + 1) & 0x0F;
+            if (m_sectionFill < 3) {
+                return false;
+            }
+            int sectionSize = 3 + (((m_section[1] & 0x0F) << 8) | (m_section[2] & 0xFF));
+            if (sectionSize > m_section.length) {
+                LOGGER.warning("PSI section on PID " + pid + " is too long: " + sectionSize + " bytes");
+                m_nextCounter = -1;
+                return false;
+            }
+            if (m_sectionFill < sectionSize) {
+                return false;
+            }
+            byte[] section = Arrays.copyOf(m_section, sectionSize);
+            m_sameSection = Arrays.equals(section, m_completeSection);
+            m_completeSection = section;
+            m_completePackets = Arrays.copyOf(m_packets, m_packetFill);
+            m_nextCounter = -1;
+            return true;
+        }
+
+        /**
+         * Returns the table id of the last complete section.
+         * @return the table id.
+         */
+        int getTableId() {
+            return m_completeSection[0] & 0xFF;
+        }
+
+        /**
+         * Returns the last complete section.
+         * @return the section, from its table id to its CRC.
+         */
+        byte[] getSection() {
+            return m_completeSection;
+        }
+
+        /**
+         * Returns whether the last complete section is the same as the one before it, as a repeated table is.
+         * @return true if the section has not changed.
+         */
+        boolean isSameSection() {
+            return m_sameSection;
+        }
+
+        /**
+         * Returns the packets the last complete section arrived in.
+         * @return the packets, back to back.
+         */
+        byte[] getPackets() {
+            return m_completePackets;
+        }
+    }
+}
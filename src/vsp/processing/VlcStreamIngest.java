@@ -0,0 +1,77 @@
+package vsp.processing;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+import uk.co.caprica.vlcj.player.headless.HeadlessMediaPlayer;
+import vsp.data.VideoSource;
+
+/**
+ * Receives a stream with a headless VLC media player and has VLC mux it into a .ts file.
+ *
+ * @author Keith
+ */
+public class VlcStreamIngest implements StreamIngest {
+
+    /** A logger. */
+    private static final Logger LOGGER = Logger.getLogger(VlcStreamIngest.class.getName());
+
+    /** The source of the stream. */
+    private final VideoSource m_source;
+
+    /** The media player used to receive the stream. */
+    private final HeadlessMediaPlayer m_mediaPlayer;
+
+    /**
+     * Creates a new VlcStreamIngest.
+     * @param source the source of the stream.
+     */
+    public VlcStreamIngest(VideoSource source) {
+        m_source = source;
+        MediaPlayerFactory mediaPlayerFactory = new MediaPlayerFactory();
+        m_mediaPlayer = mediaPlayerFactory.newHeadlessMediaPlayer();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void start(String tsFilePath) throws IOException {
+        String[] options = {":sout=#standard{mux=ts,access=file,dst=" + tsFilePath + "}"};
+        if (!m_mediaPlayer.startMedia(m_source.getMrl(), options)) {
+            LOGGER.warning("Media player failed to start recording to: " + tsFilePath);
+        }
+    }
+
+    /**
+     * VLC cannot change its output while playing, so the media is stopped and restarted on the new file.  A moment of
+     * the stream is lost across the switch.
+     * {@inheritDoc}
+     */
+    @Override
+    public void rollTo(String tsFilePath) throws IOException {
+        m_mediaPlayer.stop();
+        start(tsFilePath);
+    }
+
+    /**
+     * VLC reports no errors back, so a VLC ingest is never known to have failed.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasFailed() {
+        return false;
+    }
+
+    /**
+     * VLC writes the file itself, so there is nothing held to write.
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void stop() {
+        m_mediaPlayer.stop();
+    }
+}
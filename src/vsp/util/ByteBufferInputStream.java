@@ -0,0 +1,58 @@
+package vsp.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream over the remaining bytes of a ByteBuffer, so that buffers that have no backing array, such as memory
+ * mapped files, can be read by stream based APIs like ImageIO without being copied.
+ *
+ * @author Keith
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    /** The buffer being read, advanced as bytes are read. */
+    private final ByteBuffer m_buffer;
+
+    /**
+     * Creates a new ByteBufferInputStream.
+     * @param buffer the buffer to read, from its position to its limit.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        m_buffer = buffer.duplicate();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() {
+        return m_buffer.hasRemaining() ? m_buffer.get() & 0xFF : -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!m_buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, m_buffer.remaining());
+        m_buffer.get(b, off, count);
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, m_buffer.remaining()));
+        m_buffer.position(m_buffer.position() + count);
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() {
+        return m_buffer.remaining();
+    }
+}
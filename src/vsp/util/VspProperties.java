@@ -6,6 +6,10 @@ import java.io.IOException;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import vsp.processing.FrameRipMode;
+import vsp.processing.FrameStore;
+import vsp.processing.IngestMode;
+import vsp.processing.RipSaturationPolicy;
 
 /**
  * Properties file for VideoStreamProject.
@@ -76,6 +80,126 @@ public class VspProperties {
     private static final int PORT_DEFAULT = 44500;
     private final int m_port;
 
+    /** Recording segment size limit, in megabytes.  Zero disables size based rollover. */
+    private static final String SEGMENT_MAX_MB_PROPERTY = "recording.segment.max.mb";
+    private static final long SEGMENT_MAX_MB_DEFAULT = 1024L;
+    private final long m_segmentMaxMb;
+
+    /** Recording segment duration limit, in seconds.  Zero disables time based rollover. */
+    private static final String SEGMENT_MAX_SECONDS_PROPERTY = "recording.segment.max.seconds";
+    private static final long SEGMENT_MAX_SECONDS_DEFAULT = 3600L;
+    private final long m_segmentMaxSeconds;
+
+    /** Frame rip mode. */
+    private static final String RIP_MODE_PROPERTY = "recording.rip.mode";
+    private static final FrameRipMode RIP_MODE_DEFAULT = FrameRipMode.SNIPPET;
+    private final FrameRipMode m_ripMode;
+
+    /** How ripped frames are stored. */
+    private static final String FRAME_STORE_PROPERTY = "recording.frame.store";
+    private static final FrameStore FRAME_STORE_DEFAULT = FrameStore.DIRECTORY;
+    private final FrameStore m_frameStore;
+
+    /** How recordings receive their stream. */
+    private static final String INGEST_MODE_PROPERTY = "recording.ingest";
+    private static final IngestMode INGEST_MODE_DEFAULT = IngestMode.JAVA;
+    private final IngestMode m_ingestMode;
+
+    /** Network interface that Java ingest joins multicast groups on. */
+    private static final String INGEST_NETWORK_INTERFACE_PROPERTY = "ingest.network.interface";
+    private static final String INGEST_NETWORK_INTERFACE_DEFAULT = "";
+    private final String m_ingestNetworkInterface;
+
+    /** Number of snippet frame ripping workers shared by all recordings. */
+    private static final String RIP_WORKER_COUNT_PROPERTY = "rip.worker.count";
+    private static final int RIP_WORKER_COUNT_DEFAULT = 2;
+    private final int m_ripWorkerCount;
+
+    /** Number of snippets that may wait for a frame ripping worker. */
+    private static final String RIP_QUEUE_CAPACITY_PROPERTY = "rip.queue.capacity";
+    private static final int RIP_QUEUE_CAPACITY_DEFAULT = 8;
+    private final int m_ripQueueCapacity;
+
+    /** What to do with a new snippet when the frame ripping queue is full. */
+    private static final String RIP_SATURATION_POLICY_PROPERTY = "rip.saturation.policy";
+    private static final RipSaturationPolicy RIP_SATURATION_POLICY_DEFAULT = RipSaturationPolicy.COALESCE;
+    private final RipSaturationPolicy m_ripSaturationPolicy;
+
+    /** Streams recorded by the headless recorder service, as comma separated name@ip:port entries. */
+    private static final String RECORDER_SOURCES_PROPERTY = "recorder.sources";
+    private static final String RECORDER_SOURCES_DEFAULT = "";
+    private final String m_recorderSources;
+
+    /** Number of scheduler threads shared by every stream in the headless recorder service. */
+    private static final String RECORDER_THREAD_COUNT_PROPERTY = "recorder.thread.count";
+    private static final int RECORDER_THREAD_COUNT_DEFAULT = 4;
+    private final int m_recorderThreadCount;
+
+    /** Period in seconds at which the headless recorder service logs the status of its streams. */
+    private static final String RECORDER_STATUS_PERIOD_PROPERTY = "recorder.status.period.seconds";
+    private static final int RECORDER_STATUS_PERIOD_DEFAULT = 60;
+    private final int m_recorderStatusPeriod;
+
+    /** Seconds before a recording's first flush, and without new data before a recording is considered ended. */
+    private static final String FLUSH_PERIOD_PROPERTY = "recording.flush.period.seconds";
+    private static final long FLUSH_PERIOD_DEFAULT = 10L;
+    private final long m_flushPeriod;
+
+    /** Size in kilobytes that the flush period is adapted to make each snippet. */
+    private static final String FLUSH_TARGET_KB_PROPERTY = "recording.flush.target.kb";
+    private static final long FLUSH_TARGET_KB_DEFAULT = 4096L;
+    private final long m_flushTargetKilobytes;
+
+    /** Shortest time in milliseconds between flushes. */
+    private static final String FLUSH_MIN_MILLIS_PROPERTY = "recording.flush.min.ms";
+    private static final long FLUSH_MIN_MILLIS_DEFAULT = 1000L;
+    private final long m_flushMinMillis;
+
+    /** Longest time in milliseconds between flushes, the latency budget for frames to appear. */
+    private static final String FLUSH_MAX_MILLIS_PROPERTY = "recording.flush.max.ms";
+    private static final long FLUSH_MAX_MILLIS_DEFAULT = 30000L;
+    private final long m_flushMaxMillis;
+
+    /** Number of threads writing captured frames to storage. */
+    private static final String CAPTURE_WRITER_COUNT_PROPERTY = "capture.writer.count";
+    private static final int CAPTURE_WRITER_COUNT_DEFAULT = 2;
+    private final int m_captureWriterCount;
+
+    /** Number of captured frames that may wait for a writer. */
+    private static final String CAPTURE_QUEUE_CAPACITY_PROPERTY = "capture.queue.capacity";
+    private static final int CAPTURE_QUEUE_CAPACITY_DEFAULT = 64;
+    private final int m_captureQueueCapacity;
+
+    /** Constant rate factor of compacted recording video, lower is better quality. */
+    private static final String COMPACTION_CRF_PROPERTY = "compaction.crf";
+    private static final int COMPACTION_CRF_DEFAULT = 23;
+    private final int m_compactionCrf;
+
+    /** Encoder preset of compacted recording video. */
+    private static final String COMPACTION_PRESET_PROPERTY = "compaction.preset";
+    private static final String COMPACTION_PRESET_DEFAULT = "medium";
+    private final String m_compactionPreset;
+
+    /** Age in days after which a finished recording is compacted. */
+    private static final String COMPACTION_MIN_AGE_PROPERTY = "compaction.min.age.days";
+    private static final int COMPACTION_MIN_AGE_DEFAULT = 14;
+    private final int m_compactionMinAge;
+
+    /** Memory budget of the player's decoded frame cache, in megabytes. */
+    private static final String PLAYER_CACHE_MB_PROPERTY = "player.cache.megabytes";
+    private static final int PLAYER_CACHE_MB_DEFAULT = 256;
+    private final int m_playerCacheMegabytes;
+
+    /** Number of threads decoding frames ahead of the player. */
+    private static final String PLAYER_DECODER_COUNT_PROPERTY = "player.decoder.count";
+    private static final int PLAYER_DECODER_COUNT_DEFAULT = 2;
+    private final int m_playerDecoderCount;
+
+    /** Number of decoded frames the player keeps behind its cursor. */
+    private static final String PLAYER_CACHE_BEHIND_PROPERTY = "player.cache.behind.frames";
+    private static final int PLAYER_CACHE_BEHIND_DEFAULT = 30;
+    private final int m_playerCacheBehind;
+
 
     /** Private constructor, enforces Singleton pattern. */
     private VspProperties(){
@@ -187,6 +311,222 @@ public class VspProperties {
         } else {
             m_port = Integer.valueOf(port);
         }
+
+        // Recording segment size limit
+        String segmentMaxMb = properties.getProperty(SEGMENT_MAX_MB_PROPERTY);
+        if (segmentMaxMb == null){
+            LOGGER.config("Error reading recording segment size property (value was null), using default:  " + SEGMENT_MAX_MB_DEFAULT);
+            m_segmentMaxMb = SEGMENT_MAX_MB_DEFAULT;
+        } else {
+            m_segmentMaxMb = Long.valueOf(segmentMaxMb);
+        }
+
+        // Recording segment duration limit
+        String segmentMaxSeconds = properties.getProperty(SEGMENT_MAX_SECONDS_PROPERTY);
+        if (segmentMaxSeconds == null){
+            LOGGER.config("Error reading recording segment duration property (value was null), using default:  " + SEGMENT_MAX_SECONDS_DEFAULT);
+            m_segmentMaxSeconds = SEGMENT_MAX_SECONDS_DEFAULT;
+        } else {
+            m_segmentMaxSeconds = Long.valueOf(segmentMaxSeconds);
+        }
+
+        // Frame rip mode
+        String ripMode = properties.getProperty(RIP_MODE_PROPERTY);
+        if (ripMode == null){
+            LOGGER.config("Error reading frame rip mode property (value was null), using default:  " + RIP_MODE_DEFAULT);
+            m_ripMode = RIP_MODE_DEFAULT;
+        } else {
+            m_ripMode = FrameRipMode.valueOf(ripMode.trim().toUpperCase());
+        }
+
+        // Frame store
+        String frameStore = properties.getProperty(FRAME_STORE_PROPERTY);
+        if (frameStore == null){
+            LOGGER.config("Error reading frame store property (value was null), using default:  " + FRAME_STORE_DEFAULT);
+            m_frameStore = FRAME_STORE_DEFAULT;
+        } else {
+            m_frameStore = FrameStore.valueOf(frameStore.trim().toUpperCase());
+        }
+
+        // Ingest mode
+        String ingestMode = properties.getProperty(INGEST_MODE_PROPERTY);
+        if (ingestMode == null){
+            LOGGER.config("Error reading ingest mode property (value was null), using default:  " + INGEST_MODE_DEFAULT);
+            m_ingestMode = INGEST_MODE_DEFAULT;
+        } else {
+            m_ingestMode = IngestMode.valueOf(ingestMode.trim().toUpperCase());
+        }
+
+        // Ingest network interface
+        String ingestNetworkInterface = properties.getProperty(INGEST_NETWORK_INTERFACE_PROPERTY);
+        if (ingestNetworkInterface == null){
+            LOGGER.config("Error reading ingest network interface property (value was null), using default:  " + INGEST_NETWORK_INTERFACE_DEFAULT);
+            m_ingestNetworkInterface = INGEST_NETWORK_INTERFACE_DEFAULT;
+        } else {
+            m_ingestNetworkInterface = ingestNetworkInterface.trim();
+        }
+
+        // Frame rip worker count
+        String ripWorkerCount = properties.getProperty(RIP_WORKER_COUNT_PROPERTY);
+        if (ripWorkerCount == null){
+            LOGGER.config("Error reading frame rip worker count property (value was null), using default:  " + RIP_WORKER_COUNT_DEFAULT);
+            m_ripWorkerCount = RIP_WORKER_COUNT_DEFAULT;
+        } else {
+            m_ripWorkerCount = Integer.valueOf(ripWorkerCount);
+        }
+
+        // Frame rip queue capacity
+        String ripQueueCapacity = properties.getProperty(RIP_QUEUE_CAPACITY_PROPERTY);
+        if (ripQueueCapacity == null){
+            LOGGER.config("Error reading frame rip queue capacity property (value was null), using default:  " + RIP_QUEUE_CAPACITY_DEFAULT);
+            m_ripQueueCapacity = RIP_QUEUE_CAPACITY_DEFAULT;
+        } else {
+            m_ripQueueCapacity = Integer.valueOf(ripQueueCapacity);
+        }
+
+        // Frame rip saturation policy
+        String ripSaturationPolicy = properties.getProperty(RIP_SATURATION_POLICY_PROPERTY);
+        if (ripSaturationPolicy == null){
+            LOGGER.config("Error reading frame rip saturation policy property (value was null), using default:  " + RIP_SATURATION_POLICY_DEFAULT);
+            m_ripSaturationPolicy = RIP_SATURATION_POLICY_DEFAULT;
+        } else {
+            m_ripSaturationPolicy = RipSaturationPolicy.valueOf(ripSaturationPolicy.trim().toUpperCase());
+        }
+
+        // Recorder service sources
+        String recorderSources = properties.getProperty(RECORDER_SOURCES_PROPERTY);
+        if (recorderSources == null){
+            LOGGER.config("Error reading recorder sources property (value was null), using default:  " + RECORDER_SOURCES_DEFAULT);
+            m_recorderSources = RECORDER_SOURCES_DEFAULT;
+        } else {
+            m_recorderSources = recorderSources.trim();
+        }
+
+        // Recorder service thread count
+        String recorderThreadCount = properties.getProperty(RECORDER_THREAD_COUNT_PROPERTY);
+        if (recorderThreadCount == null){
+            LOGGER.config("Error reading recorder thread count property (value was null), using default:  " + RECORDER_THREAD_COUNT_DEFAULT);
+            m_recorderThreadCount = RECORDER_THREAD_COUNT_DEFAULT;
+        } else {
+            m_recorderThreadCount = Integer.valueOf(recorderThreadCount);
+        }
+
+        // Recorder service status period
+        String recorderStatusPeriod = properties.getProperty(RECORDER_STATUS_PERIOD_PROPERTY);
+        if (recorderStatusPeriod == null){
+            LOGGER.config("Error reading recorder status period property (value was null), using default:  " + RECORDER_STATUS_PERIOD_DEFAULT);
+            m_recorderStatusPeriod = RECORDER_STATUS_PERIOD_DEFAULT;
+        } else {
+            m_recorderStatusPeriod = Integer.valueOf(recorderStatusPeriod);
+        }
+
+        // Flush period
+        String flushPeriod = properties.getProperty(FLUSH_PERIOD_PROPERTY);
+        if (flushPeriod == null){
+            LOGGER.config("Error reading flush period property (value was null), using default:  " + FLUSH_PERIOD_DEFAULT);
+            m_flushPeriod = FLUSH_PERIOD_DEFAULT;
+        } else {
+            m_flushPeriod = Long.valueOf(flushPeriod);
+        }
+
+        // Flush target size
+        String flushTargetKb = properties.getProperty(FLUSH_TARGET_KB_PROPERTY);
+        if (flushTargetKb == null){
+            LOGGER.config("Error reading flush target size property (value was null), using default:  " + FLUSH_TARGET_KB_DEFAULT);
+            m_flushTargetKilobytes = FLUSH_TARGET_KB_DEFAULT;
+        } else {
+            m_flushTargetKilobytes = Long.valueOf(flushTargetKb);
+        }
+
+        // Flush minimum period
+        String flushMinMillis = properties.getProperty(FLUSH_MIN_MILLIS_PROPERTY);
+        if (flushMinMillis == null){
+            LOGGER.config("Error reading flush minimum period property (value was null), using default:  " + FLUSH_MIN_MILLIS_DEFAULT);
+            m_flushMinMillis = FLUSH_MIN_MILLIS_DEFAULT;
+        } else {
+            m_flushMinMillis = Long.valueOf(flushMinMillis);
+        }
+
+        // Flush maximum period
+        String flushMaxMillis = properties.getProperty(FLUSH_MAX_MILLIS_PROPERTY);
+        if (flushMaxMillis == null){
+            LOGGER.config("Error reading flush maximum period property (value was null), using default:  " + FLUSH_MAX_MILLIS_DEFAULT);
+            m_flushMaxMillis = FLUSH_MAX_MILLIS_DEFAULT;
+        } else {
+            m_flushMaxMillis = Long.valueOf(flushMaxMillis);
+        }
+
+        // Capture writer count
+        String captureWriterCount = properties.getProperty(CAPTURE_WRITER_COUNT_PROPERTY);
+        if (captureWriterCount == null){
+            LOGGER.config("Error reading capture writer count property (value was null), using default:  " + CAPTURE_WRITER_COUNT_DEFAULT);
+            m_captureWriterCount = CAPTURE_WRITER_COUNT_DEFAULT;
+        } else {
+            m_captureWriterCount = Integer.valueOf(captureWriterCount);
+        }
+
+        // Capture queue capacity
+        String captureQueueCapacity = properties.getProperty(CAPTURE_QUEUE_CAPACITY_PROPERTY);
+        if (captureQueueCapacity == null){
+            LOGGER.config("Error reading capture queue capacity property (value was null), using default:  " + CAPTURE_QUEUE_CAPACITY_DEFAULT);
+            m_captureQueueCapacity = CAPTURE_QUEUE_CAPACITY_DEFAULT;
+        } else {
+            m_captureQueueCapacity = Integer.valueOf(captureQueueCapacity);
+        }
+
+        // Compaction CRF
+        String compactionCrf = properties.getProperty(COMPACTION_CRF_PROPERTY);
+        if (compactionCrf == null){
+            LOGGER.config("Error reading compaction crf property (value was null), using default:  " + COMPACTION_CRF_DEFAULT);
+            m_compactionCrf = COMPACTION_CRF_DEFAULT;
+        } else {
+            m_compactionCrf = Integer.valueOf(compactionCrf);
+        }
+
+        // Compaction preset
+        String compactionPreset = properties.getProperty(COMPACTION_PRESET_PROPERTY);
+        if (compactionPreset == null){
+            LOGGER.config("Error reading compaction preset property (value was null), using default:  " + COMPACTION_PRESET_DEFAULT);
+            m_compactionPreset = COMPACTION_PRESET_DEFAULT;
+        } else {
+            m_compactionPreset = compactionPreset;
+        }
+
+        // Compaction minimum age
+        String compactionMinAge = properties.getProperty(COMPACTION_MIN_AGE_PROPERTY);
+        if (compactionMinAge == null){
+            LOGGER.config("Error reading compaction min age property (value was null), using default:  " + COMPACTION_MIN_AGE_DEFAULT);
+            m_compactionMinAge = COMPACTION_MIN_AGE_DEFAULT;
+        } else {
+            m_compactionMinAge = Integer.valueOf(compactionMinAge);
+        }
+
+        // Player cache size
+        String playerCacheMegabytes = properties.getProperty(PLAYER_CACHE_MB_PROPERTY);
+        if (playerCacheMegabytes == null){
+            LOGGER.config("Error reading player cache megabytes property (value was null), using default:  " + PLAYER_CACHE_MB_DEFAULT);
+            m_playerCacheMegabytes = PLAYER_CACHE_MB_DEFAULT;
+        } else {
+            m_playerCacheMegabytes = Integer.valueOf(playerCacheMegabytes);
+        }
+
+        // Player decoder count
+        String playerDecoderCount = properties.getProperty(PLAYER_DECODER_COUNT_PROPERTY);
+        if (playerDecoderCount == null){
+            LOGGER.config("Error reading player decoder count property (value was null), using default:  " + PLAYER_DECODER_COUNT_DEFAULT);
+            m_playerDecoderCount = PLAYER_DECODER_COUNT_DEFAULT;
+        } else {
+            m_playerDecoderCount = Integer.valueOf(playerDecoderCount);
+        }
+
+        // Player cache frames behind the cursor
+        String playerCacheBehind = properties.getProperty(PLAYER_CACHE_BEHIND_PROPERTY);
+        if (playerCacheBehind == null){
+            LOGGER.config("Error reading player cache behind frames property (value was null), using default:  " + PLAYER_CACHE_BEHIND_DEFAULT);
+            m_playerCacheBehind = PLAYER_CACHE_BEHIND_DEFAULT;
+        } else {
+            m_playerCacheBehind = Integer.valueOf(playerCacheBehind);
+        }
     }
 
     /**
@@ -278,6 +618,202 @@ public class VspProperties {
         return m_recordingQuality;
     }
 
+    /**
+     * Returns the size in megabytes at which a recording rolls over to a new .ts segment, or 0 if size based
+     * rollover is disabled.
+     * @return the recording segment size limit in megabytes.
+     */
+    public long getSegmentMaxMegabytes() {
+        return m_segmentMaxMb;
+    }
+
+    /**
+     * Returns the duration in seconds at which a recording rolls over to a new .ts segment, or 0 if time based
+     * rollover is disabled.
+     * @return the recording segment duration limit in seconds.
+     */
+    public long getSegmentMaxSeconds() {
+        return m_segmentMaxSeconds;
+    }
+
+    /**
+     * Returns the way recordings are handed to FFMPEG for frame ripping.
+     * @return the frame rip mode.
+     */
+    public FrameRipMode getFrameRipMode() {
+        return m_ripMode;
+    }
+
+    /**
+     * Returns how ripped frames are stored.
+     * @return the frame store.
+     */
+    public FrameStore getFrameStore() {
+        return m_frameStore;
+    }
+
+    /**
+     * Returns how recordings receive their stream.
+     * @return the ingest mode.
+     */
+    public IngestMode getIngestMode() {
+        return m_ingestMode;
+    }
+
+    /**
+     * Returns the name of the network interface that Java ingest joins multicast groups on, or an empty string to
+     * pick one automatically.
+     * @return the ingest network interface name.
+     */
+    public String getIngestNetworkInterface() {
+        return m_ingestNetworkInterface;
+    }
+
+    /**
+     * Returns the number of snippet frame ripping workers shared by all recordings.
+     * @return the number of frame ripping workers.
+     */
+    public int getRipWorkerCount() {
+        return m_ripWorkerCount;
+    }
+
+    /**
+     * Returns the number of snippets that may wait for a frame ripping worker.
+     * @return the frame ripping queue capacity.
+     */
+    public int getRipQueueCapacity() {
+        return m_ripQueueCapacity;
+    }
+
+    /**
+     * Returns what to do with a new snippet when the frame ripping queue is full.
+     * @return the frame ripping saturation policy.
+     */
+    public RipSaturationPolicy getRipSaturationPolicy() {
+        return m_ripSaturationPolicy;
+    }
+
+    /**
+     * Returns the streams recorded by the headless recorder service, as comma separated name@ip:port entries.
+     * @return the recorder service sources, or an empty String if none are configured.
+     */
+    public String getRecorderSources() {
+        return m_recorderSources;
+    }
+
+    /**
+     * Returns the number of scheduler threads shared by every stream in the headless recorder service.
+     * @return the recorder service thread count.
+     */
+    public int getRecorderThreadCount() {
+        return m_recorderThreadCount;
+    }
+
+    /**
+     * Returns the period in seconds at which the headless recorder service logs the status of its streams.
+     * @return the recorder service status period in seconds.
+     */
+    public int getRecorderStatusPeriod() {
+        return m_recorderStatusPeriod;
+    }
+
+    /**
+     * Returns the seconds before a recording's first flush, which is also how long a recording may go without new
+     * data before it is considered ended.
+     * @return the flush period in seconds.
+     */
+    public long getFlushPeriod() {
+        return m_flushPeriod;
+    }
+
+    /**
+     * Returns the size in kilobytes that the flush period is adapted to make each snippet.
+     * @return the target snippet size in kilobytes.
+     */
+    public long getFlushTargetKilobytes() {
+        return m_flushTargetKilobytes;
+    }
+
+    /**
+     * Returns the shortest time in milliseconds between flushes.
+     * @return the minimum flush period in milliseconds.
+     */
+    public long getFlushMinMillis() {
+        return m_flushMinMillis;
+    }
+
+    /**
+     * Returns the longest time in milliseconds between flushes, the latency budget for frames to appear.
+     * @return the maximum flush period in milliseconds.
+     */
+    public long getFlushMaxMillis() {
+        return m_flushMaxMillis;
+    }
+
+    /**
+     * Returns the number of threads writing captured frames to storage.
+     * @return the capture writer count.
+     */
+    public int getCaptureWriterCount() {
+        return m_captureWriterCount;
+    }
+
+    /**
+     * Returns the number of captured frames that may wait for a writer.
+     * @return the capture queue capacity.
+     */
+    public int getCaptureQueueCapacity() {
+        return m_captureQueueCapacity;
+    }
+
+    /**
+     * Returns the constant rate factor compacted recording video is encoded at.
+     * @return the compaction CRF.
+     */
+    public int getCompactionCrf() {
+        return m_compactionCrf;
+    }
+
+    /**
+     * Returns the encoder preset compacted recording video is encoded with.
+     * @return the compaction preset.
+     */
+    public String getCompactionPreset() {
+        return m_compactionPreset;
+    }
+
+    /**
+     * Returns the age in days after which a finished recording is compacted.
+     * @return the compaction minimum age in days.
+     */
+    public int getCompactionMinAge() {
+        return m_compactionMinAge;
+    }
+
+    /**
+     * Returns the memory budget of the player's decoded frame cache.
+     * @return the player cache size in megabytes.
+     */
+    public int getPlayerCacheMegabytes() {
+        return m_playerCacheMegabytes;
+    }
+
+    /**
+     * Returns the number of threads decoding frames ahead of the player.
+     * @return the player decoder count.
+     */
+    public int getPlayerDecoderCount() {
+        return m_playerDecoderCount;
+    }
+
+    /**
+     * Returns the number of decoded frames the player keeps behind its cursor.
+     * @return the number of frames kept behind the cursor.
+     */
+    public int getPlayerCacheBehindFrames() {
+        return m_playerCacheBehind;
+    }
+
     /**
      * Returns the Singleton instance of VspProperties.
      * @return the Singleton instance of VspProperties.
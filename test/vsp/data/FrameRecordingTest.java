@@ -0,0 +1,234 @@
+package vsp.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a {@link FrameRecording} survives being written and read back, in the binary format and from the older
+ * properties format, and that {@link FrameRecording#updateRecordingEndTime(String, long)} changes only the end time.
+ *
+ * @author Keith
+ */
+public class FrameRecordingTest {
+
+    /** The magic number at the start of a binary recording file. */
+    private static final int MAGIC = 0x56535052;
+
+    /** The folder the recording files are written to. */
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    /** A recording saved in the binary format reads back equal, with its save count. */
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        FrameRecording recording = createRecording();
+        String path = newPath();
+        recording.saveToFile(path);
+
+        byte[] bytes = Files.readAllBytes(new File(path).toPath());
+        assertEquals(MAGIC, readInt(bytes, 0));
+        FrameRecording read = FrameRecording.fromFile(path);
+        assertNotNull(read);
+        assertEquals(recording, read);
+        assertEquals(recording.getId(), read.getId());
+        assertEquals(Arrays.asList("/recordings/a/a-0000.ts", "/recordings/a/a-0001.ts"), read.getSegmentFiles());
+        assertEquals(1, read.getSaveCount());
+
+        read.saveToFile(path);
+        assertEquals(2, FrameRecording.fromFile(path).getSaveCount());
+    }
+
+    /** A recording with no name, frame directory or original file keeps them null. */
+    @Test
+    public void binaryRoundTripOfNullFields() throws IOException {
+        FrameRecording recording = new FrameRecording(UUID.randomUUID(), 5, null, null, 1000L, -1L, null);
+        String path = newPath();
+        recording.saveToFile(path);
+        FrameRecording read = FrameRecording.fromFile(path);
+        assertEquals(recording, read);
+        assertNull(read.getName());
+        assertNull(read.getFrameDirectory());
+        assertNull(read.getOriginalFile());
+    }
+
+    /** A version 1 binary file, which has no save count, still reads, with a save count of 0. */
+    @Test
+    public void readsVersionOneBinary() throws IOException {
+        FrameRecording recording = createRecording();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(1);
+            recording.writeFields(out);
+        }
+        FrameRecording read = FrameRecording.fromBytes(bytes.toByteArray());
+        assertEquals(recording, read);
+        assertEquals(0, read.getSaveCount());
+    }
+
+    /** A recording written in the older properties format reads back with all its fields. */
+    @Test
+    public void readsLegacyProperties() throws IOException {
+        UUID id = UUID.randomUUID();
+        UUID sourceId = UUID.randomUUID();
+        String path = newPath();
+        writeLegacy(path, id, sourceId, 2);
+
+        FrameRecording read = FrameRecording.fromFile(path);
+        assertNotNull(read);
+        assertEquals(id, read.getId());
+        assertEquals(sourceId, read.getVideoSourceId());
+        assertEquals("Legacy", read.getName());
+        assertEquals(15, read.getFps());
+        assertEquals("/recordings/legacy/", read.getFrameDirectory());
+        assertEquals("/recordings/legacy/legacy.ts", read.getOriginalFile());
+        assertEquals(1400000000000L, read.getStartTime());
+        assertEquals(-1L, read.getEndTime());
+        assertEquals(Arrays.asList("/recordings/legacy/legacy-0000.ts", "/recordings/legacy/legacy-0001.ts"),
+                read.getSegmentFiles());
+        assertEquals(0, read.getSaveCount());
+    }
+
+    /** A properties file written before segmenting existed has no segments. */
+    @Test
+    public void readsLegacyPropertiesWithoutSegments() throws IOException {
+        String path = newPath();
+        writeLegacy(path, UUID.randomUUID(), UUID.randomUUID(), -1);
+        assertEquals(0, FrameRecording.fromFile(path).getSegmentFiles().size());
+    }
+
+    /** Updating the end time of a binary recording changes the end time and nothing else. */
+    @Test
+    public void updatesEndTimeOfBinaryRecording() throws IOException {
+        FrameRecording recording = createRecording();
+        String path = newPath();
+        recording.saveToFile(path);
+
+        FrameRecording.updateRecordingEndTime(path, 1400000099000L);
+        FrameRecording read = FrameRecording.fromFile(path);
+        assertEquals(1400000099000L, read.getEndTime());
+        assertEquals(recording.getId(), read.getId());
+        assertEquals(recording.getStartTime(), read.getStartTime());
+        assertEquals(recording.getSegmentFiles(), read.getSegmentFiles());
+        assertEquals(2, read.getSaveCount());
+        assertEquals(false, new File(path + ".tmp").exists());
+    }
+
+    /** Updating the end time of a properties recording rewrites it in the binary format, keeping its fields. */
+    @Test
+    public void updatesEndTimeOfLegacyRecording() throws IOException {
+        UUID id = UUID.randomUUID();
+        UUID sourceId = UUID.randomUUID();
+        String path = newPath();
+        writeLegacy(path, id, sourceId, 2);
+        FrameRecording before = FrameRecording.fromFile(path);
+
+        FrameRecording.updateRecordingEndTime(path, 1400000042000L);
+        byte[] bytes = Files.readAllBytes(new File(path).toPath());
+        assertEquals(MAGIC, readInt(bytes, 0));
+        FrameRecording read = FrameRecording.fromFile(path);
+        assertEquals(1400000042000L, read.getEndTime());
+        assertEquals(id, read.getId());
+        assertEquals(sourceId, read.getVideoSourceId());
+        assertEquals(before.getName(), read.getName());
+        assertEquals(before.getSegmentFiles(), read.getSegmentFiles());
+        assertEquals(1, read.getSaveCount());
+    }
+
+    /** A file that is neither format, or is missing, reads as null rather than throwing. */
+    @Test
+    public void unreadableFileReadsAsNull() throws IOException {
+        String path = newPath();
+        Files.write(new File(path).toPath(), new byte[] {0x56, 0x53, 0x50, 0x52, 0, 0, 0, 9});
+        assertNull(FrameRecording.fromFile(path));
+        assertNull(FrameRecording.fromFile(path + ".missing"));
+        FrameRecording.updateRecordingEndTime(path + ".missing", 1L);
+        assertEquals(false, new File(path + ".missing").exists());
+    }
+
+    /** Re-reading the file a save wrote gives the same bytes back on the next save, other than the save count. */
+    @Test
+    public void saveIsStable() throws IOException {
+        String path = newPath();
+        createRecording().saveToFile(path);
+        byte[] first = Files.readAllBytes(new File(path).toPath());
+        FrameRecording.fromFile(path).saveToFile(path);
+        byte[] second = Files.readAllBytes(new File(path).toPath());
+        assertEquals(first.length, second.length);
+        // The save count follows the magic number and version.
+        assertArrayEquals(Arrays.copyOfRange(first, 16, first.length), Arrays.copyOfRange(second, 16, second.length));
+    }
+
+    /**
+     * Creates a recording with every field set.
+     * @return the recording.
+     */
+    private static FrameRecording createRecording() {
+        FrameRecording recording = new FrameRecording(UUID.randomUUID(), 10, "/recordings/a/a.ts", "/recordings/a/",
+                1400000000000L, -1L, "Camera A");
+        recording.addSegmentFile("/recordings/a/a-0000.ts");
+        recording.addSegmentFile("/recordings/a/a-0001.ts");
+        return recording;
+    }
+
+    /**
+     * Returns the path of a recording file in the temporary folder that does not exist yet.
+     * @return the path.
+     * @throws IOException if the folder cannot be created.
+     */
+    private String newPath() throws IOException {
+        return new File(m_folder.newFolder(), "recording.fr").getPath();
+    }
+
+    /**
+     * Writes a recording file in the older properties format.
+     * @param path the path of the file.
+     * @param id the ID of the recording.
+     * @param sourceId the ID of the recording's source.
+     * @param segments the number of segments to list, or -1 to leave the segment count out.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeLegacy(String path, UUID id, UUID sourceId, int segments) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("#Frame Recording\n");
+        text.append("recording.id=").append(id).append('\n');
+        text.append("video.source.id=").append(sourceId).append('\n');
+        text.append("name=Legacy\n");
+        text.append("fps=15\n");
+        text.append("frame.dir=/recordings/legacy/\n");
+        text.append("original.file.name=/recordings/legacy/legacy.ts\n");
+        text.append("start.time=1400000000000\n");
+        text.append("end.time=-1\n");
+        if (segments >= 0) {
+            text.append("segment.count=").append(segments).append('\n');
+            for (int i = 0; i < segments; i++) {
+                text.append("segment.").append(i).append("=/recordings/legacy/legacy-000").append(i).append(".ts\n");
+            }
+        }
+        Files.write(new File(path).toPath(), text.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Reads a big endian int.
+     * @param bytes the bytes.
+     * @param offset the offset of the int.
+     * @return the int.
+     */
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,140 @@
+package vsp.processing;
+
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import vsp.data.FrameTimestampIndex;
+
+/**
+ * Tests that the timestamps written by a {@link FrameTimestampWriter} read back from a {@link FrameTimestampIndex},
+ * with frame times anchored at the recording's first frame.
+ *
+ * @author Keith
+ */
+public class FrameTimestampWriterTest {
+
+    /** The start time of the recordings, in milliseconds since Jan 1 1970. */
+    private static final long START_TIME = 1400000000000L;
+
+    /** The folder the indexes are written to. */
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    /** Frames added in order are timed from the first, which is anchored to the start time. */
+    @Test
+    public void anchorsFirstFrameAdded() throws IOException {
+        String path = newPath();
+        FrameTimestampWriter writer = new FrameTimestampWriter(path, START_TIME);
+        writer.addFrame(1, 10.0);
+        writer.addFrame(2, 10.5);
+        writer.addFrame(3, 11.25);
+        writer.close();
+
+        FrameTimestampIndex index = new FrameTimestampIndex(path);
+        assertEquals(3, index.getFrameCount());
+        assertEquals(START_TIME, index.getTimestamp(0));
+        assertEquals(START_TIME + 500, index.getTimestamp(1));
+        assertEquals(START_TIME + 1250, index.getTimestamp(2));
+        assertEquals(900000L, index.getPresentationTimestamp(0));
+        assertEquals(1012500L, index.getPresentationTimestamp(2));
+        assertEquals(3L, index.getKey(2));
+    }
+
+    /**
+     * Frames of a later snippet ripped before the first frame are held until it arrives, then timed from it, and the
+     * index puts every frame back in key order.
+     */
+    @Test
+    public void anchorsFirstFrameWhenRippedOutOfOrder() throws IOException {
+        String path = newPath();
+        long firstKey = FfmpegVideoProcessor.snippetFrameKey(0, 1);
+        FrameTimestampWriter writer = new FrameTimestampWriter(path, START_TIME, firstKey);
+        writer.addFrame(FfmpegVideoProcessor.snippetFrameKey(1, 1), 14.0);
+        writer.addFrame(FfmpegVideoProcessor.snippetFrameKey(1, 2), 14.5);
+        writer.addFrame(firstKey, 10.0);
+        writer.addFrame(FfmpegVideoProcessor.snippetFrameKey(0, 2), 10.5);
+        writer.close();
+
+        FrameTimestampIndex index = new FrameTimestampIndex(path);
+        assertEquals(4, index.getFrameCount());
+        assertEquals(firstKey, index.getKey(0));
+        assertEquals(START_TIME, index.getTimestamp(0));
+        assertEquals(START_TIME + 500, index.getTimestamp(1));
+        assertEquals(FfmpegVideoProcessor.snippetFrameKey(1, 1), index.getKey(2));
+        assertEquals(START_TIME + 4000, index.getTimestamp(2));
+        assertEquals(START_TIME + 4500, index.getTimestamp(3));
+    }
+
+    /** If the first frame never arrives, closing anchors the earliest frame held instead. */
+    @Test
+    public void anchorsEarliestHeldFrameOnClose() throws IOException {
+        String path = newPath();
+        FrameTimestampWriter writer = new FrameTimestampWriter(path, START_TIME, 1L);
+        writer.addFrame(3, 21.0);
+        writer.addFrame(2, 20.0);
+        writer.close();
+
+        FrameTimestampIndex index = new FrameTimestampIndex(path);
+        assertEquals(2, index.getFrameCount());
+        assertEquals(START_TIME, index.getTimestamp(0));
+        assertEquals(START_TIME + 1000, index.getTimestamp(1));
+    }
+
+    /** Timestamps carry on across the 33 bit PTS wrap rather than jumping back. */
+    @Test
+    public void unwrapsPtsWrap() throws IOException {
+        String path = newPath();
+        double wrapSeconds = (1L << 33) / (double) FrameTimestampWriter.PTS_TICKS_PER_SECOND;
+        FrameTimestampWriter writer = new FrameTimestampWriter(path, START_TIME);
+        writer.addFrame(1, wrapSeconds - 1.0);
+        writer.addFrame(2, 0.5);
+        writer.close();
+
+        FrameTimestampIndex index = new FrameTimestampIndex(path);
+        assertEquals(START_TIME + 1500, index.getTimestamp(1));
+        assertEquals((1L << 33) + 45000L, index.getPresentationTimestamp(1));
+    }
+
+    /** Frames added after the writer is closed, by rips finishing after the recording ends, are still recorded. */
+    @Test
+    public void appendsFramesAfterClose() throws IOException {
+        String path = newPath();
+        FrameTimestampWriter writer = new FrameTimestampWriter(path, START_TIME);
+        writer.addFrame(1, 5.0);
+        writer.close();
+        writer.addFrame(2, 5.2);
+
+        FrameTimestampIndex index = new FrameTimestampIndex(path);
+        assertEquals(2, index.getFrameCount());
+        assertEquals(START_TIME + 200, index.getTimestamp(1));
+    }
+
+    /** Frames with known times are written as given, and found by time. */
+    @Test
+    public void findsFramesByTime() throws IOException {
+        String path = newPath();
+        FrameTimestampWriter writer = new FrameTimestampWriter(path, START_TIME);
+        for (int i = 0; i < 10; i++) {
+            writer.addFrame(i, i * 9000L, START_TIME + i * 100L);
+        }
+        writer.close();
+
+        FrameTimestampIndex index = new FrameTimestampIndex(path);
+        assertEquals(0, index.findFrame(START_TIME - 1));
+        assertEquals(0, index.findFrame(START_TIME + 99));
+        assertEquals(4, index.findFrame(START_TIME + 400));
+        assertEquals(9, index.findFrame(START_TIME + 5000));
+    }
+
+    /**
+     * Returns the path of an index file in the temporary folder.
+     * @return the path.
+     * @throws IOException if the folder cannot be created.
+     */
+    private String newPath() throws IOException {
+        return new File(m_folder.newFolder(), FrameTimestampIndex.FILE_NAME).getPath();
+    }
+}
@@ -0,0 +1,180 @@
+package vsp.processing;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Compares the throughput of the {@link JpegFrameScanner} with the byte at a time splitter it replaced, which read
+ * FFMPEG's output through a BufferedInputStream into a ByteArrayOutputStream and cut a frame at every FF D9.
+ * <p>
+ * The stream is built from JPEGs encoded from seeded random images, so every run splits the same bytes.  Each
+ * splitter is warmed up, then timed over several passes, and the median pass is reported.  Run it after compiling the
+ * tests with
+ * <pre>
+ * java -cp build/classes:build/test/classes vsp.processing.JpegFrameScannerBenchmark [frames] [width] [height] [passes]
+ * </pre>
+ *
+ * @author Keith
+ */
+public class JpegFrameScannerBenchmark {
+
+    /** The seed of the random images. */
+    private static final long SEED = 20140612L;
+
+    /** The number of distinct images the stream cycles through. */
+    private static final int DISTINCT_IMAGES = 16;
+
+    /** The number of untimed passes before timing. */
+    private static final int WARM_UP_PASSES = 3;
+
+    /**
+     * Runs the benchmark.
+     * @param args the number of frames, the frame width and height, and the number of timed passes, all optional.
+     * @throws IOException if the images cannot be encoded.
+     */
+    public static void main(String[] args) throws IOException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 640;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 360;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+
+        byte[] stream = buildStream(frames, width, height);
+        System.out.println(String.format("%d frames of %dx%d, %.1f MB", frames, width, height, stream.length / 1048576.0));
+
+        Splitter scanner = new Splitter() {
+            @Override
+            public long split(InputStream input) throws IOException {
+                JpegFrameScanner frameScanner = new JpegFrameScanner(input);
+                while (frameScanner.nextFrame() != null) {
+                    // Only counting frames.
+                }
+                return frameScanner.getFrameCount();
+            }
+        };
+        Splitter byteAtATime = new Splitter() {
+            @Override
+            public long split(InputStream input) throws IOException {
+                return splitByteAtATime(input);
+            }
+        };
+        report("JpegFrameScanner", scanner, stream, frames, passes);
+        report("Byte at a time", byteAtATime, stream, frames, passes);
+    }
+
+    /**
+     * Times a splitter over the stream and prints its median throughput.
+     * @param name the name of the splitter.
+     * @param splitter the splitter.
+     * @param stream the stream of frames.
+     * @param frames the number of frames in the stream.
+     * @param passes the number of timed passes.
+     * @throws IOException if the stream cannot be split.
+     */
+    private static void report(String name, Splitter splitter, byte[] stream, int frames, int passes) throws IOException {
+        for (int i = 0; i < WARM_UP_PASSES; i++) {
+            checkCount(name, splitter.split(new ByteArrayInputStream(stream)), frames);
+        }
+        long[] nanos = new long[passes];
+        for (int i = 0; i < passes; i++) {
+            long start = System.nanoTime();
+            long count = splitter.split(new ByteArrayInputStream(stream));
+            nanos[i] = System.nanoTime() - start;
+            checkCount(name, count, frames);
+        }
+        Arrays.sort(nanos);
+        double seconds = nanos[passes / 2] / 1e9;
+        System.out.println(String.format("%-18s %10.0f frames/s %8.1f MB/s  (median of %d passes)", name,
+                frames / seconds, stream.length / 1048576.0 / seconds, passes));
+    }
+
+    /**
+     * Fails the benchmark if a splitter found the wrong number of frames.
+     * @param name the name of the splitter.
+     * @param count the number of frames found.
+     * @param frames the number of frames in the stream.
+     */
+    private static void checkCount(String name, long count, int frames) {
+        if (count != frames) {
+            throw new IllegalStateException(name + " found " + count + " frames, expected " + frames);
+        }
+    }
+
+    /**
+     * Splits a stream the way FfmpegStreamCapture did before the scanner:  one byte at a time through a buffered
+     * stream, copying each frame out when an FF D9 is seen.
+     * @param input the stream of frames.
+     * @return the number of frames found.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static long splitByteAtATime(InputStream input) throws IOException {
+        InputStream is = new BufferedInputStream(input);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long frames = 0;
+        int currentByte;
+        int prelastByte = -2;
+        long checksum = 0;
+        while ((currentByte = is.read()) != -1) {
+            output.write(currentByte);
+            if (prelastByte == 0xFF && currentByte == 0xD9) {
+                // The old splitter handed each frame on as a copy.
+                checksum += output.toByteArray().length;
+                frames++;
+                output.reset();
+            }
+            prelastByte = currentByte;
+        }
+        return checksum < 0 ? -1 : frames;
+    }
+
+    /**
+     * Builds a stream of concatenated JPEGs, cycling through a few distinct random images.
+     * @param frames the number of frames.
+     * @param width the width of each frame.
+     * @param height the height of each frame.
+     * @return the stream.
+     * @throws IOException if an image cannot be encoded.
+     */
+    private static byte[] buildStream(int frames, int width, int height) throws IOException {
+        Random random = new Random(SEED);
+        byte[][] images = new byte[DISTINCT_IMAGES][];
+        for (int i = 0; i < DISTINCT_IMAGES; i++) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            for (int shape = 0; shape < 200; shape++) {
+                g2d.setColor(new Color(random.nextInt(0x1000000)));
+                g2d.fillRect(random.nextInt(width), random.nextInt(height), 1 + random.nextInt(width / 4),
+                        1 + random.nextInt(height / 4));
+            }
+            g2d.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "jpeg", out);
+            images[i] = out.toByteArray();
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < frames; i++) {
+            stream.write(images[i % DISTINCT_IMAGES]);
+        }
+        return stream.toByteArray();
+    }
+
+    /** Something that splits a stream of JPEGs into frames. */
+    private interface Splitter {
+
+        /**
+         * Splits a stream into frames.
+         * @param input the stream of frames.
+         * @return the number of frames found.
+         * @throws IOException if the stream cannot be read.
+         */
+        long split(InputStream input) throws IOException;
+    }
+}
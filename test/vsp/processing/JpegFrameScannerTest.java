@@ -0,0 +1,195 @@
+package vsp.processing;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JpegFrameScanner}.
+ *
+ * @author Keith
+ */
+public class JpegFrameScannerTest {
+
+    /** Concatenated images encoded by ImageIO are split back into the same images. */
+    @Test
+    public void splitsEncodedImages() throws IOException {
+        List<byte[]> images = new ArrayList<>();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            byte[] image = encodeImage(i);
+            images.add(image);
+            stream.write(image);
+        }
+        List<byte[]> frames = readAll(new JpegFrameScanner(new ByteArrayInputStream(stream.toByteArray())));
+        assertArrayEquals(images.toArray(), frames.toArray());
+    }
+
+    /** An EOI inside an embedded thumbnail does not end the frame. */
+    @Test
+    public void ignoresThumbnailEndOfImage() throws IOException {
+        byte[] thumbnail = buildFrame(new byte[0], new byte[] {0x11, 0x22});
+        byte[] frame = buildFrame(thumbnail, new byte[] {0x33, 0x44, 0x55});
+        byte[] next = buildFrame(new byte[0], new byte[] {0x66});
+        List<byte[]> frames = readAll(new JpegFrameScanner(new ByteArrayInputStream(concat(frame, next))));
+        assertEquals(2, frames.size());
+        assertArrayEquals(frame, frames.get(0));
+        assertArrayEquals(next, frames.get(1));
+    }
+
+    /** Stuffed bytes, restart markers and fill bytes in the entropy coded data do not end the frame. */
+    @Test
+    public void passesOverStuffedBytesAndRestartMarkers() throws IOException {
+        byte[] entropy = {
+            0x12, (byte) 0xFF, 0x00, 0x34, (byte) 0xFF, (byte) 0xD0, 0x56, (byte) 0xFF, 0x00, (byte) 0xFF, (byte) 0xD7,
+            (byte) 0xFF, 0x00, (byte) 0xD9, 0x78, (byte) 0xFF, (byte) 0xFF
+        };
+        byte[] frame = buildFrame(new byte[0], entropy);
+        List<byte[]> frames = readAll(new JpegFrameScanner(new ByteArrayInputStream(frame)));
+        assertEquals(1, frames.size());
+        assertArrayEquals(frame, frames.get(0));
+    }
+
+    /** A frame cut off by the start of the next is dropped, and the next frame is returned whole. */
+    @Test
+    public void dropsTruncatedFrame() throws IOException {
+        byte[] whole = buildFrame(new byte[] {1, 2, 3}, new byte[] {4, 5, 6, 7, 8});
+        byte[] truncated = new byte[whole.length - 4];
+        System.arraycopy(whole, 0, truncated, 0, truncated.length);
+        JpegFrameScanner scanner = new JpegFrameScanner(new ByteArrayInputStream(concat(truncated, whole)));
+        List<byte[]> frames = readAll(scanner);
+        assertEquals(1, frames.size());
+        assertArrayEquals(whole, frames.get(0));
+        assertEquals(truncated.length, scanner.getSkippedBytes());
+    }
+
+    /** A frame cut off by the end of the stream is not returned. */
+    @Test
+    public void dropsFrameTruncatedByEndOfStream() throws IOException {
+        byte[] whole = buildFrame(new byte[0], new byte[] {9, 9, 9});
+        byte[] truncated = new byte[whole.length - 1];
+        System.arraycopy(whole, 0, truncated, 0, truncated.length);
+        JpegFrameScanner scanner = new JpegFrameScanner(new ByteArrayInputStream(concat(whole, truncated)));
+        assertNotNull(scanner.nextFrame());
+        assertNull(scanner.nextFrame());
+        assertEquals(1, scanner.getFrameCount());
+    }
+
+    /** Bytes between frames are skipped. */
+    @Test
+    public void skipsBytesBetweenFrames() throws IOException {
+        byte[] frame = buildFrame(new byte[0], new byte[] {1});
+        byte[] garbage = {0x00, (byte) 0xFF, 0x42, (byte) 0xFF};
+        JpegFrameScanner scanner = new JpegFrameScanner(new ByteArrayInputStream(concat(garbage, frame, garbage, frame)));
+        assertEquals(2, readAll(scanner).size());
+        assertEquals(2 * garbage.length, scanner.getSkippedBytes());
+    }
+
+    /** Frames arriving a byte at a time into a buffer smaller than a frame come out the same. */
+    @Test
+    public void splitsTrickledFramesWithSmallBuffer() throws IOException {
+        byte[] first = encodeImage(1);
+        byte[] second = buildFrame(buildFrame(new byte[0], new byte[] {1}), new byte[] {(byte) 0xFF, 0x00, 2});
+        final ByteArrayInputStream bytes = new ByteArrayInputStream(concat(first, second, first));
+        InputStream trickle = new InputStream() {
+            @Override
+            public int read() {
+                return bytes.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return bytes.read(b, off, Math.min(len, 1));
+            }
+        };
+        List<byte[]> frames = readAll(new JpegFrameScanner(trickle, 16));
+        assertEquals(3, frames.size());
+        assertArrayEquals(first, frames.get(0));
+        assertArrayEquals(second, frames.get(1));
+        assertArrayEquals(first, frames.get(2));
+    }
+
+    /**
+     * Reads every frame from a scanner, copying each out of the scanner's buffer.
+     * @param scanner the scanner.
+     * @return the frames.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static List<byte[]> readAll(JpegFrameScanner scanner) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        ByteBuffer frame;
+        while ((frame = scanner.nextFrame()) != null) {
+            byte[] copy = new byte[frame.remaining()];
+            frame.get(copy);
+            frames.add(copy);
+        }
+        return frames;
+    }
+
+    /**
+     * Builds a frame with the marker structure the scanner walks:  an SOI, an APP1 segment, a scan header, the
+     * entropy coded data and an EOI.
+     * @param app1 the payload of the APP1 segment, such as an embedded thumbnail.
+     * @param entropy the entropy coded data.
+     * @return the frame.
+     */
+    private static byte[] buildFrame(byte[] app1, byte[] entropy) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((app1.length + 2) >> 8);
+        out.write(app1.length + 2);
+        out.write(app1, 0, app1.length);
+        byte[] scanHeader = {(byte) 0xFF, (byte) 0xDA, 0x00, 0x08, 0x01, 0x01, 0x00, 0x00, 0x3F, 0x00};
+        out.write(scanHeader, 0, scanHeader.length);
+        out.write(entropy, 0, entropy.length);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a small image as a JPEG with ImageIO.
+     * @param seed what to vary the image by.
+     * @return the JPEG.
+     * @throws IOException if the image cannot be encoded.
+     */
+    private static byte[] encodeImage(int seed) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(new Color(seed * 40 % 256, 128, 255 - seed * 40 % 256));
+        g2d.fillOval(seed, seed, 40, 30);
+        g2d.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Joins byte arrays end to end.
+     * @param parts the arrays.
+     * @return the joined bytes.
+     */
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
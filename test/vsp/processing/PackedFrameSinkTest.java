@@ -0,0 +1,142 @@
+package vsp.processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import vsp.data.FrameTimestampIndex;
+import vsp.data.PackedFrameReader;
+
+/**
+ * Tests that frames written by a {@link PackedFrameSink} are read back by a {@link PackedFrameReader}.
+ *
+ * @author Keith
+ */
+public class PackedFrameSinkTest {
+
+    /** The start time of the recordings, in milliseconds since Jan 1 1970. */
+    private static final long START_TIME = 1400000000000L;
+
+    /** The folder the packed files are written to. */
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    /** Any frame N reads back with the bytes and time it was written with. */
+    @Test
+    public void readsFrameN() throws IOException {
+        String basePath = newBasePath();
+        // More frames than the sink buffers index entries for, so the index is written in several pieces.
+        List<byte[]> frames = createFrames(300);
+        try (PackedFrameSink sink = new PackedFrameSink(basePath)) {
+            for (int i = 0; i < frames.size(); i++) {
+                sink.accept(i, START_TIME + i * 100L, ByteBuffer.wrap(frames.get(i)));
+            }
+            assertEquals(frames.size(), sink.getFrameCount());
+        }
+
+        try (PackedFrameReader reader = new PackedFrameReader(basePath)) {
+            assertEquals(frames.size(), reader.getFrameCount());
+            for (int n : new int[] {0, 1, 127, 128, 200, frames.size() - 1}) {
+                assertArrayEquals("Frame " + n, frames.get(n), toArray(reader.getFrame(n)));
+                assertEquals(START_TIME + n * 100L, reader.getTimestamp(n));
+            }
+        }
+    }
+
+    /** Frames flushed while the sink is still open can be read. */
+    @Test
+    public void readsFlushedFramesWhileOpen() throws IOException {
+        String basePath = newBasePath();
+        List<byte[]> frames = createFrames(5);
+        try (PackedFrameSink sink = new PackedFrameSink(basePath)) {
+            for (int i = 0; i < 3; i++) {
+                sink.accept(i, START_TIME + i, ByteBuffer.wrap(frames.get(i)));
+            }
+            sink.flush();
+            try (PackedFrameReader reader = new PackedFrameReader(basePath)) {
+                assertEquals(3, reader.getFrameCount());
+                assertArrayEquals(frames.get(2), toArray(reader.getFrame(2)));
+            }
+            for (int i = 3; i < frames.size(); i++) {
+                sink.accept(i, START_TIME + i, ByteBuffer.wrap(frames.get(i)));
+            }
+        }
+        try (PackedFrameReader reader = new PackedFrameReader(basePath)) {
+            assertEquals(frames.size(), reader.getFrameCount());
+            assertArrayEquals(frames.get(4), toArray(reader.getFrame(4)));
+        }
+    }
+
+    /** A timestamp index covering every frame times the frames in place of the times in the packed index. */
+    @Test
+    public void timesFramesFromTimestampIndex() throws IOException {
+        String basePath = newBasePath();
+        List<byte[]> frames = createFrames(4);
+        try (PackedFrameSink sink = new PackedFrameSink(basePath)) {
+            for (int i = 0; i < frames.size(); i++) {
+                sink.accept(i, START_TIME, ByteBuffer.wrap(frames.get(i)));
+            }
+        }
+        String indexPath = new File(new File(basePath).getParentFile(), FrameTimestampIndex.FILE_NAME).getPath();
+        FrameTimestampWriter writer = new FrameTimestampWriter(indexPath, START_TIME);
+        for (int i = 0; i < frames.size(); i++) {
+            writer.addFrame(i, 2.0 + i * 0.25);
+        }
+        writer.close();
+
+        try (PackedFrameReader reader = new PackedFrameReader(basePath, new FrameTimestampIndex(indexPath))) {
+            assertEquals(START_TIME + 750, reader.getTimestamp(3));
+        }
+
+        // An index missing a frame cannot say which frame is which, so the packed times are used.
+        writer = new FrameTimestampWriter(indexPath, START_TIME);
+        writer.addFrame(0, 2.0);
+        writer.close();
+        try (PackedFrameReader reader = new PackedFrameReader(basePath, new FrameTimestampIndex(indexPath))) {
+            assertEquals(START_TIME, reader.getTimestamp(3));
+        }
+    }
+
+    /**
+     * Returns the base path of packed files in a new folder.
+     * @return the path, without extension.
+     * @throws IOException if the folder cannot be created.
+     */
+    private String newBasePath() throws IOException {
+        return new File(m_folder.newFolder(), "frames").getPath();
+    }
+
+    /**
+     * Creates frames of random bytes and varying lengths.
+     * @param count the number of frames.
+     * @return the frames.
+     */
+    private static List<byte[]> createFrames(int count) {
+        Random random = new Random(count);
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] frame = new byte[1 + random.nextInt(4000)];
+            random.nextBytes(frame);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Copies the remaining bytes of a buffer.
+     * @param buffer the buffer.
+     * @return the bytes.
+     */
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
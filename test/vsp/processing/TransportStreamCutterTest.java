@@ -0,0 +1,206 @@
+package vsp.processing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link TransportStreamCutter} against streams built by the {@link TransportStreamGenerator}.
+ *
+ * @author Keith
+ */
+public class TransportStreamCutterTest {
+
+    /** The folder the generated streams are written to. */
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    /** A cut of a growing file ends on its latest random access point, leaving the rest for the next cut. */
+    @Test
+    public void cutEndsAtLastRandomAccessPoint() throws IOException {
+        TransportStreamGenerator generator = new TransportStreamGenerator();
+        byte[] tables = generator.writeTables(0, 0);
+        for (int i = 0; i < 3; i++) {
+            generator.writeGop(5, 3);
+        }
+        File file = write(generator);
+        List<Long> raps = generator.getRandomAccessPoints();
+
+        TransportStreamCutter cutter = new TransportStreamCutter();
+        RecordingSnippet snippet = cut(cutter, file, 0, generator.size(), false);
+        assertNotNull(snippet);
+        assertEquals(0, snippet.getPosition());
+        assertEquals((long) raps.get(2), snippet.getLength());
+        assertArrayEquals(tables, readHeader(snippet));
+
+        RecordingSnippet last = cut(cutter, file, snippet.getPosition() + snippet.getLength(), generator.size(), true);
+        assertNotNull(last);
+        assertEquals((long) raps.get(2), last.getPosition());
+        assertEquals(generator.size() - raps.get(2), last.getLength());
+        assertTrue(TransportStreamGenerator.startsWithRandomAccessPoint(readBody(last)));
+    }
+
+    /** Data with no random access point since the last cut is carried over whole rather than cut part way. */
+    @Test
+    public void carriesOverWithoutRandomAccessPoint() throws IOException {
+        TransportStreamGenerator generator = new TransportStreamGenerator();
+        generator.writeTables(0, 0);
+        generator.writeGop(5, 3);
+        File file = write(generator);
+
+        long rap = generator.getRandomAccessPoints().get(0);
+
+        TransportStreamCutter cutter = new TransportStreamCutter();
+        RecordingSnippet tables = cut(cutter, file, 0, generator.size(), false);
+        assertNotNull(tables);
+        assertEquals(rap, tables.getLength());
+        assertNull(cut(cutter, file, rap, generator.size(), false));
+    }
+
+    /** The header is the PAT and PMT seen before the cut's end, not a PMT changed in the data carried over. */
+    @Test
+    public void headerUsesTablesSeenBeforeCutEnd() throws IOException {
+        TransportStreamGenerator generator = new TransportStreamGenerator();
+        byte[] oldTables = generator.writeTables(0, 0);
+        generator.writeGop(5, 3);
+        generator.writeGop(2, 3);
+        byte[] newTables = generator.writeTables(1, 0);
+        generator.writeFrame(false, 3);
+        File file = write(generator);
+        long lastRap = generator.getRandomAccessPoints().get(1);
+
+        TransportStreamCutter cutter = new TransportStreamCutter();
+        RecordingSnippet first = cut(cutter, file, 0, generator.size(), false);
+        assertNotNull(first);
+        assertEquals(lastRap, first.getLength());
+        assertArrayEquals(oldTables, readHeader(first));
+
+        RecordingSnippet last = cut(cutter, file, lastRap, generator.size(), true);
+        assertNotNull(last);
+        assertArrayEquals(newTables, readHeader(last));
+    }
+
+    /** A PMT spanning several packets is reassembled, so the video is still found and every packet heads the cut. */
+    @Test
+    public void multiPacketPmtIsCarriedWhole() throws IOException {
+        TransportStreamGenerator generator = new TransportStreamGenerator();
+        byte[] tables = generator.writeTables(0, 400);
+        assertEquals(4 * TransportStreamCutter.PACKET_SIZE, tables.length);
+        generator.writeGop(4, 2);
+        generator.writeGop(4, 2);
+        File file = write(generator);
+
+        TransportStreamCutter cutter = new TransportStreamCutter();
+        RecordingSnippet snippet = cut(cutter, file, 0, generator.size(), false);
+        assertNotNull(snippet);
+        assertEquals((long) generator.getRandomAccessPoints().get(1), snippet.getLength());
+        assertEquals(tables.length, snippet.getHeaderLength());
+        assertArrayEquals(tables, readHeader(snippet));
+    }
+
+    /**
+     * Cutting a file as it grows, at ends that fall part way through packets, loses no frames and starts every cut
+     * after the first on a random access point.
+     */
+    @Test
+    public void frameCountsAreKeptAcrossCuts() throws IOException {
+        TransportStreamGenerator generator = new TransportStreamGenerator();
+        generator.writeTables(0, 200);
+        for (int i = 0; i < 12; i++) {
+            generator.writeGop(3 + i % 4, 1 + i % 3);
+        }
+        File file = write(generator);
+
+        TransportStreamCutter cutter = new TransportStreamCutter();
+        long position = 0;
+        int frames = 0;
+        int snippets = 0;
+        for (long end = 5001; ; end += 5001) {
+            boolean finalCut = end >= generator.size();
+            RecordingSnippet snippet = cut(cutter, file, position, Math.min(end, generator.size()), finalCut);
+            if (snippet != null) {
+                assertEquals(position, snippet.getPosition());
+                byte[] body = readBody(snippet);
+                if (snippets > 0) {
+                    assertTrue("Snippet " + snippets + " starts off a random access point",
+                            TransportStreamGenerator.startsWithRandomAccessPoint(body));
+                }
+                frames += TransportStreamGenerator.countFrames(body);
+                position += snippet.getLength();
+                snippets++;
+            }
+            if (finalCut) {
+                break;
+            }
+        }
+        assertEquals(generator.size(), position);
+        assertEquals(generator.getFrameCount(), frames);
+        assertTrue(snippets > 1);
+    }
+
+    /**
+     * Writes a generated stream to a new file.
+     * @param generator the generator of the stream.
+     * @return the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private File write(TransportStreamGenerator generator) throws IOException {
+        File file = m_folder.newFile();
+        generator.writeTo(file);
+        return file;
+    }
+
+    /**
+     * Cuts a region of a file.
+     * @param cutter the cutter.
+     * @param file the file.
+     * @param start the position to cut from.
+     * @param end the end of the data.
+     * @param finalCut true if nothing more will be written.
+     * @return the snippet, or null if there was nothing to cut.
+     * @throws IOException if the file cannot be read.
+     */
+    private static RecordingSnippet cut(TransportStreamCutter cutter, File file, long start, long end, boolean finalCut)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return cutter.cut(channel, file.getPath(), start, end, 0, finalCut);
+        }
+    }
+
+    /**
+     * Reads the header a snippet is written with.
+     * @param snippet the snippet.
+     * @return the header.
+     * @throws IOException if the snippet cannot be read.
+     */
+    private static byte[] readHeader(RecordingSnippet snippet) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snippet.transferTo(Channels.newChannel(out));
+        return Arrays.copyOf(out.toByteArray(), snippet.getHeaderLength());
+    }
+
+    /**
+     * Reads the packets a snippet cut from its file.
+     * @param snippet the snippet.
+     * @return the packets.
+     * @throws IOException if the snippet cannot be read.
+     */
+    private static byte[] readBody(RecordingSnippet snippet) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snippet.transferBodyTo(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+}
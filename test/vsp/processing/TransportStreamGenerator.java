@@ -0,0 +1,316 @@
+package vsp.processing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates small synthetic MPEG transport streams for testing:  a PAT and PMT describing one H.264 video stream, and
+ * video access units that are either IDR pictures, which are random access points, or ordinary slices.  The positions
+ * of the random access points and the number of access units written are recorded, so tests can check where a
+ * stream was cut and that no frame was lost.  The payload is filler that never contains a start code.
+ *
+ * @author Keith
+ */
+public class TransportStreamGenerator {
+
+    /** The PID of the PMT. */
+    public static final int PMT_PID = 0x1000;
+
+    /** The PID of the video stream. */
+    public static final int VIDEO_PID = 0x0100;
+
+    /** The program number of the one program. */
+    private static final int PROGRAM_NUMBER = 1;
+
+    /** The H.264 stream type. */
+    private static final int STREAM_TYPE_H264 = 0x1B;
+
+    /** The stream id of the first video PES stream. */
+    private static final int VIDEO_STREAM_ID = 0xE0;
+
+    /** The byte filling payloads, which can never form a start code. */
+    private static final byte FILLER = (byte) 0xAA;
+
+    /** The packets written so far. */
+    private final ByteArrayOutputStream m_stream;
+
+    /** The next continuity counter of each PID. */
+    private final Map<Integer, Integer> m_counters;
+
+    /** The positions of the packets that start an IDR access unit. */
+    private final List<Long> m_randomAccessPoints;
+
+    /** The number of access units written. */
+    private int m_frameCount;
+
+    /** Creates a new, empty TransportStreamGenerator. */
+    public TransportStreamGenerator() {
+        m_stream = new ByteArrayOutputStream();
+        m_counters = new HashMap<>();
+        m_randomAccessPoints = new ArrayList<>();
+        m_frameCount = 0;
+    }
+
+    /**
+     * Writes a PAT and a PMT.
+     * @param pmtVersion the version number of the PMT, 0 to 31.
+     * @param descriptorBytes the number of bytes of program descriptors to pad the PMT with, which makes it span
+     * several packets when large enough.
+     * @return the packets written, the PAT's followed by the PMT's.
+     */
+    public byte[] writeTables(int pmtVersion, int descriptorBytes) {
+        int start = m_stream.size();
+        writeSection(0x0000, buildPat());
+        writeSection(PMT_PID, buildPmt(pmtVersion, descriptorBytes));
+        return Arrays.copyOfRange(m_stream.toByteArray(), start, m_stream.size());
+    }
+
+    /**
+     * Writes a group of pictures:  an IDR access unit followed by ordinary ones.
+     * @param frames the number of access units in the group, including the IDR.
+     * @param packetsPerFrame the number of packets each access unit spans.
+     */
+    public void writeGop(int frames, int packetsPerFrame) {
+        for (int i = 0; i < frames; i++) {
+            writeFrame(i == 0, packetsPerFrame);
+        }
+    }
+
+    /**
+     * Writes one video access unit as a PES packet.
+     * @param keyframe true for an IDR access unit, which is a random access point.
+     * @param packets the number of packets the access unit spans.
+     */
+    public void writeFrame(boolean keyframe, int packets) {
+        if (keyframe) {
+            m_randomAccessPoints.add((long) m_stream.size());
+        }
+        byte[] payload = new byte[TransportStreamCutter.PACKET_SIZE - 4];
+        Arrays.fill(payload, FILLER);
+        long pts = 90000L + m_frameCount * 3000L;
+        byte[] pesHeader = {
+            0x00, 0x00, 0x01, (byte) VIDEO_STREAM_ID, 0x00, 0x00, (byte) 0x80, (byte) 0x80, 0x05,
+            (byte) (0x21 | ((pts >> 29) & 0x0E)), (byte) (pts >> 22), (byte) (0x01 | ((pts >> 14) & 0xFE)),
+            (byte) (pts >> 7), (byte) (0x01 | ((pts << 1) & 0xFE)),
+            0x00, 0x00, 0x00, 0x01, (byte) (keyframe ? 0x65 : 0x41)
+        };
+        System.arraycopy(pesHeader, 0, payload, 0, pesHeader.length);
+        writePacket(VIDEO_PID, true, payload);
+        Arrays.fill(payload, FILLER);
+        for (int i = 1; i < packets; i++) {
+            writePacket(VIDEO_PID, false, payload);
+        }
+        m_frameCount++;
+    }
+
+    /**
+     * Returns the positions of the packets that start an IDR access unit.
+     * @return the random access points, in order.
+     */
+    public List<Long> getRandomAccessPoints() {
+        return m_randomAccessPoints;
+    }
+
+    /**
+     * Returns the number of access units written.
+     * @return the frame count.
+     */
+    public int getFrameCount() {
+        return m_frameCount;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     * @return the size of the stream.
+     */
+    public long size() {
+        return m_stream.size();
+    }
+
+    /**
+     * Returns the stream written so far.
+     * @return the packets, back to back.
+     */
+    public byte[] toByteArray() {
+        return m_stream.toByteArray();
+    }
+
+    /**
+     * Writes the stream so far to a file, replacing its contents.
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeTo(File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            m_stream.writeTo(out);
+        }
+    }
+
+    /**
+     * Counts the video access units in a run of packets, by their PES packet starts.
+     * @param packets the packets.
+     * @return the number of access units starting in the packets.
+     */
+    public static int countFrames(byte[] packets) {
+        int frames = 0;
+        for (int offset = 0; offset + TransportStreamCutter.PACKET_SIZE <= packets.length;
+                offset += TransportStreamCutter.PACKET_SIZE) {
+            if (getPid(packets, offset) == VIDEO_PID && (packets[offset + 1] & 0x40) != 0) {
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Returns whether the first video access unit in a run of packets is an IDR access unit.
+     * @param packets the packets.
+     * @return true if the first access unit is a random access point, false if it is not or there is none.
+     */
+    public static boolean startsWithRandomAccessPoint(byte[] packets) {
+        for (int offset = 0; offset + TransportStreamCutter.PACKET_SIZE <= packets.length;
+                offset += TransportStreamCutter.PACKET_SIZE) {
+            if (getPid(packets, offset) == VIDEO_PID) {
+                // A continuation packet before any PES start means the snippet began part way through a frame.
+                return (packets[offset + 1] & 0x40) != 0 && packets[offset + 4 + 18] == 0x65;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the PID of a packet.
+     * @param packets the packets.
+     * @param offset the offset of the packet.
+     * @return the PID.
+     */
+    private static int getPid(byte[] packets, int offset) {
+        return ((packets[offset + 1] & 0x1F) << 8) | (packets[offset + 2] & 0xFF);
+    }
+
+    /**
+     * Builds a PAT section listing the one program.
+     * @return the section, CRC included.
+     */
+    private static byte[] buildPat() {
+        byte[] section = {
+            0x00, (byte) 0xB0, 0x0D, 0x00, 0x01, (byte) 0xC1, 0x00, 0x00,
+            (byte) (PROGRAM_NUMBER >> 8), (byte) PROGRAM_NUMBER, (byte) (0xE0 | (PMT_PID >> 8)), (byte) PMT_PID,
+            0, 0, 0, 0
+        };
+        return withCrc(section);
+    }
+
+    /**
+     * Builds a PMT section listing the video stream.
+     * @param version the version number of the PMT.
+     * @param descriptorBytes the number of bytes of program descriptors to pad with.
+     * @return the section, CRC included.
+     */
+    private static byte[] buildPmt(int version, int descriptorBytes) {
+        ByteArrayOutputStream descriptors = new ByteArrayOutputStream();
+        int remaining = descriptorBytes;
+        while (remaining >= 2) {
+            int length = Math.min(255, remaining - 2);
+            descriptors.write(0x80);        // User private descriptor
+            descriptors.write(length);
+            for (int i = 0; i < length; i++) {
+                descriptors.write(0x55);
+            }
+            remaining -= 2 + length;
+        }
+        byte[] programInfo = descriptors.toByteArray();
+        int sectionLength = 9 + programInfo.length + 5 + 4;
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        section.write(0x02);
+        section.write(0xB0 | (sectionLength >> 8));
+        section.write(sectionLength);
+        section.write(PROGRAM_NUMBER >> 8);
+        section.write(PROGRAM_NUMBER);
+        section.write(0xC1 | ((version & 0x1F) << 1));
+        section.write(0x00);
+        section.write(0x00);
+        section.write(0xE0 | (VIDEO_PID >> 8));   // PCR PID
+        section.write(VIDEO_PID);
+        section.write(0xF0 | (programInfo.length >> 8));
+        section.write(programInfo.length);
+        section.write(programInfo, 0, programInfo.length);
+        section.write(STREAM_TYPE_H264);
+        section.write(0xE0 | (VIDEO_PID >> 8));
+        section.write(VIDEO_PID);
+        section.write(0xF0);
+        section.write(0x00);
+        for (int i = 0; i < 4; i++) {
+            section.write(0);
+        }
+        return withCrc(section.toByteArray());
+    }
+
+    /**
+     * Fills in the MPEG-2 CRC in the last four bytes of a section.
+     * @param section the section, with room for its CRC.
+     * @return the section.
+     */
+    private static byte[] withCrc(byte[] section) {
+        int crc = 0xFFFFFFFF;
+        for (int i = 0; i < section.length - 4; i++) {
+            crc ^= (section[i] & 0xFF) << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+        }
+        int end = section.length;
+        section[end - 4] = (byte) (crc >> 24);
+        section[end - 3] = (byte) (crc >> 16);
+        section[end - 2] = (byte) (crc >> 8);
+        section[end - 1] = (byte) crc;
+        return section;
+    }
+
+    /**
+     * Writes a PSI section in as many packets as it needs, starting with a pointer field and padded with stuffing.
+     * @param pid the PID to write the section on.
+     * @param section the section.
+     */
+    private void writeSection(int pid, byte[] section) {
+        byte[] payload = new byte[TransportStreamCutter.PACKET_SIZE - 4];
+        int written = 0;
+        boolean first = true;
+        while (written < section.length) {
+            Arrays.fill(payload, (byte) 0xFF);
+            int at = 0;
+            if (first) {
+                payload[at++] = 0x00;           // Pointer field
+            }
+            int length = Math.min(payload.length - at, section.length - written);
+            System.arraycopy(section, written, payload, at, length);
+            written += length;
+            writePacket(pid, first, payload);
+            first = false;
+        }
+    }
+
+    /**
+     * Writes one packet with a full payload and no adaptation field.
+     * @param pid the PID of the packet.
+     * @param unitStart true to set the payload unit start indicator.
+     * @param payload the 184 byte payload.
+     */
+    private void writePacket(int pid, boolean unitStart, byte[] payload) {
+        Integer counter = m_counters.get(pid);
+        int cc = counter == null ? 0 : counter;
+        m_counters.put(pid, (cc + 1) & 0x0F);
+        m_stream.write(TransportStreamCutter.SYNC_BYTE);
+        m_stream.write((unitStart ? 0x40 : 0x00) | (pid >> 8));
+        m_stream.write(pid);
+        m_stream.write(0x10 | cc);
+        m_stream.write(payload, 0, payload.length);
+    }
+}